@@ -97,6 +97,38 @@ public class NettyConfig {
   @Default("32 * 1024 * 1024")
   public final int nettyServerRequestBufferWatermark;
 
+  /**
+   * If true, the native epoll transport is used, with edge-triggered I/O, if it is available on the platform. The NIO
+   * transport is used otherwise.
+   */
+  @Config("netty.server.epoll.enabled")
+  @Default("false")
+  public final boolean nettyServerEpollEnabled;
+
+  /**
+   * If true and the epoll transport is in use, every port is bound once per boss thread with SO_REUSEPORT so that the
+   * kernel spreads incoming connections across the boss threads instead of one thread accepting all of them.
+   */
+  @Config("netty.server.epoll.reuse.port.enabled")
+  @Default("false")
+  public final boolean nettyServerEpollReusePortEnabled;
+
+  /**
+   * If true, buffers for client channels are allocated from a pooled allocator. They are allocated from an unpooled
+   * allocator otherwise.
+   */
+  @Config("netty.server.pooled.allocator.enabled")
+  @Default("true")
+  public final boolean nettyServerPooledAllocatorEnabled;
+
+  /**
+   * Response chunks that are ready to be written together are copied into one buffer, and written as one chunk, as
+   * long as their total size does not exceed this (in bytes). 0 disables the coalescing of chunks.
+   */
+  @Config("netty.server.response.chunk.coalesce.threshold.bytes")
+  @Default("0")
+  public final int nettyServerResponseChunkCoalesceThresholdBytes;
+
   public NettyConfig(VerifiableProperties verifiableProperties) {
     nettyServerBossThreadCount = verifiableProperties.getInt("netty.server.boss.thread.count", 1);
     nettyServerIdleTimeSeconds = verifiableProperties.getInt("netty.server.idle.time.seconds", 60);
@@ -111,5 +143,11 @@ public class NettyConfig {
     nettyServerRequestBufferWatermark =
         verifiableProperties.getIntInRange("netty.server.request.buffer.watermark", 32 * 1024 * 1024, 1,
             Integer.MAX_VALUE);
+    nettyServerEpollEnabled = verifiableProperties.getBoolean("netty.server.epoll.enabled", false);
+    nettyServerEpollReusePortEnabled = verifiableProperties.getBoolean("netty.server.epoll.reuse.port.enabled", false);
+    nettyServerPooledAllocatorEnabled = verifiableProperties.getBoolean("netty.server.pooled.allocator.enabled", true);
+    nettyServerResponseChunkCoalesceThresholdBytes =
+        verifiableProperties.getIntInRange("netty.server.response.chunk.coalesce.threshold.bytes", 0, 0,
+            Integer.MAX_VALUE);
   }
 }
@@ -75,6 +75,48 @@ public class NetworkConfig {
   @Default("104857600")
   public final int socketRequestMaxBytes;
 
+  /**
+   * The maximum number of requests that a network client can have in flight on a single connection. Requests are
+   * written back to back on a connection and their responses are matched by correlation id. A value of 1 sends one
+   * request at a time on each connection.
+   */
+  @Config("network.client.max.in.flight.requests.per.connection")
+  @Default("1")
+  public final int networkClientMaxInFlightRequestsPerConnection;
+
+  /**
+   * The total size of the buffers that the payloads of network receives can be allocated from, including the free
+   * buffers kept for reuse. Receives that cannot be served by the pool are allocated from the heap. A value of 0
+   * allocates all receives from the heap.
+   */
+  @Config("network.receive.buffer.pool.capacity.bytes")
+  @Default("0")
+  public final long networkReceiveBufferPoolCapacityBytes;
+
+  /**
+   * The size of the largest receive buffers that are recycled by the receive buffer pool. Larger receives are allocated
+   * from the pool but not recycled.
+   */
+  @Config("network.receive.buffer.pool.max.pooled.buffer.bytes")
+  @Default("8388608")
+  public final int networkReceiveBufferPoolMaxPooledBufferBytes;
+
+  /**
+   * Whether the receive buffer pool allocates direct buffers, which the socket can read into without an intermediate
+   * copy, instead of heap buffers.
+   */
+  @Config("network.receive.buffer.pool.direct")
+  @Default("true")
+  public final boolean networkReceiveBufferPoolDirect;
+
+  /**
+   * Whether the receive buffer pool detects and reclaims buffers that are garbage collected without being returned to
+   * it. Detection tracks every buffer handed out, so it adds some overhead to each receive.
+   */
+  @Config("network.receive.buffer.pool.leak.detection.enabled")
+  @Default("false")
+  public final boolean networkReceiveBufferPoolLeakDetectionEnabled;
+
   public NetworkConfig(VerifiableProperties verifiableProperties) {
 
     numNetworkThreads = verifiableProperties.getIntInRange("num.network.threads", 3, 1, Integer.MAX_VALUE);
@@ -86,5 +128,16 @@ public class NetworkConfig {
     socketRequestMaxBytes =
         verifiableProperties.getIntInRange("socket.request.max.bytes", 100 * 1024 * 1024, 1, Integer.MAX_VALUE);
     queuedMaxRequests = verifiableProperties.getIntInRange("queued.max.requests", 500, 1, Integer.MAX_VALUE);
+    networkClientMaxInFlightRequestsPerConnection =
+        verifiableProperties.getIntInRange("network.client.max.in.flight.requests.per.connection", 1, 1,
+            Integer.MAX_VALUE);
+    networkReceiveBufferPoolCapacityBytes =
+        verifiableProperties.getLongInRange("network.receive.buffer.pool.capacity.bytes", 0, 0, Long.MAX_VALUE);
+    networkReceiveBufferPoolMaxPooledBufferBytes =
+        verifiableProperties.getIntInRange("network.receive.buffer.pool.max.pooled.buffer.bytes", 8 * 1024 * 1024, 1,
+            1024 * 1024 * 1024);
+    networkReceiveBufferPoolDirect = verifiableProperties.getBoolean("network.receive.buffer.pool.direct", true);
+    networkReceiveBufferPoolLeakDetectionEnabled =
+        verifiableProperties.getBoolean("network.receive.buffer.pool.leak.detection.enabled", false);
   }
 }
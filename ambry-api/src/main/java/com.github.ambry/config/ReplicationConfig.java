@@ -91,6 +91,57 @@ public class ReplicationConfig {
   @Default("false")
   public final boolean replicationValidateMessageStream;
 
+  /**
+   * Whether replica threads use non-blocking network clients, keeping requests to all the nodes they replicate from in
+   * flight at the same time, instead of replicating from one node at a time over blocking connections.
+   */
+  @Config("replication.nonblocking.enabled")
+  @Default("false")
+  public final boolean replicationNonBlockingEnabled;
+
+  /**
+   * The maximum number of connections a replica thread opens to a port of a remote node when non-blocking replication
+   * is enabled.
+   */
+  @Config("replication.nonblocking.max.connections.per.port")
+  @Default("2")
+  public final int replicationNonBlockingMaxConnectionsPerPort;
+
+  /**
+   * The time after which a request sent to a remote node is considered failed when non-blocking replication is
+   * enabled. This includes the time spent waiting for a connection.
+   */
+  @Config("replication.nonblocking.request.timeout.ms")
+  @Default("30000")
+  public final int replicationNonBlockingRequestTimeoutMs;
+
+  /**
+   * Whether non-blocking replication pipelines the replication cycles of a remote node that is being caught up with.
+   * The next metadata request is sent, with the tokens that the current batch will advance to, while the messages of
+   * the current batch are fetched, and the messages are written to the local stores by a separate thread. Only
+   * applies when non-blocking replication is enabled.
+   */
+  @Config("replication.pipelined.enabled")
+  @Default("false")
+  public final boolean replicationPipelinedEnabled;
+
+  /**
+   * The maximum number of batches of messages that a replica thread has fetched or is fetching but has not yet written
+   * to the local stores when replication is pipelined. This bounds the memory held by the responses of remote nodes.
+   */
+  @Config("replication.pipelined.max.pending.writes")
+  @Default("4")
+  public final int replicationPipelinedMaxPendingWrites;
+
+  /**
+   * The maximum time that a replica thread waits, when it is shut down, for the writes to the local stores that are in
+   * progress or pending to complete when replication is pipelined. Writes that are still in progress afterwards are
+   * interrupted, which can leave a partial message in the store.
+   */
+  @Config("replication.pipelined.write.drain.timeout.ms")
+  @Default("60000")
+  public final long replicationPipelinedWriteDrainTimeoutMs;
+
   public ReplicationConfig(VerifiableProperties verifiableProperties) {
 
     replicationTokenFactory =
@@ -112,5 +163,16 @@ public class ReplicationConfig {
     replicationMaxLagForWaitTimeInBytes =
         verifiableProperties.getLongInRange("replication.max.lag.for.wait.time.in.bytes", 5242880, 0, 104857600);
     replicationValidateMessageStream = verifiableProperties.getBoolean("replication.validate.message.stream", false);
+    replicationNonBlockingEnabled = verifiableProperties.getBoolean("replication.nonblocking.enabled", false);
+    replicationNonBlockingMaxConnectionsPerPort =
+        verifiableProperties.getIntInRange("replication.nonblocking.max.connections.per.port", 2, 1, 100);
+    replicationNonBlockingRequestTimeoutMs =
+        verifiableProperties.getIntInRange("replication.nonblocking.request.timeout.ms", 30000, 1,
+            Integer.MAX_VALUE);
+    replicationPipelinedEnabled = verifiableProperties.getBoolean("replication.pipelined.enabled", false);
+    replicationPipelinedMaxPendingWrites =
+        verifiableProperties.getIntInRange("replication.pipelined.max.pending.writes", 4, 1, 1000);
+    replicationPipelinedWriteDrainTimeoutMs =
+        verifiableProperties.getLongInRange("replication.pipelined.write.drain.timeout.ms", 60000, 0, Long.MAX_VALUE);
   }
 }
@@ -146,6 +146,59 @@ public class RouterConfig {
   @Default("0.9")
   public final double routerLatencyToleranceQuantile;
 
+  /**
+   * The maximum amount of memory, shared by all the put operations of the router, that is used for the buffers of the
+   * data chunks being put. Chunk buffers are recycled across operations and chunks are not filled while the memory is
+   * exhausted. 0 disables the pool, in which case every operation allocates its own chunk buffers.
+   */
+  @Config("router.put.chunk.buffer.pool.capacity.bytes")
+  @Default("0")
+  public final long routerPutChunkBufferPoolCapacityBytes;
+
+  /**
+   * Whether the chunk buffer pool detects and reclaims chunk buffers that are garbage collected without being returned
+   * to it. Detection tracks every buffer handed out, so it adds some overhead to each chunk.
+   */
+  @Config("router.put.chunk.buffer.pool.leak.detection.enabled")
+  @Default("false")
+  public final boolean routerPutChunkBufferPoolLeakDetectionEnabled;
+
+  /**
+   * The maximum number of data chunks of a composite blob that a get operation fetches ahead of the caller. Each
+   * operation starts with a window of four chunks, widens it when the caller has to wait for chunks and narrows it
+   * when the prefetch memory of the router is exhausted.
+   */
+  @Config("router.get.prefetch.max.chunks")
+  @Default("8")
+  public final int routerGetPrefetchMaxChunks;
+
+  /**
+   * The maximum amount of memory, shared by all the get operations of the router, that is used for data chunks that
+   * have been fetched but are yet to be written out to the caller. 0 means that the memory is unbounded. An operation
+   * can always fetch one chunk at a time, even if this is exhausted.
+   */
+  @Config("router.get.prefetch.memory.budget.bytes")
+  @Default("268435456")
+  public final long routerGetPrefetchMemoryBudgetBytes;
+
+  /**
+   * The maximum total size of the data chunks of composite blobs that the router caches, so that the chunks of
+   * popular blobs are not fetched from the servers on every get. Chunks are admitted based on how frequently they are
+   * accessed. 0 disables the cache.
+   */
+  @Config("router.chunk.cache.capacity.bytes")
+  @Default("0")
+  public final long routerChunkCacheCapacityBytes;
+
+  /**
+   * If true, the data chunks of composite blobs that are only partly within the range of a range get are requested
+   * from the servers with that range, so that only the bytes in the range are read and sent by the servers. This must
+   * be enabled only once all the servers are able to serve get requests with byte ranges.
+   */
+  @Config("router.get.chunk.range.requests.enabled")
+  @Default("false")
+  public final boolean routerGetChunkRangeRequestsEnabled;
+
   /**
    * Create a RouterConfig instance.
    * @param verifiableProperties the properties map to refer to.
@@ -180,5 +233,17 @@ public class RouterConfig {
         verifiableProperties.getString("router.get.operation.tracker.type", "SimpleOperationTracker");
     routerLatencyToleranceQuantile =
         verifiableProperties.getDoubleInRange("router.latency.tolerance.quantile", 0.9, 0.0, 1.0);
+    routerPutChunkBufferPoolCapacityBytes =
+        verifiableProperties.getLongInRange("router.put.chunk.buffer.pool.capacity.bytes", 0, 0, Long.MAX_VALUE);
+    routerPutChunkBufferPoolLeakDetectionEnabled =
+        verifiableProperties.getBoolean("router.put.chunk.buffer.pool.leak.detection.enabled", false);
+    routerGetPrefetchMaxChunks = verifiableProperties.getIntInRange("router.get.prefetch.max.chunks", 8, 1, 1024);
+    routerGetPrefetchMemoryBudgetBytes =
+        verifiableProperties.getLongInRange("router.get.prefetch.memory.budget.bytes", 256 * 1024 * 1024, 0,
+            Long.MAX_VALUE);
+    routerChunkCacheCapacityBytes =
+        verifiableProperties.getLongInRange("router.chunk.cache.capacity.bytes", 0, 0, Long.MAX_VALUE);
+    routerGetChunkRangeRequestsEnabled =
+        verifiableProperties.getBoolean("router.get.chunk.range.requests.enabled", false);
   }
 }
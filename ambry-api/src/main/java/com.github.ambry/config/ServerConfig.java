@@ -54,6 +54,42 @@ public class ServerConfig {
   @Default("60")
   public final long serverQuotaStatsAggregateIntervalInMinutes;
 
+  /**
+   * The maximum total size of the serialized blob properties, user metadata and blob info records cached for each
+   * store to serve get requests for them without reading the log. The cache is disabled if this is 0.
+   */
+  @Config("server.blob.metadata.cache.size.in.bytes.per.store")
+  @Default("0")
+  public final long serverBlobMetadataCacheSizeInBytesPerStore;
+
+  /**
+   * The weights of the types of requests that are queued separately for the request handlers, as a comma separated list
+   * of {@code <RequestOrResponseType>:<weight>} (for e.g. "PutRequest:4,GetRequest:4,ReplicaMetadataRequest:1"). The
+   * queues are drained in a weighted round robin and all the other requests share a queue of weight 1. If empty, all
+   * requests are handled in the order they are received.
+   */
+  @Config("server.request.type.weights")
+  @Default("")
+  public final String serverRequestTypeWeights;
+
+  /**
+   * The number of threads per disk that execute the put, get and delete requests for the partitions on the disk. The
+   * request handler threads only read the requests and hand them over to the threads of the disk, so the concurrency
+   * on a disk is bounded and a slow disk only backs up its own requests. If 0, requests are executed by the request
+   * handler threads.
+   */
+  @Config("server.disk.executor.num.of.threads.per.disk")
+  @Default("0")
+  public final int serverDiskExecutorNumOfThreadsPerDisk;
+
+  /**
+   * The maximum number of requests per disk that can wait for the threads of the disk. The request handler threads
+   * wait for space once a disk has this many requests waiting.
+   */
+  @Config("server.disk.executor.queue.size.per.disk")
+  @Default("100")
+  public final int serverDiskExecutorQueueSizePerDisk;
+
   public ServerConfig(VerifiableProperties verifiableProperties) {
     serverRequestHandlerNumOfThreads = verifiableProperties.getInt("server.request.handler.num.of.threads", 7);
     serverSchedulerNumOfthreads = verifiableProperties.getInt("server.scheduler.num.of.threads", 10);
@@ -62,5 +98,13 @@ public class ServerConfig {
         verifiableProperties.getBoolean("server.stats.publish.health.report.enabled", false);
     serverQuotaStatsAggregateIntervalInMinutes =
         verifiableProperties.getLong("server.quota.stats.aggregate.interval.in.minutes", 60);
+    serverBlobMetadataCacheSizeInBytesPerStore =
+        verifiableProperties.getLongInRange("server.blob.metadata.cache.size.in.bytes.per.store", 0, 0,
+            Long.MAX_VALUE);
+    serverRequestTypeWeights = verifiableProperties.getString("server.request.type.weights", "");
+    serverDiskExecutorNumOfThreadsPerDisk =
+        verifiableProperties.getIntInRange("server.disk.executor.num.of.threads.per.disk", 0, 0, Integer.MAX_VALUE);
+    serverDiskExecutorQueueSizePerDisk =
+        verifiableProperties.getIntInRange("server.disk.executor.queue.size.per.disk", 100, 1, Integer.MAX_VALUE);
   }
 }
@@ -13,12 +13,23 @@
  */
 package com.github.ambry.config;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
 /**
  * The configs for the store
  */
 
 public class StoreConfig {
 
+  /**
+   * The values that {@link #storeDataDurabilityMode} can have.
+   */
+  public static final List<String> STORE_DATA_DURABILITY_MODES =
+      Collections.unmodifiableList(Arrays.asList("async", "group-fsync", "sync-per-write"));
+
   /**
    * The factory class the store uses to creates its keys
    */
@@ -171,6 +182,15 @@ public class StoreConfig {
   @Default("240000")
   public final int storeStatsIndexEntriesPerSecond;
 
+  /**
+   * Whether the valid data sizes per container and per log segment are kept up to date as entries are added to the
+   * index, so that stats requests are served without scanning the index. The sizes are saved on shutdown and loaded
+   * on the next start.
+   */
+  @Config("store.stats.valid.data.size.tracking.enabled")
+  @Default("false")
+  public final boolean storeStatsValidDataSizeTrackingEnabled;
+
   /**
    * Specifies the minimum size that index entries should occupy when they get persisted. If the number of bytes for
    * constituting keys and values fall short of this size, the entries will be padded with dummy bytes to amount to this
@@ -182,6 +202,74 @@ public class StoreConfig {
   @Default("115")
   public final int storeIndexPersistedEntryMinBytes;
 
+  /**
+   * Whether a key lookup in the index first checks the bloom filters of all the index segments to be searched, and then
+   * searches only the segments whose bloom filters may contain the key.
+   */
+  @Config("store.index.bloom.first.lookup.enabled")
+  @Default("false")
+  public final boolean storeIndexBloomFirstLookupEnabled;
+
+  /**
+   * The minimum number of candidate index segments a bloom first lookup needs to have for the candidates to be
+   * searched in parallel on the lookup pool of the index. 0 disables parallel searches.
+   */
+  @Config("store.index.parallel.lookup.min.candidates")
+  @Default("0")
+  public final int storeIndexParallelLookupMinCandidates;
+
+  /**
+   * The number of threads in the pool that each index searches candidate index segments in parallel on. Only used if
+   * parallel searches are enabled through {@link #storeIndexParallelLookupMinCandidates}.
+   */
+  @Config("store.index.parallel.lookup.thread.count")
+  @Default("4")
+  public final int storeIndexParallelLookupThreadCount;
+
+  /**
+   * Whether the index maintains a store wide summary of the index segments that each key has entries in. The summary
+   * bounds the number of segments searched by a key lookup regardless of the number of segments in the store at the
+   * cost of roughly 11 bytes of memory per index entry.
+   */
+  @Config("store.index.key.segment.summary.enabled")
+  @Default("false")
+  public final boolean storeIndexKeySegmentSummaryEnabled;
+
+  /**
+   * Whether the entries of in memory index segments are packed into fixed width slots of direct memory instead of
+   * being held as objects in a sorted map on the heap.
+   */
+  @Config("store.index.off.heap.active.segment.enabled")
+  @Default("false")
+  public final boolean storeIndexOffHeapActiveSegmentEnabled;
+
+  /**
+   * Whether the index entries of concurrent puts to a store are published in batches. The thread that acquires the
+   * write lock writes all the puts waiting for it to the log, one after the other, and adds their index entries to the
+   * index together. The writes to the log are not made concurrent by this.
+   */
+  @Config("store.put.batched.index.publish.enabled")
+  @Default("false")
+  public final boolean storePutBatchedIndexPublishEnabled;
+
+  /**
+   * The guarantee that puts and deletes have when they are acknowledged. One of
+   * "async" (the log is flushed periodically),
+   * "group-fsync" (the log is flushed before the operation returns, concurrent operations share a flush) and
+   * "sync-per-write" (the log is flushed by every operation before it returns).
+   * Any other value is rejected when the config is created.
+   */
+  @Config("store.data.durability.mode")
+  @Default("async")
+  public final String storeDataDurabilityMode;
+
+  /**
+   * The time a flush in the "group-fsync" durability mode is delayed by in order to include more operations.
+   */
+  @Config("store.data.group.fsync.max.delay.ms")
+  @Default("0")
+  public final long storeDataGroupFsyncMaxDelayMs;
+
   public StoreConfig(VerifiableProperties verifiableProperties) {
 
     storeKeyFactory = verifiableProperties.getString("store.key.factory", "com.github.ambry.commons.BlobIdFactory");
@@ -218,7 +306,28 @@ public class StoreConfig {
         verifiableProperties.getLongInRange("store.stats.wait.timeout.in.secs", 2 * 60, 0, 30 * 60);
     storeStatsIndexEntriesPerSecond =
         verifiableProperties.getIntInRange("store.stats.index.entries.per.second", 240000, 1, Integer.MAX_VALUE);
+    storeStatsValidDataSizeTrackingEnabled =
+        verifiableProperties.getBoolean("store.stats.valid.data.size.tracking.enabled", false);
     storeIndexPersistedEntryMinBytes = verifiableProperties.getInt("store.index.persisted.entry.min.bytes", 115);
+    storeIndexBloomFirstLookupEnabled = verifiableProperties.getBoolean("store.index.bloom.first.lookup.enabled", false);
+    storeIndexParallelLookupMinCandidates =
+        verifiableProperties.getIntInRange("store.index.parallel.lookup.min.candidates", 0, 0, Integer.MAX_VALUE);
+    storeIndexParallelLookupThreadCount =
+        verifiableProperties.getIntInRange("store.index.parallel.lookup.thread.count", 4, 1, 64);
+    storeIndexKeySegmentSummaryEnabled =
+        verifiableProperties.getBoolean("store.index.key.segment.summary.enabled", false);
+    storeIndexOffHeapActiveSegmentEnabled =
+        verifiableProperties.getBoolean("store.index.off.heap.active.segment.enabled", false);
+    storePutBatchedIndexPublishEnabled =
+        verifiableProperties.getBoolean("store.put.batched.index.publish.enabled", false);
+    storeDataDurabilityMode = verifiableProperties.getString("store.data.durability.mode", "async");
+    if (!STORE_DATA_DURABILITY_MODES.contains(storeDataDurabilityMode)) {
+      throw new IllegalArgumentException(
+          "store.data.durability.mode has value " + storeDataDurabilityMode + " which is not one of "
+              + STORE_DATA_DURABILITY_MODES);
+    }
+    storeDataGroupFsyncMaxDelayMs =
+        verifiableProperties.getLongInRange("store.data.group.fsync.max.delay.ms", 0, 0, 1000);
   }
 }
 
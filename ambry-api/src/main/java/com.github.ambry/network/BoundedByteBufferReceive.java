@@ -13,26 +13,41 @@
  */
 package com.github.ambry.network;
 
+import com.github.ambry.utils.ByteBufferPool;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * A byte buffer version of Receive to buffer the incoming request or response.
+ * A byte buffer version of Receive to buffer the incoming request or response. The buffer can be allocated from a
+ * {@link ByteBufferPool}, in which case it has to be returned to the pool by calling {@link #release()} once the
+ * payload is no longer in use.
  */
 public class BoundedByteBufferReceive implements Receive {
 
+  private final ByteBufferPool bufferPool;
   private ByteBuffer buffer = null;
+  private boolean pooled = false;
   private ByteBuffer sizeBuffer;
   private long sizeToRead;
   private long sizeRead;
   private Logger logger = LoggerFactory.getLogger(getClass());
 
   public BoundedByteBufferReceive() {
+    this(null);
+  }
+
+  /**
+   * @param bufferPool the {@link ByteBufferPool} to allocate the buffer for the payload from. If it is {@code null} or
+   *                   cannot serve the allocation right away, the buffer is allocated on the heap instead.
+   */
+  public BoundedByteBufferReceive(ByteBufferPool bufferPool) {
+    this.bufferPool = bufferPool;
     sizeToRead = 0;
     sizeRead = 0;
     sizeBuffer = ByteBuffer.allocate(8);
@@ -56,7 +71,7 @@ public class BoundedByteBufferReceive implements Receive {
         sizeToRead = sizeBuffer.getLong();
         sizeRead += 8;
         bytesRead += 8;
-        buffer = ByteBuffer.allocate((int) sizeToRead - 8);
+        buffer = allocate((int) sizeToRead - 8);
       }
     }
     if (buffer != null && sizeRead < sizeToRead) {
@@ -78,6 +93,38 @@ public class BoundedByteBufferReceive implements Receive {
     return buffer;
   }
 
+  /**
+   * Returns the buffer of the payload to the {@link ByteBufferPool} it was allocated from, if any. The payload must
+   * not be used after this call. Calling this more than once, or for a payload that was not pooled, has no effect.
+   */
+  public void release() {
+    if (pooled) {
+      pooled = false;
+      bufferPool.deallocate(buffer);
+    }
+  }
+
+  /**
+   * Allocates the buffer for the payload from the pool without blocking, falling back to the heap if the pool does not
+   * have the memory available.
+   * @param size the size of the payload in bytes.
+   * @return a {@link ByteBuffer} of {@code size} bytes.
+   */
+  private ByteBuffer allocate(int size) {
+    if (bufferPool != null) {
+      try {
+        ByteBuffer pooledBuffer = bufferPool.allocate(size, 0);
+        pooled = true;
+        return pooledBuffer;
+      } catch (TimeoutException | IllegalArgumentException e) {
+        logger.trace("Could not allocate {} bytes from the buffer pool, allocating from the heap", size);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return ByteBuffer.allocate(size);
+  }
+
   /**
    * The total size in bytes that needs to receive from the channel
    * It will be initialized only after header is read.
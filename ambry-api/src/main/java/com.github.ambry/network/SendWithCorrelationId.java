@@ -0,0 +1,25 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+/**
+ * A {@link Send} whose response carries the same correlation id. Such sends can share a connection with other requests
+ * in flight since their responses can be told apart.
+ */
+public interface SendWithCorrelationId extends Send {
+  /**
+   * @return the correlation id of this send.
+   */
+  int getCorrelationId();
+}
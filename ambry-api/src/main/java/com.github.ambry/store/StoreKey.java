@@ -13,6 +13,9 @@
  */
 package com.github.ambry.store;
 
+import java.nio.ByteBuffer;
+
+
 /**
  * Represents the index key. To make an object part of an index key,
  * this interface can be implemented
@@ -42,4 +45,28 @@ public abstract class StoreKey implements Comparable<StoreKey> {
    * @return the long form of the key
    */
   public abstract String getLongForm();
+
+  /**
+   * Compares this key with the serialized form of another key of the same type without deserializing it. Callers
+   * have to check {@link #isSerializedComparisonSupported()} before invoking this method.
+   * <p/>
+   * The result has the same sign as {@code compareTo(other)} where {@code other} is the key obtained by deserializing
+   * the bytes. The position and the limit of {@code buffer} are not changed.
+   * @param buffer the {@link ByteBuffer} that contains the serialized key (as returned by {@link #toBytes()}).
+   * @param position the absolute position in {@code buffer} at which the serialized key starts.
+   * @return a negative integer, zero, or a positive integer as this key is less than, equal to, or greater than the
+   *         serialized key.
+   * @throws UnsupportedOperationException if this type of key does not support comparisons with serialized keys.
+   */
+  public int compareToSerialized(ByteBuffer buffer, int position) {
+    throw new UnsupportedOperationException(getClass().getName() + " cannot be compared with serialized keys");
+  }
+
+  /**
+   * @return {@code true} if this type of key supports {@link #compareToSerialized(ByteBuffer, int)}. {@code false}
+   * otherwise.
+   */
+  public boolean isSerializedComparisonSupported() {
+    return false;
+  }
 }
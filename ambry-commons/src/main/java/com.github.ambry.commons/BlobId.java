@@ -20,10 +20,10 @@ import com.github.ambry.clustermap.ClusterMapUtils;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.store.StoreKey;
 import com.github.ambry.utils.ByteBufferInputStream;
-import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.UUID;
 import org.apache.commons.codec.binary.Base64;
 
@@ -78,14 +78,25 @@ public class BlobId extends StoreKey {
   private static final short DATACENTER_ID_FIELD_LENGTH_IN_BYTES = Byte.BYTES;
   private static final short ACCOUNT_ID_FIELD_LENGTH_IN_BYTES = Short.BYTES;
   private static final short CONTAINER_ID_FIELD_LENGTH_IN_BYTES = Short.BYTES;
+  private static final short PARTITION_ID_VERSION_FIELD_LENGTH_IN_BYTES = Short.BYTES;
+  private static final int BLOB_ID_V2_EXTRA_FIELDS_LENGTH_IN_BYTES =
+      FLAG_FIELD_LENGTH_IN_BYTES + DATACENTER_ID_FIELD_LENGTH_IN_BYTES + ACCOUNT_ID_FIELD_LENGTH_IN_BYTES
+          + CONTAINER_ID_FIELD_LENGTH_IN_BYTES;
   // the version to indicate the serialized format.
-  private final Short version;
-  private final Byte flag;
-  private final Byte datacenterId;
-  private final Short accountId;
-  private final Short containerId;
+  private final short version;
+  private final byte flag;
+  private final byte datacenterId;
+  private final short accountId;
+  private final short containerId;
   private final PartitionId partitionId;
-  protected final String uuid;
+  // the serialized form of this blobId. It is never modified, so that serialization, comparisons and hashing do not
+  // have to re-encode the fields.
+  private final byte[] bytes;
+  private final int partitionIdOffset;
+  private final int uuidOffset;
+  private final int hashCode;
+  // the Base64 form of bytes, computed when first required. Racing threads compute the same value.
+  private String id = null;
 
   /**
    * Constructs a new BlobId by taking arguments for the required fields. The constructed BlobId will be serialized
@@ -124,7 +135,17 @@ public class BlobId extends StoreKey {
         throw new IllegalArgumentException("blobId version=" + version + " not supported");
     }
     this.partitionId = partitionId;
-    uuid = UUID.randomUUID().toString();
+    byte[] partitionIdBytes = partitionId.getBytes();
+    byte[] uuidBytes = UUID.randomUUID().toString().getBytes();
+    partitionIdOffset = getPartitionIdOffset(version);
+    uuidOffset = partitionIdOffset + partitionIdBytes.length + UUID_SIZE_FIELD_LENGTH_IN_BYTES;
+    ByteBuffer idBuf = ByteBuffer.allocate(uuidOffset + uuidBytes.length);
+    putFieldsBeforePartitionId(idBuf);
+    idBuf.put(partitionIdBytes);
+    idBuf.putInt(uuidBytes.length);
+    idBuf.put(uuidBytes);
+    bytes = idBuf.array();
+    hashCode = Arrays.hashCode(bytes);
   }
 
   /**
@@ -159,7 +180,28 @@ public class BlobId extends StoreKey {
     if (partitionId == null) {
       throw new IllegalArgumentException("Partition ID cannot be null");
     }
-    uuid = Utils.readIntString(stream);
+    byte[] partitionIdBytes = partitionId.getBytes();
+    int uuidSize = stream.readInt();
+    if (uuidSize < 0) {
+      throw new IllegalArgumentException("uuid size cannot be negative");
+    }
+    partitionIdOffset = getPartitionIdOffset(version);
+    uuidOffset = partitionIdOffset + partitionIdBytes.length + UUID_SIZE_FIELD_LENGTH_IN_BYTES;
+    // the uuid is read straight into the serialized form, so that it is not decoded and re-encoded.
+    bytes = new byte[uuidOffset + uuidSize];
+    ByteBuffer idBuf = ByteBuffer.wrap(bytes);
+    putFieldsBeforePartitionId(idBuf);
+    idBuf.put(partitionIdBytes);
+    idBuf.putInt(uuidSize);
+    int read = 0;
+    while (read < uuidSize) {
+      int readBytes = stream.read(bytes, uuidOffset + read, uuidSize - read);
+      if (readBytes == -1 || readBytes == 0) {
+        throw new IllegalArgumentException("uuid size " + uuidSize + " does not match the actual data size " + read);
+      }
+      read += readBytes;
+    }
+    hashCode = Arrays.hashCode(bytes);
     if (ensureFullyRead && stream.read() != -1) {
       throw new IllegalArgumentException("Stream should have no more available bytes to read");
     }
@@ -192,18 +234,7 @@ public class BlobId extends StoreKey {
    * @return The byte count of the serialized blobId.
    */
   public short sizeInBytes() {
-    short sizeForBlobIdV1 =
-        (short) (VERSION_FIELD_LENGTH_IN_BYTES + partitionId.getBytes().length + UUID_SIZE_FIELD_LENGTH_IN_BYTES
-            + uuid.getBytes().length);
-    switch (version) {
-      case BLOB_ID_V1:
-        return sizeForBlobIdV1;
-      case BLOB_ID_V2:
-        return (short) (FLAG_FIELD_LENGTH_IN_BYTES + DATACENTER_ID_FIELD_LENGTH_IN_BYTES
-            + ACCOUNT_ID_FIELD_LENGTH_IN_BYTES + CONTAINER_ID_FIELD_LENGTH_IN_BYTES + sizeForBlobIdV1);
-      default:
-        throw new IllegalArgumentException("blobId version=" + version + " not supported");
-    }
+    return (short) bytes.length;
   }
 
   /**
@@ -250,31 +281,24 @@ public class BlobId extends StoreKey {
     return flag;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Returns a copy of the serialized form that is cached in this blobId.
+   */
   @Override
   public byte[] toBytes() {
-    ByteBuffer idBuf = ByteBuffer.allocate(sizeInBytes());
-    idBuf.putShort(version);
-    switch (version) {
-      case BLOB_ID_V1:
-        break;
-      case BLOB_ID_V2:
-        idBuf.put(flag);
-        idBuf.put(datacenterId);
-        idBuf.putShort(accountId);
-        idBuf.putShort(containerId);
-        break;
-      default:
-        throw new IllegalArgumentException("blobId version=" + version + " not supported");
-    }
-    idBuf.put(partitionId.getBytes());
-    idBuf.putInt(uuid.getBytes().length);
-    idBuf.put(uuid.getBytes());
-    return idBuf.array();
+    return bytes.clone();
   }
 
   @Override
   public String getID() {
-    return Base64.encodeBase64URLSafeString(toBytes());
+    String id = this.id;
+    if (id == null) {
+      id = Base64.encodeBase64URLSafeString(bytes);
+      this.id = id;
+    }
+    return id;
   }
 
   @Override
@@ -295,7 +319,7 @@ public class BlobId extends StoreKey {
         throw new IllegalArgumentException("blobId version=" + version + " not supported");
     }
     sb.append(":").append(partitionId);
-    sb.append(":").append(uuid).append("]");
+    sb.append(":").append(new String(bytes, uuidOffset, bytes.length - uuidOffset)).append("]");
     return sb.toString();
   }
 
@@ -304,43 +328,116 @@ public class BlobId extends StoreKey {
     return getID();
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * The uuid is compared byte by byte, which matches {@link String#compareTo(String)} for the ASCII uuids that blobIds
+   * carry.
+   */
   @Override
   public int compareTo(StoreKey o) {
     BlobId other = (BlobId) o;
-    int result = version.compareTo(other.version);
+    if (this == other) {
+      return 0;
+    }
+    int result = Short.compare(version, other.version);
     if (result == 0) {
       switch (version) {
         case BLOB_ID_V1:
-          result = partitionId.compareTo(other.partitionId);
-          if (result == 0) {
-            result = uuid.compareTo(other.uuid);
-          }
           break;
         case BLOB_ID_V2:
-          result = flag.compareTo(other.flag);
+          result = Byte.compare(flag, other.flag);
+          if (result == 0) {
+            result = Byte.compare(datacenterId, other.datacenterId);
+          }
           if (result == 0) {
-            result = datacenterId.compareTo(other.datacenterId);
-            if (result == 0) {
-              result = accountId.compareTo(other.accountId);
-              if (result == 0) {
-                result = containerId.compareTo(other.containerId);
-                if (result == 0) {
-                  result = partitionId.compareTo(other.partitionId);
-                  if (result == 0) {
-                    result = uuid.compareTo(other.uuid);
-                  }
-                }
-              }
-            }
+            result = Short.compare(accountId, other.accountId);
+          }
+          if (result == 0) {
+            result = Short.compare(containerId, other.containerId);
           }
           break;
         default:
           throw new IllegalArgumentException("Unrecognized blobId version " + version);
       }
+      if (result == 0) {
+        result = partitionId.compareTo(other.partitionId);
+      }
+      if (result == 0) {
+        result = compareUuid(other.bytes, other.uuidOffset, other.bytes.length - other.uuidOffset);
+      }
     }
     return result;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Fields are compared in the same order and with the same signedness as in {@link #compareTo(StoreKey)}.
+   */
+  @Override
+  public int compareToSerialized(ByteBuffer buffer, int position) {
+    int result = Short.compare(version, buffer.getShort(position));
+    if (result != 0) {
+      return result;
+    }
+    int otherPosition = position + VERSION_FIELD_LENGTH_IN_BYTES;
+    switch (version) {
+      case BLOB_ID_V1:
+        break;
+      case BLOB_ID_V2:
+        result = Byte.compare(flag, buffer.get(otherPosition));
+        otherPosition += FLAG_FIELD_LENGTH_IN_BYTES;
+        if (result == 0) {
+          result = Byte.compare(datacenterId, buffer.get(otherPosition));
+          otherPosition += DATACENTER_ID_FIELD_LENGTH_IN_BYTES;
+        }
+        if (result == 0) {
+          result = Short.compare(accountId, buffer.getShort(otherPosition));
+          otherPosition += ACCOUNT_ID_FIELD_LENGTH_IN_BYTES;
+        }
+        if (result == 0) {
+          result = Short.compare(containerId, buffer.getShort(otherPosition));
+          otherPosition += CONTAINER_ID_FIELD_LENGTH_IN_BYTES;
+        }
+        if (result != 0) {
+          return result;
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unrecognized blobId version " + version);
+    }
+    // partitions are ordered by their id, which follows the partition version in the serialized form.
+    result = Long.compare(readLong(bytes, partitionIdOffset + PARTITION_ID_VERSION_FIELD_LENGTH_IN_BYTES),
+        buffer.getLong(otherPosition + PARTITION_ID_VERSION_FIELD_LENGTH_IN_BYTES));
+    if (result != 0) {
+      return result;
+    }
+    otherPosition += uuidOffset - UUID_SIZE_FIELD_LENGTH_IN_BYTES - partitionIdOffset;
+    int otherUuidSize = buffer.getInt(otherPosition);
+    otherPosition += UUID_SIZE_FIELD_LENGTH_IN_BYTES;
+    int uuidSize = bytes.length - uuidOffset;
+    int bytesToCompare = Math.min(uuidSize, otherUuidSize);
+    for (int i = 0; i < bytesToCompare; i++) {
+      result = (bytes[uuidOffset + i] & 0xff) - (buffer.get(otherPosition + i) & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return uuidSize - otherUuidSize;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Supported if the partition of this blobId is serialized as a version (short) followed by an id (long).
+   */
+  @Override
+  public boolean isSerializedComparisonSupported() {
+    return uuidOffset - UUID_SIZE_FIELD_LENGTH_IN_BYTES - partitionIdOffset
+        == PARTITION_ID_VERSION_FIELD_LENGTH_IN_BYTES + Long.BYTES;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -350,12 +447,12 @@ public class BlobId extends StoreKey {
       return false;
     }
     BlobId blobId = (BlobId) o;
-    return compareTo(blobId) == 0;
+    return hashCode == blobId.hashCode && Arrays.equals(bytes, blobId.bytes);
   }
 
   @Override
   public int hashCode() {
-    return Utils.hashcode(new Object[]{version, partitionId, uuid});
+    return hashCode;
   }
 
   /**<p>
@@ -372,4 +469,60 @@ public class BlobId extends StoreKey {
   protected short getCurrentVersion() {
     return CURRENT_VERSION;
   }
+
+  /**
+   * @param version the version of the serialized format.
+   * @return the offset of the partition id in the serialized format of the given version.
+   */
+  private static int getPartitionIdOffset(short version) {
+    return VERSION_FIELD_LENGTH_IN_BYTES + (version == BLOB_ID_V2 ? BLOB_ID_V2_EXTRA_FIELDS_LENGTH_IN_BYTES : 0);
+  }
+
+  /**
+   * Serializes the fields that precede the partition id in the serialized format of this blobId.
+   * @param idBuf the {@link ByteBuffer} to serialize the fields into.
+   */
+  private void putFieldsBeforePartitionId(ByteBuffer idBuf) {
+    idBuf.putShort(version);
+    if (version == BLOB_ID_V2) {
+      idBuf.put(flag);
+      idBuf.put(datacenterId);
+      idBuf.putShort(accountId);
+      idBuf.putShort(containerId);
+    }
+  }
+
+  /**
+   * Compares the uuid of this blobId byte by byte with another serialized uuid.
+   * @param otherBytes the bytes that contain the other uuid.
+   * @param otherOffset the offset at which the other uuid starts.
+   * @param otherSize the size of the other uuid.
+   * @return a negative integer, zero, or a positive integer as the uuid of this blobId is less than, equal to, or
+   *         greater than the other uuid.
+   */
+  private int compareUuid(byte[] otherBytes, int otherOffset, int otherSize) {
+    int uuidSize = bytes.length - uuidOffset;
+    int bytesToCompare = Math.min(uuidSize, otherSize);
+    for (int i = 0; i < bytesToCompare; i++) {
+      int result = (bytes[uuidOffset + i] & 0xff) - (otherBytes[otherOffset + i] & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return uuidSize - otherSize;
+  }
+
+  /**
+   * Reads a big-endian long from {@code bytes} starting at {@code offset}.
+   * @param bytes the bytes to read from.
+   * @param offset the offset at which the long starts.
+   * @return the long that was read.
+   */
+  private static long readLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = 0; i < Long.BYTES; i++) {
+      value = (value << Byte.SIZE) | (bytes[offset + i] & 0xff);
+    }
+    return value;
+  }
 }
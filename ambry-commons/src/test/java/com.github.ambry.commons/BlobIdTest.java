@@ -20,6 +20,7 @@ import com.github.ambry.clustermap.MockClusterMap;
 import com.github.ambry.clustermap.MockPartitionId;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.utils.ByteBufferInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -148,6 +149,53 @@ public class BlobIdTest {
     }
   }
 
+  /**
+   * Tests that the serialized form that a blobId caches is not exposed for modification and that blobIds read from the
+   * serialized form, from a stream or from the ID string are equal to the original, with the same hash code.
+   * @throws Exception Any unexpected exception.
+   */
+  @Test
+  public void testCachedSerializedForm() throws Exception {
+    BlobId blobId = getRandomBlobId(version);
+    byte[] serialized = blobId.toBytes();
+    String id = blobId.getID();
+    Arrays.fill(serialized, (byte) 0);
+    assertFalse("Serialized form should not have been affected", Arrays.equals(serialized, blobId.toBytes()));
+    assertEquals("Serialized size mismatch", blobId.sizeInBytes(), blobId.toBytes().length);
+    assertSame("ID string should be cached", id, blobId.getID());
+    BlobId fromStream =
+        new BlobId(new DataInputStream(new ByteArrayInputStream(blobId.toBytes())), referenceClusterMap);
+    BlobId fromId = new BlobId(id, referenceClusterMap);
+    for (BlobId other : new BlobId[]{fromStream, fromId}) {
+      assertEquals("BlobIds should be equal", blobId, other);
+      assertEquals("Hash codes should be equal", blobId.hashCode(), other.hashCode());
+      assertEquals("BlobIds should compare equal", 0, blobId.compareTo(other));
+      assertArrayEquals("Serialized forms should be equal", blobId.toBytes(), other.toBytes());
+      assertEquals("IDs should be equal", id, other.getID());
+    }
+    BlobId different = getRandomBlobId(version);
+    assertFalse("BlobIds should not be equal", blobId.equals(different));
+    assertEquals("Comparison should be antisymmetric", Integer.signum(blobId.compareTo(different)),
+        -Integer.signum(different.compareTo(blobId)));
+  }
+
+  /**
+   * Tests that {@link BlobId#compareToSerialized(ByteBuffer, int)} is consistent with {@link BlobId#compareTo}
+   * for blobIds of both versions and that it does not change the state of the buffer.
+   * @throws Exception Any unexpected exception.
+   */
+  @Test
+  public void testCompareToSerialized() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      BlobId blobId = getRandomBlobId(version);
+      BlobId other = getRandomBlobId(random.nextBoolean() ? BLOB_ID_V1 : BLOB_ID_V2);
+      assertTrue("Serialized comparison should be supported", blobId.isSerializedComparisonSupported());
+      assertEquals("Comparison with serialized id is not consistent with compareTo",
+          Integer.signum(blobId.compareTo(other)), Integer.signum(compareToSerialized(blobId, other)));
+      assertEquals("BlobId should be equal to its own serialized form", 0, compareToSerialized(blobId, blobId));
+    }
+  }
+
   /**
    * Makes a blobId-like string in the same way as used in blobId serialization, and then deserialize from the
    * string to construct blobId object.
@@ -432,6 +480,24 @@ public class BlobIdTest {
     assertEquals("Wrong blobId long form.", expectedBlobIdLongFormWithoutUuidStr, blobLongFormWithoutUuid);
   }
 
+  /**
+   * Compares {@code blobId} with the serialized form of {@code other} placed at a random position in a buffer and
+   * verifies that the position of the buffer is not changed.
+   * @param blobId the {@link BlobId} to compare.
+   * @param other the {@link BlobId} whose serialized form {@code blobId} is compared with.
+   * @return the result of {@link BlobId#compareToSerialized(ByteBuffer, int)}.
+   */
+  private int compareToSerialized(BlobId blobId, BlobId other) {
+    int keyPosition = random.nextInt(10);
+    ByteBuffer buffer = ByteBuffer.allocate(keyPosition + other.sizeInBytes());
+    buffer.position(keyPosition);
+    buffer.put(other.toBytes());
+    buffer.position(0);
+    int result = blobId.compareToSerialized(buffer, keyPosition);
+    assertEquals("Position of the buffer should not change", 0, buffer.position());
+    return result;
+  }
+
   /**
    * Constructs a {@link BlobId} with random fields and the given version.
    * @param version The version of {@link BlobId} to build
@@ -672,6 +672,38 @@ public class MessageFormatRecord {
     }
   }
 
+  /**
+   *  - - - - - - - - - - - - - -
+   * |            |            |
+   * |    size    |  content   |
+   * |  (8 bytes) |  (n bytes) |
+   * |            |            |
+   *  - - - - - - - - - - - - - -
+   *  size       - The size of the range of the blob content
+   *
+   *  content    - The bytes of the blob content in the range
+   *
+   *  This is not a stored record. It is the form in which a byte range of the content of a blob record is sent in
+   *  response to a get request for the range. Unlike the blob record, it has no crc: the crc of a blob record covers
+   *  the whole content, which is not read when only a range of it is sent.
+   */
+  public static class Blob_Range_Format_V1 {
+    public static final int Blob_Range_Size_Field_In_Bytes = 8;
+
+    public static void serializeBlobRangeHeader(ByteBuffer outputBuffer, long rangeSize) {
+      outputBuffer.putLong(rangeSize);
+    }
+
+    public static BlobData deserializeBlobRange(InputStream stream) throws IOException {
+      DataInputStream dataStream = new DataInputStream(stream);
+      long dataSize = dataStream.readLong();
+      if (dataSize > Integer.MAX_VALUE) {
+        throw new IOException("We only support data of max size == MAX_INT. Error while reading blob range");
+      }
+      return new BlobData(BlobType.DataBlob, dataSize, new ByteBufferInputStream(stream, (int) dataSize));
+    }
+  }
+
   // Metadata_Content_Format_V1 (layout below) was unused and was removed to clean up the range request handling code.
   //  - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
   // |         |               |            |            |          |
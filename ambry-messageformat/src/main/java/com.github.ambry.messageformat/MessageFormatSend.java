@@ -14,31 +14,46 @@
 package com.github.ambry.messageformat;
 
 import com.github.ambry.network.Send;
+import com.github.ambry.router.ByteRange;
 import com.github.ambry.store.MessageReadSet;
 import com.github.ambry.store.StoreKey;
 import com.github.ambry.store.StoreKeyFactory;
+import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.ByteBufferOutputStream;
 import com.github.ambry.utils.SystemTime;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * A send object for the message format to send data from the underlying store
- * to the network channel
+ * to the network channel. If a byte range is requested for a blob, only that range of the blob content is sent, in
+ * the {@link MessageFormatRecord.Blob_Range_Format_V1} form, without reading the rest of the blob record.
  */
 
 public class MessageFormatSend implements Send {
+  // enough to read the header and a typical key together.
+  private static final int HEADER_AND_KEY_READ_SIZE_IN_BYTES = 512;
+  private static final ThreadLocal<ByteBuffer> headerAndKeyBuffer = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocate(HEADER_AND_KEY_READ_SIZE_IN_BYTES);
+    }
+  };
 
   private MessageReadSet readSet;
   private MessageFormatFlags flag;
+  private Map<StoreKey, ByteRange> byteRanges;
   private ArrayList<SendInfo> infoList;
   private long totalSizeToWrite;
   private long sizeWritten;
@@ -50,10 +65,21 @@ public class MessageFormatSend implements Send {
   private class SendInfo {
     private long relativeOffset;
     private long sizeToSend;
+    private ByteBuffer header;
 
     public SendInfo(long relativeOffset, long sizeToSend) {
+      this(relativeOffset, sizeToSend, null);
+    }
+
+    /**
+     * @param relativeOffset the offset in the message of the bytes to send after the header.
+     * @param sizeToSend the total number of bytes to send, including the header.
+     * @param header the bytes to send before the bytes of the message. Can be {@code null}.
+     */
+    public SendInfo(long relativeOffset, long sizeToSend, ByteBuffer header) {
       this.relativeOffset = relativeOffset;
       this.sizeToSend = sizeToSend;
+      this.header = header;
     }
 
     public long relativeOffset() {
@@ -63,12 +89,40 @@ public class MessageFormatSend implements Send {
     public long sizetoSend() {
       return sizeToSend;
     }
+
+    public ByteBuffer header() {
+      return header;
+    }
+
+    public int headerSize() {
+      return header == null ? 0 : header.limit();
+    }
   }
 
   public MessageFormatSend(MessageReadSet readSet, MessageFormatFlags flag, MessageFormatMetrics metrics,
       StoreKeyFactory storeKeyFactory) throws IOException, MessageFormatException {
+    this(readSet, flag, Collections.<StoreKey, ByteRange>emptyMap(), metrics, storeKeyFactory);
+  }
+
+  /**
+   * @param readSet the {@link MessageReadSet} of the messages to send.
+   * @param flag the {@link MessageFormatFlags} that determines the part of each message to send.
+   * @param byteRanges the byte ranges of the blob content to send for the blobs for which only a range is requested.
+   *                   The ranges must have defined start and end offsets. Can only be non-empty if {@code flag} is
+   *                   {@link MessageFormatFlags#Blob}.
+   * @param metrics the {@link MessageFormatMetrics} to use.
+   * @param storeKeyFactory the {@link StoreKeyFactory} to use to read the keys of the messages.
+   * @throws IOException if the messages could not be read.
+   * @throws MessageFormatException if the messages are not formatted correctly.
+   */
+  public MessageFormatSend(MessageReadSet readSet, MessageFormatFlags flag, Map<StoreKey, ByteRange> byteRanges,
+      MessageFormatMetrics metrics, StoreKeyFactory storeKeyFactory) throws IOException, MessageFormatException {
+    if (!byteRanges.isEmpty() && flag != MessageFormatFlags.Blob) {
+      throw new IllegalArgumentException("Byte ranges can only be sent with " + MessageFormatFlags.Blob);
+    }
     this.readSet = readSet;
     this.flag = flag;
+    this.byteRanges = byteRanges;
     this.storeKeyFactory = storeKeyFactory;
     totalSizeToWrite = 0;
     long startTime = SystemTime.getInstance().milliseconds();
@@ -97,38 +151,45 @@ public class MessageFormatSend implements Send {
           infoList.add(i, new SendInfo(0, readSet.sizeInBytes(i)));
           totalSizeToWrite += readSet.sizeInBytes(i);
         } else {
-          // read header version
+          // read the header along with the bytes that follow it (which usually contain the whole key) in one read
           long startTime = SystemTime.getInstance().milliseconds();
-          ByteBuffer headerVersion = ByteBuffer.allocate(MessageFormatRecord.Version_Field_Size_In_Bytes);
-          readSet.writeTo(i, Channels.newChannel(new ByteBufferOutputStream(headerVersion)), 0,
-              MessageFormatRecord.Version_Field_Size_In_Bytes);
-          logger.trace("Calculate offsets, read header version time: {}",
+          ByteBuffer headerAndKey = readHeaderAndKey(i);
+          logger.trace("Calculate offsets, read header and key time: {}",
               SystemTime.getInstance().milliseconds() - startTime);
 
-          headerVersion.flip();
-          short version = headerVersion.getShort();
+          short version = headerAndKey.getShort(0);
           switch (version) {
             case MessageFormatRecord.Message_Header_Version_V1:
-
-              // read the header
-              startTime = SystemTime.getInstance().milliseconds();
-              ByteBuffer header = ByteBuffer.allocate(MessageFormatRecord.MessageHeader_Format_V1.getHeaderSize());
-              headerVersion.clear();
-              header.putShort(headerVersion.getShort());
-              readSet.writeTo(i, Channels.newChannel(new ByteBufferOutputStream(header)),
-                  MessageFormatRecord.Version_Field_Size_In_Bytes,
-                  MessageFormatRecord.MessageHeader_Format_V1.getHeaderSize()
-                      - MessageFormatRecord.Version_Field_Size_In_Bytes);
-              logger.trace("Calculate offsets, read header time: {}",
-                  SystemTime.getInstance().milliseconds() - startTime);
-
               startTime = SystemTime.getInstance().milliseconds();
-              header.flip();
+              int headerSize = MessageFormatRecord.MessageHeader_Format_V1.getHeaderSize();
+              if (headerAndKey.limit() < headerSize) {
+                throw new MessageFormatException("Message of " + readSet.getKeyAt(i) + " is smaller than its header",
+                    MessageFormatErrorCodes.Data_Corrupt);
+              }
+              ByteBuffer header = headerAndKey.duplicate();
+              header.limit(headerSize);
               MessageFormatRecord.MessageHeader_Format_V1 headerFormat =
                   new MessageFormatRecord.MessageHeader_Format_V1(header);
               headerFormat.verifyHeader();
-              StoreKey storeKey = storeKeyFactory.getStoreKey(
-                  new DataInputStream(new MessageReadSetIndexInputStream(readSet, i, header.capacity())));
+              headerAndKey.position(headerSize);
+              // the key is read from the rest of the message only if it is longer than what has been read already
+              InputStream keyStream = new SequenceInputStream(new ByteBufferInputStream(headerAndKey),
+                  new MessageReadSetIndexInputStream(readSet, i, headerAndKey.limit())) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                  // key deserializers expect a read to return all the bytes asked for, even across the two streams
+                  int totalRead = 0;
+                  while (totalRead < len) {
+                    int read = super.read(b, off + totalRead, len - totalRead);
+                    if (read == -1) {
+                      return totalRead == 0 ? -1 : totalRead;
+                    }
+                    totalRead += read;
+                  }
+                  return totalRead;
+                }
+              };
+              StoreKey storeKey = storeKeyFactory.getStoreKey(new DataInputStream(keyStream));
               if (storeKey.compareTo(readSet.getKeyAt(i)) != 0) {
                 throw new MessageFormatException(
                     "Id mismatch between metadata and store - metadataId " + readSet.getKeyAt(i) + " storeId "
@@ -171,6 +232,14 @@ public class MessageFormatSend implements Send {
                     SystemTime.getInstance().milliseconds() - startTime);
                 logger.trace("Sending blob info (blob properties + user metadata) for message relativeOffset : {} "
                     + "size : {}", infoList.get(i).relativeOffset(), infoList.get(i).sizetoSend());
+              } else if (flag == MessageFormatFlags.Blob && byteRanges.containsKey(storeKey)) {
+                infoList.add(i, getBlobRangeSendInfo(i, headerFormat.getBlobRecordRelativeOffset(),
+                    byteRanges.get(storeKey)));
+                totalSizeToWrite += infoList.get(i).sizetoSend();
+                logger.trace("Calculate offsets, get blob range time: {}",
+                    SystemTime.getInstance().milliseconds() - startTime);
+                logger.trace("Sending data range for message relativeOffset : {} size : {}",
+                    infoList.get(i).relativeOffset(), infoList.get(i).sizetoSend());
               } else if (flag == MessageFormatFlags.Blob) {
                 long blobRecordSize = headerFormat.getMessageSize() - (headerFormat.getBlobRecordRelativeOffset()
                     - headerFormat.getBlobPropertiesRecordRelativeOffset());
@@ -204,16 +273,108 @@ public class MessageFormatSend implements Send {
     }
   }
 
+  /**
+   * Reads the header of the message at {@code index} and the bytes that follow it, up to
+   * {@link #HEADER_AND_KEY_READ_SIZE_IN_BYTES} bytes in all, in one read into a buffer that is reused by the thread.
+   * @param index the index of the message in the read set.
+   * @return the buffer containing the bytes read, starting at the beginning of the message.
+   * @throws IOException if the message could not be read.
+   * @throws MessageFormatException if the message is smaller than the version field.
+   */
+  private ByteBuffer readHeaderAndKey(int index) throws IOException, MessageFormatException {
+    ByteBuffer buffer = headerAndKeyBuffer.get();
+    buffer.clear();
+    buffer.limit((int) Math.min(buffer.capacity(), readSet.sizeInBytes(index)));
+    read(index, 0, buffer);
+    if (buffer.remaining() < MessageFormatRecord.Version_Field_Size_In_Bytes) {
+      throw new MessageFormatException("Message of " + readSet.getKeyAt(index) + " is too small to contain a header",
+          MessageFormatErrorCodes.Data_Corrupt);
+    }
+    return buffer;
+  }
+
+  /**
+   * Gets the {@link SendInfo} to send a byte range of the content of the blob record of the message at {@code index}.
+   * Only the version and size fields of the blob record are read. The range is trimmed to the end of the content.
+   * @param index the index of the message in the read set.
+   * @param blobRecordRelativeOffset the offset of the blob record in the message.
+   * @param byteRange the byte range of the blob content to send.
+   * @return the {@link SendInfo} to send the range in the {@link MessageFormatRecord.Blob_Range_Format_V1} form.
+   * @throws IOException if the blob record could not be read.
+   * @throws MessageFormatException if the blob record is not formatted correctly.
+   */
+  private SendInfo getBlobRangeSendInfo(int index, long blobRecordRelativeOffset, ByteRange byteRange)
+      throws IOException, MessageFormatException {
+    ByteBuffer blobRecordHeader = ByteBuffer.allocate(MessageFormatRecord.Version_Field_Size_In_Bytes
+        + MessageFormatRecord.Blob_Format_V2.Blob_Type_Field_In_Bytes
+        + MessageFormatRecord.Blob_Format_V2.Blob_Size_Field_In_Bytes);
+    read(index, blobRecordRelativeOffset, blobRecordHeader);
+    if (blobRecordHeader.remaining() < MessageFormatRecord.Version_Field_Size_In_Bytes) {
+      throw new MessageFormatException("Blob record of " + readSet.getKeyAt(index) + " is too small",
+          MessageFormatErrorCodes.Data_Corrupt);
+    }
+    short version = blobRecordHeader.getShort();
+    switch (version) {
+      case MessageFormatRecord.Blob_Version_V1:
+        break;
+      case MessageFormatRecord.Blob_Version_V2:
+        blobRecordHeader.position(
+            blobRecordHeader.position() + MessageFormatRecord.Blob_Format_V2.Blob_Type_Field_In_Bytes);
+        break;
+      default:
+        throw new MessageFormatException(
+            "Blob record version not known while reading message - version " + version + ", StoreKey "
+                + readSet.getKeyAt(index), MessageFormatErrorCodes.Unknown_Format_Version);
+    }
+    if (blobRecordHeader.remaining() < MessageFormatRecord.Blob_Format_V2.Blob_Size_Field_In_Bytes) {
+      throw new MessageFormatException("Blob record of " + readSet.getKeyAt(index) + " is too small",
+          MessageFormatErrorCodes.Data_Corrupt);
+    }
+    long contentSize = blobRecordHeader.getLong();
+    long contentRelativeOffset = blobRecordRelativeOffset + blobRecordHeader.position();
+    long startOffset = Math.min(byteRange.getStartOffset(), contentSize);
+    long rangeSize = Math.max(0, Math.min(byteRange.getEndOffset() + 1, contentSize) - startOffset);
+    ByteBuffer header =
+        ByteBuffer.allocate(MessageFormatRecord.Blob_Range_Format_V1.Blob_Range_Size_Field_In_Bytes);
+    MessageFormatRecord.Blob_Range_Format_V1.serializeBlobRangeHeader(header, rangeSize);
+    header.flip();
+    return new SendInfo(contentRelativeOffset + startOffset, header.remaining() + rangeSize, header);
+  }
+
+  /**
+   * Reads the bytes of the message at {@code index}, starting at {@code relativeOffset}, into {@code buffer} until
+   * it is full or the message ends. The buffer is flipped for reading once done.
+   * @param index the index of the message in the read set.
+   * @param relativeOffset the offset in the message to start reading from.
+   * @param buffer the buffer to read into.
+   * @throws IOException if the message could not be read.
+   */
+  private void read(int index, long relativeOffset, ByteBuffer buffer) throws IOException {
+    buffer.limit((int) Math.min(buffer.limit(), readSet.sizeInBytes(index) - relativeOffset));
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(buffer));
+    while (buffer.hasRemaining()) {
+      if (readSet.writeTo(index, channel, relativeOffset + buffer.position(), buffer.remaining()) <= 0) {
+        break;
+      }
+    }
+    buffer.flip();
+  }
+
   @Override
   public long writeTo(WritableByteChannel channel) throws IOException {
     long written = 0;
     if (!isSendComplete()) {
-      written = readSet.writeTo(currentWriteIndex, channel,
-          infoList.get(currentWriteIndex).relativeOffset() + sizeWrittenFromCurrentIndex,
-          infoList.get(currentWriteIndex).sizetoSend() - sizeWrittenFromCurrentIndex);
-      logger.trace("writeindex {} relativeOffset {} maxSize {} written {}", currentWriteIndex,
-          infoList.get(currentWriteIndex).relativeOffset() + sizeWrittenFromCurrentIndex,
-          infoList.get(currentWriteIndex).sizetoSend() - sizeWrittenFromCurrentIndex, written);
+      SendInfo info = infoList.get(currentWriteIndex);
+      if (sizeWrittenFromCurrentIndex < info.headerSize()) {
+        written = channel.write(info.header());
+        logger.trace("writeindex {} header written {}", currentWriteIndex, written);
+      } else {
+        long relativeOffset = info.relativeOffset() + sizeWrittenFromCurrentIndex - info.headerSize();
+        written = readSet.writeTo(currentWriteIndex, channel, relativeOffset,
+            info.sizetoSend() - sizeWrittenFromCurrentIndex);
+        logger.trace("writeindex {} relativeOffset {} maxSize {} written {}", currentWriteIndex, relativeOffset,
+            info.sizetoSend() - sizeWrittenFromCurrentIndex, written);
+      }
       sizeWritten += written;
       sizeWrittenFromCurrentIndex += written;
       logger.trace("size written in this loop : {} size written till now : {}", written, sizeWritten);
@@ -225,6 +386,14 @@ public class MessageFormatSend implements Send {
     return written;
   }
 
+  /**
+   * @param index the index of the message in the read set.
+   * @return the number of bytes that are sent for the message at {@code index}.
+   */
+  public long sizeInBytes(int index) {
+    return infoList.get(index).sizetoSend();
+  }
+
   @Override
   public boolean isSendComplete() {
     return totalSizeToWrite == sizeWritten;
@@ -282,9 +451,9 @@ class MessageReadSetIndexInputStream extends InputStream {
     if (currentOffset == messageReadSet.sizeInBytes(indexToRead)) {
       throw new IOException("Reached end of stream of message read set");
     }
-    ByteBuffer buf = ByteBuffer.wrap(b);
+    ByteBuffer buf = ByteBuffer.wrap(b, off, len);
     ByteBufferOutputStream bufferStream = new ByteBufferOutputStream(buf);
-    long sizeToRead = Math.min(len - off, messageReadSet.sizeInBytes(indexToRead) - currentOffset);
+    long sizeToRead = Math.min(len, messageReadSet.sizeInBytes(indexToRead) - currentOffset);
     long bytesWritten =
         messageReadSet.writeTo(indexToRead, Channels.newChannel(bufferStream), currentOffset, sizeToRead);
     currentOffset += bytesWritten;
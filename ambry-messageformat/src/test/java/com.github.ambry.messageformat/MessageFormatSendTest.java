@@ -14,15 +14,22 @@
 package com.github.ambry.messageformat;
 
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.router.ByteRange;
 import com.github.ambry.store.MessageReadSet;
 import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.ByteBufferOutputStream;
 import com.github.ambry.utils.Crc32;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
@@ -290,6 +297,134 @@ public class MessageFormatSendTest {
     }
   }
 
+  /**
+   * Tests that blob properties and blobs are sent correctly for messages whose keys are shorter as well as longer than
+   * the bytes that are read along with the header.
+   * @throws Exception
+   */
+  @Test
+  public void sendWriteWithKeysOfDifferentSizesTest() throws Exception {
+    ArrayList<ByteBuffer> listbuf = new ArrayList<ByteBuffer>();
+    ArrayList<StoreKey> storeKeys = new ArrayList<StoreKey>();
+    ArrayList<byte[]> blobs = new ArrayList<byte[]>();
+    BlobProperties properties = new BlobProperties(100, "serviceId", (short) 1, (short) 1);
+    for (int keySize : new int[]{10, 1000, 10}) {
+      StringBuilder id = new StringBuilder();
+      for (int i = 0; i < keySize; i++) {
+        id.append((char) ('a' + i % 26));
+      }
+      StoreKey key = new MockId(id.toString());
+      byte[] blob = new byte[100];
+      new Random().nextBytes(blob);
+      MessageFormatInputStream stream =
+          new PutMessageFormatInputStream(key, properties, ByteBuffer.allocate(10), new ByteArrayInputStream(blob),
+              blob.length);
+      ByteBuffer message = ByteBuffer.allocate((int) stream.getSize());
+      stream.read(message.array());
+      listbuf.add(message);
+      storeKeys.add(key);
+      blobs.add(blob);
+    }
+    MessageReadSet readSet = new MockMessageReadSet(listbuf, storeKeys);
+    MessageFormatMetrics metrics = new MessageFormatMetrics(new MetricRegistry());
+
+    MessageFormatSend send =
+        new MessageFormatSend(readSet, MessageFormatFlags.BlobProperties, metrics, new MockIdFactory());
+    ByteBuffer result = ByteBuffer.allocate((int) send.sizeInBytes());
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(result));
+    while (!send.isSendComplete()) {
+      send.writeTo(channel);
+    }
+    result.flip();
+    for (int i = 0; i < storeKeys.size(); i++) {
+      BlobProperties propertiesRead =
+          MessageFormatRecord.deserializeBlobProperties(new ByteBufferInputStream(result));
+      Assert.assertEquals("Service id mismatch", properties.getServiceId(), propertiesRead.getServiceId());
+      Assert.assertEquals("Blob size mismatch", properties.getBlobSize(), propertiesRead.getBlobSize());
+    }
+
+    send = new MessageFormatSend(readSet, MessageFormatFlags.Blob, metrics, new MockIdFactory());
+    result = ByteBuffer.allocate((int) send.sizeInBytes());
+    channel = Channels.newChannel(new ByteBufferOutputStream(result));
+    while (!send.isSendComplete()) {
+      send.writeTo(channel);
+    }
+    result.flip();
+    for (byte[] blob : blobs) {
+      BlobData blobData = MessageFormatRecord.deserializeBlob(new ByteBufferInputStream(result));
+      byte[] blobRead = new byte[(int) blobData.getSize()];
+      new DataInputStream(blobData.getStream()).readFully(blobRead);
+      Assert.assertArrayEquals("Blob mismatch", blob, blobRead);
+    }
+  }
+
+  /**
+   * Tests that only the requested byte ranges of the blob content are sent for the blobs that ranges are requested for,
+   * that ranges are trimmed to the end of the content and that ranges can only be requested with
+   * {@link MessageFormatFlags#Blob}.
+   * @throws Exception
+   */
+  @Test
+  public void sendWriteWithByteRangesTest() throws Exception {
+    ArrayList<ByteBuffer> listbuf = new ArrayList<ByteBuffer>();
+    ArrayList<StoreKey> storeKeys = new ArrayList<StoreKey>();
+    ArrayList<byte[]> blobs = new ArrayList<byte[]>();
+    BlobProperties properties = new BlobProperties(100, "serviceId", (short) 1, (short) 1);
+    for (int i = 0; i < 3; i++) {
+      StoreKey key = new MockId("key" + i);
+      byte[] blob = new byte[100];
+      new Random().nextBytes(blob);
+      MessageFormatInputStream stream =
+          new PutMessageFormatInputStream(key, properties, ByteBuffer.allocate(10), new ByteArrayInputStream(blob),
+              blob.length);
+      ByteBuffer message = ByteBuffer.allocate((int) stream.getSize());
+      stream.read(message.array());
+      listbuf.add(message);
+      storeKeys.add(key);
+      blobs.add(blob);
+    }
+    MessageReadSet readSet = new MockMessageReadSet(listbuf, storeKeys);
+    MessageFormatMetrics metrics = new MessageFormatMetrics(new MetricRegistry());
+    Map<StoreKey, ByteRange> byteRanges = new HashMap<>();
+    byteRanges.put(storeKeys.get(0), ByteRange.fromOffsetRange(10, 19));
+    // the range extends beyond the end of the content
+    byteRanges.put(storeKeys.get(2), ByteRange.fromOffsetRange(90, 150));
+
+    MessageFormatSend send =
+        new MessageFormatSend(readSet, MessageFormatFlags.Blob, byteRanges, metrics, new MockIdFactory());
+    ByteBuffer result = ByteBuffer.allocate((int) send.sizeInBytes());
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(result));
+    while (!send.isSendComplete()) {
+      send.writeTo(channel);
+    }
+    result.flip();
+    int[][] expectedRanges = {{10, 20}, null, {90, 100}};
+    for (int i = 0; i < blobs.size(); i++) {
+      BlobData blobData;
+      byte[] expected = blobs.get(i);
+      if (expectedRanges[i] != null) {
+        blobData = MessageFormatRecord.Blob_Range_Format_V1.deserializeBlobRange(new ByteBufferInputStream(result));
+        expected = Arrays.copyOfRange(expected, expectedRanges[i][0], expectedRanges[i][1]);
+      } else {
+        blobData = MessageFormatRecord.deserializeBlob(new ByteBufferInputStream(result));
+      }
+      Assert.assertEquals("Size mismatch", expected.length, send.sizeInBytes(i) - (expectedRanges[i] != null
+          ? MessageFormatRecord.Blob_Range_Format_V1.Blob_Range_Size_Field_In_Bytes
+          : MessageFormatRecord.Blob_Format_V2.getBlobRecordSize(0)));
+      byte[] blobRead = new byte[(int) blobData.getSize()];
+      new DataInputStream(blobData.getStream()).readFully(blobRead);
+      Assert.assertArrayEquals("Blob mismatch", expected, blobRead);
+    }
+    Assert.assertFalse("All the bytes should have been read", result.hasRemaining());
+
+    try {
+      new MessageFormatSend(readSet, MessageFormatFlags.All, byteRanges, metrics, new MockIdFactory());
+      Assert.fail("Byte ranges should only be allowed with the Blob flag");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
   @Test
   public void messageReadSetIndexInputStreamTest() {
     try {
@@ -18,11 +18,15 @@ import com.github.ambry.utils.Time;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +41,12 @@ import org.slf4j.LoggerFactory;
  * a request should be failed if connections could not be checked out if pool limit for its hostPort has been reached
  * and all connections to the hostPort are unavailable).
  *
+ * Requests whose {@link Send} is a {@link SendWithCorrelationId} can be pipelined: up to
+ * {@link NetworkConfig#networkClientMaxInFlightRequestsPerConnection} of them can be in flight on a connection at a
+ * time and responses are matched to them by their correlation ids, so they can arrive in any order. Other requests have a
+ * connection to themselves until their response is received. A response that does not match any of the requests in
+ * flight on its connection causes the connection to be closed and all of those requests to fail.
+ *
  * This class is not thread safe.
  */
 public class NetworkClient implements Closeable {
@@ -46,10 +56,13 @@ public class NetworkClient implements Closeable {
   private final NetworkMetrics networkMetrics;
   private final Time time;
   private final LinkedList<RequestMetadata> pendingRequests;
-  private final HashMap<String, RequestMetadata> connectionIdToRequestInFlight;
+  private final HashMap<String, LinkedList<RequestMetadata>> connectionIdToRequestsInFlight;
   private final HashMap<String, RequestMetadata> pendingConnectionsToAssociatedRequests;
+  // connections that were closed by this client and whose disconnection has not been reported by the selector yet.
+  private final Set<String> closedConnectionIds;
   private final AtomicLong numPendingRequests;
   private final int checkoutTimeoutMs;
+  private final int maxInFlightRequestsPerConnection;
   private boolean closed = false;
   private static final Logger logger = LoggerFactory.getLogger(NetworkClient.class);
 
@@ -74,8 +87,10 @@ public class NetworkClient implements Closeable {
     this.time = time;
     pendingRequests = new LinkedList<>();
     numPendingRequests = new AtomicLong(0);
-    connectionIdToRequestInFlight = new HashMap<>();
+    maxInFlightRequestsPerConnection = networkConfig.networkClientMaxInFlightRequestsPerConnection;
+    connectionIdToRequestsInFlight = new HashMap<>();
     pendingConnectionsToAssociatedRequests = new HashMap<>();
+    closedConnectionIds = new HashSet<>();
     networkMetrics.registerNetworkClientPendingConnections(numPendingRequests);
   }
 
@@ -87,7 +102,7 @@ public class NetworkClient implements Closeable {
    *                     could be empty.
    * @param pollTimeoutMs the poll timeout.
    * @return a list of {@link ResponseInfo} representing the responses received for any requests that were sent out
-   * so far.
+   * so far. Each response should be released with {@link ResponseInfo#release()} once it has been handled.
    * @throws IllegalStateException if the NetworkClient is closed.
    */
   public List<ResponseInfo> sendAndPoll(List<RequestInfo> requestInfos, int pollTimeoutMs) {
@@ -174,7 +189,18 @@ public class NetworkClient implements Closeable {
           logger.trace("Connection checkout succeeded for {}:{} with connectionId {} ", host, port, connId);
           sends.add(new NetworkSend(connId, requestMetadata.requestInfo.getRequest(),
               requestMetadata.clientNetworkRequestMetrics, time));
-          connectionIdToRequestInFlight.put(connId, requestMetadata);
+          LinkedList<RequestMetadata> requestsInFlight = connectionIdToRequestsInFlight.get(connId);
+          if (requestsInFlight == null) {
+            requestsInFlight = new LinkedList<>();
+            connectionIdToRequestsInFlight.put(connId, requestsInFlight);
+          } else {
+            networkMetrics.pipelinedRequestCount.inc();
+          }
+          requestsInFlight.add(requestMetadata);
+          if (isAvailableForPipelining(requestsInFlight)) {
+            // the connection can take more requests while this one is in flight.
+            connectionTracker.checkInConnection(connId);
+          }
           iter.remove();
           requestMetadata.onRequestDequeue();
         }
@@ -200,6 +226,10 @@ public class NetworkClient implements Closeable {
     }
 
     for (String connId : selector.disconnected()) {
+      if (closedConnectionIds.remove(connId)) {
+        // the connection and its requests were cleaned up when it was closed.
+        continue;
+      }
       logger.trace("ConnectionId {} disconnected, removing it from connection tracker", connId);
       connectionTracker.removeConnection(connId);
       // If this was a pending connection and if there is a request that initiated this connection,
@@ -211,28 +241,115 @@ public class NetworkClient implements Closeable {
         requestMetadata.pendingConnectionId = null;
         responseInfoList.add(new ResponseInfo(requestMetadata.requestInfo, NetworkClientErrorCode.NetworkError, null));
       } else {
-        // If this was an established connection and if there is a request in flight on this connection,
-        // mark the corresponding request as failed.
-        requestMetadata = connectionIdToRequestInFlight.remove(connId);
-        if (requestMetadata != null) {
-          logger.trace("ConnectionId {} with request in flight disconnected", connId);
-          responseInfoList.add(
-              new ResponseInfo(requestMetadata.requestInfo, NetworkClientErrorCode.NetworkError, null));
+        // If this was an established connection and if there are requests in flight on this connection,
+        // mark the corresponding requests as failed.
+        LinkedList<RequestMetadata> requestsInFlight = connectionIdToRequestsInFlight.remove(connId);
+        if (requestsInFlight != null) {
+          logger.trace("ConnectionId {} with {} requests in flight disconnected", connId, requestsInFlight.size());
+          for (RequestMetadata requestInFlight : requestsInFlight) {
+            responseInfoList.add(
+                new ResponseInfo(requestInFlight.requestInfo, NetworkClientErrorCode.NetworkError, null));
+          }
         }
       }
     }
 
     for (NetworkReceive recv : selector.completedReceives()) {
       String connId = recv.getConnectionId();
-      logger.trace("Receive completed for connectionId {} and checking in the connection back to connection tracker",
-          connId);
-      connectionTracker.checkInConnection(connId);
-      RequestMetadata requestMetadata = connectionIdToRequestInFlight.remove(connId);
-      responseInfoList.add(new ResponseInfo(requestMetadata.requestInfo, null, recv.getReceivedBytes().getPayload()));
+      LinkedList<RequestMetadata> requestsInFlight = connectionIdToRequestsInFlight.get(connId);
+      if (requestsInFlight == null) {
+        // the connection disconnected in the same poll and its requests have already been failed.
+        logger.trace("Ignoring receive on disconnected connectionId {}", connId);
+        recv.getReceivedBytes().release();
+        continue;
+      }
+      ByteBuffer payload = recv.getReceivedBytes().getPayload();
+      boolean wasAvailable = isAvailableForPipelining(requestsInFlight);
+      RequestMetadata requestMetadata = removeRequestForResponse(requestsInFlight, payload);
+      if (requestMetadata == null) {
+        logger.error("Response received on connectionId {} does not match any of the {} requests in flight on it, "
+            + "closing the connection", connId, requestsInFlight.size());
+        networkMetrics.correlationIdMismatchCount.inc();
+        recv.getReceivedBytes().release();
+        closeConnection(connId, requestsInFlight, responseInfoList);
+        continue;
+      }
+      if (requestsInFlight.isEmpty()) {
+        connectionIdToRequestsInFlight.remove(connId);
+      }
+      if (!wasAvailable) {
+        logger.trace("Receive completed for connectionId {} and checking in the connection back to connection tracker",
+            connId);
+        connectionTracker.checkInConnection(connId);
+      }
+      responseInfoList.add(new ResponseInfo(requestMetadata.requestInfo, null, payload, recv.getReceivedBytes()));
       requestMetadata.onResponseReceive();
     }
   }
 
+  /**
+   * @param requestsInFlight the requests in flight on a connection.
+   * @return {@code true} if more requests can be sent on the connection while {@code requestsInFlight} are in flight.
+   */
+  private boolean isAvailableForPipelining(List<RequestMetadata> requestsInFlight) {
+    if (requestsInFlight.size() >= maxInFlightRequestsPerConnection) {
+      return false;
+    }
+    for (RequestMetadata requestMetadata : requestsInFlight) {
+      if (!(requestMetadata.requestInfo.getRequest() instanceof SendWithCorrelationId)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes and returns the request that a response received on a connection is for. This is the only request in
+   * flight on the connection or, if there are several, the one whose correlation id matches that of the response.
+   * @param requestsInFlight the requests in flight on the connection. Cannot be empty.
+   * @param payload the payload of the response. It begins with the type (short), version (short) and correlation id
+   *                (int) of the response.
+   * @return the request that the response is for, or {@code null} if there are several requests in flight and none of
+   * them matches the response.
+   */
+  private RequestMetadata removeRequestForResponse(LinkedList<RequestMetadata> requestsInFlight, ByteBuffer payload) {
+    if (requestsInFlight.size() == 1) {
+      return requestsInFlight.poll();
+    }
+    if (payload.remaining() >= 2 * Short.BYTES + Integer.BYTES) {
+      int correlationId = payload.getInt(payload.position() + 2 * Short.BYTES);
+      Iterator<RequestMetadata> iterator = requestsInFlight.iterator();
+      while (iterator.hasNext()) {
+        RequestMetadata requestMetadata = iterator.next();
+        Send request = requestMetadata.requestInfo.getRequest();
+        if (request instanceof SendWithCorrelationId
+            && ((SendWithCorrelationId) request).getCorrelationId() == correlationId) {
+          iterator.remove();
+          return requestMetadata;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Closes an established connection and fails the requests in flight on it. The disconnection that the selector
+   * reports for the connection afterwards is ignored.
+   * @param connId the id of the connection to close.
+   * @param requestsInFlight the requests in flight on the connection.
+   * @param responseInfoList the list to populate with {@link ResponseInfo} objects for the failed requests.
+   */
+  private void closeConnection(String connId, List<RequestMetadata> requestsInFlight,
+      List<ResponseInfo> responseInfoList) {
+    connectionIdToRequestsInFlight.remove(connId);
+    connectionTracker.removeConnection(connId);
+    closedConnectionIds.add(connId);
+    selector.close(connId);
+    for (RequestMetadata requestInFlight : requestsInFlight) {
+      responseInfoList.add(new ResponseInfo(requestInFlight.requestInfo, NetworkClientErrorCode.NetworkError, null));
+    }
+  }
+
   /**
    * Close the NetworkClient and cleanup.
    */
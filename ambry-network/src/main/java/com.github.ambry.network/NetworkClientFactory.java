@@ -15,6 +15,7 @@ package com.github.ambry.network;
 
 import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NetworkConfig;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.Time;
 import java.io.IOException;
 
@@ -30,6 +31,7 @@ public class NetworkClientFactory {
   private final int maxConnectionsPerPortSsl;
   private final int connectionCheckoutTimeoutMs;
   private final Time time;
+  private final SizeClassedByteBufferPool receiveBufferPool;
 
   /**
    * Construct a factory using the given parameters.
@@ -49,15 +51,26 @@ public class NetworkClientFactory {
     this.maxConnectionsPerPortSsl = maxConnectionsPerPortSsl;
     this.connectionCheckoutTimeoutMs = connectionCheckoutTimeoutMs;
     this.time = time;
+    if (networkConfig.networkReceiveBufferPoolCapacityBytes > 0) {
+      // receive buffers are allocated by the threads that poll the network clients and are released by whichever thread
+      // consumes the response, so thread caches would rarely be hit.
+      receiveBufferPool = new SizeClassedByteBufferPool(networkConfig.networkReceiveBufferPoolCapacityBytes,
+          networkConfig.networkReceiveBufferPoolMaxPooledBufferBytes, networkConfig.networkReceiveBufferPoolDirect, 0,
+          networkConfig.networkReceiveBufferPoolLeakDetectionEnabled);
+      networkMetrics.registerReceiveBufferPool(receiveBufferPool);
+    } else {
+      receiveBufferPool = null;
+    }
   }
 
   /**
-   * Construct and return a new {@link NetworkClient}
+   * Construct and return a new {@link NetworkClient}. All the clients of this factory allocate their receives from the
+   * same pool, if one is configured.
    * @return return a new {@link NetworkClient}
    * @throws IOException if the {@link Selector} could not be instantiated.
    */
   public NetworkClient getNetworkClient() throws IOException {
-    Selector selector = new Selector(networkMetrics, time, sslFactory);
+    Selector selector = new Selector(networkMetrics, time, sslFactory, receiveBufferPool);
     return new NetworkClient(selector, networkConfig, networkMetrics, maxConnectionsPerPortPlainText,
         maxConnectionsPerPortSsl, connectionCheckoutTimeoutMs, time);
   }
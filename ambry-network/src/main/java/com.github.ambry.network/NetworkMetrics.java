@@ -18,6 +18,8 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
@@ -85,9 +87,14 @@ public class NetworkMetrics {
   public final Counter connectionTimeOutError;
   public final Counter networkClientIOError;
   public final Counter networkClientException;
+  public final Counter pipelinedRequestCount;
+  public final Counter correlationIdMismatchCount;
   private List<AtomicLong> networkClientPendingRequestList;
 
+  private final MetricRegistry registry;
+
   public NetworkMetrics(MetricRegistry registry) {
+    this.registry = registry;
     sendInFlight = registry.counter(MetricRegistry.name(Selector.class, "SendInFlight"));
     selectorConnectionClosed = registry.counter(MetricRegistry.name(Selector.class, "SelectorConnectionClosed"));
     selectorConnectionCreated = registry.counter(MetricRegistry.name(Selector.class, "SelectorConnectionCreated"));
@@ -138,6 +145,9 @@ public class NetworkMetrics {
     connectionTimeOutError = registry.counter(MetricRegistry.name(NetworkClient.class, "ConnectionTimeOutError"));
     networkClientIOError = registry.counter(MetricRegistry.name(NetworkClient.class, "NetworkClientIOError"));
     networkClientException = registry.counter(MetricRegistry.name(NetworkClient.class, "NetworkClientException"));
+    pipelinedRequestCount = registry.counter(MetricRegistry.name(NetworkClient.class, "PipelinedRequestCount"));
+    correlationIdMismatchCount =
+        registry.counter(MetricRegistry.name(NetworkClient.class, "CorrelationIdMismatchCount"));
 
     selectorActiveConnectionsList = new ArrayList<>();
     networkClientPendingRequestList = new ArrayList<>();
@@ -184,6 +194,42 @@ public class NetworkMetrics {
   void registerNetworkClientPendingConnections(final AtomicLong numPendingConnections) {
     networkClientPendingRequestList.add(numPendingConnections);
   }
+
+  /**
+   * Registers the occupancy, hit rate and leaks of the pool that the payloads of receives are allocated from.
+   * @param receiveBufferPool the {@link SizeClassedByteBufferPool} that the payloads of receives are allocated from.
+   */
+  void registerReceiveBufferPool(final SizeClassedByteBufferPool receiveBufferPool) {
+    Gauge<Long> outstandingBytes = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return receiveBufferPool.getOutstandingBytes();
+      }
+    };
+    registry.register(MetricRegistry.name(Selector.class, "ReceiveBufferPoolOutstandingBytes"), outstandingBytes);
+    Gauge<Long> pooledBytes = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return receiveBufferPool.getPooledBytes();
+      }
+    };
+    registry.register(MetricRegistry.name(Selector.class, "ReceiveBufferPoolPooledBytes"), pooledBytes);
+    RatioGauge hitRate = new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        long hitCount = receiveBufferPool.getHitCount();
+        return Ratio.of(hitCount, hitCount + receiveBufferPool.getMissCount());
+      }
+    };
+    registry.register(MetricRegistry.name(Selector.class, "ReceiveBufferPoolHitRate"), hitRate);
+    Gauge<Long> leakCount = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return receiveBufferPool.getLeakCount();
+      }
+    };
+    registry.register(MetricRegistry.name(Selector.class, "ReceiveBufferPoolLeakCount"), leakCount);
+  }
 }
 
 class ServerNetworkMetrics extends NetworkMetrics {
@@ -13,6 +13,7 @@
  */
 package com.github.ambry.network;
 
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
 import java.io.IOException;
@@ -29,8 +30,8 @@ public class PlainTextTransmission extends Transmission {
   private static final Logger logger = LoggerFactory.getLogger(PlainTextTransmission.class);
 
   public PlainTextTransmission(String connectionId, SocketChannel socketChannel, SelectionKey key, Time time,
-      NetworkMetrics metrics) {
-    super(connectionId, socketChannel, key, time, metrics);
+      NetworkMetrics metrics, ByteBufferPool receiveBufferPool) {
+    super(connectionId, socketChannel, key, time, metrics, receiveBufferPool);
   }
 
   /**
@@ -59,7 +60,7 @@ public class PlainTextTransmission extends Transmission {
   @Override
   public boolean read() throws IOException {
     if (!hasReceive()) {
-      networkReceive = new NetworkReceive(getConnectionId(), new BoundedByteBufferReceive(), time);
+      networkReceive = new NetworkReceive(getConnectionId(), new BoundedByteBufferReceive(receiveBufferPool), time);
     }
     long startTimeMs = SystemTime.getInstance().milliseconds();
     long bytesRead = networkReceive.getReceivedBytes().readFrom(socketChannel);
@@ -100,7 +101,7 @@ public class PlainTextTransmission extends Transmission {
    */
   @Override
   public void close() {
-    clearReceive();
+    releaseReceive();
     clearSend();
     key.attach(null);
     key.cancel();
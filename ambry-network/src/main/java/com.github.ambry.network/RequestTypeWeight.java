@@ -0,0 +1,61 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+/**
+ * The weight of a type of request in the request queue of a {@link SocketServer}. Requests of each type that has a
+ * weight are queued separately and the queues are drained in a weighted round robin, so a type with weight {@code w}
+ * gets up to {@code w} requests dequeued in its turn.
+ */
+public class RequestTypeWeight {
+  private final short type;
+  private final String name;
+  private final int weight;
+
+  /**
+   * @param type the type of the requests, as serialized in the first two bytes of the request.
+   * @param name the name of the type, used to name the metrics of its queue.
+   * @param weight the weight of the type. Has to be positive.
+   * @throws IllegalArgumentException if {@code weight} is not positive.
+   */
+  public RequestTypeWeight(short type, String name, int weight) {
+    if (weight < 1) {
+      throw new IllegalArgumentException("Weight of " + name + " has to be positive: " + weight);
+    }
+    this.type = type;
+    this.name = name;
+    this.weight = weight;
+  }
+
+  /**
+   * @return the type of the requests, as serialized in the first two bytes of the request.
+   */
+  public short getType() {
+    return type;
+  }
+
+  /**
+   * @return the name of the type.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the weight of the type.
+   */
+  public int getWeight() {
+    return weight;
+  }
+}
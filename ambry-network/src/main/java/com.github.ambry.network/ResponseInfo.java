@@ -26,6 +26,7 @@ public class ResponseInfo {
   private final RequestInfo requestInfo;
   private final NetworkClientErrorCode error;
   private final ByteBuffer response;
+  private final BoundedByteBufferReceive receivedBytes;
 
   /**
    * Constructs a ResponseInfo with the given parameters.
@@ -34,9 +35,23 @@ public class ResponseInfo {
    * @param response the response received for this request.
    */
   public ResponseInfo(RequestInfo requestInfo, NetworkClientErrorCode error, ByteBuffer response) {
+    this(requestInfo, error, response, null);
+  }
+
+  /**
+   * Constructs a ResponseInfo for a response that is released with {@link #release()}.
+   * @param requestInfo the {@link RequestInfo} associated with this response.
+   * @param error the error encountered in sending this request, if there is any.
+   * @param response the response received for this request.
+   * @param receivedBytes the {@link BoundedByteBufferReceive} that {@code response} was received into. Can be
+   *                      {@code null}.
+   */
+  public ResponseInfo(RequestInfo requestInfo, NetworkClientErrorCode error, ByteBuffer response,
+      BoundedByteBufferReceive receivedBytes) {
     this.requestInfo = requestInfo;
     this.error = error;
     this.response = response;
+    this.receivedBytes = receivedBytes;
   }
 
   /**
@@ -59,4 +74,14 @@ public class ResponseInfo {
   public ByteBuffer getResponse() {
     return response;
   }
+
+  /**
+   * Releases the buffer that the response was received into, so that it can be reused for other receives. The response
+   * must not be used after this call.
+   */
+  public void release() {
+    if (receivedBytes != null) {
+      receivedBytes.release();
+    }
+  }
 }
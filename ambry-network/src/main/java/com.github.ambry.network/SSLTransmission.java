@@ -14,6 +14,7 @@
 package com.github.ambry.network;
 
 import com.github.ambry.commons.SSLFactory;
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
@@ -54,8 +55,9 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
   private long handshakeStartTime;
 
   public SSLTransmission(SSLFactory sslFactory, String connectionId, SocketChannel socketChannel, SelectionKey key,
-      String remoteHost, int remotePort, Time time, NetworkMetrics metrics, SSLFactory.Mode mode) throws IOException {
-    super(connectionId, socketChannel, key, time, metrics);
+      String remoteHost, int remotePort, Time time, NetworkMetrics metrics, ByteBufferPool receiveBufferPool,
+      SSLFactory.Mode mode) throws IOException {
+    super(connectionId, socketChannel, key, time, metrics, receiveBufferPool);
     this.sslEngine = sslFactory.createSSLEngine(remoteHost, remotePort, mode);
     this.netReadBuffer = ByteBuffer.allocate(packetBufferSize());
     this.netWriteBuffer = ByteBuffer.allocate(packetBufferSize());
@@ -114,6 +116,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
       return;
     }
     closing = true;
+    releaseReceive();
     sslEngine.closeOutbound();
     try {
       if (!flush(netWriteBuffer)) {
@@ -384,7 +387,8 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
   @Override
   public boolean read() throws IOException {
     if (!hasReceive()) {
-      this.networkReceive = new NetworkReceive(getConnectionId(), new BoundedByteBufferReceive(), time);
+      this.networkReceive =
+          new NetworkReceive(getConnectionId(), new BoundedByteBufferReceive(receiveBufferPool), time);
     }
     long startTimeMs = SystemTime.getInstance().milliseconds();
     long bytesRead = networkReceive.getReceivedBytes().readFrom(this);
@@ -14,6 +14,7 @@
 package com.github.ambry.network;
 
 import com.github.ambry.commons.SSLFactory;
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.Time;
 import java.io.EOFException;
 import java.io.IOException;
@@ -29,6 +30,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -63,6 +65,9 @@ import org.slf4j.LoggerFactory;
  * The selector maintains several lists that are reset by each call to <code>poll()</code> which are available via
  * various getters. These are reset by each call to <code>poll()</code>.
  *
+ * Sends to a connection that already has a send in progress are queued and written in order once the sends before
+ * them complete, so more than one request or response can be in flight on a connection.
+ *
  * This class is not thread safe!
  */
 public class Selector implements Selectable {
@@ -70,6 +75,7 @@ public class Selector implements Selectable {
 
   private final java.nio.channels.Selector nioSelector;
   private final Map<String, SelectionKey> keyMap;
+  private final Map<String, LinkedList<NetworkSend>> queuedSends;
   private final List<NetworkSend> completedSends;
   private final List<NetworkReceive> completedReceives;
   private final List<String> disconnected;
@@ -81,14 +87,30 @@ public class Selector implements Selectable {
   private final AtomicLong IdGenerator;
   private final AtomicLong numActiveConnections;
   private final SSLFactory sslFactory;
+  private final ByteBufferPool receiveBufferPool;
 
   /**
    * Create a new selector
    */
   public Selector(NetworkMetrics metrics, Time time, SSLFactory sslFactory) throws IOException {
+    this(metrics, time, sslFactory, null);
+  }
+
+  /**
+   * Create a new selector whose receives are allocated from a {@link ByteBufferPool}. The payload of each completed
+   * receive has to be released with {@link BoundedByteBufferReceive#release()} once it is no longer in use.
+   * @param metrics the {@link NetworkMetrics} to update.
+   * @param time the {@link Time} instance to use.
+   * @param sslFactory the {@link SSLFactory} for SSL connections.
+   * @param receiveBufferPool the {@link ByteBufferPool} to allocate the payloads of receives from. If {@code null},
+   *                          they are allocated from the heap.
+   */
+  public Selector(NetworkMetrics metrics, Time time, SSLFactory sslFactory, ByteBufferPool receiveBufferPool)
+      throws IOException {
     this.nioSelector = java.nio.channels.Selector.open();
     this.time = time;
     this.keyMap = new HashMap<String, SelectionKey>();
+    this.queuedSends = new HashMap<>();
     this.completedSends = new ArrayList<NetworkSend>();
     this.completedReceives = new ArrayList<NetworkReceive>();
     this.connected = new ArrayList<String>();
@@ -100,6 +122,7 @@ public class Selector implements Selectable {
     unreadyConnections = new HashSet<>();
     metrics.registerSelectorActiveConnections(numActiveConnections);
     this.sslFactory = sslFactory;
+    this.receiveBufferPool = receiveBufferPool;
   }
 
   /**
@@ -166,7 +189,7 @@ public class Selector implements Selectable {
     try {
       transmission =
           TransmissionFactory.getTransmission(connectionId, channel, key, address.getHostName(), address.getPort(),
-              time, metrics, portType, sslFactory, SSLFactory.Mode.CLIENT);
+              time, metrics, receiveBufferPool, portType, sslFactory, SSLFactory.Mode.CLIENT);
     } catch (IOException e) {
       logger.error("IOException on transmission creation " + e);
       channel.socket().close();
@@ -192,7 +215,7 @@ public class Selector implements Selectable {
     try {
       transmission =
           TransmissionFactory.getTransmission(connectionId, channel, key, socket.getInetAddress().getHostAddress(),
-              socket.getPort(), time, metrics, portType, sslFactory, SSLFactory.Mode.SERVER);
+              socket.getPort(), time, metrics, receiveBufferPool, portType, sslFactory, SSLFactory.Mode.SERVER);
     } catch (IOException e) {
       logger.error("IOException on transmission creation " + e);
       socket.close();
@@ -252,7 +275,8 @@ public class Selector implements Selectable {
   }
 
   /**
-   * Queue the given request for sending in the subsequent {@poll(long)} calls
+   * Queue the given request for sending in the subsequent {@poll(long)} calls. If the connection already has a send in
+   * progress, the given send is written after it (and any other sends queued before it) completes.
    * @param networkSend The NetworkSend that is ready to be sent
    */
   public void send(NetworkSend networkSend) {
@@ -262,7 +286,16 @@ public class Selector implements Selectable {
     }
     Transmission transmission = getTransmission(key);
     try {
-      transmission.setNetworkSend(networkSend);
+      if (transmission.hasSend()) {
+        LinkedList<NetworkSend> sendQueue = queuedSends.get(networkSend.getConnectionId());
+        if (sendQueue == null) {
+          sendQueue = new LinkedList<>();
+          queuedSends.put(networkSend.getConnectionId(), sendQueue);
+        }
+        sendQueue.add(networkSend);
+      } else {
+        transmission.setNetworkSend(networkSend);
+      }
     } catch (CancelledKeyException e) {
       logger.debug("Ignoring response for closed socket.");
       close(key);
@@ -494,6 +527,7 @@ public class Selector implements Selectable {
       logger.debug("Closing connection from {}", transmission.getConnectionId());
       closedConnections.add(transmission.getConnectionId());
       keyMap.remove(transmission.getConnectionId());
+      queuedSends.remove(transmission.getConnectionId());
       numActiveConnections.set(keyMap.size());
       unreadyConnections.remove(transmission.getConnectionId());
       try {
@@ -527,13 +561,13 @@ public class Selector implements Selectable {
   }
 
   /**
-   * Process reads from ready sockets
+   * Process reads from ready sockets. All the receives that can be completed are read, since the peer may have sent
+   * more than one on the connection.
    */
   private void read(SelectionKey key, Transmission transmission) throws IOException {
     long startTimeToReadInMs = time.milliseconds();
     try {
-      boolean readComplete = transmission.read();
-      if (readComplete) {
+      while (transmission.read()) {
         this.completedReceives.add(transmission.getNetworkReceive());
         transmission.onReceiveComplete();
         transmission.clearReceive();
@@ -558,6 +592,13 @@ public class Selector implements Selectable {
         metrics.sendInFlight.dec();
         transmission.clearSend();
         key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+        LinkedList<NetworkSend> sendQueue = queuedSends.get(transmission.getConnectionId());
+        if (sendQueue != null) {
+          transmission.setNetworkSend(sendQueue.poll());
+          if (sendQueue.isEmpty()) {
+            queuedSends.remove(transmission.getConnectionId());
+          }
+        }
       }
     } finally {
       long writeTime = time.milliseconds() - startTimeToWriteInMs;
@@ -13,11 +13,13 @@
  */
 package com.github.ambry.network;
 
+import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.utils.SystemTime;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.slf4j.Logger;
@@ -26,16 +28,36 @@ import org.slf4j.LoggerFactory;
 
 // The request at the network layer
 class SocketServerRequest implements Request {
+  static final short UNKNOWN_REQUEST_TYPE = -1;
+
   private final int processor;
   private final String connectionId;
   private final InputStream input;
+  private final short requestType;
+  private final BoundedByteBufferReceive receivedBytes;
   private final long startTimeInMs;
   private Logger logger = LoggerFactory.getLogger(getClass());
 
   public SocketServerRequest(int processor, String connectionId, InputStream input) throws IOException {
+    this(processor, connectionId, input, UNKNOWN_REQUEST_TYPE, null);
+  }
+
+  /**
+   * @param processor the id of the processor that received the request.
+   * @param connectionId the id of the connection that the request was received on.
+   * @param input the {@link InputStream} of the request.
+   * @param requestType the type of the request, as serialized in its first two bytes.
+   * @param receivedBytes the {@link BoundedByteBufferReceive} that {@code input} reads from, released once the request
+   *                      is complete. Can be {@code null}.
+   * @throws IOException
+   */
+  public SocketServerRequest(int processor, String connectionId, InputStream input, short requestType,
+      BoundedByteBufferReceive receivedBytes) throws IOException {
     this.processor = processor;
     this.connectionId = connectionId;
     this.input = input;
+    this.requestType = requestType;
+    this.receivedBytes = receivedBytes;
     this.startTimeInMs = SystemTime.getInstance().milliseconds();
     logger.trace("Processor {} received request : {}", processor, connectionId);
   }
@@ -57,6 +79,23 @@ class SocketServerRequest implements Request {
   public String getConnectionId() {
     return connectionId;
   }
+
+  /**
+   * @return the type of the request, as serialized in its first two bytes, or {@link #UNKNOWN_REQUEST_TYPE}.
+   */
+  public short getRequestType() {
+    return requestType;
+  }
+
+  /**
+   * Releases the buffer that the request was received into. Called once the request is complete, when its response is
+   * sent or its connection is closed.
+   */
+  void release() {
+    if (receivedBytes != null) {
+      receivedBytes.release();
+    }
+  }
 }
 
 // The response at the network layer
@@ -107,19 +146,33 @@ interface ResponseListener {
 }
 
 /**
- * RequestResponse channel for socket server
+ * RequestResponse channel for socket server. Requests are queued in a {@link WeightedFairRequestQueue}, which keeps
+ * the types of requests that have a {@link RequestTypeWeight} apart so that a burst of one type does not hold up the
+ * others.
  */
 public class SocketRequestResponseChannel implements RequestResponseChannel {
   private final int numProcessors;
   private final int queueSize;
-  private final ArrayBlockingQueue<Request> requestQueue;
+  private final WeightedFairRequestQueue requestQueue;
   private final ArrayList<BlockingQueue<Response>> responseQueues;
   private final ArrayList<ResponseListener> responseListeners;
 
   public SocketRequestResponseChannel(int numProcessors, int queueSize) {
+    this(numProcessors, queueSize, Collections.<RequestTypeWeight>emptyList(), new MetricRegistry());
+  }
+
+  /**
+   * @param numProcessors the number of processors that send requests and receive responses.
+   * @param queueSize the maximum number of requests that can be queued.
+   * @param requestTypeWeights the weights of the types of requests that are queued separately. All the other requests
+   *                           share a queue of weight 1.
+   * @param registry the {@link MetricRegistry} to register the metrics of the request queues in.
+   */
+  public SocketRequestResponseChannel(int numProcessors, int queueSize, List<RequestTypeWeight> requestTypeWeights,
+      MetricRegistry registry) {
     this.numProcessors = numProcessors;
     this.queueSize = queueSize;
-    this.requestQueue = new ArrayBlockingQueue<Request>(this.queueSize);
+    this.requestQueue = new WeightedFairRequestQueue(this.queueSize, requestTypeWeights, registry);
     responseQueues = new ArrayList<BlockingQueue<Response>>(this.numProcessors);
     responseListeners = new ArrayList<ResponseListener>();
 
@@ -131,7 +184,9 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
   /** Send a request to be handled, potentially blocking until there is room in the queue for the request */
   @Override
   public void sendRequest(Request request) throws InterruptedException {
-    requestQueue.put(request);
+    short requestType = request instanceof SocketServerRequest ? ((SocketServerRequest) request).getRequestType()
+        : SocketServerRequest.UNKNOWN_REQUEST_TYPE;
+    requestQueue.put(request, requestType);
   }
 
   /** Send a response back to the socket server to be sent over the network */
@@ -139,6 +194,7 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
   public void sendResponse(Send payloadToSend, Request originalRequest, ServerNetworkResponseMetrics metrics)
       throws InterruptedException {
     SocketServerResponse response = new SocketServerResponse(originalRequest, payloadToSend, metrics);
+    ((SocketServerRequest) originalRequest).release();
     response.onEnqueueIntoResponseQueue();
     responseQueues.get(response.getProcessor()).put(response);
     for (ResponseListener listener : responseListeners) {
@@ -152,6 +208,7 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
   @Override
   public void closeConnection(Request originalRequest) throws InterruptedException {
     SocketServerResponse response = new SocketServerResponse(originalRequest, null, null);
+    ((SocketServerRequest) originalRequest).release();
     responseQueues.get(response.getProcessor()).put(response);
     for (ResponseListener listener : responseListeners) {
       listener.onResponse(response.getProcessor());
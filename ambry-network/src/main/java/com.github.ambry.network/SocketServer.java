@@ -18,17 +18,21 @@ import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NetworkConfig;
 import com.github.ambry.config.SSLConfig;
 import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.ByteBufferPool;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -62,9 +66,23 @@ public class SocketServer implements NetworkServer {
   private Logger logger = LoggerFactory.getLogger(getClass());
   private final ServerNetworkMetrics metrics;
   private final HashMap<PortType, Port> ports;
+  private final SizeClassedByteBufferPool receiveBufferPool;
   private SSLFactory sslFactory;
 
   public SocketServer(NetworkConfig config, SSLConfig sslConfig, MetricRegistry registry, ArrayList<Port> portList) {
+    this(config, sslConfig, registry, portList, Collections.<RequestTypeWeight>emptyList());
+  }
+
+  /**
+   * @param config the {@link NetworkConfig} of the server.
+   * @param sslConfig the {@link SSLConfig} of the server.
+   * @param registry the {@link MetricRegistry} to register metrics in.
+   * @param portList the ports to listen on.
+   * @param requestTypeWeights the weights of the types of requests that are queued separately for the request
+   *                           handlers. All the other requests share a queue of weight 1.
+   */
+  public SocketServer(NetworkConfig config, SSLConfig sslConfig, MetricRegistry registry, ArrayList<Port> portList,
+      List<RequestTypeWeight> requestTypeWeights) {
     this.host = config.hostName;
     this.port = config.port;
     this.numProcessorThreads = config.numIoThreads;
@@ -73,8 +91,19 @@ public class SocketServer implements NetworkServer {
     this.recvBufferSize = config.socketReceiveBufferBytes;
     this.maxRequestSize = config.socketRequestMaxBytes;
     processors = new ArrayList<Processor>(numProcessorThreads);
-    requestResponseChannel = new SocketRequestResponseChannel(numProcessorThreads, maxQueuedRequests);
+    requestResponseChannel =
+        new SocketRequestResponseChannel(numProcessorThreads, maxQueuedRequests, requestTypeWeights, registry);
     metrics = new ServerNetworkMetrics(requestResponseChannel, registry, processors);
+    if (config.networkReceiveBufferPoolCapacityBytes > 0) {
+      // receive buffers are allocated by the processor threads and released by the request handler threads once the
+      // request is handled, so thread caches would never be hit.
+      receiveBufferPool = new SizeClassedByteBufferPool(config.networkReceiveBufferPoolCapacityBytes,
+          config.networkReceiveBufferPoolMaxPooledBufferBytes, config.networkReceiveBufferPoolDirect, 0,
+          config.networkReceiveBufferPoolLeakDetectionEnabled);
+      metrics.registerReceiveBufferPool(receiveBufferPool);
+    } else {
+      receiveBufferPool = null;
+    }
     this.acceptors = new ArrayList<Acceptor>();
     this.ports = new HashMap<PortType, Port>();
     this.validatePorts(portList);
@@ -149,7 +178,8 @@ public class SocketServer implements NetworkServer {
   public void start() throws IOException, InterruptedException {
     logger.info("Starting {} processor threads", numProcessorThreads);
     for (int i = 0; i < numProcessorThreads; i++) {
-      processors.add(i, new Processor(i, maxRequestSize, requestResponseChannel, metrics, sslFactory));
+      processors.add(i, new Processor(i, maxRequestSize, requestResponseChannel, metrics, sslFactory,
+          receiveBufferPool));
       Utils.newThread("ambry-processor-" + port + " " + i, processors.get(i), false).start();
     }
 
@@ -394,12 +424,12 @@ class Processor extends AbstractServerThread {
   private static final long pollTimeoutMs = 300;
 
   Processor(int id, int maxRequestSize, RequestResponseChannel channel, ServerNetworkMetrics metrics,
-      SSLFactory sslFactory) throws IOException {
+      SSLFactory sslFactory, ByteBufferPool receiveBufferPool) throws IOException {
     this.maxRequestSize = maxRequestSize;
     this.channel = (SocketRequestResponseChannel) channel;
     this.id = id;
     this.time = SystemTime.getInstance();
-    selector = new Selector(metrics, time, sslFactory);
+    selector = new Selector(metrics, time, sslFactory, receiveBufferPool);
     this.metrics = metrics;
   }
 
@@ -417,8 +447,12 @@ class Processor extends AbstractServerThread {
         List<NetworkReceive> completedReceives = selector.completedReceives();
         for (NetworkReceive networkReceive : completedReceives) {
           String connectionId = networkReceive.getConnectionId();
-          SocketServerRequest req = new SocketServerRequest(id, connectionId,
-              new ByteBufferInputStream(networkReceive.getReceivedBytes().getPayload()));
+          ByteBuffer payload = networkReceive.getReceivedBytes().getPayload();
+          short requestType = payload.remaining() >= Short.BYTES ? payload.getShort(payload.position())
+              : SocketServerRequest.UNKNOWN_REQUEST_TYPE;
+          SocketServerRequest req =
+              new SocketServerRequest(id, connectionId, new ByteBufferInputStream(payload), requestType,
+                  networkReceive.getReceivedBytes());
           channel.sendRequest(req);
         }
       }
@@ -13,6 +13,7 @@
  */
 package com.github.ambry.network;
 
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.Time;
 import java.io.IOException;
 import java.net.SocketAddress;
@@ -35,14 +36,24 @@ public abstract class Transmission {
   protected SelectionKey key = null;
   protected final Time time;
   protected final NetworkMetrics metrics;
+  protected final ByteBufferPool receiveBufferPool;
 
+  /**
+   * @param connectionId the id of the connection.
+   * @param socketChannel the {@link SocketChannel} of the connection.
+   * @param key the {@link SelectionKey} of the connection.
+   * @param time the {@link Time} instance to use.
+   * @param metrics the {@link NetworkMetrics} to update.
+   * @param receiveBufferPool the {@link ByteBufferPool} to allocate the payloads of receives from. Can be {@code null}.
+   */
   public Transmission(String connectionId, SocketChannel socketChannel, SelectionKey key, Time time,
-      NetworkMetrics metrics) {
+      NetworkMetrics metrics, ByteBufferPool receiveBufferPool) {
     this.connectionId = connectionId;
     this.socketChannel = socketChannel;
     this.key = key;
     this.time = time;
     this.metrics = metrics;
+    this.receiveBufferPool = receiveBufferPool;
   }
 
   /**
@@ -154,6 +165,17 @@ public abstract class Transmission {
     networkReceive = null;
   }
 
+  /**
+   * Drops the receive in progress, if any, and returns its buffer to the pool it was allocated from. Completed receives
+   * are cleared when they are handed off, so this only affects a receive that will never complete.
+   */
+  protected void releaseReceive() {
+    if (networkReceive != null) {
+      networkReceive.getReceivedBytes().release();
+      networkReceive = null;
+    }
+  }
+
   public NetworkReceive getNetworkReceive() {
     return this.networkReceive;
   }
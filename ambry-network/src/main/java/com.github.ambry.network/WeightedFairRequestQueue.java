@@ -0,0 +1,195 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.utils.SystemTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A bounded blocking queue of requests that keeps a separate queue for each type of request that has a
+ * {@link RequestTypeWeight} and one for all the other requests. Requests are dequeued from the queues in a weighted
+ * round robin: the queue whose turn it is gives up to its weight in requests before the turn moves on, and empty queues
+ * are skipped. Since all the request handler threads take from this queue, a thread never idles while there is a
+ * request of any type waiting.
+ * <p/>
+ * The depth of, and the time that requests wait in, each queue are tracked in metrics.
+ */
+class WeightedFairRequestQueue {
+  static final String DEFAULT_QUEUE_NAME = "Default";
+
+  private final int capacity;
+  private final List<TypeQueue> queues = new ArrayList<>();
+  private final Map<Short, TypeQueue> typeToQueue = new HashMap<>();
+  private final TypeQueue defaultQueue;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private int size = 0;
+  private int currentQueueIndex = 0;
+  private int creditsLeft;
+
+  /**
+   * @param capacity the maximum number of requests in all the queues together.
+   * @param requestTypeWeights the weights of the types of requests that are queued separately.
+   * @param registry the {@link MetricRegistry} to register the metrics of the queues in.
+   * @throws IllegalArgumentException if a type or a name appears more than once in {@code requestTypeWeights}.
+   */
+  WeightedFairRequestQueue(int capacity, List<RequestTypeWeight> requestTypeWeights, MetricRegistry registry) {
+    this.capacity = capacity;
+    for (RequestTypeWeight requestTypeWeight : requestTypeWeights) {
+      if (typeToQueue.containsKey(requestTypeWeight.getType()) || DEFAULT_QUEUE_NAME.equals(
+          requestTypeWeight.getName())) {
+        throw new IllegalArgumentException("Duplicate request type " + requestTypeWeight.getName());
+      }
+      TypeQueue queue = new TypeQueue(requestTypeWeight.getName(), requestTypeWeight.getWeight(), registry);
+      queues.add(queue);
+      typeToQueue.put(requestTypeWeight.getType(), queue);
+    }
+    defaultQueue = new TypeQueue(DEFAULT_QUEUE_NAME, 1, registry);
+    queues.add(defaultQueue);
+    creditsLeft = queues.get(0).weight;
+  }
+
+  /**
+   * Adds a request to the queue for its type, waiting for space if the queue is full.
+   * @param request the {@link Request} to add.
+   * @param requestType the type of the request.
+   * @throws InterruptedException if interrupted while waiting for space.
+   */
+  void put(Request request, short requestType) throws InterruptedException {
+    TypeQueue queue = typeToQueue.get(requestType);
+    if (queue == null) {
+      queue = defaultQueue;
+    }
+    lock.lockInterruptibly();
+    try {
+      while (size == capacity) {
+        notFull.await();
+      }
+      queue.requests.add(new QueuedRequest(request, SystemTime.getInstance().milliseconds()));
+      size++;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the next request, waiting for one if there is none.
+   * @return the next {@link Request}.
+   * @throws InterruptedException if interrupted while waiting for a request.
+   */
+  Request take() throws InterruptedException {
+    QueuedRequest queuedRequest;
+    TypeQueue queue;
+    lock.lockInterruptibly();
+    try {
+      while (size == 0) {
+        notEmpty.await();
+      }
+      queue = queues.get(currentQueueIndex);
+      while (creditsLeft == 0 || queue.requests.isEmpty()) {
+        currentQueueIndex = (currentQueueIndex + 1) % queues.size();
+        queue = queues.get(currentQueueIndex);
+        creditsLeft = queue.weight;
+      }
+      creditsLeft--;
+      queuedRequest = queue.requests.poll();
+      size--;
+      notFull.signal();
+    } finally {
+      lock.unlock();
+    }
+    queue.waitTimeInMs.update(SystemTime.getInstance().milliseconds() - queuedRequest.enqueueTimeInMs);
+    return queuedRequest.request;
+  }
+
+  /**
+   * @return the number of requests in all the queues together.
+   */
+  int size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes all the requests from the queues.
+   */
+  void clear() {
+    lock.lock();
+    try {
+      for (TypeQueue queue : queues) {
+        queue.requests.clear();
+      }
+      size = 0;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The queue of a type of request and its metrics.
+   */
+  private class TypeQueue {
+    final int weight;
+    final ArrayDeque<QueuedRequest> requests = new ArrayDeque<>();
+    final Histogram waitTimeInMs;
+
+    TypeQueue(String name, int weight, MetricRegistry registry) {
+      this.weight = weight;
+      waitTimeInMs = registry.histogram(
+          MetricRegistry.name(SocketRequestResponseChannel.class, name + "-RequestQueueWaitTimeInMs"));
+      Gauge<Integer> depth = new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          lock.lock();
+          try {
+            return requests.size();
+          } finally {
+            lock.unlock();
+          }
+        }
+      };
+      registry.register(MetricRegistry.name(SocketRequestResponseChannel.class, name + "-RequestQueueSize"), depth);
+    }
+  }
+
+  /**
+   * A {@link Request} and the time at which it was queued.
+   */
+  private static class QueuedRequest {
+    final Request request;
+    final long enqueueTimeInMs;
+
+    QueuedRequest(Request request, long enqueueTimeInMs) {
+      this.request = request;
+      this.enqueueTimeInMs = enqueueTimeInMs;
+    }
+  }
+}
@@ -14,6 +14,8 @@
 package com.github.ambry.network;
 
 import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.SimpleByteBufferPool;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.util.Random;
@@ -43,4 +45,47 @@ public class BoundedByteBufferReceiveTest {
       Assert.assertEquals(true, false);
     }
   }
+
+  /**
+   * Tests that payloads are allocated from the pool when it has the memory available, falling back to the heap
+   * otherwise, and that releasing a payload returns its memory to the pool exactly once.
+   * @throws IOException
+   */
+  @Test
+  public void testPooledReceive() throws IOException {
+    // the payload excludes the 8 byte size header
+    SimpleByteBufferPool pool = new SimpleByteBufferPool(3000);
+    BoundedByteBufferReceive pooledReceive = readReceive(pool, 2000);
+    Assert.assertEquals("Payload should have been allocated from the pool", 1008, pool.availableMemory());
+    BoundedByteBufferReceive heapReceive = readReceive(pool, 2000);
+    Assert.assertEquals("Payload should have been allocated from the heap", 1008, pool.availableMemory());
+    Assert.assertEquals("Unexpected payload size", 1992, heapReceive.getPayload().remaining());
+    heapReceive.release();
+    Assert.assertEquals("Releasing a heap payload should not affect the pool", 1008, pool.availableMemory());
+    pooledReceive.release();
+    Assert.assertEquals("Payload should have been returned to the pool", 3000, pool.availableMemory());
+    readReceive(pool, 2000);
+    pooledReceive.release();
+    Assert.assertEquals("Releasing a payload twice should have no effect", 1008, pool.availableMemory());
+  }
+
+  /**
+   * @param pool the {@link SimpleByteBufferPool} to allocate the payload from.
+   * @param size the size of the receive, including its size header.
+   * @return a {@link BoundedByteBufferReceive} that has read a random receive of {@code size} bytes.
+   * @throws IOException
+   */
+  private BoundedByteBufferReceive readReceive(SimpleByteBufferPool pool, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putLong(size);
+    byte[] buf = new byte[size - 8];
+    new Random().nextBytes(buf);
+    buffer.put(buf);
+    buffer.flip();
+    BoundedByteBufferReceive receive = new BoundedByteBufferReceive(pool);
+    receive.readFrom(Channels.newChannel(new ByteBufferInputStream(buffer)));
+    Assert.assertTrue("Receive should be complete", receive.isReadComplete());
+    Assert.assertEquals("Payload mismatch", ByteBuffer.wrap(buf), receive.getPayload());
+    return receive;
+  }
 }
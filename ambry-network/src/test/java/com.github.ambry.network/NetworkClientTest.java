@@ -23,6 +23,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
@@ -96,7 +97,7 @@ public class NetworkClientTest {
         Assert.assertNull("Should not have encountered an error", error);
         Assert.assertNotNull("Should receive a valid response", response);
         int correlationIdInRequest = send.getCorrelationId();
-        int correlationIdInResponse = response.getInt();
+        int correlationIdInResponse = response.getInt(4);
         Assert.assertEquals("Received response for the wrong request", correlationIdInRequest, correlationIdInResponse);
         responseCount++;
       }
@@ -335,6 +336,111 @@ public class NetworkClientTest {
     Assert.assertTrue("Selector should have been woken up at this point", selector.getAndClearWokenUpStatus());
   }
 
+  /**
+   * Tests that requests are pipelined on a connection up to the configured limit and that responses that arrive out of
+   * order are associated with the right requests.
+   */
+  @Test
+  public void testPipelinedSendAndPoll() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("network.client.max.in.flight.requests.per.connection", "3");
+    NetworkConfig networkConfig = new NetworkConfig(new VerifiableProperties(props));
+    NetworkMetrics networkMetrics = new NetworkMetrics(new MetricRegistry());
+    networkClient =
+        new NetworkClient(selector, networkConfig, networkMetrics, MAX_PORTS_PLAIN_TEXT, MAX_PORTS_SSL,
+            CHECKOUT_TIMEOUT_MS, time);
+    List<RequestInfo> requestInfoList = new ArrayList<RequestInfo>();
+    // establish a connection.
+    requestInfoList.add(new RequestInfo(host1, port1, new MockSend(0)));
+    verifyResponses(requestInfoList, 1);
+    Assert.assertEquals("Only one connection should have been initiated", 1, selector.connectCallCount());
+
+    // four requests: three are pipelined on the established connection and the fourth needs a new connection.
+    selector.setState(MockSelectorState.ReverseReceiveOrder);
+    for (int i = 1; i <= 4; i++) {
+      requestInfoList.add(new RequestInfo(host1, port1, new MockSend(i)));
+    }
+    verifyResponses(requestInfoList, 4);
+    Assert.assertEquals("Unexpected number of connections initiated", 2, selector.connectCallCount());
+    Assert.assertEquals("Unexpected number of pipelined requests", 2, networkMetrics.pipelinedRequestCount.getCount());
+    selector.setState(MockSelectorState.Good);
+  }
+
+  /**
+   * Tests that a response that does not match any of the requests pipelined on a connection causes the connection to be
+   * closed and all the requests on it to fail, and that a response on a connection with a single request in flight is
+   * associated with that request.
+   */
+  @Test
+  public void testPipelinedCorrelationIdMismatch() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("network.client.max.in.flight.requests.per.connection", "3");
+    NetworkConfig networkConfig = new NetworkConfig(new VerifiableProperties(props));
+    NetworkMetrics networkMetrics = new NetworkMetrics(new MetricRegistry());
+    networkClient =
+        new NetworkClient(selector, networkConfig, networkMetrics, MAX_PORTS_PLAIN_TEXT, MAX_PORTS_SSL,
+            CHECKOUT_TIMEOUT_MS, time);
+    List<RequestInfo> requestInfoList = new ArrayList<RequestInfo>();
+    // establish a connection.
+    requestInfoList.add(new RequestInfo(host1, port1, new MockSend(0)));
+    verifyResponses(requestInfoList, 1);
+
+    // two requests are pipelined on the connection and their responses do not match them.
+    selector.setState(MockSelectorState.MismatchedCorrelationId);
+    requestInfoList.add(new RequestInfo(host1, port1, new MockSend(1)));
+    requestInfoList.add(new RequestInfo(host1, port1, new MockSend(2)));
+    List<ResponseInfo> responseInfoList = networkClient.sendAndPoll(requestInfoList, 100);
+    requestInfoList.clear();
+    Assert.assertEquals("Both requests should have failed", 2, responseInfoList.size());
+    for (ResponseInfo responseInfo : responseInfoList) {
+      Assert.assertEquals("Unexpected error", NetworkClientErrorCode.NetworkError, responseInfo.getError());
+    }
+    Assert.assertEquals("Mismatch should have been counted once", 1,
+        networkMetrics.correlationIdMismatchCount.getCount());
+
+    // the disconnection of the closed connection is ignored and a new connection is initiated for the next request,
+    // whose response is associated with it even though the correlation ids do not match.
+    requestInfoList.add(new RequestInfo(host1, port1, new MockSend(3)));
+    int responseCount = 0;
+    do {
+      responseInfoList = networkClient.sendAndPoll(requestInfoList, 100);
+      requestInfoList.clear();
+      for (ResponseInfo responseInfo : responseInfoList) {
+        Assert.assertNull("Should not have encountered an error", responseInfo.getError());
+        Assert.assertEquals("Received response for the wrong request", 3,
+            ((MockSend) responseInfo.getRequestInfo().getRequest()).getCorrelationId());
+        responseCount++;
+      }
+    } while (responseCount == 0);
+    Assert.assertEquals("Unexpected number of connections initiated", 2, selector.connectCallCount());
+    Assert.assertEquals("Mismatch should have been counted once", 1,
+        networkMetrics.correlationIdMismatchCount.getCount());
+    selector.setState(MockSelectorState.Good);
+  }
+
+  /**
+   * Sends the given requests and polls until the expected number of responses are received, verifying that each
+   * response is for the request it is associated with.
+   * @param requestInfoList the requests to send. Cleared by this method.
+   * @param expectedResponseCount the number of responses expected.
+   */
+  private void verifyResponses(List<RequestInfo> requestInfoList, int expectedResponseCount) {
+    int responseCount = 0;
+    do {
+      List<ResponseInfo> responseInfoList = networkClient.sendAndPoll(requestInfoList, 100);
+      requestInfoList.clear();
+      for (ResponseInfo responseInfo : responseInfoList) {
+        Assert.assertNull("Should not have encountered an error", responseInfo.getError());
+        MockSend send = (MockSend) responseInfo.getRequestInfo().getRequest();
+        Assert.assertEquals("Received response for the wrong request", send.getCorrelationId(),
+            responseInfo.getResponse().getInt(4));
+        responseCount++;
+      }
+    } while (expectedResponseCount > responseCount);
+    Assert.assertEquals("Should receive only as many responses as there were requests", expectedResponseCount,
+        responseCount);
+  }
+
   /**
    * Test to ensure subsequent operations after a close throw an {@link IllegalStateException}.
    */
@@ -351,10 +457,10 @@ public class NetworkClientTest {
 }
 
 /**
- * A mock implementation of the {@link Send} interface that simply stores a correlation id that can be used to
- * identify this request.
+ * A mock implementation of the {@link SendWithCorrelationId} interface that simply stores a correlation id that can be
+ * used to identify this request.
  */
-class MockSend implements Send {
+class MockSend implements SendWithCorrelationId {
   private final ByteBuffer buf;
   private final int correlationId;
   private final int size;
@@ -372,7 +478,8 @@ class MockSend implements Send {
   /**
    * @return the correlation id of this MockSend.
    */
-  int getCorrelationId() {
+  @Override
+  public int getCorrelationId() {
     return correlationId;
   }
 
@@ -404,7 +511,8 @@ class MockSend implements Send {
 
 /**
  * A mock implementation of {@link BoundedByteBufferReceive} that constructs a buffer with the passed in correlation
- * id and returns that buffer as part of {@link #getPayload()}.
+ * id at the same position as in a response (after the type and version) and returns that buffer as part of
+ * {@link #getPayload()}.
  */
 class MockBoundedByteBufferReceive extends BoundedByteBufferReceive {
   private final ByteBuffer buf;
@@ -415,7 +523,7 @@ class MockBoundedByteBufferReceive extends BoundedByteBufferReceive {
    */
   public MockBoundedByteBufferReceive(int correlationId) {
     buf = ByteBuffer.allocate(16);
-    buf.putInt(0, correlationId);
+    buf.putInt(4, correlationId);
     buf.rewind();
   }
 
@@ -456,7 +564,13 @@ enum MockSelectorState {
   IdlePoll, /**
    * Fail every other connect.
    */
-  DelayFailAlternateConnect;
+  DelayFailAlternateConnect, /**
+   * A state that causes the responses for the sends in a poll to be returned in the reverse order.
+   */
+  ReverseReceiveOrder, /**
+   * A state that causes the responses for the sends in a poll to have correlation ids that do not match the sends.
+   */
+  MismatchedCorrelationId;
 }
 
 /**
@@ -563,11 +677,17 @@ class MockSelector extends Selector {
         if (state == MockSelectorState.DisconnectOnSend) {
           disconnected.add(send.getConnectionId());
         } else {
-          receives.add(
-              new NetworkReceive(send.getConnectionId(), new MockBoundedByteBufferReceive(mockSend.getCorrelationId()),
-                  new MockTime()));
+          int correlationId = mockSend.getCorrelationId();
+          if (state == MockSelectorState.MismatchedCorrelationId) {
+            correlationId += 1000;
+          }
+          receives.add(new NetworkReceive(send.getConnectionId(), new MockBoundedByteBufferReceive(correlationId),
+              new MockTime()));
         }
       }
+      if (state == MockSelectorState.ReverseReceiveOrder) {
+        Collections.reverse(receives);
+      }
     }
   }
 
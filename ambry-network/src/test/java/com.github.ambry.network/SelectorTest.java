@@ -104,12 +104,26 @@ public class SelectorTest {
   }
 
   /**
-   * Sending a request with one already in flight should result in an exception
+   * Sending a request with one already in flight should queue it and send it once the one in flight completes
    */
-  @Test(expected = IllegalStateException.class)
-  public void testCantSendWithInProgress() throws Exception {
+  @Test
+  public void testSendWithInProgress() throws Exception {
     String connectionId = blockingConnect();
-    selector.poll(1000L, asList(createSend(connectionId, "test1"), createSend(connectionId, "test2")));
+    List<NetworkSend> sends =
+        asList(createSend(connectionId, "test1"), createSend(connectionId, "test2"), createSend(connectionId, "test3"));
+    List<String> responses = new ArrayList<>();
+    selector.poll(1000L, sends);
+    while (true) {
+      for (NetworkReceive receive : selector.completedReceives()) {
+        responses.add(asString(receive));
+      }
+      if (responses.size() == sends.size()) {
+        break;
+      }
+      selector.poll(1000L);
+    }
+    assertEquals("Responses should be received in the order of the requests", asList("test1", "test2", "test3"),
+        responses);
   }
 
   /**
@@ -14,9 +14,11 @@
 package com.github.ambry.network;
 
 import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.SimpleByteBufferPool;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.Random;
 import org.junit.Assert;
@@ -82,4 +84,40 @@ public class SocketRequestResponseChannelTest {
       Assert.assertEquals(true, false);
     }
   }
+
+  /**
+   * Tests that the buffer that a request was received into is returned to its pool when the response to the request is
+   * sent or its connection is closed.
+   * @throws Exception
+   */
+  @Test
+  public void testRequestReleasedOnCompletion() throws Exception {
+    SocketRequestResponseChannel channel = new SocketRequestResponseChannel(1, 10);
+    SimpleByteBufferPool pool = new SimpleByteBufferPool(1000);
+    channel.sendRequest(getPooledRequest(pool));
+    Assert.assertEquals("Request should have been received into the pool", 0, pool.availableMemory());
+    channel.sendResponse(new MockSend(), channel.receiveRequest(), null);
+    Assert.assertEquals("Request should have been released", 1000, pool.availableMemory());
+
+    channel.sendRequest(getPooledRequest(pool));
+    Assert.assertEquals("Request should have been received into the pool", 0, pool.availableMemory());
+    channel.closeConnection(channel.receiveRequest());
+    Assert.assertEquals("Request should have been released", 1000, pool.availableMemory());
+  }
+
+  /**
+   * @param pool the {@link SimpleByteBufferPool} to receive the request into.
+   * @return a {@link SocketServerRequest} with a payload of the size of {@code pool}, received into {@code pool}.
+   * @throws IOException
+   */
+  private SocketServerRequest getPooledRequest(SimpleByteBufferPool pool) throws IOException {
+    int payloadSize = (int) pool.capacity();
+    ByteBuffer buffer = ByteBuffer.allocate(payloadSize + 8);
+    buffer.putLong(payloadSize + 8);
+    buffer.position(0);
+    BoundedByteBufferReceive receive = new BoundedByteBufferReceive(pool);
+    receive.readFrom(Channels.newChannel(new ByteBufferInputStream(buffer)));
+    return new SocketServerRequest(0, "test_connectionId", new ByteBufferInputStream(receive.getPayload()),
+        SocketServerRequest.UNKNOWN_REQUEST_TYPE, receive);
+  }
 }
@@ -60,6 +60,8 @@ public class SocketServerTest {
 
   public SocketServerTest() throws Exception {
     Properties props = new Properties();
+    // receive requests into pooled direct buffers
+    props.setProperty("network.receive.buffer.pool.capacity.bytes", Integer.toString(1024 * 1024));
     VerifiableProperties propverify = new VerifiableProperties(props);
     NetworkConfig config = new NetworkConfig(propverify);
     ArrayList<Port> ports = new ArrayList<Port>();
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import com.codahale.metrics.MetricRegistry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link WeightedFairRequestQueue}.
+ */
+public class WeightedFairRequestQueueTest {
+  private static final short HEAVY_TYPE = 0;
+  private static final short LIGHT_TYPE = 1;
+  private static final short OTHER_TYPE = 2;
+
+  private final MetricRegistry registry = new MetricRegistry();
+
+  /**
+   * Tests that requests are dequeued in a weighted round robin across the types, that empty queues are skipped and that
+   * the metrics of the queues are updated.
+   * @throws Exception
+   */
+  @Test
+  public void weightedRoundRobinTest() throws Exception {
+    WeightedFairRequestQueue queue = new WeightedFairRequestQueue(100,
+        Arrays.asList(new RequestTypeWeight(HEAVY_TYPE, "Heavy", 2), new RequestTypeWeight(LIGHT_TYPE, "Light", 1)),
+        registry);
+    for (int i = 0; i < 4; i++) {
+      put(queue, HEAVY_TYPE, "H" + i);
+      put(queue, LIGHT_TYPE, "L" + i);
+    }
+    put(queue, OTHER_TYPE, "O0");
+    put(queue, OTHER_TYPE, "O1");
+    assertEquals("Unexpected size", 10, queue.size());
+    assertEquals("Unexpected depth", 4, getDepth("Heavy"));
+    assertEquals("Unexpected depth", 2, getDepth(WeightedFairRequestQueue.DEFAULT_QUEUE_NAME));
+
+    List<String> expectedOrder = Arrays.asList("H0", "H1", "L0", "O0", "H2", "H3", "L1", "O1", "L2", "L3");
+    List<String> order = new ArrayList<>();
+    for (int i = 0; i < expectedOrder.size(); i++) {
+      order.add(((SocketServerRequest) queue.take()).getConnectionId());
+    }
+    assertEquals("Requests dequeued in the wrong order", expectedOrder, order);
+    assertEquals("Unexpected size", 0, queue.size());
+    assertEquals("Unexpected depth", 0, getDepth("Light"));
+    assertEquals("Unexpected wait time count", 4,
+        registry.getHistograms().get(getMetricName("Heavy", "-RequestQueueWaitTimeInMs")).getCount());
+    assertEquals("Unexpected wait time count", 2, registry.getHistograms()
+        .get(getMetricName(WeightedFairRequestQueue.DEFAULT_QUEUE_NAME, "-RequestQueueWaitTimeInMs"))
+        .getCount());
+  }
+
+  /**
+   * Tests that puts wait while the queue is full and that all the requests are removed by a clear.
+   * @throws Exception
+   */
+  @Test
+  public void capacityAndClearTest() throws Exception {
+    final WeightedFairRequestQueue queue =
+        new WeightedFairRequestQueue(2, Collections.singletonList(new RequestTypeWeight(HEAVY_TYPE, "Heavy", 1)),
+            registry);
+    put(queue, HEAVY_TYPE, "H0");
+    put(queue, OTHER_TYPE, "O0");
+    final CountDownLatch putDone = new CountDownLatch(1);
+    final AtomicReference<Exception> exception = new AtomicReference<>();
+    Thread putter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          put(queue, HEAVY_TYPE, "H1");
+          putDone.countDown();
+        } catch (Exception e) {
+          exception.set(e);
+        }
+      }
+    });
+    putter.start();
+    assertFalse("Put should wait while the queue is full", putDone.await(100, TimeUnit.MILLISECONDS));
+    assertEquals("Unexpected request", "H0", ((SocketServerRequest) queue.take()).getConnectionId());
+    assertTrue("Put should have completed", putDone.await(10, TimeUnit.SECONDS));
+    putter.join();
+    assertNull("Put should not have failed", exception.get());
+    assertEquals("Unexpected size", 2, queue.size());
+
+    queue.clear();
+    assertEquals("Unexpected size", 0, queue.size());
+    assertEquals("Unexpected depth", 0, getDepth("Heavy"));
+    put(queue, OTHER_TYPE, "O1");
+    assertEquals("Unexpected request", "O1", ((SocketServerRequest) queue.take()).getConnectionId());
+  }
+
+  /**
+   * Tests that invalid weights are rejected.
+   */
+  @Test
+  public void invalidWeightsTest() {
+    try {
+      new RequestTypeWeight(HEAVY_TYPE, "Heavy", 0);
+      fail("Weights that are not positive should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+    try {
+      new WeightedFairRequestQueue(10,
+          Arrays.asList(new RequestTypeWeight(HEAVY_TYPE, "Heavy", 1), new RequestTypeWeight(HEAVY_TYPE, "Light", 1)),
+          registry);
+      fail("Duplicate types should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Puts a request that is identified by its connection id into the queue.
+   * @param queue the {@link WeightedFairRequestQueue} to put the request into.
+   * @param type the type of the request.
+   * @param id the connection id that identifies the request.
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private static void put(WeightedFairRequestQueue queue, short type, String id)
+      throws IOException, InterruptedException {
+    queue.put(new SocketServerRequest(0, id, null, type, null), type);
+  }
+
+  /**
+   * @param name the name of a queue.
+   * @return the value of the depth gauge of the queue.
+   */
+  private int getDepth(String name) {
+    return (Integer) registry.getGauges().get(getMetricName(name, "-RequestQueueSize")).getValue();
+  }
+
+  /**
+   * @param name the name of a queue.
+   * @param suffix the suffix of the metric.
+   * @return the name of the metric of the queue.
+   */
+  private static String getMetricName(String name, String suffix) {
+    return MetricRegistry.name(SocketRequestResponseChannel.class, name + suffix);
+  }
+}
@@ -25,13 +25,16 @@ import java.util.List;
 
 
 /**
- * GetRequest to fetch data
+ * GetRequest to fetch data. Version 3 of the request carries a byte range for each blob id. It is used only if a byte
+ * range is requested for at least one blob, so that requests without ranges can still be read by servers that do not
+ * know version 3.
  */
 public class GetRequest extends RequestOrResponse {
 
   private MessageFormatFlags flags;
   private GetOption getOption;
   private List<PartitionRequestInfo> partitionRequestInfoList;
+  private final boolean withByteRanges;
   private int sizeSent;
   private int totalPartitionRequestInfoListSize;
 
@@ -39,10 +42,11 @@ public class GetRequest extends RequestOrResponse {
   private static final int GetOption_Size_In_Bytes = 2;
   private static final int Partition_Request_Info_List_Size = 4;
   private static final short Get_Request_Version_V2 = 2;
+  private static final short Get_Request_Version_V3 = 3;
 
   public GetRequest(int correlationId, String clientId, MessageFormatFlags flags,
       List<PartitionRequestInfo> partitionRequestInfoList, GetOption getOption) {
-    super(RequestOrResponseType.GetRequest, Get_Request_Version_V2, correlationId, clientId);
+    super(RequestOrResponseType.GetRequest, getVersion(partitionRequestInfoList), correlationId, clientId);
 
     this.flags = flags;
     this.getOption = getOption;
@@ -50,12 +54,31 @@ public class GetRequest extends RequestOrResponse {
       throw new IllegalArgumentException("No partition info specified in GetRequest");
     }
     this.partitionRequestInfoList = partitionRequestInfoList;
+    withByteRanges = versionId == Get_Request_Version_V3;
+    if (withByteRanges && flags != MessageFormatFlags.Blob) {
+      throw new IllegalArgumentException("Byte ranges can only be requested with " + MessageFormatFlags.Blob);
+    }
     for (PartitionRequestInfo partitionRequestInfo : partitionRequestInfoList) {
-      totalPartitionRequestInfoListSize += partitionRequestInfo.sizeInBytes();
+      totalPartitionRequestInfoListSize += partitionRequestInfo.sizeInBytes(withByteRanges);
     }
     this.sizeSent = 0;
   }
 
+  /**
+   * @param partitionRequestInfoList the {@link PartitionRequestInfo}s of the request.
+   * @return the version to serialize the request with.
+   */
+  private static short getVersion(List<PartitionRequestInfo> partitionRequestInfoList) {
+    if (partitionRequestInfoList != null) {
+      for (PartitionRequestInfo partitionRequestInfo : partitionRequestInfoList) {
+        if (partitionRequestInfo.hasByteRanges()) {
+          return Get_Request_Version_V3;
+        }
+      }
+    }
+    return Get_Request_Version_V2;
+  }
+
   public MessageFormatFlags getMessageFormatFlag() {
     return flags;
   }
@@ -78,11 +101,12 @@ public class GetRequest extends RequestOrResponse {
     ArrayList<PartitionRequestInfo> partitionRequestInfoList =
         new ArrayList<PartitionRequestInfo>(totalNumberOfPartitionInfo);
     for (int i = 0; i < totalNumberOfPartitionInfo; i++) {
-      PartitionRequestInfo partitionRequestInfo = PartitionRequestInfo.readFrom(stream, clusterMap);
+      PartitionRequestInfo partitionRequestInfo =
+          PartitionRequestInfo.readFrom(stream, clusterMap, versionId == Get_Request_Version_V3);
       partitionRequestInfoList.add(partitionRequestInfo);
     }
     GetOption getOption = GetOption.None;
-    if (versionId == Get_Request_Version_V2) {
+    if (versionId == Get_Request_Version_V2 || versionId == Get_Request_Version_V3) {
       getOption = GetOption.values()[stream.readShort()];
     }
     // ignore version for now
@@ -98,7 +122,7 @@ public class GetRequest extends RequestOrResponse {
       bufferToSend.putShort((short) flags.ordinal());
       bufferToSend.putInt(partitionRequestInfoList.size());
       for (PartitionRequestInfo partitionRequestInfo : partitionRequestInfoList) {
-        partitionRequestInfo.writeTo(bufferToSend);
+        partitionRequestInfo.writeTo(bufferToSend, withByteRanges);
       }
       bufferToSend.putShort((short) getOption.ordinal());
       bufferToSend.flip();
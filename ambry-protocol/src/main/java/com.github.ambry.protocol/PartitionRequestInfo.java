@@ -16,6 +16,7 @@ package com.github.ambry.protocol;
 import com.github.ambry.clustermap.ClusterMap;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.commons.BlobId;
+import com.github.ambry.router.ByteRange;
 import com.github.ambry.store.StoreKey;
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -26,17 +27,32 @@ import java.util.List;
 
 /**
  * Contains the partition and the blob ids requested from a partition. This is used
- * by get request to specify the blob ids in a partition
+ * by get request to specify the blob ids in a partition. Optionally, a byte range of the content of each blob can be
+ * requested instead of the whole blob.
  */
 public class PartitionRequestInfo {
 
   private final PartitionId partitionId;
   private final List<BlobId> blobIds;
+  private final List<ByteRange> byteRanges;
   private long totalIdSize;
 
   private static final int Blob_Id_Count_Size_InBytes = 4;
+  private static final int Byte_Range_Size_In_Bytes = 16;
+  private static final long Undefined_Offset = -1;
 
   public PartitionRequestInfo(PartitionId partitionId, List<BlobId> blobIds) {
+    this(partitionId, blobIds, null);
+  }
+
+  /**
+   * @param partitionId the {@link PartitionId} that the blobs belong to.
+   * @param blobIds the ids of the blobs requested.
+   * @param byteRanges the byte ranges of the content of the blobs requested, in the same order as {@code blobIds}. A
+   *                   {@code null} entry requests the whole blob. The ranges must have defined start and end offsets.
+   *                   Can be {@code null} if the whole of every blob is requested.
+   */
+  public PartitionRequestInfo(PartitionId partitionId, List<BlobId> blobIds, List<ByteRange> byteRanges) {
     this.partitionId = partitionId;
     this.blobIds = blobIds;
     totalIdSize = 0;
@@ -46,6 +62,18 @@ public class PartitionRequestInfo {
         throw new IllegalArgumentException("Not all blob IDs in GetRequest are from the same partition.");
       }
     }
+    if (byteRanges != null) {
+      if (byteRanges.size() != blobIds.size()) {
+        throw new IllegalArgumentException(
+            "Number of byte ranges " + byteRanges.size() + " does not match number of blob IDs " + blobIds.size());
+      }
+      for (ByteRange byteRange : byteRanges) {
+        if (byteRange != null && byteRange.getType() != ByteRange.ByteRangeType.OFFSET_RANGE) {
+          throw new IllegalArgumentException("Byte range in GetRequest must be an offset range: " + byteRange);
+        }
+      }
+    }
+    this.byteRanges = byteRanges;
   }
 
   public PartitionId getPartition() {
@@ -56,7 +84,41 @@ public class PartitionRequestInfo {
     return blobIds;
   }
 
+  /**
+   * @return the byte ranges of the content of the blobs requested, in the same order as the blob ids, or {@code null}
+   *         if the whole of every blob is requested. A {@code null} entry means that the whole blob is requested.
+   */
+  public List<ByteRange> getByteRanges() {
+    return byteRanges;
+  }
+
+  /**
+   * @return {@code true} if a byte range is requested for at least one of the blobs.
+   */
+  boolean hasByteRanges() {
+    if (byteRanges != null) {
+      for (ByteRange byteRange : byteRanges) {
+        if (byteRange != null) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   public static PartitionRequestInfo readFrom(DataInputStream stream, ClusterMap clusterMap) throws IOException {
+    return readFrom(stream, clusterMap, false);
+  }
+
+  /**
+   * @param stream the stream to read from.
+   * @param clusterMap the {@link ClusterMap} to use to read the blob ids.
+   * @param withByteRanges {@code true} if the serialized form contains a byte range for each blob id.
+   * @return the {@link PartitionRequestInfo} read from {@code stream}.
+   * @throws IOException if the {@link PartitionRequestInfo} could not be read.
+   */
+  static PartitionRequestInfo readFrom(DataInputStream stream, ClusterMap clusterMap, boolean withByteRanges)
+      throws IOException {
     int blobCount = stream.readInt();
     ArrayList<BlobId> ids = new ArrayList<BlobId>(blobCount);
     PartitionId partitionId = null;
@@ -68,18 +130,55 @@ public class PartitionRequestInfo {
       ids.add(id);
       blobCount--;
     }
-    return new PartitionRequestInfo(partitionId, ids);
+    List<ByteRange> byteRanges = null;
+    if (withByteRanges) {
+      boolean hasByteRanges = false;
+      byteRanges = new ArrayList<>(ids.size());
+      for (int i = 0; i < ids.size(); i++) {
+        long startOffset = stream.readLong();
+        long endOffset = stream.readLong();
+        hasByteRanges |= startOffset != Undefined_Offset;
+        byteRanges.add(startOffset == Undefined_Offset ? null : ByteRange.fromOffsetRange(startOffset, endOffset));
+      }
+      if (!hasByteRanges) {
+        byteRanges = null;
+      }
+    }
+    return new PartitionRequestInfo(partitionId, ids, byteRanges);
   }
 
   public void writeTo(ByteBuffer byteBuffer) {
+    writeTo(byteBuffer, false);
+  }
+
+  /**
+   * @param byteBuffer the buffer to write to.
+   * @param withByteRanges {@code true} if a byte range has to be written for each blob id.
+   */
+  void writeTo(ByteBuffer byteBuffer, boolean withByteRanges) {
     byteBuffer.putInt(blobIds.size());
     for (BlobId blobId : blobIds) {
       byteBuffer.put(blobId.toBytes());
     }
+    if (withByteRanges) {
+      for (int i = 0; i < blobIds.size(); i++) {
+        ByteRange byteRange = byteRanges == null ? null : byteRanges.get(i);
+        byteBuffer.putLong(byteRange == null ? Undefined_Offset : byteRange.getStartOffset());
+        byteBuffer.putLong(byteRange == null ? Undefined_Offset : byteRange.getEndOffset());
+      }
+    }
   }
 
   public long sizeInBytes() {
-    return Blob_Id_Count_Size_InBytes + totalIdSize;
+    return sizeInBytes(false);
+  }
+
+  /**
+   * @param withByteRanges {@code true} if a byte range is serialized for each blob id.
+   * @return the size of the serialized form.
+   */
+  long sizeInBytes(boolean withByteRanges) {
+    return Blob_Id_Count_Size_InBytes + totalIdSize + (withByteRanges ? blobIds.size() * Byte_Range_Size_In_Bytes : 0);
   }
 
   @Override
@@ -87,6 +186,9 @@ public class PartitionRequestInfo {
     StringBuilder sb = new StringBuilder();
     sb.append(", ").append("PartitionId=").append(partitionId);
     sb.append("ListOfBlobIDs=").append(blobIds);
+    if (hasByteRanges()) {
+      sb.append(", ").append("ByteRanges=").append(byteRanges);
+    }
     return sb.toString();
   }
 }
@@ -84,12 +84,38 @@ public class PutRequest extends RequestOrResponse {
   }
 
   public static ReceivedPutRequest readFrom(DataInputStream stream, ClusterMap map) throws IOException {
+    return readFrom(stream, null, map);
+  }
+
+  /**
+   * Reads a PutRequest from a stream over a buffer that holds the whole request (for e.g. a request received from the
+   * network). The blob is not copied out of the buffer - the blob stream of the returned request is a view of the
+   * buffer, which must therefore not be modified while the request is in use.
+   * @param stream the {@link ByteBufferInputStream} to read the request from.
+   * @param map the {@link ClusterMap} to use.
+   * @return the {@link ReceivedPutRequest} read from the stream.
+   * @throws IOException if the request could not be read or if its CRC does not match its contents.
+   */
+  public static ReceivedPutRequest readFrom(ByteBufferInputStream stream, ClusterMap map) throws IOException {
+    return readFrom(new DataInputStream(stream), stream, map);
+  }
+
+  /**
+   * @param stream the {@link DataInputStream} to read the request from.
+   * @param bufferStream the {@link ByteBufferInputStream} that {@code stream} reads from, if the blob can be sliced out
+   *                     of it instead of being copied. Can be {@code null}.
+   * @param map the {@link ClusterMap} to use.
+   * @return the {@link ReceivedPutRequest} read from the stream.
+   * @throws IOException if the request could not be read.
+   */
+  private static ReceivedPutRequest readFrom(DataInputStream stream, ByteBufferInputStream bufferStream,
+      ClusterMap map) throws IOException {
     short versionId = stream.readShort();
     switch (versionId) {
       case Put_Request_Version_V2:
         return PutRequest_V2.readFrom(stream, map);
       case Put_Request_Version_V3:
-        return PutRequest_V3.readFrom(stream, map);
+        return PutRequest_V3.readFrom(stream, bufferStream, map);
       default:
         throw new IllegalStateException("Unknown Request response version" + versionId);
     }
@@ -201,17 +227,35 @@ public class PutRequest extends RequestOrResponse {
    * Class to read protocol version 3 PutRequest from the stream.
    */
   private static class PutRequest_V3 {
-    static ReceivedPutRequest readFrom(DataInputStream stream, ClusterMap map) throws IOException {
+    /**
+     * Reads the request and verifies its CRC before returning it, so that no part of an unreliable blob is stored.
+     * @param stream the {@link DataInputStream} to read the request from.
+     * @param bufferStream the {@link ByteBufferInputStream} that {@code stream} reads from. If not {@code null}, the
+     *                     blob is checksummed in place and sliced out of it instead of being copied.
+     * @param map the {@link ClusterMap} to use.
+     * @return the {@link ReceivedPutRequest} read from the stream.
+     * @throws IOException if the request could not be read or if its CRC does not match its contents.
+     */
+    static ReceivedPutRequest readFrom(DataInputStream stream, ByteBufferInputStream bufferStream, ClusterMap map)
+        throws IOException {
       int correlationId = stream.readInt();
       String clientId = Utils.readIntString(stream);
-      CrcInputStream crcInputStream = new CrcInputStream(stream);
+      Crc32 crc = new Crc32();
+      CrcInputStream crcInputStream = new CrcInputStream(crc, stream);
       stream = new DataInputStream(crcInputStream);
       BlobId id = new BlobId(stream, map);
       BlobProperties properties = BlobPropertiesSerDe.getBlobPropertiesFromStream(stream);
       ByteBuffer metadata = Utils.readIntBuffer(stream);
       BlobType blobType = BlobType.values()[stream.readShort()];
       long blobSize = stream.readLong();
-      ByteBufferInputStream blobStream = new ByteBufferInputStream(stream, (int) blobSize);
+      ByteBufferInputStream blobStream;
+      if (bufferStream != null) {
+        // the stream does not buffer, so the blob starts at the current position of the buffer.
+        blobStream = bufferStream.readSlice((int) blobSize);
+        blobStream.updateCrc(crc);
+      } else {
+        blobStream = new ByteBufferInputStream(stream, (int) blobSize);
+      }
       long computedCrc = crcInputStream.getValue();
       long receivedCrc = stream.readLong();
       if (computedCrc != receivedCrc) {
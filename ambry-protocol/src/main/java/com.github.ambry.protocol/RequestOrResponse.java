@@ -13,7 +13,7 @@
  */
 package com.github.ambry.protocol;
 
-import com.github.ambry.network.Send;
+import com.github.ambry.network.SendWithCorrelationId;
 import java.nio.ByteBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +22,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Request Response for serialization and de-serialization
  */
-public abstract class RequestOrResponse implements Send {
+public abstract class RequestOrResponse implements SendWithCorrelationId {
   protected final RequestOrResponseType type;
   protected final int correlationId;
   protected short versionId;
@@ -48,6 +48,7 @@ public abstract class RequestOrResponse implements Send {
     return type;
   }
 
+  @Override
   public int getCorrelationId() {
     return correlationId;
   }
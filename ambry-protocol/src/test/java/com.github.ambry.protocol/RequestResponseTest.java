@@ -25,10 +25,12 @@ import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.messageformat.BlobProperties;
 import com.github.ambry.messageformat.BlobType;
 import com.github.ambry.messageformat.MessageFormatFlags;
+import com.github.ambry.router.ByteRange;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.FindTokenFactory;
 import com.github.ambry.store.MessageInfo;
 import com.github.ambry.utils.ByteBufferChannel;
+import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Utils;
@@ -39,6 +41,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import org.junit.Assert;
@@ -131,6 +134,59 @@ public class RequestResponseTest {
       deserializedPutRequest.getBlobStream().read(blobRead);
       Assert.assertArrayEquals(blob, blobRead);
     }
+
+    // read from a buffer that holds the whole request, in which case the blob is sliced out of the buffer.
+    PutRequest request =
+        new PutRequest(correlationId, clientId, blobId, blobProperties, ByteBuffer.wrap(userMetadata),
+            ByteBuffer.wrap(blob), blobSize, blobType);
+    ByteBuffer heapBuffer = serializeForBufferRead(request);
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(heapBuffer.remaining());
+    directBuffer.put(heapBuffer.duplicate());
+    directBuffer.flip();
+    for (ByteBuffer requestBuffer : new ByteBuffer[]{heapBuffer, directBuffer}) {
+      PutRequest.ReceivedPutRequest deserializedPutRequest =
+          PutRequest.readFrom(new ByteBufferInputStream(requestBuffer.duplicate()), clusterMap);
+      Assert.assertEquals(blobId, deserializedPutRequest.getBlobId());
+      Assert.assertArrayEquals(userMetadata, deserializedPutRequest.getUsermetadata().array());
+      Assert.assertEquals(blobSize, deserializedPutRequest.getBlobSize());
+      Assert.assertEquals(blobType, deserializedPutRequest.getBlobType());
+      Assert.assertEquals("Blob stream should contain only the blob", blobSize,
+          deserializedPutRequest.getBlobStream().available());
+      byte[] blobRead = new byte[blobSize];
+      deserializedPutRequest.getBlobStream().read(blobRead);
+      Assert.assertArrayEquals(blob, blobRead);
+
+      // a corrupt blob has to be detected even though it is not copied.
+      if (blobSize > 0) {
+        int blobByteIndex = requestBuffer.limit() - 8 - 1;
+        requestBuffer.put(blobByteIndex, (byte) (requestBuffer.get(blobByteIndex) + 1));
+        try {
+          PutRequest.readFrom(new ByteBufferInputStream(requestBuffer.duplicate()), clusterMap);
+          Assert.fail("Deserialization of PutRequest with a corrupt blob should have failed");
+        } catch (IOException e) {
+          // expected. Nothing to do.
+        }
+      }
+    }
+  }
+
+  /**
+   * Serializes {@code requestOrResponse} into a buffer the way a request is received by the server.
+   * @param requestOrResponse the {@link RequestOrResponse} to serialize.
+   * @return the buffer that contains the serialized request, positioned after its size and type.
+   * @throws IOException
+   */
+  private ByteBuffer serializeForBufferRead(RequestOrResponse requestOrResponse) throws IOException {
+    ByteBufferChannel channel = new ByteBufferChannel(ByteBuffer.allocate((int) requestOrResponse.sizeInBytes()));
+    while (!requestOrResponse.isSendComplete()) {
+      requestOrResponse.writeTo(channel);
+    }
+    ByteBuffer buffer = channel.getBuffer();
+    buffer.flip();
+    // skip size and type
+    buffer.getLong();
+    buffer.getShort();
+    return buffer;
   }
 
   private void testPutRequestInvalidVersion(MockClusterMap clusterMap, int correlationId, String clientId,
@@ -223,6 +279,30 @@ public class RequestResponseTest {
     Assert.assertEquals(deserializedGetRequest.getPartitionInfoList().size(), 1);
     Assert.assertEquals(deserializedGetRequest.getPartitionInfoList().get(0).getBlobIds().size(), 1);
     Assert.assertEquals(deserializedGetRequest.getPartitionInfoList().get(0).getBlobIds().get(0), id1);
+    Assert.assertNull("There should be no byte ranges",
+        deserializedGetRequest.getPartitionInfoList().get(0).getByteRanges());
+
+    // byte ranges
+    BlobId id2 = new BlobId(BlobId.DEFAULT_FLAG, ClusterMapUtils.UNKNOWN_DATACENTER_ID, accountId, containerId,
+        clusterMap.getWritablePartitionIds().get(0));
+    List<ByteRange> byteRanges = Arrays.asList(ByteRange.fromOffsetRange(10, 20), null);
+    partitionRequestInfoList.add(new PartitionRequestInfo(id1.getPartition(), Arrays.asList(id1, id2), byteRanges));
+    getRequest = new GetRequest(1234, "clientId", MessageFormatFlags.Blob, partitionRequestInfoList, GetOption.None);
+    requestStream = serAndPrepForRead(getRequest, -1, true);
+    deserializedGetRequest = GetRequest.readFrom(requestStream, clusterMap);
+    Assert.assertEquals("Partition info count mismatch", 2, deserializedGetRequest.getPartitionInfoList().size());
+    Assert.assertNull("There should be no byte ranges",
+        deserializedGetRequest.getPartitionInfoList().get(0).getByteRanges());
+    PartitionRequestInfo deserializedInfo = deserializedGetRequest.getPartitionInfoList().get(1);
+    Assert.assertEquals("Blob ids mismatch", Arrays.asList(id1, id2), deserializedInfo.getBlobIds());
+    Assert.assertEquals("Byte ranges mismatch", byteRanges, deserializedInfo.getByteRanges());
+    try {
+      new GetRequest(1234, "clientId", MessageFormatFlags.All, partitionRequestInfoList, GetOption.None);
+      Assert.fail("Byte ranges should only be allowed with the Blob flag");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+    partitionRequestInfoList.remove(1);
 
     long operationTimeMs = SystemTime.getInstance().milliseconds() + TestUtils.RANDOM.nextInt();
     MessageInfo messageInfo = new MessageInfo(id1, 1000, 1000, accountId, containerId, operationTimeMs);
@@ -32,6 +32,11 @@ import com.github.ambry.messageformat.MessageSievingInputStream;
 import com.github.ambry.network.ChannelOutput;
 import com.github.ambry.network.ConnectedChannel;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NetworkClient;
+import com.github.ambry.network.NetworkClientErrorCode;
+import com.github.ambry.network.RequestInfo;
+import com.github.ambry.network.ResponseInfo;
+import com.github.ambry.network.Send;
 import com.github.ambry.notification.BlobReplicaSourceType;
 import com.github.ambry.notification.NotificationSystem;
 import com.github.ambry.protocol.GetOption;
@@ -52,15 +57,22 @@ import com.github.ambry.store.StoreKey;
 import com.github.ambry.store.StoreKeyFactory;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -72,6 +84,7 @@ import org.slf4j.LoggerFactory;
  * A replica thread is responsible for handling replication for a set of partitions assigned to it
  */
 class ReplicaThread implements Runnable {
+  private static final int NETWORK_CLIENT_POLL_TIMEOUT_MS = 10;
 
   private final Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicateGroupedByNode;
   private final Set<PartitionId> replicationDisabledPartitions = new HashSet<>();
@@ -100,6 +113,13 @@ class ReplicaThread implements Runnable {
   private final String datacenterName;
   private final ReentrantLock lock = new ReentrantLock();
   private final Condition pauseCondition = lock.newCondition();
+  private final NetworkClient networkClient;
+  private final List<RemoteNodeReplicationState> remoteNodeReplicationStates = new ArrayList<>();
+  private final Map<RequestInfo, RemoteNodeReplicationState> requestsInFlight = new HashMap<>();
+  private final ExecutorService writeExecutor;
+  private final Queue<RemoteNodeReplicationState> nodesWithCompletedWrites = new ConcurrentLinkedQueue<>();
+  private final int maxPendingWrites;
+  private int pendingWrites = 0;
 
   private volatile boolean allDisabled = false;
 
@@ -108,7 +128,7 @@ class ReplicaThread implements Runnable {
       DataNodeId dataNodeId, ConnectionPool connectionPool, ReplicationConfig replicationConfig,
       ReplicationMetrics replicationMetrics, NotificationSystem notification, StoreKeyFactory storeKeyFactory,
       boolean validateMessageStream, MetricRegistry metricRegistry, boolean replicatingOverSsl, String datacenterName,
-      ResponseHandler responseHandler) {
+      ResponseHandler responseHandler, NetworkClient networkClient) {
     this.threadName = threadName;
     this.replicasToReplicateGroupedByNode = replicasToReplicateGroupedByNode;
     this.running = true;
@@ -128,11 +148,23 @@ class ReplicaThread implements Runnable {
     this.waitEnabled = !replicatingFromRemoteColo;
     this.replicatingOverSsl = replicatingOverSsl;
     this.datacenterName = datacenterName;
+    this.networkClient = networkClient;
+    if (networkClient != null && replicationConfig.replicationPipelinedEnabled) {
+      writeExecutor = Executors.newSingleThreadExecutor(
+          runnable -> Utils.newThread(threadName + "-writer", runnable, true));
+      maxPendingWrites = replicationConfig.replicationPipelinedMaxPendingWrites;
+    } else {
+      writeExecutor = null;
+      maxPendingWrites = Integer.MAX_VALUE;
+    }
     Set<PartitionId> partitions = new HashSet<>();
     for (Map.Entry<DataNodeId, List<RemoteReplicaInfo>> entry : replicasToReplicateGroupedByNode.entrySet()) {
       for (RemoteReplicaInfo info : entry.getValue()) {
         partitions.add(info.getReplicaId().getPartitionId());
       }
+      if (networkClient != null && !entry.getValue().isEmpty()) {
+        remoteNodeReplicationStates.add(new RemoteNodeReplicationState(entry.getValue()));
+      }
     }
     allReplicatedPartitions = Collections.unmodifiableSet(partitions);
   }
@@ -188,10 +220,14 @@ class ReplicaThread implements Runnable {
       }
       logger.info("Begin iteration for thread " + threadName);
       while (running) {
-        replicate(replicasToReplicate);
+        if (networkClient != null) {
+          replicateNonBlocking();
+        } else {
+          replicate(replicasToReplicate);
+        }
         lock.lock();
         try {
-          if (running && allDisabled) {
+          if (running && allDisabled && isIdle()) {
             pauseCondition.await();
           }
         } catch (Exception e) {
@@ -202,10 +238,73 @@ class ReplicaThread implements Runnable {
       }
     } finally {
       running = false;
+      if (writeExecutor != null) {
+        drainWrites();
+      }
+      if (networkClient != null) {
+        networkClient.close();
+      }
       shutdownLatch.countDown();
     }
   }
 
+  /**
+   * Stops the write stage once the writes that are in progress or pending have completed. Interrupting a write to a
+   * store would close the channel of its log segment and leave a partial message behind, so the writer thread is only
+   * interrupted if the writes do not complete within the drain timeout.
+   */
+  private void drainWrites() {
+    writeExecutor.shutdown();
+    try {
+      if (!writeExecutor.awaitTermination(replicationConfig.replicationPipelinedWriteDrainTimeoutMs,
+          TimeUnit.MILLISECONDS)) {
+        logger.error("Writes to the local stores of {} did not complete within {} ms, interrupting them", threadName,
+            replicationConfig.replicationPipelinedWriteDrainTimeoutMs);
+        writeExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      logger.error("Interrupted while waiting for the writes to the local stores of {} to complete", threadName, e);
+      writeExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the number of fetched batches of messages that are yet to be written to the local stores.
+   */
+  int getPendingWrites() {
+    return pendingWrites;
+  }
+
+  /**
+   * @return {@code true} if there is no replication from a remote node in progress. This is always the case when
+   * replicating over blocking connections.
+   */
+  private boolean isIdle() {
+    for (RemoteNodeReplicationState remoteNodeReplicationState : remoteNodeReplicationStates) {
+      if (remoteNodeReplicationState.stage != ReplicationStage.Idle) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param replicasToReplicatePerNode the replicas of a remote node.
+   * @return the replicas in {@code replicasToReplicatePerNode} that are up and whose partitions have replication
+   * enabled.
+   */
+  private List<RemoteReplicaInfo> getActiveReplicas(List<RemoteReplicaInfo> replicasToReplicatePerNode) {
+    List<RemoteReplicaInfo> activeReplicasPerNode = new ArrayList<RemoteReplicaInfo>();
+    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
+      ReplicaId replicaId = remoteReplicaInfo.getReplicaId();
+      if (!replicationDisabledPartitions.contains(replicaId.getPartitionId()) && !replicaId.isDown()) {
+        activeReplicasPerNode.add(remoteReplicaInfo);
+      }
+    }
+    return activeReplicasPerNode;
+  }
+
   /**
    * Replicas from the given replicas
    * @param replicasToReplicate list of {@link RemoteReplicaInfo} by data node
@@ -246,13 +345,7 @@ class ReplicaThread implements Runnable {
       long replicationStartTimeInMs = SystemTime.getInstance().milliseconds();
       long startTimeInMs = replicationStartTimeInMs;
 
-      List<RemoteReplicaInfo> activeReplicasPerNode = new ArrayList<RemoteReplicaInfo>();
-      for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
-        ReplicaId replicaId = remoteReplicaInfo.getReplicaId();
-        if (!replicationDisabledPartitions.contains(replicaId.getPartitionId()) && !replicaId.isDown()) {
-          activeReplicasPerNode.add(remoteReplicaInfo);
-        }
-      }
+      List<RemoteReplicaInfo> activeReplicasPerNode = getActiveReplicas(replicasToReplicatePerNode);
       if (activeReplicasPerNode.size() > 0) {
         try {
           connectedChannel =
@@ -302,6 +395,36 @@ class ReplicaThread implements Runnable {
     }
   }
 
+  /**
+   * Replicates from all the remote nodes at the same time using the {@link NetworkClient}. Sends the requests that are
+   * due to the remote nodes, polls for responses and hands the responses received to the nodes that they are for. Every
+   * remote node goes through its replication cycle independently of the others, so a slow node does not hold up
+   * replication from the rest. This is expected to be called repeatedly.
+   */
+  void replicateNonBlocking() {
+    RemoteNodeReplicationState nodeWithCompletedWrite;
+    while ((nodeWithCompletedWrite = nodesWithCompletedWrites.poll()) != null) {
+      nodeWithCompletedWrite.onWriteComplete();
+    }
+    List<RequestInfo> requestsToSend = new ArrayList<>();
+    for (RemoteNodeReplicationState remoteNodeReplicationState : remoteNodeReplicationStates) {
+      if (!running) {
+        break;
+      }
+      remoteNodeReplicationState.poll(requestsToSend);
+    }
+    List<ResponseInfo> responseInfoList = networkClient.sendAndPoll(requestsToSend, NETWORK_CLIENT_POLL_TIMEOUT_MS);
+    for (ResponseInfo responseInfo : responseInfoList) {
+      RemoteNodeReplicationState remoteNodeReplicationState = requestsInFlight.remove(responseInfo.getRequestInfo());
+      if (remoteNodeReplicationState == null) {
+        logger.trace("Thread name: {} Ignoring response for a request that timed out or was discarded", threadName);
+        responseInfo.release();
+      } else if (!remoteNodeReplicationState.onResponse(responseInfo)) {
+        responseInfo.release();
+      }
+    }
+  }
+
   /**
    * Gets all the metadata about messages from the remote replicas since last token. Checks the messages with the local
    * store and finds all the messages that are missing. For the messages that are not missing, updates the delete
@@ -327,51 +450,8 @@ class ReplicaThread implements Runnable {
         DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
         ReplicaMetadataResponse response =
             getReplicaMetadataResponse(replicasToReplicatePerNode, connectedChannel, remoteNode);
-        long startTimeInMs = SystemTime.getInstance().milliseconds();
         waitEnabled = !replicatingFromRemoteColo;
-        for (int i = 0; i < response.getReplicaMetadataResponseInfoList().size(); i++) {
-          RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
-          ReplicaMetadataResponseInfo replicaMetadataResponseInfo =
-              response.getReplicaMetadataResponseInfoList().get(i);
-          responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
-          if (replicaMetadataResponseInfo.getError() == ServerErrorCode.No_Error) {
-            try {
-              logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token from remote: {} Replica lag: {} ",
-                  remoteNode, threadName, remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getFindToken(),
-                  replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
-              if (waitEnabled) {
-                waitIfRequired(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
-              }
-              Set<StoreKey> missingStoreKeys =
-                  getMissingStoreKeys(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
-              processReplicaMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo, remoteReplicaInfo,
-                  remoteNode);
-              ExchangeMetadataResponse exchangeMetadataResponse =
-                  new ExchangeMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo.getFindToken(),
-                      replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
-              exchangeMetadataResponseList.add(exchangeMetadataResponse);
-            } catch (Exception e) {
-              replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
-              logger.error(
-                  "Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replica: " + remoteReplicaInfo
-                      .getReplicaId(), e);
-              responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), e);
-              ExchangeMetadataResponse exchangeMetadataResponse =
-                  new ExchangeMetadataResponse(ServerErrorCode.Unknown_Error);
-              exchangeMetadataResponseList.add(exchangeMetadataResponse);
-            }
-          } else {
-            replicationMetrics.updateMetadataRequestError(remoteReplicaInfo.getReplicaId());
-            logger.error("Remote node: {} Thread name: {} Remote replica: {} Server error: {}", remoteNode, threadName,
-                remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
-            ExchangeMetadataResponse exchangeMetadataResponse =
-                new ExchangeMetadataResponse(replicaMetadataResponseInfo.getError());
-            exchangeMetadataResponseList.add(exchangeMetadataResponse);
-          }
-        }
-        long processMetadataResponseTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-        logger.trace("Remote node: {} Thread name: {} processMetadataResponseTime: {}", remoteNode, threadName,
-            processMetadataResponseTimeInMs);
+        exchangeMetadataResponseList = handleReplicaMetadataResponse(response, replicasToReplicatePerNode, remoteNode);
       } finally {
         long exchangeMetadataTime = SystemTime.getInstance().milliseconds() - exchangeMetadataStartTimeInMs;
         replicationMetrics.updateExchangeMetadataTime(exchangeMetadataTime, replicatingFromRemoteColo,
@@ -416,6 +496,64 @@ class ReplicaThread implements Runnable {
     }
   }
 
+  /**
+   * Processes the {@link ReplicaMetadataResponse} received from a remote node. Checks the messages with the local
+   * stores and finds the messages that are missing. For the messages that are not missing, updates the delete and ttl
+   * state.
+   * @param response the {@link ReplicaMetadataResponse} received from {@code remoteNode}.
+   * @param replicasToReplicatePerNode The information about the replicas that is being replicated
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return - List of ExchangeMetadataResponse that contains the set of store keys that are missing from the local
+   *           store and are present in the remote replicas and also the new token from the remote replicas
+   */
+  private List<ExchangeMetadataResponse> handleReplicaMetadataResponse(ReplicaMetadataResponse response,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode) {
+    List<ExchangeMetadataResponse> exchangeMetadataResponseList = new ArrayList<ExchangeMetadataResponse>();
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
+    for (int i = 0; i < response.getReplicaMetadataResponseInfoList().size(); i++) {
+      RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
+      ReplicaMetadataResponseInfo replicaMetadataResponseInfo = response.getReplicaMetadataResponseInfoList().get(i);
+      responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
+      if (replicaMetadataResponseInfo.getError() == ServerErrorCode.No_Error) {
+        try {
+          logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token from remote: {} Replica lag: {} ",
+              remoteNode, threadName, remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getFindToken(),
+              replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
+          if (waitEnabled) {
+            waitIfRequired(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
+          }
+          Set<StoreKey> missingStoreKeys =
+              getMissingStoreKeys(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
+          processReplicaMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo, remoteReplicaInfo, remoteNode);
+          ExchangeMetadataResponse exchangeMetadataResponse =
+              new ExchangeMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo.getFindToken(),
+                  replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
+          exchangeMetadataResponseList.add(exchangeMetadataResponse);
+        } catch (Exception e) {
+          replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
+          logger.error(
+              "Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replica: " + remoteReplicaInfo
+                  .getReplicaId(), e);
+          responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), e);
+          ExchangeMetadataResponse exchangeMetadataResponse =
+              new ExchangeMetadataResponse(ServerErrorCode.Unknown_Error);
+          exchangeMetadataResponseList.add(exchangeMetadataResponse);
+        }
+      } else {
+        replicationMetrics.updateMetadataRequestError(remoteReplicaInfo.getReplicaId());
+        logger.error("Remote node: {} Thread name: {} Remote replica: {} Server error: {}", remoteNode, threadName,
+            remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
+        ExchangeMetadataResponse exchangeMetadataResponse =
+            new ExchangeMetadataResponse(replicaMetadataResponseInfo.getError());
+        exchangeMetadataResponseList.add(exchangeMetadataResponse);
+      }
+    }
+    long processMetadataResponseTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+    logger.trace("Remote node: {} Thread name: {} processMetadataResponseTime: {}", remoteNode, threadName,
+        processMetadataResponseTimeInMs);
+    return exchangeMetadataResponseList;
+  }
+
   /**
    * Gets the replica metadata response for a list of remote replicas on a given remote data node
    * @param replicasToReplicatePerNode The list of remote replicas for a node
@@ -428,21 +566,8 @@ class ReplicaThread implements Runnable {
   private ReplicaMetadataResponse getReplicaMetadataResponse(List<RemoteReplicaInfo> replicasToReplicatePerNode,
       ConnectedChannel connectedChannel, DataNodeId remoteNode) throws ReplicationException, IOException {
     long replicaMetadataRequestStartTime = SystemTime.getInstance().milliseconds();
-    List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList = new ArrayList<ReplicaMetadataRequestInfo>();
-    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
-      ReplicaMetadataRequestInfo replicaMetadataRequestInfo =
-          new ReplicaMetadataRequestInfo(remoteReplicaInfo.getReplicaId().getPartitionId(),
-              remoteReplicaInfo.getToken(), dataNodeId.getHostname(),
-              remoteReplicaInfo.getLocalReplicaId().getReplicaPath());
-      replicaMetadataRequestInfoList.add(replicaMetadataRequestInfo);
-      logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token going to be sent to remote: {} ",
-          remoteNode, threadName, remoteReplicaInfo.getReplicaId(), remoteReplicaInfo.getToken());
-    }
-
+    ReplicaMetadataRequest request = createReplicaMetadataRequest(replicasToReplicatePerNode, remoteNode);
     try {
-      ReplicaMetadataRequest request = new ReplicaMetadataRequest(correlationIdGenerator.incrementAndGet(),
-          "replication-metadata-" + dataNodeId.getHostname(), replicaMetadataRequestInfoList,
-          replicationConfig.replicationFetchSizeInBytes);
       connectedChannel.send(request);
       ChannelOutput channelOutput = connectedChannel.receive();
       ByteBufferInputStream byteBufferInputStream =
@@ -455,15 +580,7 @@ class ReplicaThread implements Runnable {
       long metadataRequestTime = SystemTime.getInstance().milliseconds() - replicaMetadataRequestStartTime;
       replicationMetrics.updateMetadataRequestTime(metadataRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
           datacenterName);
-
-      if (response.getError() != ServerErrorCode.No_Error
-          || response.getReplicaMetadataResponseInfoList().size() != replicasToReplicatePerNode.size()) {
-        logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
-            + replicasToReplicatePerNode + " Replica metadata response error: " + response.getError()
-            + " ReplicaMetadataResponseInfoListSize: " + response.getReplicaMetadataResponseInfoList().size()
-            + " ReplicasToReplicatePerNodeSize: " + replicasToReplicatePerNode.size());
-        throw new ReplicationException("Replica Metadata Response Error " + response.getError());
-      }
+      validateReplicaMetadataResponse(response, replicasToReplicatePerNode, remoteNode);
       return response;
     } catch (IOException e) {
       responseHandler.onEvent(replicasToReplicatePerNode.get(0).getReplicaId(), e);
@@ -471,6 +588,66 @@ class ReplicaThread implements Runnable {
     }
   }
 
+  /**
+   * Creates the {@link ReplicaMetadataRequest} that asks a remote node for the messages written to its replicas since
+   * the tokens of those replicas.
+   * @param replicasToReplicatePerNode The list of remote replicas for a node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return the {@link ReplicaMetadataRequest} to send to {@code remoteNode}.
+   */
+  private ReplicaMetadataRequest createReplicaMetadataRequest(List<RemoteReplicaInfo> replicasToReplicatePerNode,
+      DataNodeId remoteNode) {
+    List<FindToken> tokens = new ArrayList<>(replicasToReplicatePerNode.size());
+    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
+      tokens.add(remoteReplicaInfo.getToken());
+    }
+    return createReplicaMetadataRequest(replicasToReplicatePerNode, tokens, remoteNode);
+  }
+
+  /**
+   * Creates the {@link ReplicaMetadataRequest} that asks a remote node for the messages written to its replicas since
+   * the given tokens.
+   * @param replicasToReplicatePerNode The list of remote replicas for a node
+   * @param tokens the tokens to send for the replicas in {@code replicasToReplicatePerNode}, in the same order.
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return the {@link ReplicaMetadataRequest} to send to {@code remoteNode}.
+   */
+  private ReplicaMetadataRequest createReplicaMetadataRequest(List<RemoteReplicaInfo> replicasToReplicatePerNode,
+      List<FindToken> tokens, DataNodeId remoteNode) {
+    List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList = new ArrayList<ReplicaMetadataRequestInfo>();
+    for (int i = 0; i < replicasToReplicatePerNode.size(); i++) {
+      RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
+      ReplicaMetadataRequestInfo replicaMetadataRequestInfo =
+          new ReplicaMetadataRequestInfo(remoteReplicaInfo.getReplicaId().getPartitionId(), tokens.get(i),
+              dataNodeId.getHostname(), remoteReplicaInfo.getLocalReplicaId().getReplicaPath());
+      replicaMetadataRequestInfoList.add(replicaMetadataRequestInfo);
+      logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token going to be sent to remote: {} ",
+          remoteNode, threadName, remoteReplicaInfo.getReplicaId(), tokens.get(i));
+    }
+    return new ReplicaMetadataRequest(correlationIdGenerator.incrementAndGet(),
+        "replication-metadata-" + dataNodeId.getHostname(), replicaMetadataRequestInfoList,
+        replicationConfig.replicationFetchSizeInBytes);
+  }
+
+  /**
+   * Checks that a {@link ReplicaMetadataResponse} has no error and has a response for every replica that was asked for.
+   * @param response the {@link ReplicaMetadataResponse} received from {@code remoteNode}.
+   * @param replicasToReplicatePerNode The list of remote replicas for a node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @throws ReplicationException if the response has an error or is missing responses for some replicas.
+   */
+  private void validateReplicaMetadataResponse(ReplicaMetadataResponse response,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode) throws ReplicationException {
+    if (response.getError() != ServerErrorCode.No_Error
+        || response.getReplicaMetadataResponseInfoList().size() != replicasToReplicatePerNode.size()) {
+      logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
+          + replicasToReplicatePerNode + " Replica metadata response error: " + response.getError()
+          + " ReplicaMetadataResponseInfoListSize: " + response.getReplicaMetadataResponseInfoList().size()
+          + " ReplicasToReplicatePerNodeSize: " + replicasToReplicatePerNode.size());
+      throw new ReplicationException("Replica Metadata Response Error " + response.getError());
+    }
+  }
+
   /**
    * Gets the missing store keys by comparing the messages from the remote node
    * @param replicaMetadataResponseInfo The response that contains the messages from the remote node
@@ -623,6 +800,26 @@ class ReplicaThread implements Runnable {
     replicationMetrics.intraColoReplicationWaitTime.update(SystemTime.getInstance().milliseconds() - startTime);
   }
 
+  /**
+   * Checks whether replication has to wait between replicas before processing the given response. This is the
+   * non-blocking counterpart of {@link #waitIfRequired(ReplicaMetadataResponseInfo, DataNodeId, RemoteReplicaInfo)}.
+   * @param response the {@link ReplicaMetadataResponse} received from a remote node.
+   * @return {@code true} if replicating from the local datacenter and the lag of any of the remote replicas is less
+   * than {@link ReplicationConfig#replicationMaxLagForWaitTimeInBytes}.
+   */
+  private boolean isWaitRequired(ReplicaMetadataResponse response) {
+    if (!replicatingFromRemoteColo) {
+      for (ReplicaMetadataResponseInfo replicaMetadataResponseInfo : response.getReplicaMetadataResponseInfoList()) {
+        if (replicaMetadataResponseInfo.getError() == ServerErrorCode.No_Error
+            && replicaMetadataResponseInfo.getRemoteReplicaLagInBytes()
+            < replicationConfig.replicationMaxLagForWaitTimeInBytes) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Gets the messages for the keys that are missing from the local store by issuing a {@link GetRequest} to the remote
    * node, if there are any missing keys. If there are no missing keys to be fetched, then no request is issued and a
@@ -639,6 +836,35 @@ class ReplicaThread implements Runnable {
   private GetResponse getMessagesForMissingKeys(ConnectedChannel connectedChannel,
       List<ExchangeMetadataResponse> exchangeMetadataResponseList, List<RemoteReplicaInfo> replicasToReplicatePerNode,
       DataNodeId remoteNode) throws ReplicationException, IOException {
+    GetRequest getRequest = createGetRequest(exchangeMetadataResponseList, replicasToReplicatePerNode);
+    GetResponse getResponse = null;
+    if (getRequest != null) {
+      long startTime = SystemTime.getInstance().milliseconds();
+      try {
+        connectedChannel.send(getRequest);
+        ChannelOutput channelOutput = connectedChannel.receive();
+        getResponse = GetResponse.readFrom(new DataInputStream(channelOutput.getInputStream()), clusterMap);
+        long getRequestTime = SystemTime.getInstance().milliseconds() - startTime;
+        replicationMetrics.updateGetRequestTime(getRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
+            datacenterName);
+        validateGetResponse(getResponse, replicasToReplicatePerNode, remoteNode);
+      } catch (IOException e) {
+        responseHandler.onEvent(replicasToReplicatePerNode.get(0).getReplicaId(), e);
+        throw e;
+      }
+    }
+    return getResponse;
+  }
+
+  /**
+   * Creates the {@link GetRequest} that fetches the messages for the keys that are missing from the local stores, if
+   * there are any missing keys.
+   * @param exchangeMetadataResponseList The list of metadata response from the remote node
+   * @param replicasToReplicatePerNode The list of remote replicas for the remote node
+   * @return the {@link GetRequest} to send to the remote node; or null if there are no keys missing.
+   */
+  private GetRequest createGetRequest(List<ExchangeMetadataResponse> exchangeMetadataResponseList,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode) {
     List<PartitionRequestInfo> partitionRequestInfoList = new ArrayList<PartitionRequestInfo>();
     for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
       ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
@@ -656,31 +882,30 @@ class ReplicaThread implements Runnable {
         }
       }
     }
-    GetResponse getResponse = null;
+    GetRequest getRequest = null;
     if (!partitionRequestInfoList.isEmpty()) {
-      GetRequest getRequest =
+      getRequest =
           new GetRequest(correlationIdGenerator.incrementAndGet(), "replication-fetch-" + dataNodeId.getHostname(),
               MessageFormatFlags.All, partitionRequestInfoList, GetOption.None);
-      long startTime = SystemTime.getInstance().milliseconds();
-      try {
-        connectedChannel.send(getRequest);
-        ChannelOutput channelOutput = connectedChannel.receive();
-        getResponse = GetResponse.readFrom(new DataInputStream(channelOutput.getInputStream()), clusterMap);
-        long getRequestTime = SystemTime.getInstance().milliseconds() - startTime;
-        replicationMetrics.updateGetRequestTime(getRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
-            datacenterName);
-        if (getResponse.getError() != ServerErrorCode.No_Error) {
-          logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
-              + replicasToReplicatePerNode + " GetResponse from replication: " + getResponse.getError());
-          throw new ReplicationException(
-              " Get Request returned error when trying to get missing keys " + getResponse.getError());
-        }
-      } catch (IOException e) {
-        responseHandler.onEvent(replicasToReplicatePerNode.get(0).getReplicaId(), e);
-        throw e;
-      }
     }
-    return getResponse;
+    return getRequest;
+  }
+
+  /**
+   * Checks that a {@link GetResponse} for the missing keys has no error.
+   * @param getResponse the {@link GetResponse} received from {@code remoteNode}.
+   * @param replicasToReplicatePerNode The list of remote replicas for the remote node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @throws ReplicationException if the response has an error.
+   */
+  private void validateGetResponse(GetResponse getResponse, List<RemoteReplicaInfo> replicasToReplicatePerNode,
+      DataNodeId remoteNode) throws ReplicationException {
+    if (getResponse.getError() != ServerErrorCode.No_Error) {
+      logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
+          + replicasToReplicatePerNode + " GetResponse from replication: " + getResponse.getError());
+      throw new ReplicationException(
+          " Get Request returned error when trying to get missing keys " + getResponse.getError());
+    }
   }
 
   /**
@@ -812,6 +1037,436 @@ class ReplicaThread implements Runnable {
     }
   }
 
+  /**
+   * The stages that replication from a remote node goes through when replicating using a {@link NetworkClient}.
+   */
+  enum ReplicationStage {
+    /**
+     * Nothing is in progress. A metadata exchange is started when replication is next polled.
+     */
+    Idle,
+    /**
+     * A {@link ReplicaMetadataRequest} is in flight.
+     */
+    Awaiting_Metadata,
+    /**
+     * A {@link ReplicaMetadataResponse} was received and will be processed once the wait between replicas is over.
+     */
+    Waiting,
+    /**
+     * A {@link GetRequest} for the missing keys is ready but too many fetched batches are waiting to be written.
+     */
+    Awaiting_Write_Slot,
+    /**
+     * A {@link GetRequest} for the missing keys is in flight.
+     */
+    Awaiting_Messages,
+    /**
+     * The messages received are being written to the local stores.
+     */
+    Writing
+  }
+
+  /**
+   * Tracks replication from a remote node when replicating using a {@link NetworkClient}. Each cycle exchanges metadata
+   * with the node, waits between replicas if required, fetches the missing messages and writes them to the local
+   * stores. Requests are never waited on - they are handed out by {@link #poll(List)} and their responses are handed
+   * back via {@link #onResponse(ResponseInfo)}.
+   * <p/>
+   * When replication is pipelined and the node has more messages than were returned, the metadata exchange of the next
+   * cycle is started speculatively with the tokens returned for the current cycle, while the messages of the current
+   * cycle are fetched and written. The speculative response is processed only after the current cycle has been written,
+   * so that the missing keys are found against an up to date local store, and is discarded if the tokens of the current
+   * cycle could not be advanced.
+   */
+  private class RemoteNodeReplicationState {
+    private final DataNodeId remoteNode;
+    private final List<RemoteReplicaInfo> replicasToReplicatePerNode;
+    private ReplicationStage stage = ReplicationStage.Idle;
+    private List<RemoteReplicaInfo> activeReplicasPerNode;
+    private ReplicaMetadataResponse replicaMetadataResponse;
+    private List<ExchangeMetadataResponse> exchangeMetadataResponseList;
+    private GetRequest getRequest;
+    private RequestInfo requestInFlight;
+    private long requestSentTimeInMs;
+    private long replicationStartTimeInMs;
+    private long fixMissingStoreKeysStartTimeInMs;
+    private long waitStartTimeInMs;
+    private long waitTimeInMs;
+    private volatile Exception writeException;
+
+    private List<RemoteReplicaInfo> speculativeReplicas;
+    private List<FindToken> speculativeTokens;
+    private RequestInfo speculativeRequestInFlight;
+    private long speculativeRequestSentTimeInMs;
+    private ReplicaMetadataResponse speculativeResponse;
+
+    /**
+     * @param replicasToReplicatePerNode the replicas of the remote node to replicate from. Cannot be empty.
+     */
+    RemoteNodeReplicationState(List<RemoteReplicaInfo> replicasToReplicatePerNode) {
+      this.replicasToReplicatePerNode = replicasToReplicatePerNode;
+      remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
+    }
+
+    /**
+     * Moves replication from the remote node forward without blocking. Starts a metadata exchange if nothing is in
+     * progress, processes the metadata received once the wait between replicas is over, sends the pending
+     * {@link GetRequest} once there is room for its messages and fails requests in flight that have timed out.
+     * @param requestsToSend the list to add the requests to send to the remote node to.
+     */
+    void poll(List<RequestInfo> requestsToSend) {
+      long currentTimeInMs = SystemTime.getInstance().milliseconds();
+      long requestTimeoutMs = replicationConfig.replicationNonBlockingRequestTimeoutMs;
+      if (speculativeRequestInFlight != null && currentTimeInMs - speculativeRequestSentTimeInMs > requestTimeoutMs) {
+        logger.error("Remote node: {} Thread name: {} Speculative replica metadata request timed out", remoteNode,
+            threadName);
+        responseHandler.onEvent(speculativeReplicas.get(0).getReplicaId(), NetworkClientErrorCode.NetworkError);
+        discardSpeculativeExchange();
+      }
+      try {
+        switch (stage) {
+          case Idle:
+            activeReplicasPerNode = getActiveReplicas(replicasToReplicatePerNode);
+            if (activeReplicasPerNode.size() > 0) {
+              replicationStartTimeInMs = currentTimeInMs;
+              sendRequest(createReplicaMetadataRequest(activeReplicasPerNode, remoteNode), currentTimeInMs,
+                  requestsToSend);
+              stage = ReplicationStage.Awaiting_Metadata;
+            }
+            break;
+          case Waiting:
+            if (currentTimeInMs - waitStartTimeInMs >= waitTimeInMs) {
+              if (waitTimeInMs > 0) {
+                replicationMetrics.intraColoReplicationWaitTime.update(currentTimeInMs - waitStartTimeInMs);
+              }
+              onWaitComplete(requestsToSend);
+            }
+            break;
+          case Awaiting_Write_Slot:
+            if (pendingWrites < maxPendingWrites) {
+              sendGetRequest(currentTimeInMs, requestsToSend);
+            }
+            break;
+          case Awaiting_Metadata:
+          case Awaiting_Messages:
+            if (currentTimeInMs - requestSentTimeInMs > requestTimeoutMs) {
+              responseHandler.onEvent(activeReplicasPerNode.get(0).getReplicaId(), NetworkClientErrorCode.NetworkError);
+              throw new ReplicationException("Request timed out in stage " + stage);
+            }
+            break;
+          default:
+            break;
+        }
+      } catch (Exception e) {
+        onReplicationError(e);
+      }
+    }
+
+    /**
+     * Handles the response to a request sent to the remote node.
+     * @param responseInfo the {@link ResponseInfo} for the request.
+     * @return {@code true} if the response is still in use and will be released once it has been handled. Otherwise,
+     * the caller has to release it.
+     */
+    boolean onResponse(ResponseInfo responseInfo) {
+      if (responseInfo.getRequestInfo() == speculativeRequestInFlight) {
+        onSpeculativeResponse(responseInfo);
+        return false;
+      }
+      long requestTimeInMs = SystemTime.getInstance().milliseconds() - requestSentTimeInMs;
+      requestInFlight = null;
+      boolean responseRetained = false;
+      try {
+        DataInputStream stream = getResponseStream(responseInfo, activeReplicasPerNode);
+        if (stage == ReplicationStage.Awaiting_Metadata) {
+          ReplicaMetadataResponse response = ReplicaMetadataResponse.readFrom(stream, findTokenFactory, clusterMap);
+          replicationMetrics.updateMetadataRequestTime(requestTimeInMs, replicatingFromRemoteColo, replicatingOverSsl,
+              datacenterName);
+          onReplicaMetadataResponse(response);
+        } else {
+          GetResponse getResponse = GetResponse.readFrom(stream, clusterMap);
+          replicationMetrics.updateGetRequestTime(requestTimeInMs, replicatingFromRemoteColo, replicatingOverSsl,
+              datacenterName);
+          validateGetResponse(getResponse, activeReplicasPerNode, remoteNode);
+          stage = ReplicationStage.Writing;
+          if (writeExecutor != null) {
+            List<ExchangeMetadataResponse> responsesToWrite = exchangeMetadataResponseList;
+            List<RemoteReplicaInfo> replicasToWrite = activeReplicasPerNode;
+            writeExecutor.execute(() -> write(responsesToWrite, getResponse, replicasToWrite, responseInfo));
+            responseRetained = true;
+          } else {
+            writeMessagesToLocalStoreAndAdvanceTokens(exchangeMetadataResponseList, getResponse,
+                activeReplicasPerNode, remoteNode);
+            pendingWrites--;
+            onReplicationComplete();
+          }
+        }
+      } catch (Exception e) {
+        onReplicationError(e);
+      }
+      return responseRetained;
+    }
+
+    /**
+     * Handles the completion of a write done by the write stage. Called on the replica thread.
+     */
+    void onWriteComplete() {
+      Exception exception = writeException;
+      writeException = null;
+      if (exception != null) {
+        onReplicationError(exception);
+      } else {
+        pendingWrites--;
+        onReplicationComplete();
+      }
+    }
+
+    /**
+     * Writes the messages received to the local stores and advances the tokens. Called on the write stage thread.
+     * @param exchangeMetadataResponseList the list of metadata response from the remote node.
+     * @param getResponse the {@link GetResponse} that contains the missing messages.
+     * @param replicas the replicas that the metadata responses are for.
+     * @param responseInfo the {@link ResponseInfo} that {@code getResponse} was read from. Released once the messages
+     *                     have been written.
+     */
+    private void write(List<ExchangeMetadataResponse> exchangeMetadataResponseList, GetResponse getResponse,
+        List<RemoteReplicaInfo> replicas, ResponseInfo responseInfo) {
+      try {
+        writeMessagesToLocalStoreAndAdvanceTokens(exchangeMetadataResponseList, getResponse, replicas, remoteNode);
+      } catch (Exception e) {
+        writeException = e;
+      } finally {
+        responseInfo.release();
+        nodesWithCompletedWrites.add(this);
+        networkClient.wakeup();
+      }
+    }
+
+    /**
+     * Processes the metadata received once the wait between replicas is over and fetches the missing messages, if any.
+     * @param requestsToSend the list to add the requests to send to the remote node to.
+     * @throws IOException
+     */
+    private void onWaitComplete(List<RequestInfo> requestsToSend) throws IOException {
+      waitEnabled = false;
+      exchangeMetadataResponseList =
+          handleReplicaMetadataResponse(replicaMetadataResponse, activeReplicasPerNode, remoteNode);
+      replicaMetadataResponse = null;
+      long currentTimeInMs = SystemTime.getInstance().milliseconds();
+      fixMissingStoreKeysStartTimeInMs = currentTimeInMs;
+      replicationMetrics.updateExchangeMetadataTime(currentTimeInMs - replicationStartTimeInMs,
+          replicatingFromRemoteColo, replicatingOverSsl, datacenterName);
+      if (writeExecutor != null) {
+        maybeSendSpeculativeRequest(currentTimeInMs, requestsToSend);
+      }
+      getRequest = createGetRequest(exchangeMetadataResponseList, activeReplicasPerNode);
+      if (getRequest == null) {
+        writeMessagesToLocalStoreAndAdvanceTokens(exchangeMetadataResponseList, null, activeReplicasPerNode,
+            remoteNode);
+        onReplicationComplete();
+      } else if (pendingWrites < maxPendingWrites) {
+        sendGetRequest(currentTimeInMs, requestsToSend);
+      } else {
+        replicationMetrics.pendingWritesLimitReachedCount.inc();
+        stage = ReplicationStage.Awaiting_Write_Slot;
+      }
+    }
+
+    /**
+     * Starts the metadata exchange of the next cycle with the tokens returned for the current cycle if any of the
+     * remote replicas has more messages than were returned.
+     * @param currentTimeInMs the current time.
+     * @param requestsToSend the list to add the requests to send to the remote node to.
+     */
+    private void maybeSendSpeculativeRequest(long currentTimeInMs, List<RequestInfo> requestsToSend) {
+      List<RemoteReplicaInfo> replicas = new ArrayList<>();
+      List<FindToken> tokens = new ArrayList<>();
+      boolean moreMessagesRemaining = false;
+      for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
+        ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
+        if (exchangeMetadataResponse.serverErrorCode == ServerErrorCode.No_Error) {
+          replicas.add(activeReplicasPerNode.get(i));
+          tokens.add(exchangeMetadataResponse.remoteToken);
+          moreMessagesRemaining |= exchangeMetadataResponse.localLagFromRemoteInBytes > 0;
+        }
+      }
+      if (moreMessagesRemaining) {
+        speculativeReplicas = replicas;
+        speculativeTokens = tokens;
+        speculativeRequestInFlight = new RequestInfo(remoteNode.getHostname(), replicas.get(0).getPort(),
+            createReplicaMetadataRequest(replicas, tokens, remoteNode));
+        speculativeRequestSentTimeInMs = currentTimeInMs;
+        requestsInFlight.put(speculativeRequestInFlight, this);
+        requestsToSend.add(speculativeRequestInFlight);
+        replicationMetrics.speculativeMetadataRequestCount.inc();
+      }
+    }
+
+    /**
+     * Handles the response to the speculative metadata request. The response is held until the current cycle is done.
+     * @param responseInfo the {@link ResponseInfo} for the speculative request.
+     */
+    private void onSpeculativeResponse(ResponseInfo responseInfo) {
+      speculativeRequestInFlight = null;
+      try {
+        DataInputStream stream = getResponseStream(responseInfo, speculativeReplicas);
+        ReplicaMetadataResponse response = ReplicaMetadataResponse.readFrom(stream, findTokenFactory, clusterMap);
+        replicationMetrics.updateMetadataRequestTime(
+            SystemTime.getInstance().milliseconds() - speculativeRequestSentTimeInMs, replicatingFromRemoteColo,
+            replicatingOverSsl, datacenterName);
+        validateReplicaMetadataResponse(response, speculativeReplicas, remoteNode);
+        speculativeResponse = response;
+      } catch (Exception e) {
+        logger.error("Remote node: {} Thread name: {} Speculative replica metadata exchange failed", remoteNode,
+            threadName, e);
+        discardSpeculativeExchange();
+      }
+    }
+
+    /**
+     * Records the completion of a replication cycle and continues with the speculative metadata exchange, if there is
+     * one and the tokens that it was started with have been reached.
+     */
+    private void onReplicationComplete() {
+      long currentTimeInMs = SystemTime.getInstance().milliseconds();
+      replicationMetrics.updateFixMissingStoreKeysTime(currentTimeInMs - fixMissingStoreKeysStartTimeInMs,
+          replicatingFromRemoteColo, replicatingOverSsl, datacenterName);
+      reset(currentTimeInMs);
+      if (speculativeReplicas != null) {
+        for (int i = 0; i < speculativeReplicas.size(); i++) {
+          if (speculativeReplicas.get(i).getToken() != speculativeTokens.get(i)) {
+            logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token was not advanced, discarding "
+                + "speculative metadata", remoteNode, threadName, speculativeReplicas.get(i).getReplicaId());
+            discardSpeculativeExchange();
+            return;
+          }
+        }
+        activeReplicasPerNode = speculativeReplicas;
+        replicationStartTimeInMs = speculativeRequestSentTimeInMs;
+        ReplicaMetadataResponse response = speculativeResponse;
+        if (response == null) {
+          requestInFlight = speculativeRequestInFlight;
+          requestSentTimeInMs = speculativeRequestSentTimeInMs;
+          stage = ReplicationStage.Awaiting_Metadata;
+        }
+        speculativeReplicas = null;
+        speculativeTokens = null;
+        speculativeRequestInFlight = null;
+        speculativeResponse = null;
+        if (response != null) {
+          try {
+            onReplicaMetadataResponse(response);
+          } catch (Exception e) {
+            onReplicationError(e);
+          }
+        }
+      }
+    }
+
+    /**
+     * Records the failure of a replication cycle. The next cycle starts when replication is next polled.
+     * @param e the cause of the failure.
+     */
+    private void onReplicationError(Exception e) {
+      logger.error("Error while talking to peer: Remote node: {}, Thread name: {}, Remote replicas: {}, Active "
+              + "remote replicas: {}, Stage: {}", remoteNode, threadName, replicasToReplicatePerNode,
+          activeReplicasPerNode, stage, e);
+      replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
+      if (stage == ReplicationStage.Awaiting_Messages || stage == ReplicationStage.Writing) {
+        pendingWrites--;
+      }
+      if (requestInFlight != null) {
+        requestsInFlight.remove(requestInFlight);
+        requestInFlight = null;
+      }
+      discardSpeculativeExchange();
+      reset(SystemTime.getInstance().milliseconds());
+    }
+
+    /**
+     * Handles a {@link ReplicaMetadataResponse} for the current cycle and starts the wait between replicas.
+     * @param response the {@link ReplicaMetadataResponse} received.
+     * @throws ReplicationException if the response has an error.
+     */
+    private void onReplicaMetadataResponse(ReplicaMetadataResponse response) throws ReplicationException {
+      validateReplicaMetadataResponse(response, activeReplicasPerNode, remoteNode);
+      replicaMetadataResponse = response;
+      waitStartTimeInMs = SystemTime.getInstance().milliseconds();
+      waitTimeInMs = isWaitRequired(response) ? replicationConfig.replicaWaitTimeBetweenReplicasMs : 0;
+      stage = ReplicationStage.Waiting;
+    }
+
+    /**
+     * Sends the pending {@link GetRequest} for the missing keys.
+     * @param currentTimeInMs the current time.
+     * @param requestsToSend the list to add the requests to send to the remote node to.
+     */
+    private void sendGetRequest(long currentTimeInMs, List<RequestInfo> requestsToSend) {
+      pendingWrites++;
+      sendRequest(getRequest, currentTimeInMs, requestsToSend);
+      getRequest = null;
+      stage = ReplicationStage.Awaiting_Messages;
+    }
+
+    /**
+     * Makes {@code request} the request in flight of the current cycle.
+     * @param request the request to send to the remote node.
+     * @param currentTimeInMs the current time.
+     * @param requestsToSend the list to add the {@link RequestInfo} for {@code request} to.
+     */
+    private void sendRequest(Send request, long currentTimeInMs, List<RequestInfo> requestsToSend) {
+      requestInFlight = new RequestInfo(remoteNode.getHostname(), activeReplicasPerNode.get(0).getPort(), request);
+      requestSentTimeInMs = currentTimeInMs;
+      requestsInFlight.put(requestInFlight, this);
+      requestsToSend.add(requestInFlight);
+    }
+
+    /**
+     * @param responseInfo the {@link ResponseInfo} received.
+     * @param replicas the replicas that the request was for.
+     * @return a stream over the response.
+     * @throws ReplicationException if the request failed in the network client.
+     */
+    private DataInputStream getResponseStream(ResponseInfo responseInfo, List<RemoteReplicaInfo> replicas)
+        throws ReplicationException {
+      if (responseInfo.getError() != null) {
+        responseHandler.onEvent(replicas.get(0).getReplicaId(), responseInfo.getError());
+        throw new ReplicationException("Network client error " + responseInfo.getError());
+      }
+      return new DataInputStream(new ByteBufferInputStream(responseInfo.getResponse()));
+    }
+
+    /**
+     * Discards the speculative metadata exchange, if there is one. A late response to it is ignored.
+     */
+    private void discardSpeculativeExchange() {
+      if (speculativeReplicas != null) {
+        replicationMetrics.speculativeMetadataDiscardCount.inc();
+        if (speculativeRequestInFlight != null) {
+          requestsInFlight.remove(speculativeRequestInFlight);
+        }
+        speculativeReplicas = null;
+        speculativeTokens = null;
+        speculativeRequestInFlight = null;
+        speculativeResponse = null;
+      }
+    }
+
+    /**
+     * Ends the current replication cycle.
+     * @param currentTimeInMs the current time.
+     */
+    private void reset(long currentTimeInMs) {
+      replicationMetrics.updateTotalReplicationTime(currentTimeInMs - replicationStartTimeInMs,
+          replicatingFromRemoteColo, replicatingOverSsl, datacenterName);
+      stage = ReplicationStage.Idle;
+      replicaMetadataResponse = null;
+      exchangeMetadataResponseList = null;
+      getRequest = null;
+    }
+  }
+
   boolean isThreadUp() {
     return running;
   }
@@ -23,6 +23,8 @@ import com.github.ambry.config.ClusterMapConfig;
 import com.github.ambry.config.ReplicationConfig;
 import com.github.ambry.config.StoreConfig;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NetworkClient;
+import com.github.ambry.network.NetworkClientFactory;
 import com.github.ambry.network.Port;
 import com.github.ambry.notification.NotificationSystem;
 import com.github.ambry.store.FindToken;
@@ -260,6 +262,7 @@ public class ReplicationManager {
   private final AtomicInteger correlationIdGenerator;
   private final DataNodeId dataNodeId;
   private final ConnectionPool connectionPool;
+  private final NetworkClientFactory networkClientFactory;
   private final ReplicationMetrics replicationMetrics;
   private final NotificationSystem notification;
   private final Map<String, DataNodeRemoteReplicaInfos> dataNodeRemoteReplicaInfosPerDC;
@@ -276,7 +279,8 @@ public class ReplicationManager {
   public ReplicationManager(ReplicationConfig replicationConfig, ClusterMapConfig clusterMapConfig,
       StoreConfig storeConfig, StorageManager storageManager, StoreKeyFactory storeKeyFactory, ClusterMap clusterMap,
       ScheduledExecutorService scheduler, DataNodeId dataNode, ConnectionPool connectionPool,
-      MetricRegistry metricRegistry, NotificationSystem requestNotification) throws ReplicationException {
+      NetworkClientFactory networkClientFactory, MetricRegistry metricRegistry, NotificationSystem requestNotification)
+      throws ReplicationException {
 
     try {
       this.replicationConfig = replicationConfig;
@@ -293,6 +297,10 @@ public class ReplicationManager {
       this.dataNodeId = dataNode;
       List<? extends ReplicaId> replicaIds = clusterMap.getReplicaIds(dataNodeId);
       this.connectionPool = connectionPool;
+      if (replicationConfig.replicationNonBlockingEnabled && networkClientFactory == null) {
+        throw new IllegalArgumentException("A NetworkClientFactory is required for non-blocking replication");
+      }
+      this.networkClientFactory = replicationConfig.replicationNonBlockingEnabled ? networkClientFactory : null;
       this.notification = requestNotification;
       this.metricRegistry = metricRegistry;
       this.dataNodeRemoteReplicaInfosPerDC = new HashMap<>();
@@ -502,8 +510,9 @@ public class ReplicationManager {
 
   /**
    * Partitions the list of data nodes between given set of replica threads for the given DC
+   * @throws IOException if a {@link NetworkClient} could not be created for a replica thread.
    */
-  private void assignReplicasToThreadPool() {
+  private void assignReplicasToThreadPool() throws IOException {
     Iterator<Map.Entry<String, DataNodeRemoteReplicaInfos>> mapIterator =
         dataNodeRemoteReplicaInfosPerDC.entrySet().iterator();
     while (mapIterator.hasNext()) {
@@ -562,11 +571,12 @@ public class ReplicationManager {
         String threadIdentity =
             "Replica Thread-" + (dataNodeId.getDatacenterName().equals(datacenter) ? "Intra-" : "Inter") + i
                 + datacenter;
+        NetworkClient networkClient = networkClientFactory != null ? networkClientFactory.getNetworkClient() : null;
         ReplicaThread replicaThread =
             new ReplicaThread(threadIdentity, replicasForThread, factory, clusterMap, correlationIdGenerator,
                 dataNodeId, connectionPool, replicationConfig, replicationMetrics, notification, storeKeyFactory,
                 replicationConfig.replicationValidateMessageStream, metricRegistry, replicatingOverSsl, datacenter,
-                responseHandler);
+                responseHandler, networkClient);
         if (replicaThreadPools.containsKey(datacenter)) {
           replicaThreadPools.get(datacenter).add(replicaThread);
         } else {
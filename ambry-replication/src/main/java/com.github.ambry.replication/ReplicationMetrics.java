@@ -112,6 +112,9 @@ public class ReplicationMetrics {
   public final Map<String, Histogram> sslInterColoTotalReplicationTime = new HashMap<String, Histogram>();
   public final Histogram sslIntraColoTotalReplicationTime;
   public final Counter blobDeletedOnGetCount;
+  public final Counter speculativeMetadataRequestCount;
+  public final Counter speculativeMetadataDiscardCount;
+  public final Counter pendingWritesLimitReachedCount;
 
   public List<Gauge<Long>> replicaLagInBytes;
   private MetricRegistry registry;
@@ -207,6 +210,12 @@ public class ReplicationMetrics {
     sslIntraColoTotalReplicationTime =
         registry.histogram(MetricRegistry.name(ReplicaThread.class, "SslIntraColoTotalReplicationTime"));
     blobDeletedOnGetCount = registry.counter(MetricRegistry.name(ReplicaThread.class, "BlobDeletedOnGetCount"));
+    speculativeMetadataRequestCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "SpeculativeMetadataRequestCount"));
+    speculativeMetadataDiscardCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "SpeculativeMetadataDiscardCount"));
+    pendingWritesLimitReachedCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "PendingWritesLimitReachedCount"));
     this.registry = registry;
     this.replicaLagInBytes = new ArrayList<Gauge<Long>>();
     populateInvalidMessageMetricForReplicas(replicaIds);
@@ -24,6 +24,7 @@ import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.commons.BlobId;
 import com.github.ambry.commons.ResponseHandler;
 import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.NetworkConfig;
 import com.github.ambry.config.ReplicationConfig;
 import com.github.ambry.config.VerifiableProperties;
 import com.github.ambry.messageformat.BlobProperties;
@@ -31,12 +32,18 @@ import com.github.ambry.messageformat.DeleteMessageFormatInputStream;
 import com.github.ambry.messageformat.MessageFormatException;
 import com.github.ambry.messageformat.MessageFormatInputStream;
 import com.github.ambry.messageformat.PutMessageFormatInputStream;
+import com.github.ambry.network.BoundedByteBufferReceive;
 import com.github.ambry.network.ChannelOutput;
 import com.github.ambry.network.ConnectedChannel;
 import com.github.ambry.network.ConnectionPool;
 import com.github.ambry.network.ConnectionPoolTimeoutException;
+import com.github.ambry.network.NetworkClient;
+import com.github.ambry.network.NetworkMetrics;
+import com.github.ambry.network.NetworkReceive;
+import com.github.ambry.network.NetworkSend;
 import com.github.ambry.network.Port;
 import com.github.ambry.network.PortType;
+import com.github.ambry.network.Selector;
 import com.github.ambry.network.Send;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.protocol.GetResponse;
@@ -70,6 +77,7 @@ import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
@@ -152,7 +160,7 @@ public class ReplicationTest {
         new ReplicaThread("threadtest", replicasToReplicate, new MockFindTokenFactory(), clusterMap,
             new AtomicInteger(0), localHost.dataNodeId, connectionPool, config, replicationMetrics, null,
             storeKeyFactory, true, clusterMap.getMetricRegistry(), false, localHost.dataNodeId.getDatacenterName(),
-            new ResponseHandler(clusterMap));
+            new ResponseHandler(clusterMap), null);
     Thread thread = Utils.newThread(replicaThread, false);
     thread.start();
 
@@ -231,7 +239,7 @@ public class ReplicationTest {
         new ReplicaThread("threadtest", replicasToReplicate, new MockFindTokenFactory(), clusterMap,
             new AtomicInteger(0), localHost.dataNodeId, connectionPool, config, replicationMetrics, null,
             storeKeyFactory, true, clusterMap.getMetricRegistry(), false, localHost.dataNodeId.getDatacenterName(),
-            new ResponseHandler(clusterMap));
+            new ResponseHandler(clusterMap), null);
 
     Map<PartitionId, Integer> progressTracker = new HashMap<>();
     PartitionId idToLeaveOut = clusterMap.getAllPartitionIds().get(0);
@@ -382,7 +390,7 @@ public class ReplicationTest {
         new ReplicaThread("threadtest", replicasToReplicate, new MockFindTokenFactory(), clusterMap,
             new AtomicInteger(0), localHost.dataNodeId, connectionPool, config, replicationMetrics, null,
             storeKeyFactory, true, clusterMap.getMetricRegistry(), false, localHost.dataNodeId.getDatacenterName(),
-            new ResponseHandler(clusterMap));
+            new ResponseHandler(clusterMap), null);
 
     Map<PartitionId, List<ByteBuffer>> missingBuffers = remoteHost.getMissingBuffers(localHost.buffersByPartition);
     for (Map.Entry<PartitionId, List<ByteBuffer>> entry : missingBuffers.entrySet()) {
@@ -495,6 +503,232 @@ public class ReplicationTest {
     }
   }
 
+  /**
+   * Tests {@link ReplicaThread#replicateNonBlocking()}: that requests to all the remote nodes are in flight at the same
+   * time, that replication recovers from network errors and that all the messages and deletes are replicated.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadNonBlockingTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Host localHost = new Host(clusterMap.getDataNodeIds().get(0), clusterMap);
+    List<Host> remoteHosts = Arrays.asList(new Host(clusterMap.getDataNodeIds().get(1), clusterMap),
+        new Host(clusterMap.getDataNodeIds().get(2), clusterMap));
+
+    List<PartitionId> partitionIds = clusterMap.getAllPartitionIds();
+    Map<PartitionId, StoreKey> idsToBeDeleted = new HashMap<>();
+    for (PartitionId partitionId : partitionIds) {
+      // add 3 messages to all the hosts and 10 messages to each of the remote hosts only
+      StoreKey toDeleteId = addPutMessagesToReplicasOfPartition(partitionId,
+          Arrays.asList(localHost, remoteHosts.get(0), remoteHosts.get(1)), 3).get(0);
+      for (Host remoteHost : remoteHosts) {
+        addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 10);
+      }
+      // delete the first message in one of the remote hosts only
+      addDeleteMessagesToReplicasOfPartition(partitionId, toDeleteId, Collections.singletonList(remoteHosts.get(0)));
+      idsToBeDeleted.put(partitionId, toDeleteId);
+    }
+
+    Properties properties = new Properties();
+    properties.put("replication.wait.time.between.replicas.ms", "0");
+    properties.put("replication.nonblocking.enabled", "true");
+    ReplicationConfig config = new ReplicationConfig(new VerifiableProperties(properties));
+    ReplicationMetrics replicationMetrics =
+        new ReplicationMetrics(new MetricRegistry(), clusterMap.getReplicaIds(localHost.dataNodeId));
+    replicationMetrics.populatePerColoMetrics(Collections.singleton(localHost.dataNodeId.getDatacenterName()));
+    StoreKeyFactory storeKeyFactory = Utils.getObj("com.github.ambry.commons.BlobIdFactory", clusterMap);
+    Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicate = new HashMap<>();
+    Map<DataNodeId, Host> hosts = new HashMap<>();
+    for (Host remoteHost : remoteHosts) {
+      replicasToReplicate.put(remoteHost.dataNodeId, localHost.getRemoteReplicaInfos(remoteHost, null));
+      hosts.put(remoteHost.dataNodeId, remoteHost);
+    }
+    int batchSize = 4;
+    MockSelector selector = new MockSelector(hosts, clusterMap, batchSize);
+    NetworkClient networkClient =
+        new NetworkClient(selector, new NetworkConfig(new VerifiableProperties(new Properties())),
+            new NetworkMetrics(new MetricRegistry()), 2, 2, 10000, SystemTime.getInstance());
+    ReplicaThread replicaThread =
+        new ReplicaThread("threadtest", replicasToReplicate, new MockFindTokenFactory(), clusterMap,
+            new AtomicInteger(0), localHost.dataNodeId, null, config, replicationMetrics, null, storeKeyFactory, true,
+            clusterMap.getMetricRegistry(), false, localHost.dataNodeId.getDatacenterName(),
+            new ResponseHandler(clusterMap), networkClient);
+
+    // requests fail while connections to the remote nodes get disconnected
+    selector.disconnectOnSend = true;
+    for (int i = 0; i < 4; i++) {
+      replicaThread.replicateNonBlocking();
+    }
+    assertTrue("Replication errors should have been recorded", replicationMetrics.replicationErrors.getCount() > 0);
+    for (Host remoteHost : remoteHosts) {
+      for (List<MessageInfo> missingInfos : remoteHost.getMissingInfos(localHost.infosByPartition).values()) {
+        assertTrue("Nothing should have been replicated", missingInfos.size() >= 10);
+      }
+    }
+
+    selector.disconnectOnSend = false;
+    for (int i = 0; i < 100 && !isReplicationComplete(localHost, remoteHosts); i++) {
+      replicaThread.replicateNonBlocking();
+    }
+    assertTrue("Requests to all the remote nodes should have been in flight at the same time",
+        selector.maxHostsInAPoll == remoteHosts.size());
+    for (Host remoteHost : remoteHosts) {
+      assertEquals("All messages should have been replicated", 0,
+          remoteHost.getMissingInfos(localHost.infosByPartition).size());
+    }
+    for (Map.Entry<PartitionId, StoreKey> entry : idsToBeDeleted.entrySet()) {
+      assertNotNull(entry.getValue() + " should have been deleted",
+          getMessageInfo(entry.getValue(), localHost.infosByPartition.get(entry.getKey()), true));
+    }
+  }
+
+  /**
+   * Tests that pipelined replication starts the metadata exchange of the next cycle while the messages of the current
+   * cycle are written and that all the messages and deletes are replicated.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadPipelinedTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Host localHost = new Host(clusterMap.getDataNodeIds().get(0), clusterMap);
+    Host remoteHost = new Host(clusterMap.getDataNodeIds().get(1), clusterMap);
+
+    List<PartitionId> partitionIds = clusterMap.getAllPartitionIds();
+    Map<PartitionId, StoreKey> idsToBeDeleted = new HashMap<>();
+    for (PartitionId partitionId : partitionIds) {
+      // add 3 messages to both the hosts and 20 messages to the remote host only
+      StoreKey toDeleteId =
+          addPutMessagesToReplicasOfPartition(partitionId, Arrays.asList(localHost, remoteHost), 3).get(0);
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 20);
+      addDeleteMessagesToReplicasOfPartition(partitionId, toDeleteId, Collections.singletonList(remoteHost));
+      idsToBeDeleted.put(partitionId, toDeleteId);
+    }
+
+    Properties properties = new Properties();
+    properties.put("replication.wait.time.between.replicas.ms", "0");
+    properties.put("replication.nonblocking.enabled", "true");
+    properties.put("replication.pipelined.enabled", "true");
+    ReplicationConfig config = new ReplicationConfig(new VerifiableProperties(properties));
+    ReplicationMetrics replicationMetrics =
+        new ReplicationMetrics(new MetricRegistry(), clusterMap.getReplicaIds(localHost.dataNodeId));
+    replicationMetrics.populatePerColoMetrics(Collections.singleton(localHost.dataNodeId.getDatacenterName()));
+    StoreKeyFactory storeKeyFactory = Utils.getObj("com.github.ambry.commons.BlobIdFactory", clusterMap);
+    Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicate = new HashMap<>();
+    replicasToReplicate.put(remoteHost.dataNodeId, localHost.getRemoteReplicaInfos(remoteHost, null));
+    MockSelector selector =
+        new MockSelector(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, 4);
+    NetworkClient networkClient =
+        new NetworkClient(selector, new NetworkConfig(new VerifiableProperties(new Properties())),
+            new NetworkMetrics(new MetricRegistry()), 2, 2, 10000, SystemTime.getInstance());
+    ReplicaThread replicaThread =
+        new ReplicaThread("threadtest", replicasToReplicate, new MockFindTokenFactory(), clusterMap,
+            new AtomicInteger(0), localHost.dataNodeId, null, config, replicationMetrics, null, storeKeyFactory, true,
+            clusterMap.getMetricRegistry(), false, localHost.dataNodeId.getDatacenterName(),
+            new ResponseHandler(clusterMap), networkClient);
+
+    List<Host> remoteHosts = Collections.singletonList(remoteHost);
+    long endTimeMs = SystemTime.getInstance().milliseconds() + 10000;
+    // the local stores are written to by the writer thread, so they are looked at only when no writes are pending
+    while (SystemTime.getInstance().milliseconds() < endTimeMs && (replicaThread.getPendingWrites() > 0
+        || !isReplicationComplete(localHost, remoteHosts))) {
+      replicaThread.replicateNonBlocking();
+      Thread.sleep(1);
+    }
+    assertEquals("There should be no pending writes", 0, replicaThread.getPendingWrites());
+    assertTrue("Speculative metadata requests should have been sent",
+        replicationMetrics.speculativeMetadataRequestCount.getCount() > 0);
+    assertEquals("Speculative metadata should not have been discarded", 0,
+        replicationMetrics.speculativeMetadataDiscardCount.getCount());
+    assertEquals("There should have been no replication errors", 0, replicationMetrics.replicationErrors.getCount());
+    assertEquals("All messages should have been replicated", 0,
+        remoteHost.getMissingInfos(localHost.infosByPartition).size());
+    for (Map.Entry<PartitionId, StoreKey> entry : idsToBeDeleted.entrySet()) {
+      assertNotNull(entry.getValue() + " should have been deleted",
+          getMessageInfo(entry.getValue(), localHost.infosByPartition.get(entry.getKey()), true));
+    }
+  }
+
+  /**
+   * Tests that shutting down a pipelined replica thread while a write to a local store is in progress waits for the
+   * write to complete instead of interrupting it, after which the store can be shut down cleanly.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadPipelinedShutdownDuringWriteTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Host localHost = new Host(clusterMap.getDataNodeIds().get(0), clusterMap);
+    Host remoteHost = new Host(clusterMap.getDataNodeIds().get(1), clusterMap);
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds()) {
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 10);
+    }
+
+    Properties properties = new Properties();
+    properties.put("replication.wait.time.between.replicas.ms", "0");
+    properties.put("replication.nonblocking.enabled", "true");
+    properties.put("replication.pipelined.enabled", "true");
+    ReplicationConfig config = new ReplicationConfig(new VerifiableProperties(properties));
+    ReplicationMetrics replicationMetrics =
+        new ReplicationMetrics(new MetricRegistry(), clusterMap.getReplicaIds(localHost.dataNodeId));
+    replicationMetrics.populatePerColoMetrics(Collections.singleton(localHost.dataNodeId.getDatacenterName()));
+    StoreKeyFactory storeKeyFactory = Utils.getObj("com.github.ambry.commons.BlobIdFactory", clusterMap);
+
+    CountDownLatch writeStarted = new CountDownLatch(1);
+    CountDownLatch completeWrite = new CountDownLatch(1);
+    AtomicReference<MockStore> blockedStore = new AtomicReference<>();
+    AtomicReference<List<MessageInfo>> blockedInfos = new AtomicReference<>();
+    AtomicReference<Exception> exception = new AtomicReference<>();
+    Map<DataNodeId, List<RemoteReplicaInfo>> replicasToReplicate = new HashMap<>();
+    replicasToReplicate.put(remoteHost.dataNodeId,
+        localHost.getRemoteReplicaInfos(remoteHost, (store, messageInfos) -> {
+          if (blockedStore.compareAndSet(null, store)) {
+            blockedInfos.set(messageInfos);
+            writeStarted.countDown();
+            try {
+              completeWrite.await();
+            } catch (Exception e) {
+              exception.set(e);
+            }
+          }
+        }));
+    MockSelector selector =
+        new MockSelector(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, 4);
+    NetworkClient networkClient =
+        new NetworkClient(selector, new NetworkConfig(new VerifiableProperties(new Properties())),
+            new NetworkMetrics(new MetricRegistry()), 2, 2, 10000, SystemTime.getInstance());
+    ReplicaThread replicaThread =
+        new ReplicaThread("threadtest", replicasToReplicate, new MockFindTokenFactory(), clusterMap,
+            new AtomicInteger(0), localHost.dataNodeId, null, config, replicationMetrics, null, storeKeyFactory, true,
+            clusterMap.getMetricRegistry(), false, localHost.dataNodeId.getDatacenterName(),
+            new ResponseHandler(clusterMap), networkClient);
+    Thread thread = Utils.newThread(replicaThread, false);
+    thread.start();
+    assertTrue("A write to a local store should have started", writeStarted.await(10, TimeUnit.SECONDS));
+
+    // shut the replica thread down while the write is in progress
+    Thread shutdownThread = Utils.newThread(() -> {
+      try {
+        replicaThread.shutdown();
+      } catch (InterruptedException e) {
+        exception.set(e);
+      }
+    }, false);
+    shutdownThread.start();
+    shutdownThread.join(100);
+    assertTrue("Shutdown should wait for the write in progress", shutdownThread.isAlive());
+    completeWrite.countDown();
+    shutdownThread.join(10000);
+    assertFalse("Shutdown should have completed", shutdownThread.isAlive());
+    thread.join(10000);
+    assertFalse("Replica thread should have stopped", thread.isAlive());
+    if (exception.get() != null) {
+      throw exception.get();
+    }
+    MockStore store = blockedStore.get();
+    assertTrue("The messages of the write in progress should be in the store",
+        store.messageInfos.containsAll(blockedInfos.get()));
+    store.shutdown();
+  }
+
   /**
    * Tests that replica tokens are set correctly and go through different stages correctly.
    * @throws InterruptedException
@@ -680,6 +914,21 @@ public class ReplicationTest {
     }
   }
 
+  /**
+   * @param localHost the host that replicates.
+   * @param remoteHosts the hosts that {@code localHost} replicates from.
+   * @return {@code true} if {@code localHost} has all the messages and buffers of all the {@code remoteHosts}.
+   */
+  private boolean isReplicationComplete(Host localHost, List<Host> remoteHosts) {
+    for (Host remoteHost : remoteHosts) {
+      if (remoteHost.getMissingInfos(localHost.infosByPartition).size() > 0
+          || remoteHost.getMissingBuffers(localHost.buffersByPartition).size() > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Interface to help perform actions on store events.
    */
@@ -1121,6 +1370,16 @@ public class ReplicationTest {
 
     @Override
     public ChannelOutput receive() throws IOException {
+      ByteBuffer buffer = getResponseBuffer();
+      buffer.getLong();
+      return new ChannelOutput(new ByteBufferInputStream(buffer), buffer.remaining());
+    }
+
+    /**
+     * @return the serialized response, including its size, to the last request sent.
+     * @throws IOException
+     */
+    ByteBuffer getResponseBuffer() throws IOException {
       Response response;
       if (metadataRequest != null) {
         List<ReplicaMetadataResponseInfo> responseInfoList = new ArrayList<>();
@@ -1137,9 +1396,14 @@ public class ReplicationTest {
             indexRequested = i;
           }
           eliminateDuplicates(messageInfosToReturn);
+          long remoteReplicaLagInBytes = 0;
+          for (int i = endIndex; i < partitionInfos.size(); i++) {
+            remoteReplicaLagInBytes += partitionInfos.get(i).getSize();
+          }
           ReplicaMetadataResponseInfo replicaMetadataResponseInfo =
               new ReplicaMetadataResponseInfo(requestInfo.getPartitionId(),
-                  new MockFindToken(indexRequested, requestInfo.getToken().getBytesRead()), messageInfosToReturn, 0);
+                  new MockFindToken(indexRequested, requestInfo.getToken().getBytesRead()), messageInfosToReturn,
+                  remoteReplicaLagInBytes);
           responseInfoList.add(replicaMetadataResponseInfo);
         }
         response = new ReplicaMetadataResponse(1, "replicametadata", ServerErrorCode.No_Error, responseInfoList);
@@ -1162,8 +1426,7 @@ public class ReplicationTest {
         response.writeTo(channel);
       }
       buffer.flip();
-      buffer.getLong();
-      return new ChannelOutput(new ByteBufferInputStream(buffer), buffer.remaining());
+      return buffer;
     }
 
     @Override
@@ -1215,4 +1478,108 @@ public class ReplicationTest {
     public void destroyConnection(ConnectedChannel connectedChannel) {
     }
   }
+
+  /**
+   * Implementation of {@link Selector} that serves the requests sent to a {@link Host} using a {@link MockConnection}.
+   * The responses are received in the same poll that the requests are sent in.
+   */
+  class MockSelector extends Selector {
+    private final Map<DataNodeId, Host> hosts;
+    private final ClusterMap clusterMap;
+    private final int maxEntriesToReturn;
+    private final Map<String, Host> connIdToHost = new HashMap<>();
+    private List<String> connected = new ArrayList<>();
+    private List<String> disconnected = new ArrayList<>();
+    private List<NetworkReceive> receives = new ArrayList<>();
+    private int index = 0;
+    private boolean isOpen = true;
+
+    volatile boolean disconnectOnSend = false;
+    int maxHostsInAPoll = 0;
+
+    MockSelector(Map<DataNodeId, Host> hosts, ClusterMap clusterMap, int maxEntriesToReturn) throws IOException {
+      super(new NetworkMetrics(new MetricRegistry()), SystemTime.getInstance(), null);
+      // the actual selector is not needed.
+      super.close();
+      this.hosts = hosts;
+      this.clusterMap = clusterMap;
+      this.maxEntriesToReturn = maxEntriesToReturn;
+    }
+
+    @Override
+    public String connect(InetSocketAddress address, int sendBufferSize, int receiveBufferSize, PortType portType) {
+      String connId = address.getHostString() + address.getPort() + index++;
+      connIdToHost.put(connId, hosts.get(clusterMap.getDataNodeId(address.getHostString(), address.getPort())));
+      connected.add(connId);
+      return connId;
+    }
+
+    @Override
+    public void poll(long timeoutMs, List<NetworkSend> sends) throws IOException {
+      Set<Host> hostsInPoll = new HashSet<>();
+      for (NetworkSend send : sends) {
+        Host host = connIdToHost.get(send.getConnectionId());
+        hostsInPoll.add(host);
+        if (disconnectOnSend) {
+          connIdToHost.remove(send.getConnectionId());
+          disconnected.add(send.getConnectionId());
+        } else {
+          MockConnection connection = new MockConnection(host, maxEntriesToReturn);
+          connection.send(send.getPayload());
+          BoundedByteBufferReceive receive = new BoundedByteBufferReceive();
+          receive.readFrom(Channels.newChannel(new ByteBufferInputStream(connection.getResponseBuffer())));
+          receives.add(new NetworkReceive(send.getConnectionId(), receive, SystemTime.getInstance()));
+        }
+      }
+      maxHostsInAPoll = Math.max(maxHostsInAPoll, hostsInPoll.size());
+    }
+
+    @Override
+    public void wakeup() {
+      // responses are received in the same poll that the requests are sent in, so polls never block.
+    }
+
+    @Override
+    public List<String> connected() {
+      List<String> toReturn = connected;
+      connected = new ArrayList<>();
+      return toReturn;
+    }
+
+    @Override
+    public List<String> disconnected() {
+      List<String> toReturn = disconnected;
+      disconnected = new ArrayList<>();
+      return toReturn;
+    }
+
+    @Override
+    public List<NetworkSend> completedSends() {
+      return new ArrayList<>();
+    }
+
+    @Override
+    public List<NetworkReceive> completedReceives() {
+      List<NetworkReceive> toReturn = receives;
+      receives = new ArrayList<>();
+      return toReturn;
+    }
+
+    @Override
+    public void close(String connectionId) {
+      if (connIdToHost.remove(connectionId) != null) {
+        disconnected.add(connectionId);
+      }
+    }
+
+    @Override
+    public void close() {
+      isOpen = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return isOpen;
+    }
+  }
 }
@@ -375,7 +375,7 @@ public class NettyMessageProcessor extends SimpleChannelInboundHandler<HttpObjec
     request = null;
     lastChannelReadTime = null;
     requestContentFullyReceived = false;
-    responseChannel = new NettyResponseChannel(ctx, nettyMetrics);
+    responseChannel = new NettyResponseChannel(ctx, nettyMetrics, nettyConfig);
     logger.trace("Refreshed state for channel {}", ctx.channel());
   }
 
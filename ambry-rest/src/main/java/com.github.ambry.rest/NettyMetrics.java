@@ -30,6 +30,13 @@ public class NettyMetrics {
 
   private final MetricRegistry metricRegistry;
 
+  // State tracked by gauges
+  // NettyRequest
+  // bytes of request content that have been read from clients but have not been consumed yet, across all requests.
+  final AtomicLong requestBytesBuffered = new AtomicLong(0);
+  // number of requests that reading has been suspended for because they have buffered too much content.
+  final AtomicLong readSuspendedRequestCount = new AtomicLong(0);
+
   // Rates
   // NettyMessageProcessor
   public final Meter bytesReadRate;
@@ -125,7 +132,9 @@ public class NettyMetrics {
   public final Counter rangeNotSatisfiableCount;
   public final Counter throwableCount;
   public final Counter unknownResponseStatusCount;
+  public final Counter coalescedChunkCount;
   // NettyServer
+  public final Counter nettyServerEpollUnavailableCount;
   public final Histogram nettyServerShutdownTimeInMs;
   public final Histogram nettyServerStartTimeInMs;
   // ConnectionStatsHandler
@@ -291,7 +300,11 @@ public class NettyMetrics {
     throwableCount = metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "ThrowableCount"));
     unknownResponseStatusCount =
         metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "UnknownResponseStatusCount"));
+    coalescedChunkCount =
+        metricRegistry.counter(MetricRegistry.name(NettyResponseChannel.class, "CoalescedChunkCount"));
     // NettyServer
+    nettyServerEpollUnavailableCount =
+        metricRegistry.counter(MetricRegistry.name(NettyServer.class, "EpollUnavailableCount"));
     nettyServerShutdownTimeInMs = metricRegistry.histogram(MetricRegistry.name(NettyServer.class, "ShutdownTimeInMs"));
     nettyServerStartTimeInMs = metricRegistry.histogram(MetricRegistry.name(NettyServer.class, "StartTimeInMs"));
     // ConnectionStatsHandler
@@ -314,4 +327,25 @@ public class NettyMetrics {
     };
     metricRegistry.register(MetricRegistry.name(ConnectionStatsHandler.class, "OpenConnections"), openConnections);
   }
+
+  /**
+   * Registers gauges that track the request content buffered by all the {@link NettyRequest}s that use this instance.
+   */
+  void registerRequestBufferGauges() {
+    Gauge<Long> requestBytesBufferedGauge = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return requestBytesBuffered.get();
+      }
+    };
+    metricRegistry.register(MetricRegistry.name(NettyRequest.class, "BytesBuffered"), requestBytesBufferedGauge);
+    Gauge<Long> readSuspendedRequestCountGauge = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return readSuspendedRequestCount.get();
+      }
+    };
+    metricRegistry.register(MetricRegistry.name(NettyRequest.class, "ReadSuspendedRequestCount"),
+        readSuspendedRequestCountGauge);
+  }
 }
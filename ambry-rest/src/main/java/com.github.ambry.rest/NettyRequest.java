@@ -81,7 +81,6 @@ class NettyRequest implements RestRequest {
   private final RestRequestMetricsTracker restRequestMetricsTracker = new RestRequestMetricsTracker();
   private final AtomicBoolean channelOpen = new AtomicBoolean(true);
   private final AtomicLong bytesReceived = new AtomicLong(0);
-  private final AtomicLong bytesBuffered = new AtomicLong(0);
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final RecvByteBufAllocator recvByteBufAllocator = new DefaultMaxBytesRecvByteBufAllocator();
   private final SSLSession sslSession;
@@ -94,6 +93,12 @@ class NettyRequest implements RestRequest {
   private volatile Exception channelException = CLOSED_CHANNEL_EXCEPTION;
   private volatile boolean allContentReceived = false;
 
+  // guards the accounting of the bytes buffered by this request.
+  private final Object bufferLock = new Object();
+  private long bytesBuffered = 0;
+  private boolean readSuspended = false;
+  private boolean bufferReleased = false;
+
   protected static String MULTIPLE_HEADER_VALUE_DELIMITER = ", ";
 
   /**
@@ -261,6 +266,7 @@ class NettyRequest implements RestRequest {
   public void close() {
     if (channelOpen.compareAndSet(true, false)) {
       setAutoRead(true);
+      releaseBuffer();
       contentLock.lock();
       try {
         logger.trace("Closing NettyRequest {} with {} content chunks unread", getUri(), requestContents.size());
@@ -494,6 +500,11 @@ class NettyRequest implements RestRequest {
    * @param autoRead {@code true} if auto read has to be switched on. {@code false} otherwise.
    */
   protected void setAutoRead(boolean autoRead) {
+    if (autoRead) {
+      synchronized (bufferLock) {
+        setReadSuspended(false);
+      }
+    }
     channel.config().setAutoRead(autoRead);
     channel.config().setRecvByteBufAllocator(autoRead ? savedAllocator : recvByteBufAllocator);
     logger.trace("Setting auto-read to {} on channel {}", channel.config().isAutoRead(), channel);
@@ -557,17 +568,54 @@ class NettyRequest implements RestRequest {
   }
 
   /**
-   * Invokes a read from the read channel if the number of bytes buffered is below the buffer watermark. No effect if
-   * auto-read is on.
+   * Updates the number of bytes buffered and invokes a read from the read channel if it is below the buffer watermark.
+   * Reading stays suspended otherwise until enough of the buffered content has been written to the write channel. No
+   * read is invoked if auto-read is on.
    * @param delta number of bytes read from the read channel in the current read (positive) or number of bytes written
    *              to the write channel in the current write (negative).
    */
   private void continueReadIfPossible(long delta) {
-    if (!channel.config().isAutoRead()) {
-      if (bytesBuffered.addAndGet(delta) < bufferWatermark) {
-        channel.read();
-      } else {
-        nettyMetrics.watermarkOverflowCount.inc();
+    boolean read = false;
+    synchronized (bufferLock) {
+      bytesBuffered += delta;
+      if (!bufferReleased) {
+        nettyMetrics.requestBytesBuffered.addAndGet(delta);
+      }
+      if (!channel.config().isAutoRead()) {
+        read = bytesBuffered < bufferWatermark;
+        setReadSuspended(!read && !bufferReleased);
+      }
+    }
+    if (read) {
+      channel.read();
+    } else if (!channel.config().isAutoRead()) {
+      nettyMetrics.watermarkOverflowCount.inc();
+    }
+  }
+
+  /**
+   * Records whether reading from the channel is suspended for this request in {@link NettyMetrics}. Has to be called
+   * with {@link #bufferLock} held.
+   * @param suspended {@code true} if reading is suspended. {@code false} otherwise.
+   */
+  private void setReadSuspended(boolean suspended) {
+    if (readSuspended != suspended) {
+      readSuspended = suspended;
+      nettyMetrics.readSuspendedRequestCount.addAndGet(suspended ? 1 : -1);
+    }
+  }
+
+  /**
+   * Removes the bytes still buffered by this request from the total tracked in {@link NettyMetrics}. Called on close,
+   * after which no more content is read for this request and the content still buffered is either released or waiting
+   * for the write channel to finish with it, so later changes to the bytes buffered are not tracked in the total.
+   */
+  private void releaseBuffer() {
+    synchronized (bufferLock) {
+      if (!bufferReleased) {
+        bufferReleased = true;
+        nettyMetrics.requestBytesBuffered.addAndGet(-bytesBuffered);
+        setReadSuspended(false);
       }
     }
   }
@@ -13,6 +13,7 @@
  */
 package com.github.ambry.rest;
 
+import com.github.ambry.config.NettyConfig;
 import com.github.ambry.router.Callback;
 import com.github.ambry.router.FutureResult;
 import com.github.ambry.utils.Utils;
@@ -64,6 +65,9 @@ import org.slf4j.LoggerFactory;
  * <p/>
  * If a write through this class fails at any time, the underlying channel will be closed immediately and no more writes
  * will be accepted and all scheduled writes will be notified of the failure.
+ * <p/>
+ * Small chunks that are ready to be written together can be coalesced into one buffer from the channel's allocator so
+ * that they are written out as one chunk.
  */
 class NettyResponseChannel implements RestResponseChannel {
   // Detailed message about an error in an error response.
@@ -74,6 +78,7 @@ class NettyResponseChannel implements RestResponseChannel {
 
   private final ChannelHandlerContext ctx;
   private final NettyMetrics nettyMetrics;
+  private final int chunkCoalesceThresholdBytes;
   private final ChannelProgressivePromise writeFuture;
   private final ChunkedWriteHandler chunkedWriteHandler;
 
@@ -105,10 +110,12 @@ class NettyResponseChannel implements RestResponseChannel {
    * Create an instance of NettyResponseChannel that will use {@code ctx} to return responses.
    * @param ctx the {@link ChannelHandlerContext} to use.
    * @param nettyMetrics the {@link NettyMetrics} instance to use.
+   * @param nettyConfig the {@link NettyConfig} to use.
    */
-  NettyResponseChannel(ChannelHandlerContext ctx, NettyMetrics nettyMetrics) {
+  NettyResponseChannel(ChannelHandlerContext ctx, NettyMetrics nettyMetrics, NettyConfig nettyConfig) {
     this.ctx = ctx;
     this.nettyMetrics = nettyMetrics;
+    chunkCoalesceThresholdBytes = nettyConfig.nettyServerResponseChunkCoalesceThresholdBytes;
     chunkedWriteHandler = ctx.pipeline().get(ChunkedWriteHandler.class);
     writeFuture = ctx.newProgressivePromise();
     logger.trace("Instantiated NettyResponseChannel");
@@ -703,9 +710,17 @@ class NettyResponseChannel implements RestResponseChannel {
       Chunk chunk = chunksToWrite.poll();
       if (chunk != null) {
         chunk.onDequeue();
-        ByteBuf buf = Unpooled.wrappedBuffer(chunk.buffer);
-        progress.addAndGet(chunk.buffer.remaining());
         chunksAwaitingCallback.add(chunk);
+        ByteBuf buf;
+        Chunk next = chunksToWrite.peek();
+        if (!chunk.isLast && next != null
+            && chunk.buffer.remaining() + next.buffer.remaining() <= chunkCoalesceThresholdBytes) {
+          buf = allocator.buffer(chunkCoalesceThresholdBytes);
+          chunk = coalesceChunks(chunk, buf);
+        } else {
+          buf = Unpooled.wrappedBuffer(chunk.buffer);
+        }
+        progress.addAndGet(buf.readableBytes());
         if (chunk.isLast) {
           content = new DefaultLastHttpContent(buf);
           sentLastChunk = true;
@@ -722,6 +737,36 @@ class NettyResponseChannel implements RestResponseChannel {
       return content;
     }
 
+    /**
+     * Copies {@code first} and the chunks that follow it in {@link #chunksToWrite} into {@code buf}, for as long as the
+     * total size does not exceed {@link #chunkCoalesceThresholdBytes}, and adds the chunks copied other than
+     * {@code first} to {@link #chunksAwaitingCallback}. The chunks are resolved as usual once the buffer is written.
+     * @param first the chunk that has been dispensed and that the buffer starts with.
+     * @param buf the buffer to copy the chunks into.
+     * @return the last chunk that was copied into {@code buf}.
+     */
+    private Chunk coalesceChunks(Chunk first, ByteBuf buf) {
+      buf.writeBytes(first.buffer.duplicate());
+      Chunk last = first;
+      Chunk next = chunksToWrite.peek();
+      while (!last.isLast && next != null
+          && buf.readableBytes() + next.buffer.remaining() <= chunkCoalesceThresholdBytes) {
+        // chunks are dispensed only on the event loop of the channel, so the chunk polled is the one peeked unless the
+        // queue was cleaned up in the meantime.
+        next = chunksToWrite.poll();
+        if (next == null) {
+          break;
+        }
+        next.onDequeue();
+        buf.writeBytes(next.buffer.duplicate());
+        chunksAwaitingCallback.add(next);
+        nettyMetrics.coalescedChunkCount.inc();
+        last = next;
+        next = chunksToWrite.peek();
+      }
+      return last;
+    }
+
     @Override
     public long length() {
       return HttpUtil.getContentLength(finalResponseMetadata, -1);
@@ -15,9 +15,17 @@ package com.github.ambry.rest;
 
 import com.github.ambry.config.NettyConfig;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -41,6 +49,9 @@ import org.slf4j.LoggerFactory;
  * This implementation creates a pipeline of handlers for every connection that it accepts and the last inbound handler,
  * {@link NettyMessageProcessor}, is responsible for processing the inbound requests and passing them to services that
  * can generate a response.
+ * <p/>
+ * The native epoll transport is used instead of NIO if it is enabled and available. With epoll, a port can be bound
+ * once per boss thread with SO_REUSEPORT so that accepting connections is spread across the boss threads.
  */
 public class NettyServer implements NioServer {
   private final NettyConfig nettyConfig;
@@ -50,6 +61,7 @@ public class NettyServer implements NioServer {
 
   private EventLoopGroup bossGroup;
   private EventLoopGroup workerGroup;
+  private boolean useEpoll;
 
   /**
    * Creates a new instance of NettyServer.
@@ -72,8 +84,18 @@ public class NettyServer implements NioServer {
     long startupBeginTime = System.currentTimeMillis();
     try {
       logger.trace("Starting NettyServer deployment");
-      bossGroup = new NioEventLoopGroup(nettyConfig.nettyServerBossThreadCount);
-      workerGroup = new NioEventLoopGroup(nettyConfig.nettyServerWorkerThreadCount);
+      useEpoll = nettyConfig.nettyServerEpollEnabled && Epoll.isAvailable();
+      if (nettyConfig.nettyServerEpollEnabled && !useEpoll) {
+        logger.warn("Epoll is not available. NettyServer will use NIO", Epoll.unavailabilityCause());
+        nettyMetrics.nettyServerEpollUnavailableCount.inc();
+      }
+      if (useEpoll) {
+        bossGroup = new EpollEventLoopGroup(nettyConfig.nettyServerBossThreadCount);
+        workerGroup = new EpollEventLoopGroup(nettyConfig.nettyServerWorkerThreadCount);
+      } else {
+        bossGroup = new NioEventLoopGroup(nettyConfig.nettyServerBossThreadCount);
+        workerGroup = new NioEventLoopGroup(nettyConfig.nettyServerWorkerThreadCount);
+      }
       for (Map.Entry<Integer, ChannelInitializer<SocketChannel>> entry : channelInitializers.entrySet()) {
         bindServer(entry.getKey(), entry.getValue(), bossGroup, workerGroup);
       }
@@ -112,6 +134,13 @@ public class NettyServer implements NioServer {
     }
   }
 
+  /**
+   * @return {@code true} if the server uses the native epoll transport. Valid only once the server has been started.
+   */
+  boolean isEpollInUse() {
+    return useEpoll;
+  }
+
   /**
    * Bootstrap a new server with a {@link ChannelInitializer} and bind it to a port.
    * @param port the port number to bind this server to.
@@ -122,13 +151,28 @@ public class NettyServer implements NioServer {
    */
   private void bindServer(int port, ChannelInitializer<SocketChannel> channelInitializer, EventLoopGroup bossGroup,
       EventLoopGroup workerGroup) throws InterruptedException {
+    ByteBufAllocator allocator = nettyConfig.nettyServerPooledAllocatorEnabled ? PooledByteBufAllocator.DEFAULT
+        : UnpooledByteBufAllocator.DEFAULT;
     ServerBootstrap b = new ServerBootstrap();
     b.group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+        .channel(useEpoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
         .option(ChannelOption.SO_BACKLOG, nettyConfig.nettyServerSoBacklog)
+        .childOption(ChannelOption.ALLOCATOR, allocator)
         .handler(new LoggingHandler(LogLevel.DEBUG))
         .childHandler(channelInitializer);
-    b.bind(port).sync();
-    logger.info("NettyServer now listening on port {}", port);
+    int bindCount = 1;
+    if (useEpoll) {
+      b.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+      if (nettyConfig.nettyServerEpollReusePortEnabled) {
+        b.option(EpollChannelOption.SO_REUSEPORT, true);
+        // every bind gets a channel on a different boss thread. The kernel spreads connections across them.
+        bindCount = nettyConfig.nettyServerBossThreadCount;
+      }
+    }
+    for (int i = 0; i < bindCount; i++) {
+      b.bind(port).sync();
+    }
+    logger.info("NettyServer now listening on port {} with {} acceptor(s) using {}", port, bindCount,
+        useEpoll ? "epoll" : "NIO");
   }
 }
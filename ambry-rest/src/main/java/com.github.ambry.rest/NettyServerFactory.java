@@ -60,6 +60,7 @@ public class NettyServerFactory implements NioServerFactory {
       throw new IllegalArgumentException("NettyServer requires SSL, but sslFactory is null");
     }
     nettyMetrics = new NettyMetrics(metricRegistry);
+    nettyMetrics.registerRequestBufferGauges();
     ConnectionStatsHandler connectionStatsHandler = new ConnectionStatsHandler(nettyMetrics);
 
     Map<Integer, ChannelInitializer<SocketChannel>> initializers = new HashMap<>();
@@ -13,6 +13,7 @@
  */
 package com.github.ambry.rest;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.commons.ByteBufferAsyncWritableChannel;
 import com.github.ambry.config.NettyConfig;
@@ -321,6 +322,54 @@ public class NettyRequestTest {
     }
   }
 
+  /**
+   * Tests that the gauges of the bytes buffered and of the requests that reading is suspended for are updated as
+   * content is added and consumed and that whatever a request still buffers is removed from them when it is closed.
+   * @throws Exception
+   */
+  @Test
+  public void bufferGaugesTest() throws Exception {
+    NettyRequest.bufferWatermark = 100;
+    MetricRegistry metricRegistry = new MetricRegistry();
+    RestRequestMetricsTracker.setDefaults(metricRegistry);
+    NettyMetrics nettyMetrics = new NettyMetrics(metricRegistry);
+    nettyMetrics.registerRequestBufferGauges();
+    Gauge bytesBuffered = metricRegistry.getGauges().get(MetricRegistry.name(NettyRequest.class, "BytesBuffered"));
+    Gauge readSuspendedRequestCount =
+        metricRegistry.getGauges().get(MetricRegistry.name(NettyRequest.class, "ReadSuspendedRequestCount"));
+    MockChannel channel = new MockChannel();
+    NettyRequest nettyRequest =
+        new NettyRequest(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/", false), channel,
+            nettyMetrics);
+
+    nettyRequest.addContent(new DefaultHttpContent(Unpooled.wrappedBuffer(TestUtils.getRandomBytes(60))));
+    assertEquals("Unexpected bytes buffered", 60L, bytesBuffered.getValue());
+    assertEquals("Reading should not be suspended", 0L, readSuspendedRequestCount.getValue());
+    nettyRequest.addContent(new DefaultHttpContent(Unpooled.wrappedBuffer(TestUtils.getRandomBytes(60))));
+    assertEquals("Unexpected bytes buffered", 120L, bytesBuffered.getValue());
+    assertEquals("Reading should be suspended", 1L, readSuspendedRequestCount.getValue());
+
+    ByteBufferAsyncWritableChannel writeChannel = new ByteBufferAsyncWritableChannel();
+    nettyRequest.readInto(writeChannel, new ReadIntoCallback());
+    ByteBuffer chunk = writeChannel.getNextChunk();
+    chunk.position(chunk.limit());
+    writeChannel.resolveOldestChunk(null);
+    assertEquals("Unexpected bytes buffered", 60L, bytesBuffered.getValue());
+    assertEquals("Reading should have been resumed", 0L, readSuspendedRequestCount.getValue());
+    nettyRequest.addContent(new DefaultHttpContent(Unpooled.wrappedBuffer(TestUtils.getRandomBytes(60))));
+    assertEquals("Unexpected bytes buffered", 120L, bytesBuffered.getValue());
+    assertEquals("Reading should be suspended", 1L, readSuspendedRequestCount.getValue());
+
+    closeRequestAndValidate(nettyRequest, channel);
+    assertEquals("Bytes buffered by a closed request should not be tracked", 0L, bytesBuffered.getValue());
+    assertEquals("Reading should not be suspended after close", 0L, readSuspendedRequestCount.getValue());
+    // content consumed after close does not affect the gauges.
+    chunk = writeChannel.getNextChunk();
+    chunk.position(chunk.limit());
+    writeChannel.resolveOldestChunk(null);
+    assertEquals("Bytes buffered by a closed request should not be tracked", 0L, bytesBuffered.getValue());
+  }
+
   /**
    * Tests exception scenarios of {@link NettyRequest#readInto(AsyncWritableChannel, Callback)} and behavior of
    * {@link NettyRequest} when {@link AsyncWritableChannel} instances fail.
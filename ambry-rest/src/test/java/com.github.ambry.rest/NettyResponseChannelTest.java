@@ -13,7 +13,10 @@
  */
 package com.github.ambry.rest;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.config.NettyConfig;
+import com.github.ambry.config.VerifiableProperties;
 import com.github.ambry.router.Callback;
 import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Utils;
@@ -51,6 +54,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -177,6 +181,54 @@ public class NettyResponseChannelTest {
     }
   }
 
+  /**
+   * Tests that chunks that are ready to be written together are coalesced up to the configured threshold and that the
+   * content and the callbacks of the chunks are unaffected.
+   * @throws Exception
+   */
+  @Test
+  public void responseChunkCoalescingTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("netty.server.response.chunk.coalesce.threshold.bytes",
+        Integer.toString(MockNettyMessageProcessor.CHUNK.length * 5 / 2));
+    EmbeddedChannel channel = createEmbeddedChannel();
+    MockNettyMessageProcessor processor = channel.pipeline().get(MockNettyMessageProcessor.class);
+    processor.nettyConfig = new NettyConfig(new VerifiableProperties(properties));
+    Counter coalescedChunkCount = MockNettyMessageProcessor.METRIC_REGISTRY.counter(
+        MetricRegistry.name(NettyResponseChannel.class, "CoalescedChunkCount"));
+    long coalescedChunkCountBefore = coalescedChunkCount.getCount();
+    HttpHeaders httpHeaders = new DefaultHttpHeaders();
+    httpHeaders.set(MockNettyMessageProcessor.CHUNK_COUNT_HEADER_NAME, 4);
+    HttpRequest httpRequest =
+        RestTestUtils.createRequest(HttpMethod.POST, TestingUri.CoalesceChunks.toString(), httpHeaders);
+    channel.writeInbound(httpRequest);
+    verifyCallbacks(processor);
+    assertEquals("Unexpected number of callbacks", 4, processor.writeCallbacksToVerify.size());
+    for (ChannelWriteCallback callback : processor.writeCallbacksToVerify) {
+      assertEquals("Unexpected bytes written", MockNettyMessageProcessor.CHUNK.length, callback.result.longValue());
+    }
+
+    HttpResponse response = (HttpResponse) channel.readOutbound();
+    assertEquals("Unexpected response status", HttpResponseStatus.OK, response.status());
+    // two chunks fit in the threshold, so the four chunks are written as two.
+    for (int i = 0; i < 2; i++) {
+      HttpContent httpContent = (HttpContent) channel.readOutbound();
+      assertEquals("Only the last content should be LastHttpContent", i == 1, httpContent instanceof LastHttpContent);
+      ByteBuf content = httpContent.content();
+      assertEquals("Unexpected content size", 2 * MockNettyMessageProcessor.CHUNK.length, content.readableBytes());
+      for (int j = 0; j < 2; j++) {
+        byte[] returnedContent = new byte[MockNettyMessageProcessor.CHUNK.length];
+        content.readBytes(returnedContent);
+        assertArrayEquals("Content does not match with expected content", MockNettyMessageProcessor.CHUNK,
+            returnedContent);
+      }
+      httpContent.release();
+    }
+    assertNull("There should be no more outbound data", channel.readOutbound());
+    assertEquals("Unexpected number of coalesced chunks", 2,
+        coalescedChunkCount.getCount() - coalescedChunkCountBefore);
+  }
+
   /**
    * Checks the case where no body needs to be returned but just a
    * {@link RestResponseChannel#onResponseComplete(Exception)} is called on the server. This should return just
@@ -716,6 +768,13 @@ enum TestingUri {
    * When this request is received, {@link NettyResponseChannel#close()} is called immediately.
    */
   Close, /**
+   * When this request is received, the writability of the channel is turned off while
+   * {@link MockNettyMessageProcessor#CHUNK_COUNT_HEADER_NAME} chunks (each equal to
+   * {@link MockNettyMessageProcessor#CHUNK}) are added to the response channel so that all of them are ready to be
+   * written once it is turned back on. The {@link RestUtils.Headers#CONTENT_LENGTH} is set to the total size of the
+   * chunks.
+   */
+  CoalesceChunks, /**
    * When this request is received, headers from the request are copied into the response channel.
    */
   CopyHeaders, /**
@@ -828,6 +887,8 @@ class MockNettyMessageProcessor extends SimpleChannelInboundHandler<HttpObject>
 
   // the write callbacks to verify if any. This is reset at the beginning of every request.
   final List<ChannelWriteCallback> writeCallbacksToVerify = new ArrayList<>();
+  // the config used for the NettyResponseChannel of every request.
+  NettyConfig nettyConfig = new NettyConfig(new VerifiableProperties(new Properties()));
 
   private ChannelHandlerContext ctx;
   private NettyRequest request;
@@ -866,7 +927,7 @@ class MockNettyMessageProcessor extends SimpleChannelInboundHandler<HttpObject>
   private void handleRequest(HttpRequest httpRequest) throws Exception {
     writeCallbacksToVerify.clear();
     request = new NettyRequest(httpRequest, ctx.channel(), nettyMetrics);
-    restResponseChannel = new NettyResponseChannel(ctx, nettyMetrics);
+    restResponseChannel = new NettyResponseChannel(ctx, nettyMetrics, nettyConfig);
     restResponseChannel.setRequest(request);
     restResponseChannel.setHeader(RestUtils.Headers.CONTENT_TYPE, "application/octet-stream");
     TestingUri uri = TestingUri.getTestingURI(request.getUri());
@@ -875,13 +936,26 @@ class MockNettyMessageProcessor extends SimpleChannelInboundHandler<HttpObject>
         restResponseChannel.close();
         assertFalse("Request channel is not closed", request.isOpen());
         break;
+      case CoalesceChunks:
+        int chunkCount = httpRequest.headers().getInt(CHUNK_COUNT_HEADER_NAME, -1);
+        restResponseChannel.setHeader(RestUtils.Headers.CONTENT_LENGTH, chunkCount * CHUNK.length);
+        ctx.channel().unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        for (int i = 0; i < chunkCount; i++) {
+          ChannelWriteCallback callback = new ChannelWriteCallback();
+          callback.setFuture(restResponseChannel.write(ByteBuffer.wrap(CHUNK), callback));
+          writeCallbacksToVerify.add(callback);
+        }
+        ctx.channel().unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        restResponseChannel.onResponseComplete(null);
+        assertFalse("Request channel is not closed", request.isOpen());
+        break;
       case CopyHeaders:
         copyHeaders(httpRequest);
         restResponseChannel.onResponseComplete(null);
         assertFalse("Request channel is not closed", request.isOpen());
         break;
       case ImmediateResponseComplete:
-        int chunkCount = httpRequest.headers().getInt(CHUNK_COUNT_HEADER_NAME, -1);
+        chunkCount = httpRequest.headers().getInt(CHUNK_COUNT_HEADER_NAME, -1);
         if (chunkCount > 0) {
           restResponseChannel.onResponseComplete(new RestServiceException(
               "Invalid value for header : [" + CHUNK_COUNT_HEADER_NAME + "]. Can only be 0 for [/" + uri + "]",
@@ -1134,7 +1208,7 @@ class MockNettyMessageProcessor extends SimpleChannelInboundHandler<HttpObject>
    */
   private void setRequestTest() throws RestServiceException {
     ResponseStatus status = ResponseStatus.Accepted;
-    restResponseChannel = new NettyResponseChannel(ctx, new NettyMetrics(new MetricRegistry()));
+    restResponseChannel = new NettyResponseChannel(ctx, new NettyMetrics(new MetricRegistry()), nettyConfig);
     try {
       try {
         restResponseChannel.setRequest(null);
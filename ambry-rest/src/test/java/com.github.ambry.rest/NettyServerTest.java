@@ -18,6 +18,7 @@ import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NettyConfig;
 import com.github.ambry.config.VerifiableProperties;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.epoll.Epoll;
 import io.netty.channel.socket.SocketChannel;
 import java.io.IOException;
 import java.util.HashMap;
@@ -51,6 +52,25 @@ public class NettyServerTest {
     nioServer.shutdown();
   }
 
+  /**
+   * Tests {@link NettyServer#start()} and {@link NettyServer#shutdown()} with the epoll transport, multiple acceptors
+   * bound to the same ports and the unpooled allocator. The server should fall back to NIO if epoll is not available.
+   * @throws InstantiationException
+   * @throws IOException
+   */
+  @Test
+  public void epollStartShutdownTest() throws InstantiationException, IOException {
+    Properties properties = new Properties();
+    properties.setProperty("netty.server.epoll.enabled", "true");
+    properties.setProperty("netty.server.epoll.reuse.port.enabled", "true");
+    properties.setProperty("netty.server.boss.thread.count", "2");
+    properties.setProperty("netty.server.pooled.allocator.enabled", "false");
+    NettyServer nettyServer = getNettyServer(properties);
+    nettyServer.start();
+    assertEquals("Epoll should be in use if it is available", Epoll.isAvailable(), nettyServer.isEpollInUse());
+    nettyServer.shutdown();
+  }
+
   /**
    * Tests for {@link NettyServer#shutdown()} when {@link NettyServer#start()} has not been called previously.
    * This test is for cases where {@link NettyServer#start()} has failed and {@link NettyServer#shutdown()} needs to be
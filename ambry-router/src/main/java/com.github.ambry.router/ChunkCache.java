@@ -0,0 +1,189 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.router;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A cache of the data chunks of composite blobs, keyed by the id of the chunk and shared by all the get operations of
+ * a router. The cache is bounded by the total size of the chunks in it.
+ * <p/>
+ * Chunks are admitted based on how frequently they are accessed, in the manner of TinyLFU: the number of recent
+ * accesses of every chunk id, whether it is cached or not, is estimated with a count-min sketch whose counts are
+ * halved periodically. When the cache is full, a new chunk is admitted only if it has been accessed more frequently
+ * than each of the least recently used chunks that would have to be evicted to make room for it. This keeps chunks
+ * that are read once from pushing popular chunks out of the cache.
+ * <p/>
+ * Data chunks do not change once they are put. They can only go away, so a chunk has to be invalidated when it is
+ * deleted.
+ */
+class ChunkCache {
+  // the number of rows of the count-min sketch.
+  private static final int SKETCH_DEPTH = 4;
+  // the maximum count of a counter of the count-min sketch.
+  private static final int MAX_FREQUENCY = 15;
+  // the number of counters per chunk expected to fit in the cache.
+  private static final int COUNTERS_PER_ENTRY = 8;
+  // the number of accesses per chunk expected to fit in the cache after which the counts are halved.
+  private static final int SAMPLES_PER_ENTRY = 10;
+  private static final int[] SEEDS = {0x97cb3127, 0xb5ad4ece, 0x2d2e9f97, 0x85ebca6b};
+
+  private final long capacityInBytes;
+  private final NonBlockingRouterMetrics routerMetrics;
+  private final LinkedHashMap<String, ByteBuffer> chunks = new LinkedHashMap<>(16, 0.75f, true);
+  private final byte[] frequencies;
+  private final int sketchWidthMask;
+  private final int sampleSize;
+  private int numSamples = 0;
+  private long sizeInBytes = 0;
+
+  /**
+   * @param capacityInBytes the maximum total size of the chunks in the cache.
+   * @param expectedChunkSizeInBytes the expected size of a chunk, used to size the frequency sketch.
+   * @param routerMetrics the {@link NonBlockingRouterMetrics} to update.
+   */
+  ChunkCache(long capacityInBytes, long expectedChunkSizeInBytes, NonBlockingRouterMetrics routerMetrics) {
+    this.capacityInBytes = capacityInBytes;
+    this.routerMetrics = routerMetrics;
+    long expectedEntries = Math.max(16, Math.min(1 << 16, capacityInBytes / Math.max(1, expectedChunkSizeInBytes)));
+    int sketchWidth = Integer.highestOneBit((int) expectedEntries * COUNTERS_PER_ENTRY - 1) << 1;
+    frequencies = new byte[SKETCH_DEPTH * sketchWidth];
+    sketchWidthMask = sketchWidth - 1;
+    sampleSize = (int) expectedEntries * SAMPLES_PER_ENTRY;
+  }
+
+  /**
+   * Records an access of a chunk and returns it if it is in the cache.
+   * @param chunkId the id of the chunk.
+   * @return a read only view of the chunk, positioned at its start, or {@code null} if it is not in the cache.
+   */
+  synchronized ByteBuffer get(String chunkId) {
+    recordAccess(chunkId);
+    ByteBuffer chunk = chunks.get(chunkId);
+    if (chunk == null) {
+      routerMetrics.chunkCacheMissCount.inc();
+      return null;
+    }
+    routerMetrics.chunkCacheHitCount.inc();
+    return chunk.asReadOnlyBuffer();
+  }
+
+  /**
+   * Offers a chunk to the cache. The chunk is added if there is room for it or if it is accessed more frequently than
+   * the chunks that would have to be evicted for it. Chunks larger than the capacity of the cache are not added.
+   * @param chunkId the id of the chunk.
+   * @param chunk the content of the chunk, from its position to its limit. It must not be modified after this call.
+   */
+  synchronized void put(String chunkId, ByteBuffer chunk) {
+    long chunkSize = chunk.remaining();
+    if (chunkSize > capacityInBytes || chunks.containsKey(chunkId)) {
+      return;
+    }
+    if (sizeInBytes + chunkSize > capacityInBytes) {
+      int frequency = getFrequency(chunkId);
+      List<String> victims = new ArrayList<>();
+      long sizeAfterEviction = sizeInBytes;
+      Iterator<Map.Entry<String, ByteBuffer>> iterator = chunks.entrySet().iterator();
+      while (sizeAfterEviction + chunkSize > capacityInBytes) {
+        Map.Entry<String, ByteBuffer> eldest = iterator.next();
+        if (getFrequency(eldest.getKey()) >= frequency) {
+          routerMetrics.chunkCacheAdmissionRejectedCount.inc();
+          return;
+        }
+        victims.add(eldest.getKey());
+        sizeAfterEviction -= eldest.getValue().remaining();
+      }
+      for (String victim : victims) {
+        chunks.remove(victim);
+        routerMetrics.chunkCacheEvictionCount.inc();
+      }
+      sizeInBytes = sizeAfterEviction;
+    }
+    chunks.put(chunkId, chunk.slice());
+    sizeInBytes += chunkSize;
+  }
+
+  /**
+   * Removes a chunk from the cache.
+   * @param chunkId the id of the chunk.
+   */
+  synchronized void invalidate(String chunkId) {
+    ByteBuffer chunk = chunks.remove(chunkId);
+    if (chunk != null) {
+      sizeInBytes -= chunk.remaining();
+    }
+  }
+
+  /**
+   * @return the total size of the chunks in the cache.
+   */
+  synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * Increments the estimated access frequency of a chunk. Only the counters that are at the current estimate are
+   * incremented, which reduces the overestimation due to collisions. Once enough accesses have been recorded, all the
+   * counts are halved so that the estimates favor recent accesses.
+   * @param chunkId the id of the chunk.
+   */
+  private void recordAccess(String chunkId) {
+    int frequency = getFrequency(chunkId);
+    if (frequency < MAX_FREQUENCY) {
+      int hash = chunkId.hashCode();
+      for (int i = 0; i < SKETCH_DEPTH; i++) {
+        int index = getCounterIndex(hash, i);
+        if (frequencies[index] == frequency) {
+          frequencies[index]++;
+        }
+      }
+    }
+    if (++numSamples >= sampleSize) {
+      for (int i = 0; i < frequencies.length; i++) {
+        frequencies[i] >>= 1;
+      }
+      numSamples /= 2;
+    }
+  }
+
+  /**
+   * @param chunkId the id of the chunk.
+   * @return the estimated number of recent accesses of the chunk.
+   */
+  private int getFrequency(String chunkId) {
+    int hash = chunkId.hashCode();
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < SKETCH_DEPTH; i++) {
+      frequency = Math.min(frequency, frequencies[getCounterIndex(hash, i)]);
+    }
+    return frequency;
+  }
+
+  /**
+   * @param hash the hash code of a chunk id.
+   * @param row the row of the count-min sketch.
+   * @return the index of the counter of the chunk id in {@code row}.
+   */
+  private int getCounterIndex(int hash, int row) {
+    int rowHash = hash * SEEDS[row];
+    rowHash ^= rowHash >>> 16;
+    return row * (sketchWidthMask + 1) + (rowHash & sketchWidthMask);
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.router;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The memory, shared by all the get blob operations of a router, that data chunks can be fetched into ahead of being
+ * written out to the caller. Memory is reserved for a chunk before it is fetched and released once the chunk has been
+ * written out.
+ */
+class ChunkPrefetchBudget {
+  private final long capacityBytes;
+  private final AtomicLong reservedBytes = new AtomicLong(0);
+
+  /**
+   * @param capacityBytes the memory available for prefetched chunks. 0 means that the memory is unbounded.
+   */
+  ChunkPrefetchBudget(long capacityBytes) {
+    if (capacityBytes < 0) {
+      throw new IllegalArgumentException("Capacity cannot be negative: " + capacityBytes);
+    }
+    this.capacityBytes = capacityBytes == 0 ? Long.MAX_VALUE : capacityBytes;
+  }
+
+  /**
+   * Reserves {@code bytes} if they are available.
+   * @param bytes the number of bytes to reserve.
+   * @param force if {@code true}, the bytes are reserved even if that exceeds the capacity.
+   * @return {@code true} if the bytes were reserved.
+   */
+  boolean reserve(long bytes, boolean force) {
+    while (true) {
+      long current = reservedBytes.get();
+      if (!force && current + bytes > capacityBytes) {
+        return false;
+      }
+      if (reservedBytes.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases {@code bytes} that were reserved.
+   * @param bytes the number of bytes to release.
+   */
+  void release(long bytes) {
+    reservedBytes.addAndGet(-bytes);
+  }
+
+  /**
+   * @return the number of bytes that are currently reserved.
+   */
+  long getReservedBytes() {
+    return reservedBytes.get();
+  }
+}
@@ -26,6 +26,7 @@ import com.github.ambry.messageformat.BlobInfo;
 import com.github.ambry.messageformat.BlobType;
 import com.github.ambry.messageformat.CompositeBlobInfo;
 import com.github.ambry.messageformat.MessageFormatException;
+import com.github.ambry.messageformat.MessageFormatErrorCodes;
 import com.github.ambry.messageformat.MessageFormatFlags;
 import com.github.ambry.messageformat.MessageFormatRecord;
 import com.github.ambry.messageformat.MetadataContentSerDe;
@@ -49,6 +50,7 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,8 +67,14 @@ import org.slf4j.LoggerFactory;
  * As soon as the first data chunk is fetched (which could be the first chunk in the case of simple blobs and the
  * second chunk fetched in the case of composite blobs), the operation callback is invoked (and the future is marked
  * as done) so that the caller can start reading in data. The rest of the chunks are asynchronously fetched and
- * buffered up to the maximum that can be buffered. When fetched chunks are consumed by the caller, subsequent chunks
- * become eligible to be fetched.
+ * buffered up to a prefetch window. When fetched chunks are consumed by the caller, subsequent chunks become eligible
+ * to be fetched. The prefetch window starts at {@link NonBlockingRouter#MAX_IN_MEM_CHUNKS} and is widened every time
+ * the caller has to wait for a chunk, up to {@link RouterConfig#routerGetPrefetchMaxChunks}. Memory for every chunk
+ * that is fetched is reserved from a {@link ChunkPrefetchBudget} shared by all the operations of the router, and the
+ * window is halved when the budget is exhausted.
+ *
+ * If the router has a {@link ChunkCache}, data chunks are looked up in it before they are fetched and are offered to
+ * it once they are fetched.
  */
 class GetBlobOperation extends GetOperation {
   // the callback to use to complete the operation.
@@ -75,7 +83,8 @@ class GetBlobOperation extends GetOperation {
   private final AtomicBoolean operationCallbackInvoked = new AtomicBoolean(false);
   // The first chunk may be a metadata chunk if the blob is composite, or the only data chunk if the blob is simple.
   private final FirstGetChunk firstChunk;
-  // Associated with all data chunks in the case of composite blobs. Only a fixed number of these are initialized.
+  // Associated with all data chunks in the case of composite blobs. Only as many of these as the maximum prefetch
+  // window are initialized.
   // Each of these is initialized with the information required to fetch a data chunk and is responsible for
   // retrieving and adding it to the list of chunk buffers. Once complete, they are reused to fetch subsequent data
   // chunks.
@@ -104,6 +113,18 @@ class GetBlobOperation extends GetOperation {
   private BlobDataReadableStreamChannel blobDataChannel;
   // the CompositeBlobInfo that will be set if (and when) this blob turns out to be a composite blob.
   private CompositeBlobInfo compositeBlobInfo;
+  // the memory, shared with the other get operations of the router, that fetched data chunks are held in.
+  private final ChunkPrefetchBudget chunkPrefetchBudget;
+  // the number of data chunks that can be fetched or held ahead of being written out. Only updated by the router
+  // thread.
+  private volatile int prefetchWindow;
+  // the number of times the caller waited for a data chunk since the prefetch window was last widened. Waits are
+  // recorded by the thread that writes chunks out and consumed by the router thread in poll().
+  private final AtomicInteger numChunkWaits = new AtomicInteger(0);
+  // the number of data chunks that memory is currently reserved for in the chunkPrefetchBudget.
+  private final AtomicInteger numChunksReserved = new AtomicInteger(0);
+  // the cache of data chunks shared with the other get operations of the router. Can be null.
+  private final ChunkCache chunkCache;
 
   private static final Logger logger = LoggerFactory.getLogger(GetBlobOperation.class);
 
@@ -118,18 +139,23 @@ class GetBlobOperation extends GetOperation {
    * @param callback the callback that is to be called when the operation completes.
    * @param routerCallback the {@link RouterCallback} to use to complete operations.
    * @param blobIdFactory the factory to use to deserialize keys in a metadata chunk.
+   * @param chunkPrefetchBudget the {@link ChunkPrefetchBudget} to reserve memory for fetched data chunks from.
+   * @param chunkCache the {@link ChunkCache} to look data chunks up in and add them to, or {@code null} if data chunks
+   *                   are not cached.
    * @param time the Time instance to use.
    * @throws RouterException if there is an error with any of the parameters, such as an invalid blob id.
    */
   GetBlobOperation(RouterConfig routerConfig, NonBlockingRouterMetrics routerMetrics, ClusterMap clusterMap,
       ResponseHandler responseHandler, String blobIdStr, GetBlobOptionsInternal options,
-      Callback<GetBlobResultInternal> callback, RouterCallback routerCallback, BlobIdFactory blobIdFactory, Time time)
-      throws RouterException {
+      Callback<GetBlobResultInternal> callback, RouterCallback routerCallback, BlobIdFactory blobIdFactory,
+      ChunkPrefetchBudget chunkPrefetchBudget, ChunkCache chunkCache, Time time) throws RouterException {
     super(routerConfig, routerMetrics, clusterMap, responseHandler, blobIdStr, options, callback,
         routerMetrics.getBlobLocalColoLatencyMs, routerMetrics.getBlobCrossColoLatencyMs,
         routerMetrics.getBlobPastDueCount, time);
     this.routerCallback = routerCallback;
     this.blobIdFactory = blobIdFactory;
+    this.chunkPrefetchBudget = chunkPrefetchBudget;
+    this.chunkCache = chunkCache;
     firstChunk = new FirstGetChunk();
   }
 
@@ -150,9 +176,56 @@ class GetBlobOperation extends GetOperation {
         blobDataChannel.completeRead();
       }
     }
+    releaseAllReservedChunks();
     operationCompleted = true;
   }
 
+  /**
+   * Reserve memory for a data chunk that is about to be fetched. If the {@link ChunkPrefetchBudget} is exhausted, the
+   * prefetch window is halved.
+   * @param force if {@code true}, the memory is reserved even if the budget is exhausted.
+   * @return {@code true} if the memory was reserved.
+   */
+  private boolean reserveChunk(boolean force) {
+    if (chunkPrefetchBudget.reserve(chunkSize, force)) {
+      numChunksReserved.incrementAndGet();
+      return true;
+    }
+    routerMetrics.getBlobPrefetchBudgetExhaustedCount.inc();
+    prefetchWindow = Math.max(1, prefetchWindow / 2);
+    return false;
+  }
+
+  /**
+   * Release the memory reserved for a data chunk that has been written out, if any is reserved.
+   */
+  private void releaseReservedChunk() {
+    int current;
+    do {
+      current = numChunksReserved.get();
+      if (current == 0) {
+        return;
+      }
+    } while (!numChunksReserved.compareAndSet(current, current - 1));
+    chunkPrefetchBudget.release(chunkSize);
+  }
+
+  /**
+   * Release the memory reserved for all the data chunks of this operation.
+   */
+  private void releaseAllReservedChunks() {
+    chunkPrefetchBudget.release(numChunksReserved.getAndSet(0) * chunkSize);
+  }
+
+  /**
+   * Record that the caller had to wait for a data chunk, so that the prefetch window is widened in the next poll.
+   * @param waitTimeMs the time for which the caller waited.
+   */
+  private void onChunkWait(long waitTimeMs) {
+    routerMetrics.getBlobChunkWaitTimeMs.update(waitTimeMs);
+    numChunkWaits.incrementAndGet();
+  }
+
   /**
    * Do all that needs to be done (cleanup, notification, etc.) on chunk completion and mark the state of the chunk
    * appropriately.
@@ -240,13 +313,30 @@ class GetBlobOperation extends GetOperation {
         }
         // If this is a composite blob, poll for requests for subsequent chunks.
         if (dataChunks != null) {
+          // widen the prefetch window by one chunk for every wait of the caller since the last poll.
+          int numWaits = numChunkWaits.getAndSet(0);
+          if (numWaits > 0) {
+            prefetchWindow = Math.min(prefetchWindow + numWaits, dataChunks.length);
+          }
+          // the chunks that are being fetched or have been fetched but are yet to be written out.
+          int numChunksHeld = numChunksRetrieved - blobDataChannel.getNumChunksWrittenOut();
+          for (GetChunk dataChunk : dataChunks) {
+            if (dataChunk.isInProgress()) {
+              numChunksHeld++;
+            }
+          }
           for (GetChunk dataChunk : dataChunks) {
             if (dataChunk.isFree() && chunkIdIterator.hasNext()) {
               dataChunk.initialize(chunkIdIterator.nextIndex(), (BlobId) chunkIdIterator.next());
             }
-            if (dataChunk.isInProgress() || (dataChunk.isReady()
-                && numChunksRetrieved - blobDataChannel.getNumChunksWrittenOut()
-                < NonBlockingRouter.MAX_IN_MEM_CHUNKS)) {
+            // a chunk can always be fetched if no other chunk is held, so that the operation makes progress even if
+            // the prefetch budget is exhausted.
+            boolean fetchChunk =
+                dataChunk.isReady() && numChunksHeld < prefetchWindow && reserveChunk(numChunksHeld == 0);
+            if (fetchChunk) {
+              numChunksHeld++;
+            }
+            if (dataChunk.isInProgress() || fetchChunk) {
               dataChunk.poll(requestRegistrationCallback);
               if (dataChunk.isComplete()) {
                 onChunkOperationComplete(dataChunk);
@@ -285,6 +375,9 @@ class GetBlobOperation extends GetOperation {
     private Long bytesWritten = 0L;
     // the number of chunks that have been written out to the asyncWritableChannel.
     private volatile int numChunksWrittenOut = 0;
+    // the time at which the caller last started waiting for a chunk, which is when readInto() was called or when the
+    // last chunk was written out.
+    private volatile long chunkWaitStartTimeMs;
     // the index of the next chunk that is to be written out to the asyncWritableChannel.
     private int indexOfNextChunkToWriteOut = 0;
     // whether this object has called the readIntoCallback yet.
@@ -297,6 +390,8 @@ class GetBlobOperation extends GetOperation {
         if (exception != null) {
           setOperationException(exception);
         }
+        releaseReservedChunk();
+        chunkWaitStartTimeMs = time.milliseconds();
         numChunksWrittenOut++;
         routerCallback.onPollReady();
       }
@@ -322,6 +417,7 @@ class GetBlobOperation extends GetOperation {
       this.asyncWritableChannel = asyncWritableChannel;
       readIntoCallback = callback;
       readIntoFuture = new FutureResult<>();
+      chunkWaitStartTimeMs = time.milliseconds();
       readCalled = true;
       if (operationException.get() != null) {
         completeRead();
@@ -369,6 +465,10 @@ class GetBlobOperation extends GetOperation {
       if (firstChunk.isComplete() && readCalled) {
         while (operationException.get() == null && chunkIndexToBuffer.containsKey(indexOfNextChunkToWriteOut)) {
           ByteBuffer chunkBuf = chunkIndexToBuffer.remove(indexOfNextChunkToWriteOut);
+          if (dataChunks != null && numChunksWrittenOut == indexOfNextChunkToWriteOut) {
+            // every chunk handed to the asyncWritableChannel has been written out, so the caller waited for this one.
+            onChunkWait(time.milliseconds() - chunkWaitStartTimeMs);
+          }
           asyncWritableChannel.write(chunkBuf, chunkAsyncWriteCallback);
           indexOfNextChunkToWriteOut++;
         }
@@ -396,6 +496,7 @@ class GetBlobOperation extends GetOperation {
         long totalTime = time.milliseconds() - submissionTimeMs;
         routerMetrics.getBlobOperationTotalTimeMs.update(totalTime);
       }
+      releaseAllReservedChunks();
       operationCompleted = true;
     }
 
@@ -413,6 +514,7 @@ class GetBlobOperation extends GetOperation {
         routerMetrics.simpleBlobGetCount.inc();
       } else {
         routerMetrics.compositeBlobGetCount.inc();
+        routerMetrics.getBlobPrefetchWindowSize.update(prefetchWindow);
       }
     }
   }
@@ -526,6 +628,9 @@ class GetBlobOperation extends GetOperation {
      *                                    created as part of this poll operation.
      */
     void poll(RequestRegistrationCallback<GetOperation> requestRegistrationCallback) {
+      if (isReady() && maybeCompleteFromCache()) {
+        return;
+      }
       //First, check if any of the existing requests have timed out.
       cleanupExpiredInFlightRequests();
       checkAndMaybeComplete();
@@ -534,6 +639,22 @@ class GetBlobOperation extends GetOperation {
       }
     }
 
+    /**
+     * Complete the operation on the current chunk with the content in the {@link ChunkCache}, if it is cached.
+     * @return {@code true} if the chunk was found in the cache and the operation on it is complete.
+     */
+    boolean maybeCompleteFromCache() {
+      ByteBuffer chunkBuf = chunkCache == null ? null : chunkCache.get(chunkBlobId.getID());
+      if (chunkBuf == null) {
+        return false;
+      }
+      addChunkBuffer(filterChunkToRange(chunkBuf));
+      successfullyDeserialized = true;
+      chunkCompleted = true;
+      state = ChunkState.Complete;
+      return true;
+    }
+
     /**
      * Clean up requests sent out by this operation that have now timed out.
      */
@@ -569,7 +690,11 @@ class GetBlobOperation extends GetOperation {
         replicaIterator.remove();
         String hostname = replicaId.getDataNodeId().getHostname();
         Port port = replicaId.getDataNodeId().getPortToConnectTo();
-        GetRequest getRequest = createGetRequest(chunkBlobId, getOperationFlag(), getGetOption());
+        ByteRange chunkByteRange = getChunkByteRange();
+        GetRequest getRequest = createGetRequest(chunkBlobId, getOperationFlag(), getGetOption(), chunkByteRange);
+        if (chunkByteRange != null) {
+          routerMetrics.getBlobChunkRangeRequestCount.inc();
+        }
         RouterRequestInfo request = new RouterRequestInfo(hostname, port, getRequest, replicaId);
         int correlationId = getRequest.getCorrelationId();
         correlationIdToGetRequestInfo.put(correlationId, new GetRequestInfo(replicaId, time.milliseconds()));
@@ -613,15 +738,40 @@ class GetBlobOperation extends GetOperation {
      */
     void handleBody(InputStream payload) throws IOException, MessageFormatException {
       if (!successfullyDeserialized) {
-        BlobData blobData = MessageFormatRecord.deserializeBlob(payload);
-        chunkIndexToBuffer.put(chunkIndex, filterChunkToRange(blobData));
-        numChunksRetrieved++;
+        ByteRange chunkByteRange = getChunkByteRange();
+        if (chunkByteRange != null) {
+          BlobData blobData = MessageFormatRecord.Blob_Range_Format_V1.deserializeBlobRange(payload);
+          if (blobData.getSize() != chunkByteRange.getRangeSize()) {
+            throw new MessageFormatException(
+                "Received " + blobData.getSize() + " bytes for range " + chunkByteRange + " of " + chunkBlobId,
+                MessageFormatErrorCodes.Data_Corrupt);
+          }
+          // the range is already exactly the part of the chunk that is needed.
+          addChunkBuffer(blobData.getStream().getByteBuffer());
+        } else {
+          BlobData blobData = MessageFormatRecord.deserializeBlob(payload);
+          ByteBuffer chunkBuf = blobData.getStream().getByteBuffer();
+          if (chunkCache != null) {
+            chunkCache.put(chunkBlobId.getID(), chunkBuf);
+          }
+          addChunkBuffer(filterChunkToRange(chunkBuf));
+        }
         successfullyDeserialized = true;
       } else {
         // If successTarget > 1, then content reconciliation may have to be done. For now, ignore subsequent responses.
       }
     }
 
+    /**
+     * Add the content of the current data chunk to the chunk buffers to be written out.
+     * @param chunkBuf the content of the chunk that is within the operation's specified byte range.
+     */
+    private void addChunkBuffer(ByteBuffer chunkBuf) {
+      chunkIndexToBuffer.put(chunkIndex, chunkBuf);
+      numChunksRetrieved++;
+      routerMetrics.getBlobBufferedChunkCount.update(numChunksRetrieved - blobDataChannel.getNumChunksWrittenOut());
+    }
+
     /**
      * This method is the entry point for handling responses received for requests sent out on behalf of this chunk.
      * For gets, processing involves determining whether the request was successful, notifying the operation
@@ -772,11 +922,10 @@ class GetBlobOperation extends GetOperation {
 
     /**
      * Slice this chunk's data to only include the bytes within the operation's specified byte range.
-     * @param blobData the {@link BlobData} for this chunk.
+     * @param buf the data of this chunk.
      * @return A {@link ByteBuffer} that only includes bytes within the operation's specified byte range.
      */
-    protected ByteBuffer filterChunkToRange(BlobData blobData) {
-      ByteBuffer buf = blobData.getStream().getByteBuffer();
+    protected ByteBuffer filterChunkToRange(ByteBuffer buf) {
       if (options == null || options.getBlobOptions.getRange() == null) {
         return buf;
       }
@@ -793,6 +942,27 @@ class GetBlobOperation extends GetOperation {
       return buf.slice();
     }
 
+    /**
+     * Get the byte range of the current data chunk to request from the servers. Only the bytes of a chunk that are
+     * within the operation's specified byte range are requested, if the chunk is only partly within that range and
+     * range requests are enabled.
+     * @return the byte range, relative to the start of the chunk, or {@code null} if the whole chunk is requested.
+     */
+    ByteRange getChunkByteRange() {
+      if (!routerConfig.routerGetChunkRangeRequestsEnabled || resolvedByteRange == null
+          || resolvedByteRange.getRangeSize() == 0) {
+        return null;
+      }
+      long chunkStartOffset = (resolvedByteRange.getStartOffset() / chunkSize + chunkIndex) * chunkSize;
+      long chunkEndOffset = Math.min(chunkStartOffset + chunkSize, totalSize) - 1;
+      long startOffset = Math.max(resolvedByteRange.getStartOffset(), chunkStartOffset);
+      long endOffset = Math.min(resolvedByteRange.getEndOffset(), chunkEndOffset);
+      if (startOffset == chunkStartOffset && endOffset == chunkEndOffset) {
+        return null;
+      }
+      return ByteRange.fromOffsetRange(startOffset - chunkStartOffset, endOffset - chunkStartOffset);
+    }
+
     /**
      * @return true if this GetChunk is free so a chunk of the overall blob can be assigned to it.
      */
@@ -847,6 +1017,26 @@ class GetBlobOperation extends GetOperation {
       correlationIdToGetRequestInfo.clear();
     }
 
+    /**
+     * {@inheritDoc}
+     * <br>
+     * The first chunk is never cached, as it has to be fetched from the servers to find out whether the blob has been
+     * deleted or has expired.
+     */
+    @Override
+    boolean maybeCompleteFromCache() {
+      return false;
+    }
+
+    /**
+     * The first chunk is always requested whole, since the size of the blob is not known until it is fetched.
+     * @return {@code null}
+     */
+    @Override
+    ByteRange getChunkByteRange() {
+      return null;
+    }
+
     @Override
     GetOption getGetOption() {
       return options.getBlobOptions.getGetOption();
@@ -956,7 +1146,8 @@ class GetBlobOperation extends GetOperation {
         } else {
           chunkIdIterator = keys.listIterator();
           numChunksTotal = keys.size();
-          dataChunks = new GetChunk[Math.min(keys.size(), NonBlockingRouter.MAX_IN_MEM_CHUNKS)];
+          dataChunks = new GetChunk[Math.min(keys.size(), routerConfig.routerGetPrefetchMaxChunks)];
+          prefetchWindow = Math.min(dataChunks.length, NonBlockingRouter.MAX_IN_MEM_CHUNKS);
           for (int i = 0; i < dataChunks.length; i++) {
             dataChunks[i] = new GetChunk(chunkIdIterator.nextIndex(), (BlobId) chunkIdIterator.next());
           }
@@ -985,7 +1176,7 @@ class GetBlobOperation extends GetOperation {
         dataChunks = null;
         chunkIndex = 0;
         numChunksTotal = 1;
-        chunkIndexToBuffer.put(0, filterChunkToRange(blobData));
+        chunkIndexToBuffer.put(0, filterChunkToRange(blobData.getStream().getByteBuffer()));
         numChunksRetrieved = 1;
       }
     }
@@ -61,6 +61,8 @@ class GetManager {
   private final ResponseHandler responseHandler;
   private final NonBlockingRouterMetrics routerMetrics;
   private final RouterCallback routerCallback;
+  private final ChunkPrefetchBudget chunkPrefetchBudget;
+  private final ChunkCache chunkCache;
 
   private class GetRequestRegistrationCallbackImpl implements RequestRegistrationCallback<GetOperation> {
     private List<RequestInfo> requestListToFill;
@@ -84,16 +86,23 @@ class GetManager {
    * @param routerConfig  The {@link RouterConfig} containing the configs for the PutManager.
    * @param routerMetrics The {@link NonBlockingRouterMetrics} to be used for reporting metrics.
    * @param routerCallback The {@link RouterCallback} to use for callbacks to the router.
+   * @param chunkPrefetchBudget The {@link ChunkPrefetchBudget} to reserve memory for prefetched data chunks from. This
+   *                            may be shared with other GetManagers.
+   * @param chunkCache The {@link ChunkCache} to look data chunks up in and add them to. This may be shared with other
+   *                   GetManagers. If {@code null}, chunks are not cached.
    * @param time The {@link Time} instance to use.
    */
   GetManager(ClusterMap clusterMap, ResponseHandler responseHandler, RouterConfig routerConfig,
-      NonBlockingRouterMetrics routerMetrics, RouterCallback routerCallback, Time time) {
+      NonBlockingRouterMetrics routerMetrics, RouterCallback routerCallback, ChunkPrefetchBudget chunkPrefetchBudget,
+      ChunkCache chunkCache, Time time) {
     this.clusterMap = clusterMap;
     blobIdFactory = new BlobIdFactory(clusterMap);
     this.responseHandler = responseHandler;
     this.routerConfig = routerConfig;
     this.routerMetrics = routerMetrics;
     this.routerCallback = routerCallback;
+    this.chunkPrefetchBudget = chunkPrefetchBudget;
+    this.chunkCache = chunkCache;
     this.time = time;
     getOperations = Collections.newSetFromMap(new ConcurrentHashMap<GetOperation, Boolean>());
   }
@@ -114,7 +123,7 @@ class GetManager {
       } else {
         getOperation =
             new GetBlobOperation(routerConfig, routerMetrics, clusterMap, responseHandler, blobId, options, callback,
-                routerCallback, blobIdFactory, time);
+                routerCallback, blobIdFactory, chunkPrefetchBudget, chunkCache, time);
       }
       getOperations.add(getOperation);
     } catch (RouterException e) {
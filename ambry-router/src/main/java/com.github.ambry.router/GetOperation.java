@@ -187,9 +187,24 @@ abstract class GetOperation {
    * @return the created GetRequest.
    */
   protected GetRequest createGetRequest(BlobId blobId, MessageFormatFlags flag, GetOption getOption) {
+    return createGetRequest(blobId, flag, getOption, null);
+  }
+
+  /**
+   * Create and return the {@link GetRequest} for a byte range of the content of the given blobId.
+   * @param blobId The {@link BlobId} for which the {@link GetRequest} is being created.
+   * @param flag The {@link MessageFormatFlags} to be set with the GetRequest.
+   * @param getOption The {@link GetOption} to be set with the GetRequest.
+   * @param byteRange The byte range of the blob content to request, with defined start and end offsets. If
+   *                  {@code null}, the whole blob is requested.
+   * @return the created GetRequest.
+   */
+  protected GetRequest createGetRequest(BlobId blobId, MessageFormatFlags flag, GetOption getOption,
+      ByteRange byteRange) {
     List<BlobId> blobIds = Collections.singletonList(blobId);
-    List<PartitionRequestInfo> partitionRequestInfoList =
-        Collections.singletonList(new PartitionRequestInfo(blobId.getPartition(), blobIds));
+    List<PartitionRequestInfo> partitionRequestInfoList = Collections.singletonList(
+        new PartitionRequestInfo(blobId.getPartition(), blobIds,
+            byteRange == null ? null : Collections.singletonList(byteRange)));
     return new GetRequest(NonBlockingRouter.correlationIdGenerator.incrementAndGet(), routerConfig.routerHostname, flag,
         partitionRequestInfoList, getOption);
   }
@@ -27,6 +27,7 @@ import com.github.ambry.protocol.GetOption;
 import com.github.ambry.protocol.RequestOrResponse;
 import com.github.ambry.protocol.RequestOrResponseType;
 import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.IOException;
@@ -57,6 +58,9 @@ class NonBlockingRouter implements Router {
   private final ClusterMap clusterMap;
   private final NonBlockingRouterMetrics routerMetrics;
   private final ResponseHandler responseHandler;
+  private final SizeClassedByteBufferPool chunkBufferPool;
+  private final ChunkPrefetchBudget chunkPrefetchBudget;
+  private final ChunkCache chunkCache;
   private final Time time;
 
   private static final Logger logger = LoggerFactory.getLogger(NonBlockingRouter.class);
@@ -86,6 +90,24 @@ class NonBlockingRouter implements Router {
     this.notificationSystem = notificationSystem;
     this.clusterMap = clusterMap;
     responseHandler = new ResponseHandler(clusterMap);
+    if (routerConfig.routerPutChunkBufferPoolCapacityBytes > 0) {
+      // chunk buffers are filled by the ChunkFiller threads and released by the RequestResponseHandler threads, so
+      // thread caches would never be hit.
+      chunkBufferPool = new SizeClassedByteBufferPool(routerConfig.routerPutChunkBufferPoolCapacityBytes,
+          routerConfig.routerMaxPutChunkSizeBytes, false, 0, routerConfig.routerPutChunkBufferPoolLeakDetectionEnabled);
+      routerMetrics.initializeChunkBufferPoolMetrics(chunkBufferPool);
+    } else {
+      chunkBufferPool = null;
+    }
+    chunkPrefetchBudget = new ChunkPrefetchBudget(routerConfig.routerGetPrefetchMemoryBudgetBytes);
+    routerMetrics.initializeChunkPrefetchBudgetMetrics(chunkPrefetchBudget);
+    if (routerConfig.routerChunkCacheCapacityBytes > 0) {
+      chunkCache = new ChunkCache(routerConfig.routerChunkCacheCapacityBytes, routerConfig.routerMaxPutChunkSizeBytes,
+          routerMetrics);
+      routerMetrics.initializeChunkCacheMetrics(chunkCache);
+    } else {
+      chunkCache = null;
+    }
     this.time = time;
     ocCount = routerConfig.routerScalingUnitCount;
     ocList = new ArrayList<>();
@@ -363,6 +385,14 @@ class NonBlockingRouter implements Router {
     return currentOperationsCount.get();
   }
 
+  /**
+   * @return the pool that the buffers of the data chunks being put are allocated from, or {@code null} if chunk
+   * buffers are not pooled.
+   */
+  SizeClassedByteBufferPool getChunkBufferPool() {
+    return chunkBufferPool;
+  }
+
   /**
    * Return the count of the number of background operations submitted to the router that are not yet
    * completed.
@@ -424,8 +454,9 @@ class NonBlockingRouter implements Router {
       routerCallback = new RouterCallback(networkClient, backgroundDeleteRequests);
       putManager =
           new PutManager(clusterMap, responseHandler, notificationSystem, routerConfig, routerMetrics, routerCallback,
-              suffix, time);
-      getManager = new GetManager(clusterMap, responseHandler, routerConfig, routerMetrics, routerCallback, time);
+              chunkBufferPool, suffix, time);
+      getManager = new GetManager(clusterMap, responseHandler, routerConfig, routerMetrics, routerCallback,
+          chunkPrefetchBudget, chunkCache, time);
       deleteManager = new DeleteManager(clusterMap, responseHandler, notificationSystem, routerConfig, routerMetrics,
           routerCallback, time);
       requestResponseHandlerThread = Utils.newThread("RequestResponseHandlerThread-" + suffix, this, true);
@@ -482,7 +513,14 @@ class NonBlockingRouter implements Router {
      */
     protected void deleteBlob(final String blobId, final String serviceId, FutureResult<Void> futureResult,
         final Callback<Void> callback, boolean attemptChunkDeletes) {
+      if (chunkCache != null) {
+        chunkCache.invalidate(blobId);
+      }
       deleteManager.submitDeleteBlobOperation(blobId, serviceId, futureResult, (Void result, Exception exception) -> {
+        if (chunkCache != null) {
+          // a get that was in progress when the delete was submitted may have cached the chunk again.
+          chunkCache.invalidate(blobId);
+        }
         if (exception == null && attemptChunkDeletes) {
           initiateChunkDeletesIfAny(blobId, serviceId);
         }
@@ -574,7 +612,14 @@ class NonBlockingRouter implements Router {
         while (isOpen.get()) {
           List<RequestInfo> requestInfoList = pollForRequests();
           List<ResponseInfo> responseInfoList = networkClient.sendAndPoll(requestInfoList, NETWORK_CLIENT_POLL_TIMEOUT);
-          onResponse(responseInfoList);
+          try {
+            onResponse(responseInfoList);
+          } finally {
+            // the responses are fully deserialized by the operations, so their buffers can be reused.
+            for (ResponseInfo responseInfo : responseInfoList) {
+              responseInfo.release();
+            }
+          }
         }
       } catch (Throwable e) {
         logger.error("Aborting, as requestResponseHandlerThread received an unexpected error: ", e);
@@ -18,8 +18,10 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.github.ambry.clustermap.ClusterMap;
 import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -97,6 +99,26 @@ public class NonBlockingRouterMetrics {
   public final Histogram waitTimeForFreeChunkAvailabilityMs;
   // time spent by a chunk waiting for data to become available in the channel.
   public final Histogram waitTimeForChannelDataAvailabilityMs;
+  // number of times a chunk could not be filled because the chunk buffer pool was exhausted.
+  public final Counter chunkBufferPoolExhaustedCount;
+  // time spent by the caller of a get blob operation waiting for the next data chunk to be fetched.
+  public final Histogram getBlobChunkWaitTimeMs;
+  // number of data chunks of a get blob operation that are fetched or being fetched but not yet written out.
+  public final Histogram getBlobBufferedChunkCount;
+  // the prefetch window of a get blob operation when it completes.
+  public final Histogram getBlobPrefetchWindowSize;
+  // number of times a get blob operation narrowed its prefetch window because the prefetch memory was exhausted.
+  public final Counter getBlobPrefetchBudgetExhaustedCount;
+  // number of requests for data chunks that were made with a byte range of the chunk.
+  public final Counter getBlobChunkRangeRequestCount;
+
+  // ChunkCache metrics.
+  public final Counter chunkCacheHitCount;
+  public final Counter chunkCacheMissCount;
+  public final Counter chunkCacheEvictionCount;
+  // number of chunks that were not added to the chunk cache because they were accessed less frequently than the
+  // chunks that would have had to be evicted for them.
+  public final Counter chunkCacheAdmissionRejectedCount;
 
   // Misc metrics.
   public final Meter operationErrorRate;
@@ -238,6 +260,24 @@ public class NonBlockingRouterMetrics {
         metricRegistry.histogram(MetricRegistry.name(PutManager.class, "WaitTimeForFreeChunkAvailabilityMs"));
     waitTimeForChannelDataAvailabilityMs =
         metricRegistry.histogram(MetricRegistry.name(PutManager.class, "WaitTimeForChannelDataAvailabilityMs"));
+    chunkBufferPoolExhaustedCount =
+        metricRegistry.counter(MetricRegistry.name(PutManager.class, "ChunkBufferPoolExhaustedCount"));
+    getBlobChunkWaitTimeMs = metricRegistry.histogram(MetricRegistry.name(GetBlobOperation.class, "ChunkWaitTimeMs"));
+    getBlobBufferedChunkCount =
+        metricRegistry.histogram(MetricRegistry.name(GetBlobOperation.class, "BufferedChunkCount"));
+    getBlobPrefetchWindowSize =
+        metricRegistry.histogram(MetricRegistry.name(GetBlobOperation.class, "PrefetchWindowSize"));
+    getBlobPrefetchBudgetExhaustedCount =
+        metricRegistry.counter(MetricRegistry.name(GetBlobOperation.class, "PrefetchBudgetExhaustedCount"));
+    getBlobChunkRangeRequestCount =
+        metricRegistry.counter(MetricRegistry.name(GetBlobOperation.class, "ChunkRangeRequestCount"));
+
+    // ChunkCache metrics.
+    chunkCacheHitCount = metricRegistry.counter(MetricRegistry.name(ChunkCache.class, "HitCount"));
+    chunkCacheMissCount = metricRegistry.counter(MetricRegistry.name(ChunkCache.class, "MissCount"));
+    chunkCacheEvictionCount = metricRegistry.counter(MetricRegistry.name(ChunkCache.class, "EvictionCount"));
+    chunkCacheAdmissionRejectedCount =
+        metricRegistry.counter(MetricRegistry.name(ChunkCache.class, "AdmissionRejectedCount"));
 
     // Misc metrics.
     operationErrorRate = metricRegistry.meter(MetricRegistry.name(NonBlockingRouter.class, "OperationErrorRate"));
@@ -320,6 +360,65 @@ public class NonBlockingRouterMetrics {
         chunkFillerThreadRunning);
   }
 
+  /**
+   * Initializes the metrics that monitor the pool of chunk buffers shared by the put operations of the router.
+   * @param chunkBufferPool the {@link SizeClassedByteBufferPool} that chunk buffers are allocated from.
+   */
+  public void initializeChunkBufferPoolMetrics(final SizeClassedByteBufferPool chunkBufferPool) {
+    metricRegistry.register(MetricRegistry.name(PutManager.class, "ChunkBufferPoolOutstandingBytes"),
+        new Gauge<Long>() {
+          @Override
+          public Long getValue() {
+            return chunkBufferPool.getOutstandingBytes();
+          }
+        });
+    metricRegistry.register(MetricRegistry.name(PutManager.class, "ChunkBufferPoolPooledBytes"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return chunkBufferPool.getPooledBytes();
+      }
+    });
+    metricRegistry.register(MetricRegistry.name(PutManager.class, "ChunkBufferPoolHitRate"), new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        long hitCount = chunkBufferPool.getHitCount();
+        return Ratio.of(hitCount, hitCount + chunkBufferPool.getMissCount());
+      }
+    });
+    metricRegistry.register(MetricRegistry.name(PutManager.class, "ChunkBufferPoolLeakCount"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return chunkBufferPool.getLeakCount();
+      }
+    });
+  }
+
+  /**
+   * Initializes the metrics that monitor the memory shared by the get operations of the router for prefetched chunks.
+   * @param chunkPrefetchBudget the {@link ChunkPrefetchBudget} that memory for prefetched chunks is reserved from.
+   */
+  void initializeChunkPrefetchBudgetMetrics(final ChunkPrefetchBudget chunkPrefetchBudget) {
+    metricRegistry.register(MetricRegistry.name(GetManager.class, "ChunkPrefetchReservedBytes"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return chunkPrefetchBudget.getReservedBytes();
+      }
+    });
+  }
+
+  /**
+   * Initializes the metrics that monitor the cache of data chunks shared by the get operations of the router.
+   * @param chunkCache the {@link ChunkCache} of the router.
+   */
+  void initializeChunkCacheMetrics(final ChunkCache chunkCache) {
+    metricRegistry.register(MetricRegistry.name(ChunkCache.class, "SizeInBytes"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return chunkCache.getSizeInBytes();
+      }
+    });
+  }
+
   /**
    * Initializes a {@link Gauge} metric to monitor the number of running
    * {@link com.github.ambry.router.NonBlockingRouter.OperationController} of a {@link NonBlockingRouter}.
@@ -27,11 +27,14 @@ import com.github.ambry.protocol.PutRequest;
 import com.github.ambry.protocol.PutResponse;
 import com.github.ambry.protocol.RequestOrResponse;
 import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,6 +63,9 @@ class PutManager {
   // Because there is a guaranteed response from the NetworkClient for every request sent out, entries
   // get cleaned up periodically.
   private final Map<Integer, PutOperation> correlationIdToPutOperation;
+  // Completed operations whose chunk buffers are still being read by requests that are not completely sent out, and
+  // the times at which they completed.
+  private final Map<PutOperation, Long> operationsAwaitingBufferRelease = new LinkedHashMap<>();
   private final AtomicBoolean isOpen = new AtomicBoolean(true);
   private final RouterCallback routerCallback;
   private final ByteBufferAsyncWritableChannel.ChannelEventListener chunkArrivalListener;
@@ -69,6 +75,7 @@ class PutManager {
   private final RouterConfig routerConfig;
   private final ResponseHandler responseHandler;
   private final NonBlockingRouterMetrics routerMetrics;
+  private final ByteBufferPool chunkBufferPool;
 
   private class PutRequestRegistrationCallbackImpl implements RequestRegistrationCallback<PutOperation> {
     private List<RequestInfo> requestListToFill;
@@ -93,18 +100,21 @@ class PutManager {
    * @param routerConfig  The {@link RouterConfig} containing the configs for the PutManager.
    * @param routerMetrics The {@link NonBlockingRouterMetrics} to be used for reporting metrics.
    * @param routerCallback The {@link RouterCallback} to use for callbacks to the router.
+   * @param chunkBufferPool The {@link ByteBufferPool} to allocate the buffers of data chunks from. This may be shared
+   *                        with other PutManagers. If {@code null}, each operation allocates its own buffers.
    * @param suffix the suffix to associate with the names of the threads created by this PutManager
    * @param time The {@link Time} instance to use.
    */
   PutManager(ClusterMap clusterMap, ResponseHandler responseHandler, NotificationSystem notificationSystem,
-      RouterConfig routerConfig, NonBlockingRouterMetrics routerMetrics, RouterCallback routerCallback, String suffix,
-      Time time) {
+      RouterConfig routerConfig, NonBlockingRouterMetrics routerMetrics, RouterCallback routerCallback,
+      ByteBufferPool chunkBufferPool, String suffix, Time time) {
     this.clusterMap = clusterMap;
     this.responseHandler = responseHandler;
     this.notificationSystem = notificationSystem;
     this.routerConfig = routerConfig;
     this.routerMetrics = routerMetrics;
     this.routerCallback = routerCallback;
+    this.chunkBufferPool = chunkBufferPool;
     this.chunkArrivalListener = new ByteBufferAsyncWritableChannel.ChannelEventListener() {
       @Override
       public void onEvent(ByteBufferAsyncWritableChannel.EventType e) {
@@ -139,7 +149,8 @@ class PutManager {
     try {
       PutOperation putOperation =
           new PutOperation(routerConfig, routerMetrics, clusterMap, responseHandler, notificationSystem, userMetaData,
-              channel, futureResult, callback, routerCallback, chunkArrivalListener, time, blobProperties);
+              channel, futureResult, callback, routerCallback, chunkArrivalListener, chunkBufferPool, time,
+              blobProperties);
       putOperations.add(putOperation);
       putOperation.startReadingFromChannel();
     } catch (RouterException e) {
@@ -160,6 +171,7 @@ class PutManager {
   void poll(List<RequestInfo> requestListToFill) {
     long startTime = time.milliseconds();
     requestRegistrationCallback.requestListToFill = requestListToFill;
+    releaseCompletedOperationBuffers();
     for (PutOperation op : putOperations) {
       try {
         op.poll(requestRegistrationCallback);
@@ -176,6 +188,22 @@ class PutManager {
     routerMetrics.putManagerPollTimeMs.update(time.milliseconds() - startTime);
   }
 
+  /**
+   * Release the chunk buffers of completed operations that are no longer read by any request. The buffers of requests
+   * that are still not sent out once the request timeout has elapsed are no longer tracked, as the network layer may
+   * have dropped them. Such buffers are reclaimed by the pool once they are garbage collected.
+   */
+  private void releaseCompletedOperationBuffers() {
+    Iterator<Map.Entry<PutOperation, Long>> iter = operationsAwaitingBufferRelease.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<PutOperation, Long> entry = iter.next();
+      if (entry.getKey().releaseChunkBuffers()
+          || time.milliseconds() - entry.getValue() > routerConfig.routerRequestTimeoutMs) {
+        iter.remove();
+      }
+    }
+  }
+
   /**
    * Hands over the response to the associated PutOperation that issued the request.
    * @param responseInfo the {@link ResponseInfo} containing the response.
@@ -236,6 +264,9 @@ class PutManager {
    * @param op the {@link PutOperation} that has completed.
    */
   void onComplete(PutOperation op) {
+    if (!op.releaseChunkBuffers()) {
+      operationsAwaitingBufferRelease.put(op, time.milliseconds());
+    }
     Exception e = op.getOperationException();
     String blobId = op.getBlobIdString();
     op.maybeNotifyForBlobCreation();
@@ -310,6 +341,7 @@ class PutManager {
       // the RequestResponseHandler thread when it is in poll() or handleResponse(). In order to avoid the completion
       // from happening twice, complete it here only if the remove was successful.
       if (putOperations.remove(op)) {
+        op.releaseChunkBuffers();
         Exception e = new RouterException("Aborted operation because Router is closed.", RouterErrorCode.RouterClosed);
         routerMetrics.operationDequeuingRate.mark();
         routerMetrics.operationAbortCount.inc();
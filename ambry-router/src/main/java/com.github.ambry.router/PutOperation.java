@@ -33,6 +33,7 @@ import com.github.ambry.protocol.PutRequest;
 import com.github.ambry.protocol.PutResponse;
 import com.github.ambry.protocol.RequestOrResponse;
 import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.Pair;
 import com.github.ambry.utils.Time;
 import java.nio.ByteBuffer;
@@ -45,6 +46,7 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +86,7 @@ class PutOperation {
   private final FutureResult<String> futureResult;
   private final Callback<String> callback;
   private final RouterCallback routerCallback;
+  private final ByteBufferPool chunkBufferPool;
   private final Time time;
   private BlobProperties finalBlobProperties;
 
@@ -129,6 +132,10 @@ class PutOperation {
   private long waitTimeForCurrentChunkAvailabilityMs;
   // The time spent by a chunk for data to be available in the channel.
   private long waitTimeForChannelDataAvailabilityMs;
+  // indicates whether the most recent attempt to get a buffer for a chunk failed because the pool was exhausted.
+  private boolean waitingForChunkBuffer = false;
+  // indicates whether the chunk buffers have been released after the completion of the operation.
+  private boolean chunkBuffersReleased = false;
 
   private static final Logger logger = LoggerFactory.getLogger(PutOperation.class);
 
@@ -148,6 +155,9 @@ class PutOperation {
    * @param futureResult the future that will contain the result of the operation.
    * @param callback the callback that is to be called when the operation completes.
    * @param routerCallback The {@link RouterCallback} to use for callbacks to the router.
+   * @param writableChannelEventListener the listener to notify of events on the channel that chunks are filled from.
+   * @param chunkBufferPool the {@link ByteBufferPool} to allocate the buffers of data chunks from. If {@code null},
+   *                        the buffers are allocated on the heap.
    * @param time the Time instance to use.
    * @param blobProperties the BlobProperties associated with the put operation.
    * @throws RouterException if there is an error in constructing the PutOperation with the given parameters.
@@ -156,7 +166,7 @@ class PutOperation {
       ResponseHandler responseHandler, NotificationSystem notificationSystem, byte[] userMetadata,
       ReadableStreamChannel channel, FutureResult<String> futureResult, Callback<String> callback,
       RouterCallback routerCallback, ByteBufferAsyncWritableChannel.ChannelEventListener writableChannelEventListener,
-      Time time, BlobProperties blobProperties) throws RouterException {
+      ByteBufferPool chunkBufferPool, Time time, BlobProperties blobProperties) throws RouterException {
     submissionTimeMs = time.milliseconds();
     this.routerConfig = routerConfig;
     this.routerMetrics = routerMetrics;
@@ -169,6 +179,7 @@ class PutOperation {
     this.futureResult = futureResult;
     this.callback = callback;
     this.routerCallback = routerCallback;
+    this.chunkBufferPool = chunkBufferPool;
     this.time = time;
     bytesFilledSoFar = 0;
     chunkCounter = -1;
@@ -313,7 +324,10 @@ class PutOperation {
    * chunkFillerChannel, if there is any.
    * @throws InterruptedException if the call to get a chunk from the chunkFillerChannel is interrupted.
    */
-  void fillChunks() {
+  synchronized void fillChunks() {
+    if (chunkBuffersReleased) {
+      return;
+    }
     try {
       PutChunk chunkToFill;
       while (!isChunkFillingDone()) {
@@ -444,13 +458,61 @@ class PutOperation {
         if (chunkCounter == Integer.MAX_VALUE) {
           throw new RouterException("Blob is too large", RouterErrorCode.BlobTooLarge);
         }
-        chunkCounter++;
-        chunkToFill.prepareForBuilding(chunkCounter, routerConfig.routerMaxPutChunkSizeBytes);
+        if (chunkToFill.prepareForBuilding(chunkCounter + 1, routerConfig.routerMaxPutChunkSizeBytes)) {
+          chunkCounter++;
+        } else {
+          // no buffer is available for the chunk. Leave the data in the channel until one is returned to the pool.
+          chunkToFill = null;
+        }
       }
     }
     return chunkToFill;
   }
 
+  /**
+   * Allocates a buffer for a data chunk from the chunk buffer pool, if there is one, without blocking.
+   * @param size the size of the buffer.
+   * @return the buffer, or {@code null} if the pool is exhausted.
+   */
+  private ByteBuffer allocateChunkBuffer(int size) {
+    if (chunkBufferPool == null) {
+      return ByteBuffer.allocate(size);
+    }
+    try {
+      ByteBuffer buffer = chunkBufferPool.allocate(size, 0);
+      waitingForChunkBuffer = false;
+      return buffer;
+    } catch (TimeoutException e) {
+      if (!waitingForChunkBuffer) {
+        waitingForChunkBuffer = true;
+        routerMetrics.chunkBufferPoolExhaustedCount.inc();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * Releases the buffers of the data chunks of this operation back to the chunk buffer pool. This is to be called once
+   * the operation is complete, and may have to be called again until it returns {@code true}, as buffers that are
+   * still being read by requests that are not completely sent out cannot be released until the sends complete.
+   * @return {@code true} if all the chunk buffers have been released.
+   */
+  synchronized boolean releaseChunkBuffers() {
+    if (chunkBufferPool == null) {
+      return true;
+    }
+    chunkBuffersReleased = true;
+    boolean allReleased = true;
+    for (PutChunk chunk : putChunks) {
+      if (!chunk.releaseBuffers()) {
+        allReleased = false;
+      }
+    }
+    return allReleased;
+  }
+
   /**
    * @return A free chunk, if one is available; null otherwise.
    */
@@ -620,6 +682,8 @@ class PutOperation {
     protected volatile ChunkState state;
     // the ByteBuffer that has the data for the current chunk.
     protected ByteBuffer buf;
+    // whether buf was allocated from the chunk buffer pool.
+    private boolean bufFromPool = false;
     // the OperationTracker used to track the status of requests for the current chunk.
     protected OperationTracker operationTracker;
     // the number of times a put was attempted for the current chunk.
@@ -654,6 +718,12 @@ class PutOperation {
       attemptedPartitionIds.clear();
       maybeUpdateDefunctBufferInfos();
       correlationIdToChunkPutRequestInfo.clear();
+      if (bufFromPool) {
+        // pooled buffers are returned as soon as the chunk is done so that other operations can use them.
+        chunkBufferPool.deallocate(buf);
+        buf = null;
+        bufFromPool = false;
+      }
       // this assignment should be the last statement as this immediately makes this chunk available to the
       // ChunkFiller thread for filling.
       state = ChunkState.Free;
@@ -682,8 +752,9 @@ class PutOperation {
         // and the simplest way is to set the buf to null so that it gets allocated afresh if/when this PutChunk gets
         // assigned for a subsequent chunk of the overall blob. Every time this chunk gets polled, an attempt to clear
         // out the list will be made.
-        defunctBufferInfos.add(new DefunctBufferInfo(buf, requestsAwaitingSendCompletion));
+        defunctBufferInfos.add(new DefunctBufferInfo(buf, bufFromPool, requestsAwaitingSendCompletion));
         buf = null;
+        bufFromPool = false;
       }
     }
 
@@ -692,19 +763,39 @@ class PutOperation {
      */
     private void maybeFreeDefunctBuffers() {
       for (Iterator<DefunctBufferInfo> iter = defunctBufferInfos.iterator(); iter.hasNext(); ) {
+        DefunctBufferInfo defunctBufferInfo = iter.next();
         boolean canBeFreed = true;
-        for (PutRequest putRequest : iter.next().putRequests) {
+        for (PutRequest putRequest : defunctBufferInfo.putRequests) {
           if (!putRequest.isSendComplete()) {
             canBeFreed = false;
           }
         }
         if (canBeFreed) {
-          // this is where the buffer will be freed if the buffer pool is used. For now, simply remove the reference.
+          if (defunctBufferInfo.pooled) {
+            chunkBufferPool.deallocate(defunctBufferInfo.buf);
+          }
           iter.remove();
         }
       }
     }
 
+    /**
+     * Release the buffer of the current chunk and the defunct buffers whose requests have been sent out. To be called
+     * once the operation is complete.
+     * @return {@code true} if there are no buffers left to release.
+     */
+    boolean releaseBuffers() {
+      maybeUpdateDefunctBufferInfos();
+      correlationIdToChunkPutRequestInfo.clear();
+      if (bufFromPool) {
+        chunkBufferPool.deallocate(buf);
+        buf = null;
+        bufFromPool = false;
+      }
+      maybeFreeDefunctBuffers();
+      return defunctBufferInfos.isEmpty();
+    }
+
     /**
      * @return the position of the current chunk in the overall blob.
      */
@@ -765,16 +856,22 @@ class PutOperation {
      * Prepare this chunk for building, that is, for being filled with data from the channel.
      * @param chunkIndex the position in the overall blob that this chunk is going to  be in.
      * @param size size to allocate memory for the buffer that will hold the data for this chunk.
+     * @return {@code true} if the chunk is ready to be filled, {@code false} if no buffer could be allocated for it.
      */
-    private void prepareForBuilding(int chunkIndex, int size) {
-      this.chunkIndex = chunkIndex;
+    private boolean prepareForBuilding(int chunkIndex, int size) {
       if (buf == null) {
-        buf = ByteBuffer.allocate(size);
+        buf = allocateChunkBuffer(size);
+        if (buf == null) {
+          return false;
+        }
+        bufFromPool = chunkBufferPool != null;
       } else {
         buf.clear();
         buf.limit(size);
       }
+      this.chunkIndex = chunkIndex;
       state = ChunkState.Building;
+      return true;
     }
 
     /**
@@ -1111,17 +1208,21 @@ class PutOperation {
     private class DefunctBufferInfo {
       // the buffer that is now defunct, but not yet freed.
       final ByteBuffer buf;
+      // whether the buffer has to be returned to the chunk buffer pool when freed.
+      final boolean pooled;
       // Requests that are reading from this buffer.
       final List<PutRequest> putRequests;
 
       /**
        * Construct a DefunctBufferInfo
        * @param buf the buffer that is now defunct and waiting to be freed.
+       * @param pooled whether the buffer was allocated from the chunk buffer pool.
        * @param putRequests the requests associated with this buffer whose send completion blocks the freeing of this
        *                    buffer.
        */
-      DefunctBufferInfo(ByteBuffer buf, List<PutRequest> putRequests) {
+      DefunctBufferInfo(ByteBuffer buf, boolean pooled, List<PutRequest> putRequests) {
         this.buf = buf;
+        this.pooled = pooled;
         this.putRequests = putRequests;
       }
     }
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.router;
+
+import com.github.ambry.clustermap.MockClusterMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link ChunkCache}.
+ */
+public class ChunkCacheTest {
+  private static final int CHUNK_SIZE = 1024;
+
+  private final NonBlockingRouterMetrics routerMetrics;
+  private final ChunkCache cache;
+
+  /**
+   * Creates a cache that can hold 4 chunks of {@link #CHUNK_SIZE}.
+   * @throws IOException
+   */
+  public ChunkCacheTest() throws IOException {
+    routerMetrics = new NonBlockingRouterMetrics(new MockClusterMap());
+    cache = new ChunkCache(4 * CHUNK_SIZE, CHUNK_SIZE, routerMetrics);
+  }
+
+  /**
+   * Tests that chunks that are put can be read back without affecting the cached copy, that chunks larger than the
+   * capacity are not cached and that invalidated chunks are removed.
+   */
+  @Test
+  public void putGetAndInvalidateTest() {
+    assertNull("Cache should be empty", cache.get("chunk0"));
+    ByteBuffer chunk = newChunk(CHUNK_SIZE, (byte) 1);
+    chunk.position(10);
+    cache.put("chunk0", chunk);
+    assertEquals("Only the remaining bytes should have been cached", CHUNK_SIZE - 10, cache.getSizeInBytes());
+    ByteBuffer cached = cache.get("chunk0");
+    assertTrue("Cached chunk should be read only", cached.isReadOnly());
+    assertEquals("Unexpected cached chunk", chunk, cached);
+    cached.position(cached.limit());
+    assertEquals("Reading a cached chunk should not affect the cache", CHUNK_SIZE - 10,
+        cache.get("chunk0").remaining());
+    assertEquals("Unexpected hit count", 2, routerMetrics.chunkCacheHitCount.getCount());
+    assertEquals("Unexpected miss count", 1, routerMetrics.chunkCacheMissCount.getCount());
+
+    cache.put("large", newChunk(4 * CHUNK_SIZE + 1, (byte) 2));
+    assertNull("Chunk larger than the capacity should not have been cached", cache.get("large"));
+    cache.invalidate("chunk0");
+    cache.invalidate("absent");
+    assertNull("Invalidated chunk should have been removed", cache.get("chunk0"));
+    assertEquals("Cache should be empty", 0, cache.getSizeInBytes());
+  }
+
+  /**
+   * Tests that, when the cache is full, new chunks evict the least recently used chunks if they are accessed more
+   * frequently than them and are rejected otherwise.
+   */
+  @Test
+  public void admissionAndEvictionTest() {
+    for (int i = 0; i < 4; i++) {
+      cache.get("chunk" + i);
+      cache.put("chunk" + i, newChunk(CHUNK_SIZE, (byte) i));
+    }
+    assertEquals("Cache should be full", 4 * CHUNK_SIZE, cache.getSizeInBytes());
+    // makes chunk0 the most recently used, chunk1 is now the least recently used
+    cache.get("chunk0");
+
+    // accessed as often as chunk1, so it is rejected
+    cache.get("chunk4");
+    cache.put("chunk4", newChunk(CHUNK_SIZE, (byte) 4));
+    assertEquals("Unexpected admission rejected count", 1, routerMetrics.chunkCacheAdmissionRejectedCount.getCount());
+
+    // accessed more often than chunk1 and chunk2
+    cache.get("chunk4");
+    cache.put("chunk4", newChunk(2 * CHUNK_SIZE, (byte) 4));
+    assertEquals("Unexpected eviction count", 2, routerMetrics.chunkCacheEvictionCount.getCount());
+    assertEquals("Unexpected cache size", 4 * CHUNK_SIZE, cache.getSizeInBytes());
+    for (String chunkId : new String[]{"chunk0", "chunk3", "chunk4"}) {
+      assertNotNull(chunkId + " should be in the cache", cache.get(chunkId));
+    }
+    for (String chunkId : new String[]{"chunk1", "chunk2"}) {
+      assertNull(chunkId + " should have been evicted", cache.get(chunkId));
+    }
+  }
+
+  /**
+   * @param size the size of the chunk.
+   * @param value the value of every byte of the chunk.
+   * @return a chunk of {@code size} bytes.
+   */
+  private static ByteBuffer newChunk(int size, byte value) {
+    ByteBuffer chunk = ByteBuffer.allocate(size);
+    while (chunk.hasRemaining()) {
+      chunk.put(value);
+    }
+    chunk.flip();
+    return chunk;
+  }
+}
@@ -95,8 +95,10 @@ public class GetBlobOperationTest {
   private final RouterCallback routerCallback;
   private final String operationTrackerType;
 
-  // Certain tests recreate the routerConfig with different properties.
+  // Certain tests recreate the routerConfig, the chunkPrefetchBudget and the chunkCache with different properties.
   private RouterConfig routerConfig;
+  private ChunkPrefetchBudget chunkPrefetchBudget = new ChunkPrefetchBudget(0);
+  private ChunkCache chunkCache = null;
   private int blobSize;
 
   // Parameters for puts which are also used to verify the gets.
@@ -214,7 +216,7 @@ public class GetBlobOperationTest {
     // test a bad case
     try {
       new GetBlobOperation(routerConfig, routerMetrics, mockClusterMap, responseHandler, "invalid_id", null,
-          getRouterCallback, routerCallback, blobIdFactory, time);
+          getRouterCallback, routerCallback, blobIdFactory, chunkPrefetchBudget, chunkCache, time);
       Assert.fail("Instantiation of GetBlobOperation with an invalid blob id must fail");
     } catch (RouterException e) {
       Assert.assertEquals("Unexpected exception received on creating GetBlobOperation", RouterErrorCode.InvalidBlobId,
@@ -228,7 +230,7 @@ public class GetBlobOperationTest {
     // operationCount is not incremented here as this operation is not taken to completion.
     GetBlobOperation op = new GetBlobOperation(routerConfig, routerMetrics, mockClusterMap, responseHandler, blobIdStr,
         new GetBlobOptionsInternal(new GetBlobOptionsBuilder().build(), false), getRouterCallback, routerCallback,
-        blobIdFactory, time);
+        blobIdFactory, chunkPrefetchBudget, chunkCache, time);
 
     Assert.assertEquals("Callbacks must match", getRouterCallback, op.getCallback());
     Assert.assertEquals("Blob ids must match", blobIdStr, op.getBlobIdStr());
@@ -240,7 +242,7 @@ public class GetBlobOperationTest {
     try {
       new GetBlobOperation(badConfig, routerMetrics, mockClusterMap, responseHandler, blobIdStr,
           new GetBlobOptionsInternal(new GetBlobOptionsBuilder().build(), false), getRouterCallback, routerCallback,
-          blobIdFactory, time);
+          blobIdFactory, chunkPrefetchBudget, chunkCache, time);
       Assert.fail("Instantiation of GetBlobOperation with an invalid tracker type must fail");
     } catch (IllegalArgumentException e) {
       // expected. Nothing to do.
@@ -478,6 +480,55 @@ public class GetBlobOperationTest {
     getAndAssertSuccess(false, true);
   }
 
+  /**
+   * Test that the prefetch window is widened when the reader waits for chunks, that it is narrowed when the
+   * {@link ChunkPrefetchBudget} is exhausted and that gets make progress even then.
+   * @throws Exception
+   */
+  @Test
+  public void testPrefetchWindow() throws Exception {
+    blobSize = maxChunkSize * 6 + 1;
+    doPut();
+    getAndAssertSuccess();
+    Assert.assertTrue("Reader should have waited for chunks", routerMetrics.getBlobChunkWaitTimeMs.getCount() > 0);
+    Assert.assertEquals("No memory should be reserved", 0, chunkPrefetchBudget.getReservedBytes());
+
+    // the budget only has room for one chunk
+    chunkPrefetchBudget = new ChunkPrefetchBudget(maxChunkSize);
+    getAndAssertSuccess();
+    Assert.assertTrue("Prefetch budget should have been exhausted",
+        routerMetrics.getBlobPrefetchBudgetExhaustedCount.getCount() > 0);
+    Assert.assertEquals("No memory should be reserved", 0, chunkPrefetchBudget.getReservedBytes());
+  }
+
+  /**
+   * Test that data chunks are served from the {@link ChunkCache} once they have been fetched, for whole blob and range
+   * gets.
+   * @throws Exception
+   */
+  @Test
+  public void testChunkCache() throws Exception {
+    int numDataChunks = 5;
+    blobSize = maxChunkSize * numDataChunks;
+    doPut();
+    chunkCache = new ChunkCache(blobSize, maxChunkSize, routerMetrics);
+    getAndAssertSuccess();
+    Assert.assertEquals("Unexpected cache hit count", 0, routerMetrics.chunkCacheHitCount.getCount());
+    Assert.assertEquals("Unexpected cache miss count", numDataChunks, routerMetrics.chunkCacheMissCount.getCount());
+    Assert.assertEquals("All data chunks should have been cached", blobSize, chunkCache.getSizeInBytes());
+
+    getAndAssertSuccess();
+    Assert.assertEquals("Unexpected cache hit count", numDataChunks, routerMetrics.chunkCacheHitCount.getCount());
+    Assert.assertEquals("Unexpected cache miss count", numDataChunks, routerMetrics.chunkCacheMissCount.getCount());
+
+    // range gets are served from the whole chunks in the cache
+    options = new GetBlobOptionsInternal(
+        new GetBlobOptionsBuilder().range(ByteRange.fromOffsetRange(maxChunkSize / 2, maxChunkSize * 2)).build(),
+        false);
+    getAndAssertSuccess();
+    Assert.assertEquals("Unexpected cache hit count", numDataChunks + 3, routerMetrics.chunkCacheHitCount.getCount());
+  }
+
   /**
    * Test that data chunk errors notify the reader callback and set the error code correctly.
    * @throws Exception
@@ -592,6 +643,39 @@ public class GetBlobOperationTest {
     testRangeRequestFromStartOffset(maxChunkSize + maxChunkSize / 2, true);
   }
 
+  /**
+   * Test range requests on a composite blob when data chunks that are only partly within the range are requested from
+   * the servers with a byte range.
+   * @throws Exception
+   */
+  @Test
+  public void testRangeRequestCompositeBlobWithChunkRanges() throws Exception {
+    Properties props = getDefaultNonBlockingRouterProperties();
+    props.setProperty("router.get.chunk.range.requests.enabled", "true");
+    routerConfig = new RouterConfig(new VerifiableProperties(props));
+    blobSize = maxChunkSize * 3 + random.nextInt(maxChunkSize) + 1;
+
+    // whole chunks are requested without a range
+    testRangeRequestOffsetRange(maxChunkSize, maxChunkSize * 2 - 1, true);
+    testRangeRequestFromStartOffset(maxChunkSize * 3, true);
+    Assert.assertEquals("No chunk should have been requested with a range", 0,
+        routerMetrics.getBlobChunkRangeRequestCount.getCount());
+
+    // within a single chunk
+    testRangeRequestOffsetRange(maxChunkSize / 2, maxChunkSize / 2, true);
+    Assert.assertTrue("The chunk should have been requested with a range",
+        routerMetrics.getBlobChunkRangeRequestCount.getCount() > 0);
+    // over chunk boundaries and within the last chunk
+    testRangeRequestOffsetRange(maxChunkSize / 2, maxChunkSize * 2 + maxChunkSize / 2, true);
+    testRangeRequestFromStartOffset(maxChunkSize * 3 + 1, true);
+    testRangeRequestLastNBytes(maxChunkSize + 1, true);
+    for (int i = 0; i < 5; i++) {
+      int randomOne = random.nextInt(blobSize);
+      int randomTwo = random.nextInt(blobSize);
+      testRangeRequestOffsetRange(Math.min(randomOne, randomTwo), Math.max(randomOne, randomTwo), true);
+    }
+  }
+
   /**
    * Test that the operation is completed and an exception with the error code {@link RouterErrorCode#ChannelClosed} is
    * set when the {@link ReadableStreamChannel} is closed before all chunks are read.
@@ -905,7 +989,7 @@ public class GetBlobOperationTest {
     NonBlockingRouter.currentOperationsCount.incrementAndGet();
     GetBlobOperation op =
         new GetBlobOperation(routerConfig, routerMetrics, mockClusterMap, responseHandler, blobIdStr, options, callback,
-            routerCallback, blobIdFactory, time);
+            routerCallback, blobIdFactory, chunkPrefetchBudget, chunkCache, time);
     requestRegistrationCallback.requestListToFill = new ArrayList<>();
     return op;
   }
@@ -201,6 +201,20 @@ class MockServer {
             MessageFormatRecord.UserMetadata_Format_V1.serializeUserMetadataRecord(byteBuffer, userMetadata);
             break;
           case Blob:
+            List<ByteRange> byteRanges = getRequest.getPartitionInfoList().get(0).getByteRanges();
+            if (byteRanges != null && byteRanges.get(0) != null) {
+              ByteRange byteRange = byteRanges.get(0);
+              byte[] content =
+                  Utils.readBytesFromStream(originalBlobPutReq.getBlobStream(), (int) originalBlobPutReq.getBlobSize());
+              int rangeSize = (int) Math.max(0,
+                  Math.min(byteRange.getEndOffset() + 1, content.length) - Math.min(byteRange.getStartOffset(),
+                      content.length));
+              byteBufferSize = MessageFormatRecord.Blob_Range_Format_V1.Blob_Range_Size_Field_In_Bytes + rangeSize;
+              byteBuffer = ByteBuffer.allocate(byteBufferSize);
+              MessageFormatRecord.Blob_Range_Format_V1.serializeBlobRangeHeader(byteBuffer, rangeSize);
+              byteBuffer.put(content, (int) Math.min(byteRange.getStartOffset(), content.length), rangeSize);
+              break;
+            }
             switch (blobFormatVersion) {
               case MessageFormatRecord.Blob_Version_V2:
                 byteBufferSize =
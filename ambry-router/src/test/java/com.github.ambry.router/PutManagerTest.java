@@ -30,6 +30,7 @@ import com.github.ambry.protocol.PutRequest;
 import com.github.ambry.store.StoreKey;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.MockTime;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Utils;
@@ -72,6 +73,7 @@ public class PutManagerTest {
   private int chunkSize;
   private int requestParallelism;
   private int successTarget;
+  private long chunkBufferPoolCapacityBytes = 0;
   private boolean instantiateNewRouterForPuts;
   private final Random random = new Random();
 
@@ -516,6 +518,33 @@ public class PutManagerTest {
     assertCloseCleanup();
   }
 
+  /**
+   * Tests that concurrent puts succeed when chunk buffers are allocated from a pool that cannot hold the buffers of all
+   * the chunks being filled at once, and that all the buffers are returned to the pool once the operations complete.
+   * @throws Exception
+   */
+  @Test
+  public void testChunkBufferPoolPutSuccess() throws Exception {
+    // room for two chunk buffers, which are at most 25% larger than the chunk size.
+    chunkBufferPoolCapacityBytes = 2 * (chunkSize + chunkSize / 4 + SizeClassedByteBufferPool.MIN_BUFFER_SIZE);
+    requestAndResultsList.clear();
+    for (int i = 0; i < 4; i++) {
+      requestAndResultsList.add(new RequestAndResult(chunkSize * 5 + random.nextInt(chunkSize)));
+    }
+    submitPut().await();
+    assertSuccess();
+    SizeClassedByteBufferPool chunkBufferPool = router.getChunkBufferPool();
+    long checkStartTimeMs = SystemTime.getInstance().milliseconds();
+    while (chunkBufferPool.getOutstandingBytes() != 0
+        && SystemTime.getInstance().milliseconds() - checkStartTimeMs < MAX_WAIT_MS) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("All chunk buffers should have been returned", 0, chunkBufferPool.getOutstandingBytes());
+    Assert.assertTrue("Chunk buffers should have been recycled", chunkBufferPool.getHitCount() > 0);
+    Assert.assertEquals("No chunk buffers should have leaked", 0, chunkBufferPool.getLeakCount());
+    assertCloseCleanup();
+  }
+
   /**
    * Push from the src to the putChannel in random sized writes, with possible delays.
    * @param src the input {@link ByteBuffer}
@@ -567,6 +596,8 @@ public class PutManagerTest {
     properties.setProperty("router.max.put.chunk.size.bytes", Integer.toString(chunkSize));
     properties.setProperty("router.put.request.parallelism", Integer.toString(requestParallelism));
     properties.setProperty("router.put.success.target", Integer.toString(successTarget));
+    properties.setProperty("router.put.chunk.buffer.pool.capacity.bytes", Long.toString(chunkBufferPoolCapacityBytes));
+    properties.setProperty("router.put.chunk.buffer.pool.leak.detection.enabled", "true");
     VerifiableProperties vProps = new VerifiableProperties(properties);
     router = new NonBlockingRouter(new RouterConfig(vProps), new NonBlockingRouterMetrics(mockClusterMap),
         new MockNetworkClientFactory(vProps, mockSelectorState, MAX_PORTS_PLAIN_TEXT, MAX_PORTS_SSL,
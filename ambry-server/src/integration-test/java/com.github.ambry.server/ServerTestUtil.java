@@ -48,6 +48,7 @@ import com.github.ambry.protocol.GetResponse;
 import com.github.ambry.protocol.PartitionRequestInfo;
 import com.github.ambry.protocol.PutRequest;
 import com.github.ambry.protocol.PutResponse;
+import com.github.ambry.router.ByteRange;
 import com.github.ambry.router.Callback;
 import com.github.ambry.router.CopyingAsyncWritableChannel;
 import com.github.ambry.router.GetBlobOptionsBuilder;
@@ -71,6 +72,7 @@ import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -269,6 +271,20 @@ public final class ServerTestUtil {
       ByteBuffer userMetadataOutput = MessageFormatRecord.deserializeUserMetadata(responseStream);
       Assert.assertArrayEquals(usermetadata, userMetadataOutput.array());
 
+      // get a byte range of the blob data
+      GetRequest rangeGetRequest = new GetRequest(1, "clientid2", MessageFormatFlags.Blob, Collections.singletonList(
+          new PartitionRequestInfo(partition, Collections.singletonList(blobId1),
+              Collections.singletonList(ByteRange.fromOffsetRange(1000, 1999)))), GetOption.None);
+      channel.send(rangeGetRequest);
+      stream = channel.receive().getInputStream();
+      GetResponse rangeGetResponse = GetResponse.readFrom(new DataInputStream(stream), clusterMap);
+      assertEquals(ServerErrorCode.No_Error, rangeGetResponse.getPartitionResponseInfoList().get(0).getErrorCode());
+      BlobData rangeData =
+          MessageFormatRecord.Blob_Range_Format_V1.deserializeBlobRange(rangeGetResponse.getInputStream());
+      byte[] rangeOutput = new byte[(int) rangeData.getSize()];
+      new DataInputStream(rangeData.getStream()).readFully(rangeOutput);
+      Assert.assertArrayEquals("Range of blob data mismatch", Arrays.copyOfRange(data, 1000, 2000), rangeOutput);
+
       // get blob data
       // Use router to get the blob
       Properties routerProperties = getRouterProps(routerDatacenter);
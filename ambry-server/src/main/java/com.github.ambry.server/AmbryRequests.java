@@ -22,6 +22,7 @@ import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.PartitionState;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.ServerConfig;
 import com.github.ambry.messageformat.DeleteMessageFormatInputStream;
 import com.github.ambry.messageformat.MessageFormatErrorCodes;
 import com.github.ambry.messageformat.MessageFormatException;
@@ -31,6 +32,7 @@ import com.github.ambry.messageformat.MessageFormatMetrics;
 import com.github.ambry.messageformat.MessageFormatSend;
 import com.github.ambry.messageformat.MessageFormatWriteSet;
 import com.github.ambry.messageformat.PutMessageFormatInputStream;
+import com.github.ambry.network.BoundedByteBufferSend;
 import com.github.ambry.network.CompositeSend;
 import com.github.ambry.network.Request;
 import com.github.ambry.network.RequestResponseChannel;
@@ -57,25 +59,36 @@ import com.github.ambry.protocol.ReplicationControlAdminRequest;
 import com.github.ambry.protocol.RequestControlAdminRequest;
 import com.github.ambry.protocol.RequestOrResponseType;
 import com.github.ambry.replication.ReplicationManager;
+import com.github.ambry.router.ByteRange;
 import com.github.ambry.store.FindInfo;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.FindTokenFactory;
 import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.MessageReadSet;
 import com.github.ambry.store.StorageManager;
 import com.github.ambry.store.Store;
 import com.github.ambry.store.StoreErrorCodes;
 import com.github.ambry.store.StoreException;
 import com.github.ambry.store.StoreGetOptions;
 import com.github.ambry.store.StoreInfo;
+import com.github.ambry.store.StoreKey;
 import com.github.ambry.store.StoreKeyFactory;
+import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.ByteBufferOutputStream;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Utils;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
@@ -101,13 +114,17 @@ public class AmbryRequests implements RequestAPI {
   private final NotificationSystem notification;
   private final ReplicationManager replicationManager;
   private final StoreKeyFactory storeKeyFactory;
+  private final MetricRegistry registry;
+  private final long blobMetadataCacheSizeInBytesPerStore;
+  private final ConcurrentHashMap<PartitionId, BlobMetadataCache> blobMetadataCaches = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<RequestOrResponseType, Set<PartitionId>> requestsDisableInfo =
       new ConcurrentHashMap<>();
+  private final DiskAffineExecutor diskAffineExecutor;
 
   public AmbryRequests(StorageManager storageManager, RequestResponseChannel requestResponseChannel,
       ClusterMap clusterMap, DataNodeId nodeId, MetricRegistry registry, FindTokenFactory findTokenFactory,
       NotificationSystem operationNotification, ReplicationManager replicationManager,
-      StoreKeyFactory storeKeyFactory) {
+      StoreKeyFactory storeKeyFactory, ServerConfig serverConfig) {
     this.storageManager = storageManager;
     this.requestResponseChannel = requestResponseChannel;
     this.clusterMap = clusterMap;
@@ -118,6 +135,11 @@ public class AmbryRequests implements RequestAPI {
     this.notification = operationNotification;
     this.replicationManager = replicationManager;
     this.storeKeyFactory = storeKeyFactory;
+    this.registry = registry;
+    this.blobMetadataCacheSizeInBytesPerStore = serverConfig.serverBlobMetadataCacheSizeInBytesPerStore;
+    diskAffineExecutor = serverConfig.serverDiskExecutorNumOfThreadsPerDisk > 0 ? new DiskAffineExecutor(
+        clusterMap.getReplicaIds(nodeId), serverConfig.serverDiskExecutorNumOfThreadsPerDisk,
+        serverConfig.serverDiskExecutorQueueSizePerDisk, registry) : null;
 
     requestsDisableInfo.put(RequestOrResponseType.PutRequest, Collections.newSetFromMap(new ConcurrentHashMap<>()));
     requestsDisableInfo.put(RequestOrResponseType.GetRequest, Collections.newSetFromMap(new ConcurrentHashMap<>()));
@@ -156,8 +178,22 @@ public class AmbryRequests implements RequestAPI {
   }
 
   public void handlePutRequest(Request request) throws IOException, InterruptedException {
-    PutRequest.ReceivedPutRequest receivedRequest =
-        PutRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    InputStream requestStream = request.getInputStream();
+    // requests received from the network are backed by a buffer that the blob can be sliced out of without a copy.
+    PutRequest.ReceivedPutRequest receivedRequest = requestStream instanceof ByteBufferInputStream
+        ? PutRequest.readFrom((ByteBufferInputStream) requestStream, clusterMap)
+        : PutRequest.readFrom(new DataInputStream(requestStream), clusterMap);
+    execute(request, receivedRequest.getBlobId().getPartition(), () -> processPutRequest(request, receivedRequest));
+  }
+
+  /**
+   * Executes a put request and sends the response.
+   * @param request the {@link Request} that was received.
+   * @param receivedRequest the {@link PutRequest.ReceivedPutRequest} read from {@code request}.
+   * @throws InterruptedException if interrupted while sending the response.
+   */
+  private void processPutRequest(Request request, PutRequest.ReceivedPutRequest receivedRequest)
+      throws InterruptedException {
     long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
     long totalTimeSpent = requestQueueTime;
     metrics.putBlobRequestQueueTimeInMs.update(requestQueueTime);
@@ -223,6 +259,25 @@ public class AmbryRequests implements RequestAPI {
 
   public void handleGetRequest(Request request) throws IOException, InterruptedException {
     GetRequest getRequest = GetRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    PartitionId partition = null;
+    for (PartitionRequestInfo partitionRequestInfo : getRequest.getPartitionInfoList()) {
+      if (partition != null && !partition.equals(partitionRequestInfo.getPartition())) {
+        // requests that span partitions are executed by the request handler threads.
+        partition = null;
+        break;
+      }
+      partition = partitionRequestInfo.getPartition();
+    }
+    execute(request, partition, () -> processGetRequest(request, getRequest));
+  }
+
+  /**
+   * Executes a get request and sends the response.
+   * @param request the {@link Request} that was received.
+   * @param getRequest the {@link GetRequest} read from {@code request}.
+   * @throws InterruptedException if interrupted while sending the response.
+   */
+  private void processGetRequest(Request request, GetRequest getRequest) throws InterruptedException {
     Histogram responseQueueTime = null;
     Histogram responseSendTime = null;
     Histogram responseTotalTime = null;
@@ -289,9 +344,8 @@ public class AmbryRequests implements RequestAPI {
                   EnumSet.of(StoreGetOptions.Store_Include_Deleted, StoreGetOptions.Store_Include_Expired);
             }
             StoreInfo info = storeToGet.get(partitionRequestInfo.getBlobIds(), storeGetOptions);
-            MessageFormatSend blobsToSend =
-                new MessageFormatSend(info.getMessageReadSet(), getRequest.getMessageFormatFlag(), messageFormatMetrics,
-                    storeKeyFactory);
+            Send blobsToSend = getSend(partitionRequestInfo.getPartition(), info, getRequest.getMessageFormatFlag(),
+                getByteRanges(partitionRequestInfo));
             PartitionResponseInfo partitionResponseInfo =
                 new PartitionResponseInfo(partitionRequestInfo.getPartition(), info.getMessageReadSetInfo());
             messagesToSendList.add(blobsToSend);
@@ -359,8 +413,108 @@ public class AmbryRequests implements RequestAPI {
         totalTimeSpent, response.sizeInBytes(), getRequest.getMessageFormatFlag(), metrics);
   }
 
+  /**
+   * @param partitionRequestInfo the {@link PartitionRequestInfo} of a get request.
+   * @return the byte ranges of the blob content requested in {@code partitionRequestInfo}, by blob id.
+   */
+  private static Map<StoreKey, ByteRange> getByteRanges(PartitionRequestInfo partitionRequestInfo) {
+    List<ByteRange> byteRanges = partitionRequestInfo.getByteRanges();
+    if (byteRanges == null) {
+      return Collections.emptyMap();
+    }
+    Map<StoreKey, ByteRange> byteRangesByKey = new HashMap<>();
+    for (int i = 0; i < byteRanges.size(); i++) {
+      if (byteRanges.get(i) != null) {
+        byteRangesByKey.put(partitionRequestInfo.getBlobIds().get(i), byteRanges.get(i));
+      }
+    }
+    return byteRangesByKey;
+  }
+
+  /**
+   * Gets the {@link Send} for the messages of a partition in a get response. Blob properties, user metadata and blob
+   * info records are served from the {@link BlobMetadataCache} of the partition if all of them are cached. Otherwise,
+   * they are read from the store and added to the cache.
+   * @param partition the {@link PartitionId} that the messages belong to.
+   * @param info the {@link StoreInfo} returned by the store for the requested blobs.
+   * @param flag the {@link MessageFormatFlags} of the request.
+   * @param byteRanges the byte ranges of the blob content requested, by blob id.
+   * @return the {@link Send} for the messages.
+   * @throws IOException if the messages could not be read.
+   * @throws MessageFormatException if the messages are not formatted correctly.
+   */
+  private Send getSend(PartitionId partition, StoreInfo info, MessageFormatFlags flag,
+      Map<StoreKey, ByteRange> byteRanges) throws IOException, MessageFormatException {
+    MessageReadSet readSet = info.getMessageReadSet();
+    if (!byteRanges.isEmpty()) {
+      metrics.getBlobRangeRequestRate.mark();
+    }
+    if (blobMetadataCacheSizeInBytesPerStore == 0 || (flag != MessageFormatFlags.BlobProperties
+        && flag != MessageFormatFlags.BlobUserMetadata && flag != MessageFormatFlags.BlobInfo)) {
+      return new MessageFormatSend(readSet, flag, byteRanges, messageFormatMetrics, storeKeyFactory);
+    }
+    BlobMetadataCache blobMetadataCache = blobMetadataCaches.computeIfAbsent(partition,
+        p -> new BlobMetadataCache(blobMetadataCacheSizeInBytesPerStore, p.toString(), registry));
+    List<MessageInfo> messageInfos = info.getMessageReadSetInfo();
+    List<ByteBuffer> records = new ArrayList<>(readSet.count());
+    int totalSize = 0;
+    for (int i = 0; i < readSet.count(); i++) {
+      StoreKey key = readSet.getKeyAt(i);
+      ByteBuffer record = null;
+      if (messageInfos.get(i).isDeleted()) {
+        // the records of deleted blobs may be changed by hard delete
+        blobMetadataCache.invalidate(key);
+      } else {
+        record = blobMetadataCache.get(key, flag);
+      }
+      if (record == null) {
+        records = null;
+        break;
+      }
+      records.add(record);
+      totalSize += record.remaining();
+    }
+    ByteBuffer buffer;
+    if (records != null) {
+      buffer = ByteBuffer.allocate(totalSize);
+      for (ByteBuffer record : records) {
+        buffer.put(record);
+      }
+    } else {
+      MessageFormatSend send = new MessageFormatSend(readSet, flag, messageFormatMetrics, storeKeyFactory);
+      buffer = ByteBuffer.allocate((int) send.sizeInBytes());
+      WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(buffer));
+      while (!send.isSendComplete()) {
+        send.writeTo(channel);
+      }
+      int recordStart = 0;
+      for (int i = 0; i < readSet.count(); i++) {
+        int recordEnd = recordStart + (int) send.sizeInBytes(i);
+        if (!messageInfos.get(i).isDeleted()) {
+          ByteBuffer record = buffer.duplicate();
+          record.limit(recordEnd);
+          record.position(recordStart);
+          blobMetadataCache.put(readSet.getKeyAt(i), flag, record);
+        }
+        recordStart = recordEnd;
+      }
+    }
+    buffer.flip();
+    return new BoundedByteBufferSend(buffer);
+  }
+
   public void handleDeleteRequest(Request request) throws IOException, InterruptedException {
     DeleteRequest deleteRequest = DeleteRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    execute(request, deleteRequest.getBlobId().getPartition(), () -> processDeleteRequest(request, deleteRequest));
+  }
+
+  /**
+   * Executes a delete request and sends the response.
+   * @param request the {@link Request} that was received.
+   * @param deleteRequest the {@link DeleteRequest} read from {@code request}.
+   * @throws InterruptedException if interrupted while sending the response.
+   */
+  private void processDeleteRequest(Request request, DeleteRequest deleteRequest) throws InterruptedException {
     long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
     long totalTimeSpent = requestQueueTime;
     metrics.deleteBlobRequestQueueTimeInMs.update(requestQueueTime);
@@ -384,6 +538,10 @@ public class AmbryRequests implements RequestAPI {
         MessageFormatWriteSet writeset = new MessageFormatWriteSet(stream, infoList, false);
         Store storeToDelete = storageManager.getStore(deleteRequest.getBlobId().getPartition());
         storeToDelete.delete(writeset);
+        BlobMetadataCache blobMetadataCache = blobMetadataCaches.get(deleteRequest.getBlobId().getPartition());
+        if (blobMetadataCache != null) {
+          blobMetadataCache.invalidate(deleteRequest.getBlobId());
+        }
         response =
             new DeleteResponse(deleteRequest.getCorrelationId(), deleteRequest.getClientId(), ServerErrorCode.No_Error);
         if (notification != null) {
@@ -519,6 +677,60 @@ public class AmbryRequests implements RequestAPI {
             metrics.replicaMetadataSendTimeInMs, metrics.replicaMetadataTotalTimeInMs, null, null, totalTimeSpent));
   }
 
+  /**
+   * Shuts down the threads that execute requests, after the requests that have already been handed over to them are
+   * executed.
+   * @throws InterruptedException if interrupted while waiting for the threads to stop.
+   */
+  public void shutdown() throws InterruptedException {
+    if (diskAffineExecutor != null) {
+      diskAffineExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Executes a request that has been read. If the disk affine execution is enabled and the request is for a local
+   * partition, the request is handed over to the threads of the disk of the partition. Otherwise, it is executed in the
+   * calling thread.
+   * @param request the {@link Request} that was received.
+   * @param partitionId the {@link PartitionId} that the request is for or {@code null} if the request is not for a
+   *                    single partition.
+   * @param requestExecution executes the request and sends the response.
+   * @throws InterruptedException if interrupted while executing the request or waiting to hand it over.
+   */
+  private void execute(final Request request, PartitionId partitionId, final RequestExecution requestExecution)
+      throws InterruptedException {
+    if (diskAffineExecutor != null && partitionId != null) {
+      Runnable task = () -> {
+        try {
+          requestExecution.execute();
+        } catch (Exception e) {
+          logger.error("Error while executing request " + request + " closing connection", e);
+          try {
+            requestResponseChannel.closeConnection(request);
+          } catch (InterruptedException ie) {
+            logger.error("Interrupted while closing connection for request " + request, ie);
+          }
+        }
+      };
+      if (diskAffineExecutor.execute(partitionId, task)) {
+        return;
+      }
+    }
+    requestExecution.execute();
+  }
+
+  /**
+   * The execution of a request that has been read.
+   */
+  private interface RequestExecution {
+    /**
+     * Executes the request and sends the response.
+     * @throws InterruptedException if interrupted while sending the response.
+     */
+    void execute() throws InterruptedException;
+  }
+
   /**
    * @param requestType the {@link RequestOrResponseType} of the request.
    * @param id the partition id that the request is targeting.
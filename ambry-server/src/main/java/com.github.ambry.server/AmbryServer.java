@@ -22,6 +22,7 @@ import com.github.ambry.clustermap.DataNodeId;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.commons.LoggingNotificationSystem;
+import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.ClusterMapConfig;
 import com.github.ambry.config.ConnectionPoolConfig;
 import com.github.ambry.config.NetworkConfig;
@@ -35,11 +36,15 @@ import com.github.ambry.messageformat.BlobStoreHardDelete;
 import com.github.ambry.messageformat.BlobStoreRecovery;
 import com.github.ambry.network.BlockingChannelConnectionPool;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NetworkClientFactory;
+import com.github.ambry.network.NetworkMetrics;
 import com.github.ambry.network.NetworkServer;
 import com.github.ambry.network.Port;
 import com.github.ambry.network.PortType;
+import com.github.ambry.network.RequestTypeWeight;
 import com.github.ambry.network.SocketServer;
 import com.github.ambry.notification.NotificationSystem;
+import com.github.ambry.protocol.RequestOrResponseType;
 import com.github.ambry.replication.ReplicationManager;
 import com.github.ambry.store.FindTokenFactory;
 import com.github.ambry.store.StorageManager;
@@ -49,7 +54,9 @@ import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -138,9 +145,18 @@ public class AmbryServer {
       connectionPool = new BlockingChannelConnectionPool(connectionPoolConfig, sslConfig, clusterMapConfig, registry);
       connectionPool.start();
 
+      NetworkClientFactory networkClientFactory = null;
+      if (replicationConfig.replicationNonBlockingEnabled) {
+        SSLFactory sslFactory =
+            !clusterMapConfig.clusterMapSslEnabledDatacenters.isEmpty() ? new SSLFactory(sslConfig) : null;
+        networkClientFactory = new NetworkClientFactory(new NetworkMetrics(registry), networkConfig, sslFactory,
+            replicationConfig.replicationNonBlockingMaxConnectionsPerPort,
+            replicationConfig.replicationNonBlockingMaxConnectionsPerPort,
+            replicationConfig.replicationNonBlockingRequestTimeoutMs, time);
+      }
       replicationManager =
           new ReplicationManager(replicationConfig, clusterMapConfig, storeConfig, storageManager, storeKeyFactory,
-              clusterMap, scheduler, nodeId, connectionPool, registry, notificationSystem);
+              clusterMap, scheduler, nodeId, connectionPool, networkClientFactory, registry, notificationSystem);
       replicationManager.start();
 
       ArrayList<Port> ports = new ArrayList<Port>();
@@ -149,10 +165,11 @@ public class AmbryServer {
         ports.add(new Port(nodeId.getSSLPort(), PortType.SSL));
       }
 
-      networkServer = new SocketServer(networkConfig, sslConfig, registry, ports);
+      networkServer = new SocketServer(networkConfig, sslConfig, registry, ports,
+          getRequestTypeWeights(serverConfig.serverRequestTypeWeights));
       requests =
           new AmbryRequests(storageManager, networkServer.getRequestResponseChannel(), clusterMap, nodeId, registry,
-              findTokenFactory, notificationSystem, replicationManager, storeKeyFactory);
+              findTokenFactory, notificationSystem, replicationManager, storeKeyFactory, serverConfig);
       requestHandlerPool = new RequestHandlerPool(serverConfig.serverRequestHandlerNumOfThreads,
           networkServer.getRequestResponseChannel(), requests);
       networkServer.start();
@@ -211,6 +228,9 @@ public class AmbryServer {
       if (requestHandlerPool != null) {
         requestHandlerPool.shutdown();
       }
+      if (requests != null) {
+        requests.shutdown();
+      }
       if (replicationManager != null) {
         replicationManager.shutdown();
       }
@@ -247,4 +267,44 @@ public class AmbryServer {
   public void awaitShutdown() throws InterruptedException {
     shutdownLatch.await();
   }
+
+  /**
+   * @param requestTypeWeights a comma separated list of {@code <RequestOrResponseType>:<weight>}.
+   * @return the {@link RequestTypeWeight}s in {@code requestTypeWeights}.
+   * @throws IllegalArgumentException if {@code requestTypeWeights} is not well formed.
+   */
+  static List<RequestTypeWeight> getRequestTypeWeights(String requestTypeWeights) {
+    List<RequestTypeWeight> weights = new ArrayList<>();
+    Set<RequestOrResponseType> types = EnumSet.noneOf(RequestOrResponseType.class);
+    for (String typeWeight : requestTypeWeights.split(",")) {
+      if (typeWeight.trim().isEmpty()) {
+        continue;
+      }
+      String[] typeAndWeight = typeWeight.split(":", -1);
+      if (typeAndWeight.length != 2) {
+        throw new IllegalArgumentException(
+            "Invalid request type weight, expected <RequestOrResponseType>:<weight>: " + typeWeight);
+      }
+      RequestOrResponseType type;
+      try {
+        type = RequestOrResponseType.valueOf(typeAndWeight[0].trim());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown request type in request type weight: " + typeWeight, e);
+      }
+      if (!types.add(type)) {
+        throw new IllegalArgumentException("Duplicate request type in request type weights: " + type);
+      }
+      int weight;
+      try {
+        weight = Integer.parseInt(typeAndWeight[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid weight in request type weight: " + typeWeight, e);
+      }
+      if (weight < 1) {
+        throw new IllegalArgumentException("Weight has to be positive in request type weight: " + typeWeight);
+      }
+      weights.add(new RequestTypeWeight((short) type.ordinal(), type.name(), weight));
+    }
+    return weights;
+  }
 }
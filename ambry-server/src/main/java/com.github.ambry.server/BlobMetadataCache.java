@@ -0,0 +1,132 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.server;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.messageformat.MessageFormatFlags;
+import com.github.ambry.store.StoreKey;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A cache of the serialized metadata records (blob properties, user metadata and blob info) of the blobs in a store,
+ * as they are sent in responses to get requests. The cache is bounded by the total size of the records in it and
+ * evicts the records of the least recently used blobs first.
+ * <p/>
+ * The records of a blob do not change after it is put, even when it is moved by compaction. They can only change
+ * once the blob is deleted (by hard delete), so the records of a blob have to be invalidated when it is deleted and
+ * must not be served for deleted blobs.
+ */
+class BlobMetadataCache {
+  private final long capacityInBytes;
+  private final LinkedHashMap<StoreKey, Map<MessageFormatFlags, ByteBuffer>> records =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeInBytes = 0;
+
+  final Counter hitCount;
+  final Counter missCount;
+  final Counter evictionCount;
+
+  /**
+   * @param capacityInBytes the maximum total size of the records in the cache.
+   * @param storeName the name of the store whose records are cached, used to name the metrics.
+   * @param registry the {@link MetricRegistry} to register the metrics in.
+   */
+  BlobMetadataCache(long capacityInBytes, String storeName, MetricRegistry registry) {
+    this.capacityInBytes = capacityInBytes;
+    hitCount = registry.counter(MetricRegistry.name(BlobMetadataCache.class, storeName + "HitCount"));
+    missCount = registry.counter(MetricRegistry.name(BlobMetadataCache.class, storeName + "MissCount"));
+    evictionCount = registry.counter(MetricRegistry.name(BlobMetadataCache.class, storeName + "EvictionCount"));
+  }
+
+  /**
+   * @param key the {@link StoreKey} of the blob.
+   * @param flag the {@link MessageFormatFlags} that identifies the record.
+   * @return a read only view of the record, positioned at its start, or {@code null} if it is not in the cache.
+   */
+  synchronized ByteBuffer get(StoreKey key, MessageFormatFlags flag) {
+    Map<MessageFormatFlags, ByteBuffer> recordsOfBlob = records.get(key);
+    ByteBuffer record = recordsOfBlob == null ? null : recordsOfBlob.get(flag);
+    if (record == null) {
+      missCount.inc();
+      return null;
+    }
+    hitCount.inc();
+    return record.asReadOnlyBuffer();
+  }
+
+  /**
+   * Adds a record to the cache, evicting the records of the least recently used blobs if required. Records larger than
+   * the capacity of the cache are not added.
+   * @param key the {@link StoreKey} of the blob.
+   * @param flag the {@link MessageFormatFlags} that identifies the record.
+   * @param record the serialized record, from its position to its limit. It must not be modified after this call.
+   */
+  synchronized void put(StoreKey key, MessageFormatFlags flag, ByteBuffer record) {
+    if (record.remaining() > capacityInBytes) {
+      return;
+    }
+    Map<MessageFormatFlags, ByteBuffer> recordsOfBlob = records.get(key);
+    if (recordsOfBlob == null) {
+      recordsOfBlob = new EnumMap<>(MessageFormatFlags.class);
+      records.put(key, recordsOfBlob);
+    }
+    ByteBuffer previous = recordsOfBlob.put(flag, record.slice());
+    sizeInBytes += record.remaining() - (previous == null ? 0 : previous.remaining());
+    Iterator<Map.Entry<StoreKey, Map<MessageFormatFlags, ByteBuffer>>> iterator = records.entrySet().iterator();
+    while (sizeInBytes > capacityInBytes && iterator.hasNext()) {
+      Map.Entry<StoreKey, Map<MessageFormatFlags, ByteBuffer>> eldest = iterator.next();
+      if (!eldest.getKey().equals(key)) {
+        iterator.remove();
+        sizeInBytes -= getSize(eldest.getValue());
+        evictionCount.inc();
+      }
+    }
+  }
+
+  /**
+   * Removes all the records of a blob from the cache.
+   * @param key the {@link StoreKey} of the blob.
+   */
+  synchronized void invalidate(StoreKey key) {
+    Map<MessageFormatFlags, ByteBuffer> recordsOfBlob = records.remove(key);
+    if (recordsOfBlob != null) {
+      sizeInBytes -= getSize(recordsOfBlob);
+    }
+  }
+
+  /**
+   * @return the total size of the records in the cache.
+   */
+  synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * @param recordsOfBlob the records of a blob.
+   * @return the total size of {@code recordsOfBlob}.
+   */
+  private static long getSize(Map<MessageFormatFlags, ByteBuffer> recordsOfBlob) {
+    long size = 0;
+    for (ByteBuffer record : recordsOfBlob.values()) {
+      size += record.remaining();
+    }
+    return size;
+  }
+}
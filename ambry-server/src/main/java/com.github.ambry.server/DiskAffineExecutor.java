@@ -0,0 +1,144 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.server;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.DiskId;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.utils.Utils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Executes tasks for a partition on threads dedicated to the disk that the local replica of the partition is on. Each
+ * disk has a fixed number of threads and a bounded queue of tasks, so the concurrency on a disk is bounded and a slow
+ * disk only backs up its own queue.
+ */
+class DiskAffineExecutor {
+  private static final Runnable SHUTDOWN_TASK = new Runnable() {
+    @Override
+    public void run() {
+    }
+  };
+
+  private final Map<PartitionId, DiskWorkers> partitionToWorkers = new HashMap<>();
+  private final List<DiskWorkers> diskWorkersList = new ArrayList<>();
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param replicas the local replicas whose partitions tasks can be executed for.
+   * @param numThreadsPerDisk the number of threads that execute the tasks of each disk.
+   * @param queueSizePerDisk the maximum number of tasks of each disk that can wait to be executed.
+   * @param registry the {@link MetricRegistry} to register the queue size of each disk in.
+   */
+  DiskAffineExecutor(List<? extends ReplicaId> replicas, int numThreadsPerDisk, int queueSizePerDisk,
+      MetricRegistry registry) {
+    Map<DiskId, DiskWorkers> diskToWorkers = new HashMap<>();
+    for (ReplicaId replica : replicas) {
+      DiskWorkers diskWorkers = diskToWorkers.get(replica.getDiskId());
+      if (diskWorkers == null) {
+        diskWorkers = new DiskWorkers(replica.getDiskId(), numThreadsPerDisk, queueSizePerDisk, registry);
+        diskToWorkers.put(replica.getDiskId(), diskWorkers);
+        diskWorkersList.add(diskWorkers);
+      }
+      partitionToWorkers.put(replica.getPartitionId(), diskWorkers);
+    }
+  }
+
+  /**
+   * Queues a task to be executed by the threads of the disk that the local replica of {@code partitionId} is on,
+   * waiting for space if the queue of the disk is full.
+   * @param partitionId the {@link PartitionId} that the task is for.
+   * @param task the task to execute.
+   * @return {@code true} if the task was queued. {@code false} if there is no local replica of {@code partitionId}.
+   * @throws InterruptedException if interrupted while waiting for space in the queue.
+   */
+  boolean execute(PartitionId partitionId, Runnable task) throws InterruptedException {
+    DiskWorkers diskWorkers = partitionToWorkers.get(partitionId);
+    if (diskWorkers == null) {
+      return false;
+    }
+    diskWorkers.queue.put(task);
+    return true;
+  }
+
+  /**
+   * Executes the tasks that have already been queued and stops the threads of all the disks.
+   * @throws InterruptedException if interrupted while waiting for the threads to stop.
+   */
+  void shutdown() throws InterruptedException {
+    for (DiskWorkers diskWorkers : diskWorkersList) {
+      for (int i = 0; i < diskWorkers.threads.size(); i++) {
+        diskWorkers.queue.put(SHUTDOWN_TASK);
+      }
+    }
+    for (DiskWorkers diskWorkers : diskWorkersList) {
+      for (Thread thread : diskWorkers.threads) {
+        thread.join();
+      }
+    }
+  }
+
+  /**
+   * The queue and the threads of a disk.
+   */
+  private class DiskWorkers implements Runnable {
+    final BlockingQueue<Runnable> queue;
+    final List<Thread> threads = new ArrayList<>();
+
+    DiskWorkers(DiskId diskId, int numThreads, int queueSize, MetricRegistry registry) {
+      queue = new ArrayBlockingQueue<>(queueSize);
+      for (int i = 0; i < numThreads; i++) {
+        Thread thread = Utils.newThread("disk-executor-" + diskId.getMountPath() + "-" + i, this, true);
+        threads.add(thread);
+        thread.start();
+      }
+      Gauge<Integer> queueSizeGauge = new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return queue.size();
+        }
+      };
+      registry.register(MetricRegistry.name(DiskAffineExecutor.class, diskId.getMountPath() + "-QueueSize"),
+          queueSizeGauge);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        try {
+          Runnable task = queue.take();
+          if (task == SHUTDOWN_TASK) {
+            return;
+          }
+          task.run();
+        } catch (InterruptedException e) {
+          logger.info("Disk executor thread interrupted, exiting", e);
+          return;
+        } catch (Throwable e) {
+          logger.error("Exception when executing task", e);
+        }
+      }
+    }
+  }
+}
@@ -132,6 +132,7 @@ public class ServerMetrics {
 
   public final Meter putBlobRequestRate;
   public final Meter getBlobRequestRate;
+  public final Meter getBlobRangeRequestRate;
   public final Meter getBlobPropertiesRequestRate;
   public final Meter getBlobUserMetadataRequestRate;
   public final Meter getBlobAllRequestRate;
@@ -327,6 +328,7 @@ public class ServerMetrics {
 
     putBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "PutBlobRequestRate"));
     getBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "GetBlobRequestRate"));
+    getBlobRangeRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "GetBlobRangeRequestRate"));
     getBlobPropertiesRequestRate =
         registry.meter(MetricRegistry.name(AmbryRequests.class, "GetBlobPropertiesRequestRate"));
     getBlobUserMetadataRequestRate =
@@ -22,14 +22,18 @@ import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.ReplicaEventType;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.commons.BlobId;
+import com.github.ambry.commons.BlobIdFactory;
 import com.github.ambry.commons.ServerErrorCode;
 import com.github.ambry.config.ClusterMapConfig;
 import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.config.ServerConfig;
 import com.github.ambry.config.StoreConfig;
 import com.github.ambry.config.VerifiableProperties;
 import com.github.ambry.messageformat.BlobProperties;
 import com.github.ambry.messageformat.BlobType;
 import com.github.ambry.messageformat.MessageFormatFlags;
+import com.github.ambry.messageformat.MessageFormatInputStream;
+import com.github.ambry.messageformat.PutMessageFormatInputStream;
 import com.github.ambry.network.Request;
 import com.github.ambry.network.Send;
 import com.github.ambry.network.ServerNetworkResponseMetrics;
@@ -59,6 +63,7 @@ import com.github.ambry.replication.ReplicationManager;
 import com.github.ambry.store.FindInfo;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.store.MessageInfo;
 import com.github.ambry.store.MessageReadSet;
 import com.github.ambry.store.MessageWriteSet;
 import com.github.ambry.store.StorageManager;
@@ -85,6 +90,9 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -118,7 +126,8 @@ public class AmbryRequestsTest {
     replicationManager =
         MockReplicationManager.getReplicationManager(verifiableProperties, storageManager, clusterMap, dataNodeId);
     ambryRequests = new AmbryRequests(storageManager, requestResponseChannel, clusterMap, dataNodeId,
-        clusterMap.getMetricRegistry(), FIND_TOKEN_FACTORY, null, replicationManager, null);
+        clusterMap.getMetricRegistry(), FIND_TOKEN_FACTORY, null, replicationManager, null,
+        new ServerConfig(verifiableProperties));
   }
 
   /**
@@ -234,6 +243,112 @@ public class AmbryRequestsTest {
     // PartitionUnknown is hard to simulate without betraying knowledge of the internals of MockClusterMap.
   }
 
+  /**
+   * Tests that put, get and delete requests are executed by the threads of the disk of their partition when disk
+   * affine execution is enabled and that the other requests are executed by the calling thread.
+   * @throws Exception
+   */
+  @Test
+  public void diskAffineExecutionTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("server.disk.executor.num.of.threads.per.disk", "1");
+    MockRequestResponseChannel channel = new MockRequestResponseChannel();
+    AmbryRequests requests =
+        new AmbryRequests(storageManager, channel, clusterMap, dataNodeId, new MetricRegistry(), FIND_TOKEN_FACTORY,
+            null, replicationManager, null, new ServerConfig(new VerifiableProperties(properties)));
+    PartitionId id = clusterMap.getReplicaIds(dataNodeId).get(0).getPartitionId();
+    try {
+      for (RequestOrResponseType requestType : EnumSet.of(RequestOrResponseType.PutRequest,
+          RequestOrResponseType.GetRequest, RequestOrResponseType.DeleteRequest,
+          RequestOrResponseType.ReplicaMetadataRequest)) {
+        RequestOrResponse request = createOperationRequest(requestType, id);
+        storageManager.resetStore();
+        requests.handleRequests(MockRequest.fromRequest(request));
+        String threadName = channel.responseThreadNames.poll(10, TimeUnit.SECONDS);
+        assertNotNull("Response not sent for " + requestType, threadName);
+        assertEquals("Request executed by an unexpected thread: " + threadName,
+            requestType != RequestOrResponseType.ReplicaMetadataRequest, threadName.startsWith("disk-executor-"));
+        assertEquals("Correlation id in response does match the one in the request", request.getCorrelationId(),
+            ((Response) channel.lastResponse).getCorrelationId());
+        assertEquals("Operation received at the store not as expected", requestType,
+            MockStorageManager.operationReceived);
+      }
+    } finally {
+      requests.shutdown();
+    }
+  }
+
+  /**
+   * Tests that blob properties, user metadata and blob info are served from the blob metadata cache once they have been
+   * read from the store, that deletes invalidate the cache and that gets of the blob do not use the cache.
+   * @throws Exception
+   */
+  @Test
+  public void blobMetadataCacheTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("server.blob.metadata.cache.size.in.bytes.per.store", Long.toString(1024 * 1024));
+    MockRequestResponseChannel channel = new MockRequestResponseChannel();
+    AmbryRequests requests =
+        new AmbryRequests(storageManager, channel, clusterMap, dataNodeId, new MetricRegistry(), FIND_TOKEN_FACTORY,
+            null, replicationManager, new BlobIdFactory(clusterMap),
+            new ServerConfig(new VerifiableProperties(properties)));
+    PartitionId id = clusterMap.getReplicaIds(dataNodeId).get(0).getPartitionId();
+    BlobId blobId =
+        new BlobId(BlobId.DEFAULT_FLAG, ClusterMapUtils.UNKNOWN_DATACENTER_ID, Utils.getRandomShort(TestUtils.RANDOM),
+            Utils.getRandomShort(TestUtils.RANDOM), id);
+    byte[] userMetadata = TestUtils.getRandomBytes(100);
+    byte[] blob = TestUtils.getRandomBytes(1000);
+    BlobProperties blobProperties =
+        new BlobProperties(blob.length, "serviceId", blobId.getAccountId(), blobId.getContainerId());
+    MessageFormatInputStream stream =
+        new PutMessageFormatInputStream(blobId, blobProperties, ByteBuffer.wrap(userMetadata),
+            new ByteBufferInputStream(ByteBuffer.wrap(blob)), blob.length);
+    ByteBuffer message = ByteBuffer.allocate((int) stream.getSize());
+    stream.read(message.array());
+    MockMessageReadSet readSet = new MockMessageReadSet(blobId, message);
+    try {
+      MockStorageManager.readSetToReturn = readSet;
+      MockStorageManager.messageInfosToReturn = Collections.singletonList(
+          new MessageInfo(blobId, message.capacity(), blobId.getAccountId(), blobId.getContainerId(),
+              SystemTime.getInstance().milliseconds()));
+      for (MessageFormatFlags flag : EnumSet.of(MessageFormatFlags.BlobProperties,
+          MessageFormatFlags.BlobUserMetadata, MessageFormatFlags.BlobInfo)) {
+        // a miss reads the store and fills the cache
+        readSet.readCount = 0;
+        byte[] missResponse = getResponseBytes(requests, channel, blobId, flag);
+        assertTrue("Store should have been read on a miss for " + flag, readSet.readCount > 0);
+        // a hit returns the same bytes without reading the store
+        readSet.readCount = 0;
+        assertArrayEquals("Cached response does not match for " + flag, missResponse,
+            getResponseBytes(requests, channel, blobId, flag));
+        assertEquals("Store should not have been read on a hit for " + flag, 0, readSet.readCount);
+      }
+
+      // a delete invalidates the cache
+      requests.handleRequests(MockRequest.fromRequest(
+          new DeleteRequest(1, "clientId", blobId, SystemTime.getInstance().milliseconds())));
+      assertEquals("Delete should have succeeded", ServerErrorCode.No_Error,
+          ((Response) channel.lastResponse).getError());
+      for (MessageFormatFlags flag : EnumSet.of(MessageFormatFlags.BlobProperties,
+          MessageFormatFlags.BlobUserMetadata, MessageFormatFlags.BlobInfo)) {
+        readSet.readCount = 0;
+        getResponseBytes(requests, channel, blobId, flag);
+        assertTrue("Store should have been read after the delete for " + flag, readSet.readCount > 0);
+      }
+
+      // gets of the blob are always served from the store
+      for (int i = 0; i < 2; i++) {
+        readSet.readCount = 0;
+        getResponseBytes(requests, channel, blobId, MessageFormatFlags.Blob);
+        assertTrue("Store should have been read for the blob", readSet.readCount > 0);
+      }
+    } finally {
+      MockStorageManager.readSetToReturn = null;
+      MockStorageManager.messageInfosToReturn = null;
+      requests.shutdown();
+    }
+  }
+
   // helpers
 
   // general
@@ -336,36 +451,7 @@ public class AmbryRequestsTest {
   private void sendAndVerifyOperationRequest(RequestOrResponseType requestType, List<? extends PartitionId> ids,
       ServerErrorCode expectedErrorCode) throws InterruptedException, IOException {
     for (PartitionId id : ids) {
-      int correlationId = TestUtils.RANDOM.nextInt();
-      String clientId = UtilsTest.getRandomString(10);
-      BlobId blobId =
-          new BlobId(BlobId.DEFAULT_FLAG, ClusterMapUtils.UNKNOWN_DATACENTER_ID, Utils.getRandomShort(TestUtils.RANDOM),
-              Utils.getRandomShort(TestUtils.RANDOM), id);
-      RequestOrResponse request;
-      switch (requestType) {
-        case PutRequest:
-          BlobProperties properties = new BlobProperties(0, "serviceId", blobId.getAccountId(), blobId.getAccountId());
-          request = new PutRequest(correlationId, clientId, blobId, properties, ByteBuffer.allocate(0),
-              ByteBuffer.allocate(0), 0, BlobType.DataBlob);
-          break;
-        case DeleteRequest:
-          request = new DeleteRequest(correlationId, clientId, blobId, SystemTime.getInstance().milliseconds());
-          break;
-        case GetRequest:
-          PartitionRequestInfo pRequestInfo = new PartitionRequestInfo(id, Collections.singletonList(blobId));
-          request =
-              new GetRequest(correlationId, clientId, MessageFormatFlags.All, Collections.singletonList(pRequestInfo),
-                  GetOption.Include_All);
-          break;
-        case ReplicaMetadataRequest:
-          ReplicaMetadataRequestInfo rRequestInfo =
-              new ReplicaMetadataRequestInfo(id, FIND_TOKEN_FACTORY.getNewFindToken(), "localhost", "/tmp");
-          request = new ReplicaMetadataRequest(correlationId, clientId, Collections.singletonList(rRequestInfo),
-              Long.MAX_VALUE);
-          break;
-        default:
-          throw new IllegalArgumentException(requestType + " not supported by this function");
-      }
+      RequestOrResponse request = createOperationRequest(requestType, id);
       storageManager.resetStore();
       Response response = sendRequestGetResponse(request,
           requestType == RequestOrResponseType.GetRequest || requestType == RequestOrResponseType.ReplicaMetadataRequest
@@ -388,6 +474,45 @@ public class AmbryRequestsTest {
     }
   }
 
+  /**
+   * @param requestType the type of the request to create.
+   * @param id the partitionId to create the request for.
+   * @return a request of type {@code requestType} for a random blob in {@code id}.
+   */
+  private RequestOrResponse createOperationRequest(RequestOrResponseType requestType, PartitionId id) {
+    int correlationId = TestUtils.RANDOM.nextInt();
+    String clientId = UtilsTest.getRandomString(10);
+    BlobId blobId =
+        new BlobId(BlobId.DEFAULT_FLAG, ClusterMapUtils.UNKNOWN_DATACENTER_ID, Utils.getRandomShort(TestUtils.RANDOM),
+            Utils.getRandomShort(TestUtils.RANDOM), id);
+    RequestOrResponse request;
+    switch (requestType) {
+      case PutRequest:
+        BlobProperties properties = new BlobProperties(0, "serviceId", blobId.getAccountId(), blobId.getAccountId());
+        request = new PutRequest(correlationId, clientId, blobId, properties, ByteBuffer.allocate(0),
+            ByteBuffer.allocate(0), 0, BlobType.DataBlob);
+        break;
+      case DeleteRequest:
+        request = new DeleteRequest(correlationId, clientId, blobId, SystemTime.getInstance().milliseconds());
+        break;
+      case GetRequest:
+        PartitionRequestInfo pRequestInfo = new PartitionRequestInfo(id, Collections.singletonList(blobId));
+        request =
+            new GetRequest(correlationId, clientId, MessageFormatFlags.All, Collections.singletonList(pRequestInfo),
+                GetOption.Include_All);
+        break;
+      case ReplicaMetadataRequest:
+        ReplicaMetadataRequestInfo rRequestInfo =
+            new ReplicaMetadataRequestInfo(id, FIND_TOKEN_FACTORY.getNewFindToken(), "localhost", "/tmp");
+        request = new ReplicaMetadataRequest(correlationId, clientId, Collections.singletonList(rRequestInfo),
+            Long.MAX_VALUE);
+        break;
+      default:
+        throw new IllegalArgumentException(requestType + " not supported by this function");
+    }
+    return request;
+  }
+
   /**
    * Sends and verifies that a {@link AdminRequestOrResponseType#RequestControl} request received the error code
    * expected.
@@ -409,6 +534,35 @@ public class AmbryRequestsTest {
     assertTrue("Response not of type AdminResponse", response instanceof AdminResponse);
   }
 
+  // blobMetadataCacheTest() helpers
+
+  /**
+   * Sends a get request for {@code blobId} and returns the serialized response. The correlation id and the client id
+   * are the same for all the requests, so the responses for the same content are identical.
+   * @param requests the {@link AmbryRequests} to send the request to.
+   * @param channel the {@link MockRequestResponseChannel} that {@code requests} sends its responses to.
+   * @param blobId the {@link BlobId} to get.
+   * @param flag the {@link MessageFormatFlags} of the request.
+   * @return the serialized response.
+   * @throws InterruptedException
+   * @throws IOException
+   */
+  private byte[] getResponseBytes(AmbryRequests requests, MockRequestResponseChannel channel, BlobId blobId,
+      MessageFormatFlags flag) throws InterruptedException, IOException {
+    PartitionRequestInfo partitionRequestInfo =
+        new PartitionRequestInfo(blobId.getPartition(), Collections.singletonList(blobId));
+    requests.handleRequests(MockRequest.fromRequest(
+        new GetRequest(1, "clientId", flag, Collections.singletonList(partitionRequestInfo), GetOption.None)));
+    GetResponse response = (GetResponse) channel.lastResponse;
+    assertEquals("Get should have succeeded", ServerErrorCode.No_Error,
+        response.getPartitionResponseInfoList().get(0).getErrorCode());
+    ByteBufferChannel responseChannel = new ByteBufferChannel(ByteBuffer.allocate((int) response.sizeInBytes()));
+    while (!response.isSendComplete()) {
+      response.writeTo(responseChannel);
+    }
+    return responseChannel.getBuffer().array();
+  }
+
   // controlReplicationSuccessTest() and controlReplicationFailureTest() helpers
 
   /**
@@ -520,6 +674,11 @@ public class AmbryRequestsTest {
      */
     Send lastResponse = null;
 
+    /**
+     * The names of the threads that called {@link #sendResponse(Send, Request, ServerNetworkResponseMetrics)}.
+     */
+    final BlockingQueue<String> responseThreadNames = new LinkedBlockingQueue<>();
+
     MockRequestResponseChannel() {
       super(1, 1);
     }
@@ -528,6 +687,53 @@ public class AmbryRequestsTest {
     public void sendResponse(Send payloadToSend, Request originalRequest, ServerNetworkResponseMetrics metrics) {
       lastResponse = payloadToSend;
       lastOriginalRequest = originalRequest;
+      responseThreadNames.add(Thread.currentThread().getName());
+    }
+  }
+
+  /**
+   * A {@link MessageReadSet} of a single message that counts the number of times it is read.
+   */
+  private static class MockMessageReadSet implements MessageReadSet {
+    private final StoreKey key;
+    private final ByteBuffer message;
+    /**
+     * The number of calls to {@link #writeTo(int, WritableByteChannel, long, long)}.
+     */
+    volatile int readCount = 0;
+
+    /**
+     * @param key the {@link StoreKey} of the message.
+     * @param message the serialized message.
+     */
+    MockMessageReadSet(StoreKey key, ByteBuffer message) {
+      this.key = key;
+      this.message = message;
+    }
+
+    @Override
+    public long writeTo(int index, WritableByteChannel channel, long relativeOffset, long maxSize)
+        throws IOException {
+      readCount++;
+      ByteBuffer buffer = message.duplicate();
+      buffer.position((int) relativeOffset);
+      buffer.limit((int) Math.min(buffer.limit(), relativeOffset + maxSize));
+      return channel.write(buffer);
+    }
+
+    @Override
+    public int count() {
+      return 1;
+    }
+
+    @Override
+    public long sizeInBytes(int index) {
+      return message.capacity();
+    }
+
+    @Override
+    public StoreKey getKeyAt(int index) {
+      return key;
     }
   }
 
@@ -541,6 +747,13 @@ public class AmbryRequestsTest {
      */
     static RequestOrResponseType operationReceived = null;
 
+    /**
+     * If non-null, the {@link MessageReadSet} and the {@link MessageInfo}s returned by gets. Otherwise gets return no
+     * messages.
+     */
+    static MessageReadSet readSetToReturn = null;
+    static List<MessageInfo> messageInfosToReturn = null;
+
     /**
      * An empty {@link Store} implementation.
      */
@@ -555,6 +768,9 @@ public class AmbryRequestsTest {
       public StoreInfo get(List<? extends StoreKey> ids, EnumSet<StoreGetOptions> storeGetOptions)
           throws StoreException {
         operationReceived = RequestOrResponseType.GetRequest;
+        if (readSetToReturn != null) {
+          return new StoreInfo(readSetToReturn, messageInfosToReturn);
+        }
         return new StoreInfo(new MessageReadSet() {
           @Override
           public long writeTo(int index, WritableByteChannel channel, long relativeOffset, long maxSize)
@@ -706,7 +922,7 @@ public class AmbryRequestsTest {
         StoreConfig storeConfig, StorageManager storageManager, ClusterMap clusterMap, DataNodeId dataNodeId)
         throws ReplicationException {
       super(replicationConfig, clusterMapConfig, storeConfig, storageManager, stream -> null, clusterMap, null,
-          dataNodeId, null, clusterMap.getMetricRegistry(), null);
+          dataNodeId, null, null, clusterMap.getMetricRegistry(), null);
       reset();
     }
 
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.server;
+
+import com.github.ambry.network.RequestTypeWeight;
+import com.github.ambry.protocol.RequestOrResponseType;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link AmbryServer}.
+ */
+public class AmbryServerTest {
+
+  /**
+   * Tests that {@link AmbryServer#getRequestTypeWeights(String)} parses well formed weights.
+   */
+  @Test
+  public void getRequestTypeWeightsTest() {
+    List<RequestTypeWeight> weights =
+        AmbryServer.getRequestTypeWeights(" PutRequest:4, GetRequest : 2,,ReplicaMetadataRequest:1 ");
+    assertEquals("Unexpected number of weights", 3, weights.size());
+    verifyWeight(weights.get(0), RequestOrResponseType.PutRequest, 4);
+    verifyWeight(weights.get(1), RequestOrResponseType.GetRequest, 2);
+    verifyWeight(weights.get(2), RequestOrResponseType.ReplicaMetadataRequest, 1);
+    assertTrue("There should be no weights", AmbryServer.getRequestTypeWeights("").isEmpty());
+    assertTrue("There should be no weights", AmbryServer.getRequestTypeWeights(" , ").isEmpty());
+  }
+
+  /**
+   * Tests that {@link AmbryServer#getRequestTypeWeights(String)} fails with an {@link IllegalArgumentException} on
+   * malformed weights.
+   */
+  @Test
+  public void getRequestTypeWeightsBadInputTest() {
+    String[] badInputs =
+        {"UnknownRequest:1", "PutRequest", "PutRequest:", ":4", "PutRequest:four", "PutRequest:1.5", "PutRequest:0",
+            "PutRequest:-1", "PutRequest:1:2", "PutRequest:99999999999", "PutRequest:1,PutRequest:2",
+            "PutRequest:1,GetRequest"};
+    for (String badInput : badInputs) {
+      try {
+        AmbryServer.getRequestTypeWeights(badInput);
+        fail("Parsing should have failed for " + badInput);
+      } catch (IllegalArgumentException e) {
+        assertEquals("Unexpected exception type for " + badInput, IllegalArgumentException.class, e.getClass());
+      }
+    }
+  }
+
+  /**
+   * Verifies that {@code weight} is the weight expected.
+   * @param weight the {@link RequestTypeWeight} to verify.
+   * @param type the expected {@link RequestOrResponseType}.
+   * @param expectedWeight the expected weight.
+   */
+  private void verifyWeight(RequestTypeWeight weight, RequestOrResponseType type, int expectedWeight) {
+    assertEquals("Unexpected type", type.ordinal(), weight.getType());
+    assertEquals("Unexpected name", type.name(), weight.getName());
+    assertEquals("Unexpected weight", expectedWeight, weight.getWeight());
+  }
+}
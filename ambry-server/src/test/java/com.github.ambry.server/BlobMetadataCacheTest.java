@@ -0,0 +1,134 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.server;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.commons.BlobId;
+import com.github.ambry.messageformat.MessageFormatFlags;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.TestUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link BlobMetadataCache}.
+ */
+public class BlobMetadataCacheTest {
+  private static final int RECORD_SIZE = 100;
+
+  private final PartitionId partitionId;
+  private final BlobMetadataCache cache;
+
+  public BlobMetadataCacheTest() throws IOException {
+    partitionId = new MockClusterMap().getWritablePartitionIds().get(0);
+    cache = new BlobMetadataCache(3 * RECORD_SIZE, partitionId.toString(), new MetricRegistry());
+  }
+
+  /**
+   * Tests that records are returned as they were put and that the hit and miss counts are updated.
+   */
+  @Test
+  public void putAndGetTest() {
+    StoreKey key = getKey();
+    assertNull("Record should not be present", cache.get(key, MessageFormatFlags.BlobProperties));
+    ByteBuffer properties = putRecord(key, MessageFormatFlags.BlobProperties);
+    ByteBuffer userMetadata = putRecord(key, MessageFormatFlags.BlobUserMetadata);
+    assertEquals("Record mismatch", properties, cache.get(key, MessageFormatFlags.BlobProperties));
+    assertEquals("Record mismatch", userMetadata, cache.get(key, MessageFormatFlags.BlobUserMetadata));
+    assertNull("Record should not be present", cache.get(key, MessageFormatFlags.BlobInfo));
+    assertEquals("Unexpected size", 2 * RECORD_SIZE, cache.getSizeInBytes());
+    assertEquals("Unexpected hit count", 2, cache.hitCount.getCount());
+    assertEquals("Unexpected miss count", 2, cache.missCount.getCount());
+
+    // records returned are independent views
+    ByteBuffer record = cache.get(key, MessageFormatFlags.BlobProperties);
+    record.position(record.limit());
+    assertEquals("Record mismatch", properties, cache.get(key, MessageFormatFlags.BlobProperties));
+
+    // records larger than the cache are not added
+    ByteBuffer large = ByteBuffer.wrap(TestUtils.getRandomBytes(4 * RECORD_SIZE));
+    cache.put(key, MessageFormatFlags.BlobInfo, large);
+    assertNull("Record should not be present", cache.get(key, MessageFormatFlags.BlobInfo));
+  }
+
+  /**
+   * Tests that the records of the least recently used blobs are evicted when the cache is full.
+   */
+  @Test
+  public void evictionTest() {
+    StoreKey first = getKey();
+    StoreKey second = getKey();
+    StoreKey third = getKey();
+    putRecord(first, MessageFormatFlags.BlobProperties);
+    putRecord(first, MessageFormatFlags.BlobUserMetadata);
+    putRecord(second, MessageFormatFlags.BlobProperties);
+    // make first more recently used than second
+    assertNotNull("Record should be present", cache.get(first, MessageFormatFlags.BlobProperties));
+    putRecord(third, MessageFormatFlags.BlobProperties);
+    assertNull("Record should have been evicted", cache.get(second, MessageFormatFlags.BlobProperties));
+    assertEquals("Unexpected eviction count", 1, cache.evictionCount.getCount());
+    putRecord(third, MessageFormatFlags.BlobUserMetadata);
+    assertNull("Records should have been evicted", cache.get(first, MessageFormatFlags.BlobProperties));
+    assertNull("Records should have been evicted", cache.get(first, MessageFormatFlags.BlobUserMetadata));
+    assertNotNull("Record should be present", cache.get(third, MessageFormatFlags.BlobProperties));
+    assertNotNull("Record should be present", cache.get(third, MessageFormatFlags.BlobUserMetadata));
+    assertEquals("Unexpected eviction count", 2, cache.evictionCount.getCount());
+    assertEquals("Unexpected size", 2 * RECORD_SIZE, cache.getSizeInBytes());
+  }
+
+  /**
+   * Tests that all the records of a blob are removed when it is invalidated.
+   */
+  @Test
+  public void invalidateTest() {
+    StoreKey key = getKey();
+    StoreKey otherKey = getKey();
+    putRecord(key, MessageFormatFlags.BlobProperties);
+    putRecord(key, MessageFormatFlags.BlobInfo);
+    ByteBuffer otherRecord = putRecord(otherKey, MessageFormatFlags.BlobProperties);
+    cache.invalidate(key);
+    assertNull("Record should have been invalidated", cache.get(key, MessageFormatFlags.BlobProperties));
+    assertNull("Record should have been invalidated", cache.get(key, MessageFormatFlags.BlobInfo));
+    assertEquals("Record mismatch", otherRecord, cache.get(otherKey, MessageFormatFlags.BlobProperties));
+    assertEquals("Unexpected size", RECORD_SIZE, cache.getSizeInBytes());
+    // invalidating a blob that is not cached has no effect
+    cache.invalidate(key);
+    assertEquals("Unexpected size", RECORD_SIZE, cache.getSizeInBytes());
+  }
+
+  /**
+   * Puts a random record of size {@link #RECORD_SIZE} into the cache.
+   * @param key the {@link StoreKey} of the blob.
+   * @param flag the {@link MessageFormatFlags} that identifies the record.
+   * @return the record put.
+   */
+  private ByteBuffer putRecord(StoreKey key, MessageFormatFlags flag) {
+    ByteBuffer record = ByteBuffer.wrap(TestUtils.getRandomBytes(RECORD_SIZE));
+    cache.put(key, flag, record);
+    return record;
+  }
+
+  /**
+   * @return a new {@link StoreKey}.
+   */
+  private StoreKey getKey() {
+    return new BlobId(BlobId.DEFAULT_FLAG, (byte) 0, (short) 0, (short) 0, partitionId);
+  }
+}
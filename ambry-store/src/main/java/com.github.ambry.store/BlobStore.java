@@ -22,10 +22,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
@@ -47,6 +50,8 @@ class BlobStore implements Store {
   private final Logger logger = LoggerFactory.getLogger(getClass());
   /* A lock that prevents concurrent writes to the log */
   private final Object lock = new Object();
+  /* Puts waiting to be written by the next thread that acquires the lock, if batched index publish is enabled */
+  private final Queue<PendingPut> pendingPuts = new ConcurrentLinkedQueue<>();
   private final StoreConfig config;
   private final long capacityInBytes;
   private final StoreKeyFactory factory;
@@ -57,6 +62,7 @@ class BlobStore implements Store {
   private final UUID sessionId = UUID.randomUUID();
 
   private Log log;
+  private LogSyncer logSyncer;
   private BlobStoreCompactor compactor;
   private PersistentIndex index;
   private BlobStoreStats blobStoreStats;
@@ -77,6 +83,23 @@ class BlobStore implements Store {
     SOME_NOT_ALL_DUPLICATE, // At least one of the message is a duplicate, but not all.
   }
 
+  /**
+   * A put that is waiting to be written and to have its index entries published as part of a batch. All the fields
+   * other than the final ones are accessed with {@link #lock} held.
+   */
+  private static class PendingPut {
+    final MessageWriteSet messageSetToWrite;
+    final Offset indexEndOffsetBeforeCheck;
+    MessageWriteSetStateInStore state = null;
+    Exception exception = null;
+    boolean published = false;
+
+    PendingPut(MessageWriteSet messageSetToWrite, Offset indexEndOffsetBeforeCheck) {
+      this.messageSetToWrite = messageSetToWrite;
+      this.indexEndOffsetBeforeCheck = indexEndOffsetBeforeCheck;
+    }
+  }
+
   BlobStore(String storeId, StoreConfig config, ScheduledExecutorService taskScheduler,
       ScheduledExecutorService longLivedTaskScheduler, DiskIOScheduler diskIOScheduler,
       StorageManagerMetrics storageManagerMetrics, String dataDir, long capacityInBytes, StoreKeyFactory factory,
@@ -128,6 +151,8 @@ class BlobStore implements Store {
 
         StoreDescriptor storeDescriptor = new StoreDescriptor(dataDir);
         log = new Log(dataDir, capacityInBytes, config.storeSegmentSizeInBytes, metrics);
+        logSyncer = new LogSyncer(log, LogSyncer.DurabilityMode.fromConfigName(config.storeDataDurabilityMode),
+            config.storeDataGroupFsyncMaxDelayMs, metrics, time);
         compactor =
             new BlobStoreCompactor(dataDir, storeId, factory, config, metrics, diskIOScheduler, log, time, sessionId,
                 storeDescriptor.getIncarnationId());
@@ -139,10 +164,20 @@ class BlobStore implements Store {
         long bucketSpanInMs = TimeUnit.MINUTES.toMillis(config.storeStatsBucketSpanInMinutes);
         long queueProcessingPeriodInMs =
             TimeUnit.MINUTES.toMillis(config.storeStatsRecentEntryProcessingIntervalInMinutes);
+        File validDataSizeCheckpointFile = null;
+        if (config.storeStatsValidDataSizeTrackingEnabled) {
+          validDataSizeCheckpointFile = new File(dataDir, BlobStoreStats.VALID_DATA_SIZE_CHECKPOINT_FILE_NAME);
+          if (CompactionLog.isCompactionInProgress(dataDir, storeId) && validDataSizeCheckpointFile.exists()
+              && !validDataSizeCheckpointFile.delete()) {
+            // the checkpoint could refer to log segments that the compaction will remove
+            throw new StoreException("Could not delete " + validDataSizeCheckpointFile,
+                StoreErrorCodes.Initialization_Error);
+          }
+        }
         blobStoreStats =
             new BlobStoreStats(storeId, index, config.storeStatsBucketCount, bucketSpanInMs, logSegmentForecastOffsetMs,
                 queueProcessingPeriodInMs, config.storeStatsWaitTimeoutInSecs, time, longLivedTaskScheduler,
-                taskScheduler, diskIOScheduler, metrics);
+                taskScheduler, diskIOScheduler, metrics, validDataSizeCheckpointFile);
         started = true;
       } catch (Exception e) {
         metrics.storeStartFailure.inc();
@@ -226,35 +261,26 @@ class BlobStore implements Store {
       Offset indexEndOffsetBeforeCheck = index.getCurrentEndOffset();
       MessageWriteSetStateInStore state = checkWriteSetStateInStore(messageSetToWrite, null);
       if (state == MessageWriteSetStateInStore.ALL_ABSENT) {
-        synchronized (lock) {
-          // Validate that log end offset was not changed. If changed, check once again for existing
-          // keys in store
-          Offset currentIndexEndOffset = index.getCurrentEndOffset();
-          if (!currentIndexEndOffset.equals(indexEndOffsetBeforeCheck)) {
-            FileSpan fileSpan = new FileSpan(indexEndOffsetBeforeCheck, currentIndexEndOffset);
-            state = checkWriteSetStateInStore(messageSetToWrite, fileSpan);
-          }
-
-          if (state == MessageWriteSetStateInStore.ALL_ABSENT) {
-            Offset endOffsetOfLastMessage = log.getEndOffset();
-            messageSetToWrite.writeTo(log);
-            logger.trace("Store : {} message set written to log", dataDir);
-            List<MessageInfo> messageInfo = messageSetToWrite.getMessageSetInfo();
-            ArrayList<IndexEntry> indexEntries = new ArrayList<>(messageInfo.size());
-            for (MessageInfo info : messageInfo) {
-              FileSpan fileSpan = log.getFileSpanForMessage(endOffsetOfLastMessage, info.getSize());
-              IndexValue value = new IndexValue(info.getSize(), fileSpan.getStartOffset(), info.getExpirationTimeInMs(),
-                  info.getOperationTimeMs(), info.getAccountId(), info.getContainerId());
-              IndexEntry entry = new IndexEntry(info.getStoreKey(), value, info.getCrc());
-              indexEntries.add(entry);
-              endOffsetOfLastMessage = fileSpan.getEndOffset();
+        if (config.storePutBatchedIndexPublishEnabled) {
+          PendingPut pendingPut = new PendingPut(messageSetToWrite, indexEndOffsetBeforeCheck);
+          pendingPuts.add(pendingPut);
+          synchronized (lock) {
+            // another thread may have written this put while this thread was waiting for the lock
+            if (!pendingPut.published) {
+              writePendingPuts();
             }
-            FileSpan fileSpan = new FileSpan(indexEntries.get(0).getValue().getOffset(), endOffsetOfLastMessage);
-            index.addToIndex(indexEntries, fileSpan);
-            for (IndexEntry newEntry : indexEntries) {
-              blobStoreStats.handleNewPutEntry(newEntry.getValue());
+          }
+          if (pendingPut.exception != null) {
+            throw pendingPut.exception;
+          }
+          state = pendingPut.state;
+        } else {
+          synchronized (lock) {
+            List<IndexEntry> indexEntries = new ArrayList<>();
+            state = writeIfAbsent(messageSetToWrite, indexEndOffsetBeforeCheck, indexEntries);
+            if (state == MessageWriteSetStateInStore.ALL_ABSENT) {
+              addToIndex(indexEntries);
             }
-            logger.trace("Store : {} message set written to index ", dataDir);
           }
         }
       }
@@ -271,6 +297,8 @@ class BlobStore implements Store {
           logger.trace("All entries to put already exist in the store, marking operation as successful");
           break;
         case ALL_ABSENT:
+          // the lock is not held so that concurrent writers can share the flush
+          logSyncer.sync();
           logger.trace("All entries were absent, and were written to the store successfully");
           break;
       }
@@ -286,6 +314,128 @@ class BlobStore implements Store {
     }
   }
 
+  /**
+   * Writes {@code messageSetToWrite} to the log if none of its messages have been added to the store since
+   * {@code indexEndOffsetBeforeCheck}. Has to be called with {@link #lock} held.
+   * @param messageSetToWrite the {@link MessageWriteSet} to write.
+   * @param indexEndOffsetBeforeCheck the end offset of the index when the messages were last checked to be absent.
+   * @param indexEntries the list to add the {@link IndexEntry}s of the written messages to. They are not added to the
+   *                     index.
+   * @return the {@link MessageWriteSetStateInStore} of the messages. The messages were written only if it is
+   *         {@link MessageWriteSetStateInStore#ALL_ABSENT}.
+   * @throws IOException
+   * @throws StoreException
+   */
+  private MessageWriteSetStateInStore writeIfAbsent(MessageWriteSet messageSetToWrite,
+      Offset indexEndOffsetBeforeCheck, List<IndexEntry> indexEntries) throws IOException, StoreException {
+    MessageWriteSetStateInStore state = MessageWriteSetStateInStore.ALL_ABSENT;
+    // Validate that log end offset was not changed. If changed, check once again for existing
+    // keys in store
+    Offset currentIndexEndOffset = index.getCurrentEndOffset();
+    if (!currentIndexEndOffset.equals(indexEndOffsetBeforeCheck)) {
+      FileSpan fileSpan = new FileSpan(indexEndOffsetBeforeCheck, currentIndexEndOffset);
+      state = checkWriteSetStateInStore(messageSetToWrite, fileSpan);
+    }
+
+    if (state == MessageWriteSetStateInStore.ALL_ABSENT) {
+      Offset endOffsetOfLastMessage = log.getEndOffset();
+      messageSetToWrite.writeTo(log);
+      logger.trace("Store : {} message set written to log", dataDir);
+      for (MessageInfo info : messageSetToWrite.getMessageSetInfo()) {
+        FileSpan fileSpan = log.getFileSpanForMessage(endOffsetOfLastMessage, info.getSize());
+        IndexValue value = new IndexValue(info.getSize(), fileSpan.getStartOffset(), info.getExpirationTimeInMs(),
+            info.getOperationTimeMs(), info.getAccountId(), info.getContainerId());
+        IndexEntry entry = new IndexEntry(info.getStoreKey(), value, info.getCrc());
+        indexEntries.add(entry);
+        endOffsetOfLastMessage = fileSpan.getEndOffset();
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Adds {@code indexEntries}, which have to be contiguous in the log, to the index. Has to be called with
+   * {@link #lock} held.
+   * @param indexEntries the {@link IndexEntry}s to add in the order of their offsets.
+   * @throws StoreException
+   */
+  private void addToIndex(List<IndexEntry> indexEntries) throws StoreException {
+    // a message is always wholly contained within one log segment
+    IndexValue lastValue = indexEntries.get(indexEntries.size() - 1).getValue();
+    Offset endOffsetOfLastMessage =
+        new Offset(lastValue.getOffset().getName(), lastValue.getOffset().getOffset() + lastValue.getSize());
+    FileSpan fileSpan = new FileSpan(indexEntries.get(0).getValue().getOffset(), endOffsetOfLastMessage);
+    index.addToIndex(indexEntries, fileSpan);
+    for (IndexEntry newEntry : indexEntries) {
+      blobStoreStats.handleNewPutEntry(newEntry.getValue());
+    }
+    logger.trace("Store : {} message set written to index ", dataDir);
+  }
+
+  /**
+   * Writes all the puts in {@link #pendingPuts}. The message sets are written to the log one after the other and the
+   * index entries of all of them are added to the index together. Entries are added early only if a message set has a
+   * key that is in an earlier message set that has not been added to the index yet, so that duplicates are detected.
+   * Has to be called with {@link #lock} held.
+   */
+  private void writePendingPuts() {
+    List<PendingPut> unpublishedPuts = new ArrayList<>();
+    List<IndexEntry> unpublishedEntries = new ArrayList<>();
+    Set<StoreKey> unpublishedKeys = new HashSet<>();
+    int batchSize = 0;
+    PendingPut pendingPut;
+    while ((pendingPut = pendingPuts.poll()) != null) {
+      batchSize++;
+      try {
+        for (MessageInfo info : pendingPut.messageSetToWrite.getMessageSetInfo()) {
+          if (unpublishedKeys.contains(info.getStoreKey())) {
+            addToIndex(unpublishedPuts, unpublishedEntries);
+            unpublishedKeys.clear();
+            break;
+          }
+        }
+        List<IndexEntry> indexEntries = new ArrayList<>();
+        pendingPut.state =
+            writeIfAbsent(pendingPut.messageSetToWrite, pendingPut.indexEndOffsetBeforeCheck, indexEntries);
+        for (IndexEntry entry : indexEntries) {
+          unpublishedKeys.add(entry.getKey());
+        }
+        unpublishedEntries.addAll(indexEntries);
+      } catch (Exception e) {
+        pendingPut.exception = e;
+      }
+      unpublishedPuts.add(pendingPut);
+    }
+    addToIndex(unpublishedPuts, unpublishedEntries);
+    metrics.putIndexPublishBatchSize.update(batchSize);
+  }
+
+  /**
+   * Adds {@code indexEntries} to the index and marks {@code puts} as published. If the entries could not be added,
+   * the puts that wrote them fail with the exception.
+   * @param puts the {@link PendingPut}s that were processed since entries were last added to the index.
+   * @param indexEntries the {@link IndexEntry}s of the messages written by {@code puts}.
+   */
+  private void addToIndex(List<PendingPut> puts, List<IndexEntry> indexEntries) {
+    Exception exception = null;
+    if (!indexEntries.isEmpty()) {
+      try {
+        addToIndex(indexEntries);
+      } catch (Exception e) {
+        exception = e;
+      }
+    }
+    for (PendingPut put : puts) {
+      if (exception != null && put.exception == null
+          && put.state == MessageWriteSetStateInStore.ALL_ABSENT) {
+        put.exception = exception;
+      }
+      put.published = true;
+    }
+    puts.clear();
+    indexEntries.clear();
+  }
+
   @Override
   public void delete(MessageWriteSet messageSetToDelete) throws StoreException {
     checkStarted();
@@ -331,6 +481,7 @@ class BlobStore implements Store {
         }
         logger.trace("Store : {} delete has been marked in the index ", dataDir);
       }
+      logSyncer.sync();
     } catch (StoreException e) {
       throw e;
     } catch (IOException e) {
@@ -447,7 +598,12 @@ class BlobStore implements Store {
    */
   void compact(CompactionDetails details) throws IOException, StoreException {
     checkStarted();
-    compactor.compact(details);
+    try {
+      compactor.compact(details);
+    } finally {
+      // compaction moves records between log segments
+      blobStoreStats.rebuildValidDataSizeTracker(longLivedTaskScheduler);
+    }
   }
 
   /**
@@ -458,7 +614,11 @@ class BlobStore implements Store {
     checkStarted();
     if (CompactionLog.isCompactionInProgress(dataDir, storeId)) {
       logger.info("Resuming compaction of {}", this);
-      compactor.resumeCompaction();
+      try {
+        compactor.resumeCompaction();
+      } finally {
+        blobStoreStats.rebuildValidDataSizeTracker(longLivedTaskScheduler);
+      }
     }
   }
 
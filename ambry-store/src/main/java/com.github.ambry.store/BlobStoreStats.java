@@ -19,14 +19,17 @@ import com.github.ambry.utils.Pair;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Queue;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentNavigableMap;
@@ -49,10 +52,23 @@ import org.slf4j.LoggerFactory;
  * The {@link IndexScanner} implementation periodically scans the index and create buckets to help serve requests within
  * a forecast boundary. Stats related requests are either served via these buckets or a separate scan that will walk
  * through the entire index if the request is outside of the forecast boundary.
+ *
+ * If a checkpoint file is provided, a {@link ValidDataSizeTracker} is also kept up to date with every new entry and
+ * serves requests for any reference time within its history without scanning the index. The tracker is saved to the
+ * checkpoint file on close and loaded from it on the next start if it is still consistent with the index. Otherwise,
+ * it is rebuilt with a single scan of the index in the background. The tracker keeps times at the granularity of the
+ * bucket span and its history is pruned whenever it is updated or queried.
  */
 class BlobStoreStats implements StoreStats, Closeable {
   static final String IO_SCHEDULER_JOB_TYPE = "BlobStoreStats";
   static final String IO_SCHEDULER_JOB_ID = "indexSegment_read";
+  static final String VALID_DATA_SIZE_CHECKPOINT_FILE_NAME = "valid_data_size_checkpoint";
+  // history kept by the ValidDataSizeTracker in addition to the log segment forecast offset
+  static final long TRACKER_HISTORY_MARGIN_MS = TimeUnit.DAYS.toMillis(1);
+  // delay before the first retry of a failed build of the ValidDataSizeTracker. Doubles with every retry.
+  private static final long TRACKER_BUILD_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+  // number of times a build of the ValidDataSizeTracker is attempted before the tracker is left disabled.
+  private static final int TRACKER_BUILD_MAX_ATTEMPTS = 5;
   // Max blob size that's encountered while generating stats
   // TODO: make this dynamically generated
   private static final long MAX_BLOB_SIZE = 4 * 1024 * 1024;
@@ -76,12 +92,20 @@ class BlobStoreStats implements StoreStats, Closeable {
   private final Queue<Pair<IndexValue, IndexValue>> recentEntryQueue = new LinkedBlockingQueue<>();
   private final AtomicInteger queueEntryCount = new AtomicInteger(0);
   private final AtomicBoolean enabled = new AtomicBoolean(true);
+  private final File trackerCheckpointFile;
+  private final long trackerHistoryMs;
+  private final Object trackerLock = new Object();
 
   private volatile boolean isScanning = false;
   private volatile boolean recentEntryQueueEnabled = false;
   private final AtomicReference<ScanResults> scanResults = new AtomicReference<>();
   private IndexScanner indexScanner;
   private QueueProcessor queueProcessor;
+  // guarded by trackerLock. The tracker is null while it is being built and new entries are added to pendingEntries
+  // instead.
+  private ValidDataSizeTracker tracker;
+  private List<Pair<IndexValue, IndexValue>> pendingEntries;
+  private int trackerGeneration = 0;
 
   /**
    * Convert a given nested {@link Map} of accountId to containerId to valid size to its corresponding
@@ -105,10 +129,27 @@ class BlobStoreStats implements StoreStats, Closeable {
     return new StatsSnapshot(totalSize, accountValidSizeMap);
   }
 
+  /**
+   * @param storeId the id of the store.
+   * @param index the {@link PersistentIndex} of the store.
+   * @param bucketCount the number of buckets for bucketing. 0 disables bucketing.
+   * @param bucketSpanTimeInMs the time span of each bucket in ms. Also the granularity of the times kept by the
+   *                           {@link ValidDataSizeTracker}.
+   * @param logSegmentForecastOffsetMs the offset from the current time of the reference time for log segment stats.
+   * @param queueProcessingPeriodInMs the period at which new entries are processed into the buckets.
+   * @param waitTimeoutInSecs the time to wait for an ongoing scan that will have the answer to a request.
+   * @param time the {@link Time} instance to use.
+   * @param longLiveTaskScheduler the scheduler for index scans.
+   * @param shortLiveTaskScheduler the scheduler for processing new entries into the buckets.
+   * @param diskIOScheduler the {@link DiskIOScheduler} to throttle index reads with.
+   * @param metrics the {@link StoreMetrics} of the store.
+   * @param trackerCheckpointFile the file to save the {@link ValidDataSizeTracker} to and load it from. {@code null}
+   *                              disables the tracker.
+   */
   BlobStoreStats(String storeId, PersistentIndex index, int bucketCount, long bucketSpanTimeInMs,
       long logSegmentForecastOffsetMs, long queueProcessingPeriodInMs, long waitTimeoutInSecs, Time time,
       ScheduledExecutorService longLiveTaskScheduler, ScheduledExecutorService shortLiveTaskScheduler,
-      DiskIOScheduler diskIOScheduler, StoreMetrics metrics) {
+      DiskIOScheduler diskIOScheduler, StoreMetrics metrics, File trackerCheckpointFile) {
     this.storeId = storeId;
     this.index = index;
     this.time = time;
@@ -118,6 +159,8 @@ class BlobStoreStats implements StoreStats, Closeable {
     this.logSegmentForecastOffsetMs = logSegmentForecastOffsetMs;
     this.waitTimeoutInSecs = waitTimeoutInSecs;
     this.metrics = metrics;
+    this.trackerCheckpointFile = trackerCheckpointFile;
+    trackerHistoryMs = logSegmentForecastOffsetMs + TRACKER_HISTORY_MARGIN_MS;
     bucketingEnabled = bucketCount > 0;
 
     if (bucketingEnabled) {
@@ -127,6 +170,12 @@ class BlobStoreStats implements StoreStats, Closeable {
       queueProcessor = new QueueProcessor();
       shortLiveTaskScheduler.scheduleAtFixedRate(queueProcessor, 0, queueProcessingPeriodInMs, TimeUnit.MILLISECONDS);
     }
+    if (trackerCheckpointFile != null) {
+      tracker = loadTracker();
+      if (tracker == null) {
+        rebuildValidDataSizeTracker(longLiveTaskScheduler);
+      }
+    }
   }
 
   @Override
@@ -179,6 +228,17 @@ class BlobStoreStats implements StoreStats, Closeable {
       throw new StoreException(String.format("BlobStoreStats is not enabled or closing for store %s", storeId),
           StoreErrorCodes.Store_Shutting_Down);
     }
+    ValidDataSizeTracker currentTracker = getTracker();
+    if (currentTracker != null) {
+      NavigableMap<String, Long> validSizePerLogSegment =
+          currentTracker.getValidDataSizeByLogSegment(timeRange.getEndTimeInMs());
+      if (validSizePerLogSegment != null) {
+        if (validSizePerLogSegment.isEmpty()) {
+          validSizePerLogSegment.put(index.getStartOffset().getName(), 0L);
+        }
+        return new Pair<>(timeRange.getEndTimeInMs(), validSizePerLogSegment);
+      }
+    }
     ScanResults currentScanResults = scanResults.get();
     Pair<Long, NavigableMap<String, Long>> retValue = null;
     long referenceTimeInMs = getLogSegmentRefTimeMs(currentScanResults, timeRange);
@@ -242,6 +302,14 @@ class BlobStoreStats implements StoreStats, Closeable {
       throw new StoreException(String.format("BlobStoreStats is not enabled or closing for store %s", storeId),
           StoreErrorCodes.Store_Shutting_Down);
     }
+    ValidDataSizeTracker currentTracker = getTracker();
+    if (currentTracker != null) {
+      Map<String, Map<String, Long>> validSizePerContainer =
+          currentTracker.getValidDataSizeByContainer(referenceTimeInMs);
+      if (validSizePerContainer != null) {
+        return validSizePerContainer;
+      }
+    }
     Map<String, Map<String, Long>> retValue = null;
     ScanResults currentScanResults = scanResults.get();
     if (currentScanResults != null && isWithinRange(currentScanResults.containerForecastStartTimeMs,
@@ -294,6 +362,16 @@ class BlobStoreStats implements StoreStats, Closeable {
    * @param putValue the {@link IndexValue} of the new PUT
    */
   void handleNewPutEntry(IndexValue putValue) {
+    if (trackerCheckpointFile != null) {
+      synchronized (trackerLock) {
+        if (pendingEntries != null) {
+          pendingEntries.add(new Pair<IndexValue, IndexValue>(putValue, null));
+        } else if (tracker != null) {
+          tracker.pruneHistory(time.milliseconds() - trackerHistoryMs);
+          tracker.addPut(putValue);
+        }
+      }
+    }
     if (recentEntryQueueEnabled) {
       recentEntryQueue.offer(new Pair<IndexValue, IndexValue>(putValue, null));
       metrics.statsRecentEntryQueueSize.update(queueEntryCount.incrementAndGet());
@@ -306,6 +384,16 @@ class BlobStoreStats implements StoreStats, Closeable {
    * @param originalPutValue the {@link IndexValue} of the original PUT that is getting deleted
    */
   void handleNewDeleteEntry(IndexValue deleteValue, IndexValue originalPutValue) {
+    if (trackerCheckpointFile != null) {
+      synchronized (trackerLock) {
+        if (pendingEntries != null) {
+          pendingEntries.add(new Pair<>(deleteValue, originalPutValue));
+        } else if (tracker != null) {
+          tracker.pruneHistory(time.milliseconds() - trackerHistoryMs);
+          addDeleteToTracker(tracker, deleteValue, originalPutValue);
+        }
+      }
+    }
     if (recentEntryQueueEnabled) {
       recentEntryQueue.offer(new Pair<>(deleteValue, originalPutValue));
       metrics.statsRecentEntryQueueSize.update(queueEntryCount.incrementAndGet());
@@ -313,7 +401,45 @@ class BlobStoreStats implements StoreStats, Closeable {
   }
 
   /**
-   * Disable this {@link BlobStoreStats} and cancel any ongoing and scheduled index scan.
+   * Rebuilds the {@link ValidDataSizeTracker} from the index in the background. Has to be called when the log segments
+   * of the index change (i.e. after compaction). Requests are served by scanning or from the buckets until the rebuild
+   * is complete.
+   * @param scheduler the {@link ScheduledExecutorService} to rebuild the tracker on.
+   */
+  void rebuildValidDataSizeTracker(ScheduledExecutorService scheduler) {
+    if (trackerCheckpointFile == null) {
+      return;
+    }
+    int generation;
+    synchronized (trackerLock) {
+      tracker = null;
+      pendingEntries = new ArrayList<>();
+      generation = ++trackerGeneration;
+    }
+    scheduler.schedule(new TrackerBuilder(generation, scheduler, 0), 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return {@code true} if the {@link ValidDataSizeTracker} is enabled and is serving requests.
+   */
+  boolean isValidDataSizeTrackerReady() {
+    return getTracker() != null;
+  }
+
+  /**
+   * @return {@code true} if the {@link ValidDataSizeTracker} is being built and new entries are being retained to be
+   * applied to it once the build completes.
+   */
+  boolean isValidDataSizeTrackerBuilding() {
+    synchronized (trackerLock) {
+      return pendingEntries != null;
+    }
+  }
+
+  /**
+   * Disable this {@link BlobStoreStats} and cancel any ongoing and scheduled index scan. Saves the
+   * {@link ValidDataSizeTracker}, if there is one, to the checkpoint file. Has to be called when no new entries are
+   * being added to the index.
    * @throws InterruptedException
    */
   @Override
@@ -325,6 +451,87 @@ class BlobStoreStats implements StoreStats, Closeable {
       if (queueProcessor != null) {
         queueProcessor.cancel();
       }
+      if (trackerCheckpointFile != null) {
+        synchronized (trackerLock) {
+          if (tracker != null) {
+            try {
+              tracker.save(trackerCheckpointFile, index.getCurrentEndOffset());
+            } catch (IOException e) {
+              logger.error("Could not save valid data size checkpoint for store {}", storeId, e);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the current {@link ValidDataSizeTracker} after moving its history start time forward, or {@code null} if
+   * there is none.
+   */
+  private ValidDataSizeTracker getTracker() {
+    if (trackerCheckpointFile == null) {
+      return null;
+    }
+    ValidDataSizeTracker currentTracker;
+    synchronized (trackerLock) {
+      currentTracker = tracker;
+    }
+    if (currentTracker != null) {
+      currentTracker.pruneHistory(time.milliseconds() - trackerHistoryMs);
+    }
+    return currentTracker;
+  }
+
+  /**
+   * Loads the {@link ValidDataSizeTracker} from the checkpoint file, if there is one, and deletes the file so that it
+   * is never loaded again once new entries are added to the index.
+   * @return the loaded {@link ValidDataSizeTracker}, or {@code null} if there was no checkpoint file or if it is not
+   * consistent with the index.
+   */
+  private ValidDataSizeTracker loadTracker() {
+    if (!trackerCheckpointFile.exists()) {
+      return null;
+    }
+    ValidDataSizeTracker loadedTracker = null;
+    try {
+      Pair<Offset, ValidDataSizeTracker> checkpoint = ValidDataSizeTracker.load(trackerCheckpointFile);
+      Set<String> logSegmentNames = new HashSet<>();
+      for (IndexSegment indexSegment : index.getIndexSegments().values()) {
+        logSegmentNames.add(indexSegment.getLogSegmentName());
+      }
+      if (checkpoint.getFirst().equals(index.getCurrentEndOffset())
+          && checkpoint.getSecond().getBucketSpanMs() == bucketSpanTimeInMs && logSegmentNames.containsAll(
+          checkpoint.getSecond().getLogSegmentNames())) {
+        loadedTracker = checkpoint.getSecond();
+      } else {
+        logger.info("Valid data size checkpoint of store {} is not consistent with the index", storeId);
+      }
+    } catch (IOException e) {
+      logger.error("Could not load valid data size checkpoint for store {}", storeId, e);
+    }
+    if (!trackerCheckpointFile.delete()) {
+      logger.error("Could not delete valid data size checkpoint for store {}", storeId);
+      loadedTracker = null;
+    }
+    return loadedTracker;
+  }
+
+  /**
+   * Adds a new delete to the given {@link ValidDataSizeTracker}.
+   * @param tracker the {@link ValidDataSizeTracker} to update.
+   * @param deleteValue the {@link IndexValue} of the new DELETE
+   * @param originalPutValue the {@link IndexValue} of the original PUT that is getting deleted
+   */
+  private void addDeleteToTracker(ValidDataSizeTracker tracker, IndexValue deleteValue, IndexValue originalPutValue) {
+    long operationTimeInMs = deleteValue.getOperationTimeInMs();
+    if (operationTimeInMs == Utils.Infinite_Time) {
+      operationTimeInMs =
+          index.getIndexSegments().floorEntry(deleteValue.getOffset()).getValue().getLastModifiedTimeMs();
+    }
+    tracker.addDeleteRecord(deleteValue);
+    if (originalPutValue != null) {
+      tracker.markDeleted(originalPutValue, operationTimeInMs);
     }
   }
 
@@ -740,6 +947,158 @@ class BlobStoreStats implements StoreStats, Closeable {
     }
   }
 
+  /**
+   * Runner that builds a new {@link ValidDataSizeTracker} with a single backward scan of the index up to a checkpoint
+   * and then applies the entries that were added to the index after the checkpoint. If the build fails, the entries
+   * retained for it are dropped and the build is retried with exponential backoff up to
+   * {@link #TRACKER_BUILD_MAX_ATTEMPTS} times.
+   */
+  private class TrackerBuilder implements Runnable {
+    private final int generation;
+    private final ScheduledExecutorService scheduler;
+    private final int attempt;
+
+    /**
+     * @param generation the generation of the tracker to build. The tracker is not published if another build has
+     *                   been started since.
+     * @param scheduler the {@link ScheduledExecutorService} to schedule a retry on if the build fails.
+     * @param attempt the number of attempts to build the tracker that have failed before this one.
+     */
+    TrackerBuilder(int generation, ScheduledExecutorService scheduler, int attempt) {
+      this.generation = generation;
+      this.scheduler = scheduler;
+      this.attempt = attempt;
+    }
+
+    @Override
+    public void run() {
+      long startTimeMs = time.milliseconds();
+      if (attempt > 0) {
+        // the entries retained for the failed attempt were dropped. Retain new entries again before the checkpoint is
+        // taken so that none after it are missed.
+        synchronized (trackerLock) {
+          if (!isCurrent()) {
+            return;
+          }
+          pendingEntries = new ArrayList<>();
+        }
+      }
+      try {
+        Offset checkpoint = index.getCurrentEndOffset();
+        ValidDataSizeTracker newTracker =
+            new ValidDataSizeTracker(time.milliseconds() - trackerHistoryMs, bucketSpanTimeInMs);
+        Map<StoreKey, Long> deletedKeys = new HashMap<>();
+        for (IndexSegment indexSegment : index.getIndexSegments().descendingMap().values()) {
+          if (!enabled.get() || !isCurrent()) {
+            return;
+          }
+          if (indexSegment.getStartOffset().compareTo(checkpoint) < 0) {
+            processIndexSegmentEntries(newTracker, indexSegment, checkpoint, deletedKeys);
+          }
+        }
+        synchronized (trackerLock) {
+          if (!isCurrent()) {
+            return;
+          }
+          for (Pair<IndexValue, IndexValue> entry : pendingEntries) {
+            IndexValue newValue = entry.getFirst();
+            if (newValue.getOffset().compareTo(checkpoint) >= 0) {
+              if (newValue.isFlagSet(IndexValue.Flags.Delete_Index)) {
+                addDeleteToTracker(newTracker, newValue, entry.getSecond());
+              } else {
+                newTracker.addPut(newValue);
+              }
+            }
+          }
+          pendingEntries = null;
+          tracker = newTracker;
+        }
+        logger.info("Valid data size tracker built for store {} in {} ms", storeId, time.milliseconds() - startTimeMs);
+      } catch (Exception e) {
+        logger.error("Exception thrown while building valid data size tracker in store {}", storeId, e);
+        metrics.blobStoreStatsIndexScannerErrorCount.inc();
+        onBuildFailure();
+      }
+    }
+
+    /**
+     * Drops the entries retained for this build and schedules a retry if attempts remain. The tracker stays disabled
+     * otherwise until it is rebuilt through {@link #rebuildValidDataSizeTracker(ScheduledExecutorService)}.
+     */
+    private void onBuildFailure() {
+      synchronized (trackerLock) {
+        if (!isCurrent()) {
+          return;
+        }
+        pendingEntries = null;
+      }
+      if (enabled.get() && attempt + 1 < TRACKER_BUILD_MAX_ATTEMPTS) {
+        long delayMs = TRACKER_BUILD_RETRY_DELAY_MS << attempt;
+        logger.info("Retrying the build of the valid data size tracker in store {} in {} ms", storeId, delayMs);
+        scheduler.schedule(new TrackerBuilder(generation, scheduler, attempt + 1), delayMs, TimeUnit.MILLISECONDS);
+      } else {
+        logger.error("Valid data size tracker in store {} is disabled after {} failed builds", storeId, attempt + 1);
+      }
+    }
+
+    /**
+     * @return {@code true} if no other build has been started since this one.
+     */
+    private boolean isCurrent() {
+      synchronized (trackerLock) {
+        return generation == trackerGeneration;
+      }
+    }
+
+    /**
+     * Adds the entries of an {@link IndexSegment} that are before the checkpoint to the tracker. Has to be called in
+     * reverse chronological order of index segments.
+     * @param newTracker the {@link ValidDataSizeTracker} being built.
+     * @param indexSegment the {@link IndexSegment} whose entries need to be added.
+     * @param checkpoint the {@link Offset} before which entries are added.
+     * @param deletedKeys a {@link Map} of processed deleted keys to their corresponding deletion time in ms
+     * @throws StoreException
+     */
+    private void processIndexSegmentEntries(ValidDataSizeTracker newTracker, IndexSegment indexSegment,
+        Offset checkpoint, Map<StoreKey, Long> deletedKeys) throws StoreException {
+      for (IndexEntry indexEntry : getIndexEntries(indexSegment)) {
+        IndexValue indexValue = indexEntry.getValue();
+        boolean isDelete = indexValue.isFlagSet(IndexValue.Flags.Delete_Index);
+        // a delete in the same index segment as its put replaces the put in the index segment
+        boolean hasPutInSameSegment =
+            isDelete && indexValue.getOriginalMessageOffset() != IndexValue.UNKNOWN_ORIGINAL_MESSAGE_OFFSET
+                && indexValue.getOriginalMessageOffset() != indexValue.getOffset().getOffset()
+                && indexValue.getOriginalMessageOffset() >= indexSegment.getStartOffset().getOffset();
+        if (indexValue.getOffset().compareTo(checkpoint) >= 0) {
+          if (hasPutInSameSegment) {
+            // the put is before the checkpoint and the delete will be applied from the pending entries
+            IndexValue originalPutValue = getPutRecordForDeletedKey(indexEntry.getKey(), indexValue);
+            if (originalPutValue.getOffset().compareTo(checkpoint) < 0) {
+              newTracker.addPut(originalPutValue);
+            }
+          }
+        } else if (isDelete) {
+          long operationTimeInMs =
+              indexValue.getOperationTimeInMs() == Utils.Infinite_Time ? indexSegment.getLastModifiedTimeMs()
+                  : indexValue.getOperationTimeInMs();
+          deletedKeys.put(indexEntry.getKey(), operationTimeInMs);
+          newTracker.addDeleteRecord(indexValue);
+          if (hasPutInSameSegment) {
+            IndexValue originalPutValue = getPutRecordForDeletedKey(indexEntry.getKey(), indexValue);
+            newTracker.addPut(originalPutValue);
+            newTracker.markDeleted(originalPutValue, operationTimeInMs);
+          }
+        } else {
+          newTracker.addPut(indexValue);
+          Long deleteTimeInMs = deletedKeys.get(indexEntry.getKey());
+          if (deleteTimeInMs != null) {
+            newTracker.markDeleted(indexValue, deleteTimeInMs);
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Runner that scans the entire index and populate a new {@link ScanResults} to start/extend the forecast coverage so
    * new requests can be answered using the created {@link ScanResults} instead of another scan of the index.
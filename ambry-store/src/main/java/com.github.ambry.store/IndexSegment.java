@@ -33,6 +33,8 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentNavigableMap;
@@ -100,6 +102,8 @@ class IndexSegment {
   // reset key refers to the first StoreKey that is added to the index segment
   private Pair<StoreKey, PersistentIndex.IndexEntryType> resetKey = null;
   protected ConcurrentSkipListMap<StoreKey, IndexValue> index = null;
+  // used instead of index if StoreConfig#storeIndexOffHeapActiveSegmentEnabled is set. Created on the first put.
+  private volatile OffHeapIndexEntries offHeapIndex = null;
 
   /**
    * Creates a new segment
@@ -119,7 +123,7 @@ class IndexSegment {
     this.config = config;
     this.startOffset = startOffset;
     this.endOffset = new AtomicReference<>(startOffset);
-    index = new ConcurrentSkipListMap<>();
+    index = config.storeIndexOffHeapActiveSegmentEnabled ? null : new ConcurrentSkipListMap<>();
     mapped = new AtomicBoolean(false);
     sizeWritten = new AtomicLong(0);
     this.factory = factory;
@@ -183,7 +187,7 @@ class IndexSegment {
         }
         stream.close();
       } else {
-        index = new ConcurrentSkipListMap<StoreKey, IndexValue>();
+        index = config.storeIndexOffHeapActiveSegmentEnabled ? null : new ConcurrentSkipListMap<StoreKey, IndexValue>();
         bloomFilter = FilterFactory.getFilter(config.storeIndexMaxNumberOfInmemElements,
             config.storeIndexBloomMaxFalsePositiveProbability);
         bloomFile = new File(indexFile.getParent(), indexSegmentFilenamePrefix + BLOOM_FILE_NAME_SUFFIX);
@@ -313,49 +317,75 @@ class IndexSegment {
    * @throws StoreException
    */
   IndexValue find(StoreKey keyToFind) throws StoreException {
+    return find(keyToFind, true);
+  }
+
+  /**
+   * Checks the bloom filter of this segment for a key without searching the segment. Segments that are not mapped or
+   * that do not have a bloom filter always return {@code true}.
+   * @param keyHash the hash of the key as returned by {@link FilterFactory#getKeyHash(ByteBuffer)}.
+   * @return {@code false} if the key is definitely not in this segment, {@code true} if it may be.
+   */
+  boolean mayContain(long[] keyHash) {
+    try {
+      rwLock.readLock().lock();
+      if (!mapped.get() || bloomFilter == null) {
+        return true;
+      }
+      metrics.bloomAccessedCount.inc();
+      boolean present = bloomFilter.isPresent(keyHash);
+      if (present) {
+        metrics.bloomPositiveCount.inc();
+      }
+      return present;
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds an entry given a key. It finds from the in memory map or does a binary search on the mapped persistent
+   * segment.
+   * @param keyToFind The key to find
+   * @param checkBloomFilter {@code true} if the bloom filter has to be checked before searching a mapped segment.
+   *                         {@code false} if the caller has already done so through {@link #mayContain(long[])}.
+   * @return The blob index value that represents the key or null if not found
+   * @throws StoreException
+   */
+  IndexValue find(StoreKey keyToFind, boolean checkBloomFilter) throws StoreException {
     IndexValue toReturn = null;
     try {
       rwLock.readLock().lock();
       if (!mapped.get()) {
-        IndexValue value = index.get(keyToFind);
+        IndexValue value = getFromMemory(keyToFind);
         if (value != null) {
           metrics.blobFoundInActiveSegmentCount.inc();
         }
         toReturn = value;
       } else {
-        if (bloomFilter != null) {
+        if (bloomFilter != null && checkBloomFilter) {
           metrics.bloomAccessedCount.inc();
         }
-        if (bloomFilter == null || bloomFilter.isPresent(ByteBuffer.wrap(keyToFind.toBytes()))) {
+        if (bloomFilter == null || !checkBloomFilter || bloomFilter.isPresent(
+            ByteBuffer.wrap(keyToFind.toBytes()))) {
           if (bloomFilter == null) {
             logger.trace("IndexSegment {} bloom filter empty. Searching file with start offset {} and for key {}",
                 indexFile.getAbsolutePath(), startOffset, keyToFind);
           } else {
-            metrics.bloomPositiveCount.inc();
+            if (checkBloomFilter) {
+              metrics.bloomPositiveCount.inc();
+            }
             logger.trace("IndexSegment {} found in bloom filter for index with start offset {} and for key {} ",
                 indexFile.getAbsolutePath(), startOffset, keyToFind);
           }
-          // binary search on the mapped file
           ByteBuffer duplicate = mmap.duplicate();
-          int low = 0;
-          int high = numberOfEntries(duplicate) - 1;
-          logger.trace("binary search low : {} high : {}", low, high);
-          while (low <= high) {
-            int mid = (int) (Math.ceil(high / 2.0 + low / 2.0));
-            StoreKey found = getKeyAt(duplicate, mid);
-            logger.trace("Index Segment {} binary search - key found on iteration {}", indexFile.getAbsolutePath(),
-                found);
-            int result = found.compareTo(keyToFind);
-            if (result == 0) {
-              byte[] buf = new byte[valueSize];
-              duplicate.get(buf);
-              toReturn = new IndexValue(startOffset.getName(), ByteBuffer.wrap(buf), getVersion());
-              break;
-            } else if (result < 0) {
-              low = mid + 1;
-            } else {
-              high = mid - 1;
-            }
+          int index = findIndex(keyToFind, duplicate);
+          if (index != -1) {
+            // the key found is equal to keyToFind and so has the same size
+            duplicate.position(getKeyPosition(index) + keyToFind.sizeInBytes());
+            byte[] buf = new byte[valueSize];
+            duplicate.get(buf);
+            toReturn = new IndexValue(startOffset.getName(), ByteBuffer.wrap(buf), getVersion());
           }
           if (bloomFilter != null && toReturn == null) {
             metrics.bloomFalsePositiveCount.inc();
@@ -375,11 +405,34 @@ class IndexSegment {
     return (mmap.capacity() - indexSizeExcludingEntries) / persistedEntrySize;
   }
 
+  private int getKeyPosition(int index) {
+    return firstKeyRelativeOffset + index * persistedEntrySize;
+  }
+
   private StoreKey getKeyAt(ByteBuffer mmap, int index) throws IOException {
-    mmap.position(firstKeyRelativeOffset + index * persistedEntrySize);
+    mmap.position(getKeyPosition(index));
     return factory.getStoreKey(new DataInputStream(new ByteBufferInputStream(mmap)));
   }
 
+  /**
+   * Compares the key at {@code index} in {@code mmap} with {@code key}. If {@code key} supports comparisons against
+   * serialized keys, the comparison is done in place and nothing is deserialized.
+   * @param mmap the mapped buffer of this segment.
+   * @param index the index of the entry whose key needs to be compared.
+   * @param key the {@link StoreKey} to compare against.
+   * @return a negative integer, zero, or a positive integer as the key at {@code index} is less than, equal to, or
+   *         greater than {@code key}.
+   * @throws IOException if the key at {@code index} could not be deserialized.
+   */
+  private int compareKeyAt(ByteBuffer mmap, int index, StoreKey key) throws IOException {
+    if (key.isSerializedComparisonSupported()) {
+      return -Integer.signum(key.compareToSerialized(mmap, getKeyPosition(index)));
+    }
+    StoreKey found = getKeyAt(mmap, index);
+    logger.trace("IndexSegment {} binary search - key found on iteration {}", indexFile.getAbsolutePath(), found);
+    return found.compareTo(key);
+  }
+
   private int findIndex(StoreKey keyToFind, ByteBuffer mmap) throws IOException {
     // binary search on the mapped file
     int low = 0;
@@ -387,9 +440,7 @@ class IndexSegment {
     logger.trace("IndexSegment {} binary search low : {} high : {}", indexFile.getAbsolutePath(), low, high);
     while (low <= high) {
       int mid = (int) (Math.ceil(high / 2.0 + low / 2.0));
-      StoreKey found = getKeyAt(mmap, mid);
-      logger.trace("IndexSegment {} binary search - key found on iteration {}", indexFile.getAbsolutePath(), found);
-      int result = found.compareTo(keyToFind);
+      int result = compareKeyAt(mmap, mid, keyToFind);
       if (result == 0) {
         return mid;
       } else if (result < 0) {
@@ -418,7 +469,20 @@ class IndexSegment {
               + "originalMessageOffset {} fileEndOffset {}", indexFile.getAbsolutePath(), entry.getKey(),
           entry.getValue().getOffset(), entry.getValue().getSize(), entry.getValue().getExpiresAtMs(),
           entry.getValue().getOriginalMessageOffset(), fileEndOffset);
-      if (index.put(entry.getKey(), entry.getValue()) == null) {
+      if (valueSize == VALUE_SIZE_INVALID_VALUE) {
+        valueSize = entry.getValue().getBytes().capacity();
+        logger.info("IndexSegment : {} setting value size to {} for index with start offset {}",
+            indexFile.getAbsolutePath(), valueSize, startOffset);
+      }
+      if (persistedEntrySize == ENTRY_SIZE_INVALID_VALUE) {
+        StoreKey key = entry.getKey();
+        persistedEntrySize =
+            getVersion() == PersistentIndex.VERSION_2 ? Math.max(config.storeIndexPersistedEntryMinBytes,
+                key.sizeInBytes() + valueSize) : key.sizeInBytes() + valueSize;
+        logger.info("IndexSegment : {} setting persisted entry size to {} of key {} for index with start offset {}",
+            indexFile.getAbsolutePath(), persistedEntrySize, key.getLongForm(), startOffset);
+      }
+      if (putInMemory(entry.getKey(), entry.getValue())) {
         numberOfItems.incrementAndGet();
         sizeWritten.addAndGet(entry.getKey().sizeInBytes() + entry.getValue().getBytes().capacity());
         bloomFilter.add(ByteBuffer.wrap(entry.getKey().toBytes()));
@@ -435,19 +499,6 @@ class IndexSegment {
       } else if ((operationTimeInMs / Time.MsPerSec) > lastModifiedTimeSec.get()) {
         lastModifiedTimeSec.set(operationTimeInMs / Time.MsPerSec);
       }
-      if (valueSize == VALUE_SIZE_INVALID_VALUE) {
-        valueSize = entry.getValue().getBytes().capacity();
-        logger.info("IndexSegment : {} setting value size to {} for index with start offset {}",
-            indexFile.getAbsolutePath(), valueSize, startOffset);
-      }
-      if (persistedEntrySize == ENTRY_SIZE_INVALID_VALUE) {
-        StoreKey key = entry.getKey();
-        persistedEntrySize =
-            getVersion() == PersistentIndex.VERSION_2 ? Math.max(config.storeIndexPersistedEntryMinBytes,
-                key.sizeInBytes() + valueSize) : key.sizeInBytes() + valueSize;
-        logger.info("IndexSegment : {} setting persisted entry size to {} of key {} for index with start offset {}",
-            indexFile.getAbsolutePath(), persistedEntrySize, key.getLongForm(), startOffset);
-      }
     } finally {
       rwLock.readLock().unlock();
     }
@@ -603,17 +654,30 @@ class IndexSegment {
         if (getVersion() == PersistentIndex.VERSION_2) {
           maxPaddingBytes = new byte[persistedEntrySize - valueSize];
         }
-        for (Map.Entry<StoreKey, IndexValue> entry : index.entrySet()) {
-          if (entry.getValue().getOffset().getOffset() + entry.getValue().getSize() <= safeEndPoint.getOffset()) {
-            writer.write(entry.getKey().toBytes());
-            writer.write(entry.getValue().getBytes().array());
-            if (getVersion() == PersistentIndex.VERSION_2) {
-              // Add padding if necessary
-              writer.write(maxPaddingBytes, 0, persistedEntrySize - (entry.getKey().sizeInBytes() + valueSize));
+        if (config.storeIndexOffHeapActiveSegmentEnabled) {
+          OffHeapIndexEntries offHeapEntries = offHeapIndex;
+          if (offHeapEntries != null) {
+            // the slots have the persisted layout and are written out as is
+            byte[] entryBuffer = new byte[getPersistedEntrySize()];
+            for (int slotId : offHeapEntries.getSortedSlotIds()) {
+              if (offHeapEntries.getEndOffset(slotId) <= safeEndPoint.getOffset()) {
+                offHeapEntries.writeEntry(slotId, writer, entryBuffer, getVersion() == PersistentIndex.VERSION_2);
+              }
+            }
+          }
+        } else {
+          for (Map.Entry<StoreKey, IndexValue> entry : index.entrySet()) {
+            if (entry.getValue().getOffset().getOffset() + entry.getValue().getSize() <= safeEndPoint.getOffset()) {
+              writer.write(entry.getKey().toBytes());
+              writer.write(entry.getValue().getBytes().array());
+              if (getVersion() == PersistentIndex.VERSION_2) {
+                // Add padding if necessary
+                writer.write(maxPaddingBytes, 0, persistedEntrySize - (entry.getKey().sizeInBytes() + valueSize));
+              }
+              logger.trace("IndexSegment : {} writing key - {} value - offset {} size {} fileEndOffset {}",
+                  getFile().getAbsolutePath(), entry.getKey(), entry.getValue().getOffset(),
+                  entry.getValue().getSize(), safeEndPoint);
             }
-            logger.trace("IndexSegment : {} writing key - {} value - offset {} size {} fileEndOffset {}",
-                getFile().getAbsolutePath(), entry.getKey(), entry.getValue().getOffset(), entry.getValue().getSize(),
-                safeEndPoint);
           }
         }
         prevSafeEndPoint = safeEndPoint;
@@ -696,6 +760,7 @@ class IndexSegment {
       }
       mapped.set(true);
       index = null;
+      offHeapIndex = null;
     } finally {
       raf.close();
       rwLock.writeLock().unlock();
@@ -720,7 +785,7 @@ class IndexSegment {
    */
   private void readFromFile(File fileToRead, Journal journal) throws StoreException, IOException {
     logger.info("IndexSegment : {} reading index from file", indexFile.getAbsolutePath());
-    index.clear();
+    clearInMemory();
     CrcInputStream crcStream = new CrcInputStream(new FileInputStream(fileToRead));
     DataInputStream stream = new DataInputStream(crcStream);
     try {
@@ -758,6 +823,8 @@ class IndexSegment {
       firstKeyRelativeOffset = indexSizeExcludingEntries - CRC_FIELD_LENGTH;
       logger.trace("IndexSegment : {} reading log end offset {} from file", indexFile.getAbsolutePath(), logEndOffset);
       long maxEndOffset = Long.MIN_VALUE;
+      // the entries are read in the order of their keys but have to be added to the journal in the order of offsets
+      List<JournalEntry> journalEntries = new ArrayList<>();
       byte[] padding = new byte[persistedEntrySize - valueSize];
       while (stream.available() > CRC_FIELD_LENGTH) {
         StoreKey key = factory.getStoreKey(stream);
@@ -770,7 +837,7 @@ class IndexSegment {
         long offsetInLogSegment = blobValue.getOffset().getOffset();
         // ignore entries that have offsets outside the log end offset that this index represents
         if (offsetInLogSegment + blobValue.getSize() <= logEndOffset) {
-          index.put(key, blobValue);
+          putInMemory(key, blobValue);
           logger.trace("IndexSegment : {} putting key {} in index offset {} size {}", indexFile.getAbsolutePath(), key,
               blobValue.getOffset(), blobValue.getSize());
           // regenerate the bloom filter for in memory indexes
@@ -780,9 +847,10 @@ class IndexSegment {
               && offsetInLogSegment != blobValue.getOriginalMessageOffset()
               && blobValue.getOriginalMessageOffset() >= startOffset.getOffset()) {
             // we add an entry for the original message offset if it is within the same index segment
-            journal.addEntry(new Offset(startOffset.getName(), blobValue.getOriginalMessageOffset()), key);
+            journalEntries.add(
+                new JournalEntry(new Offset(startOffset.getName(), blobValue.getOriginalMessageOffset()), key));
           }
-          journal.addEntry(blobValue.getOffset(), key);
+          journalEntries.add(new JournalEntry(blobValue.getOffset(), key));
           // sizeWritten is only used for in-memory segments, and for those the padding does not come into picture.
           sizeWritten.addAndGet(key.sizeInBytes() + valueSize);
           numberOfItems.incrementAndGet();
@@ -805,11 +873,15 @@ class IndexSegment {
         persistedEntrySize = ENTRY_SIZE_INVALID_VALUE;
         valueSize = VALUE_SIZE_INVALID_VALUE;
         endOffset.set(startOffset);
-        index.clear();
+        clearInMemory();
         bloomFilter.clear();
         throw new StoreException("IndexSegment : " + indexFile.getAbsolutePath() + " crc check does not match",
             StoreErrorCodes.Index_Creation_Failure);
       }
+      Collections.sort(journalEntries, Comparator.comparing(JournalEntry::getOffset));
+      for (JournalEntry journalEntry : journalEntries) {
+        journal.addEntry(journalEntry.getOffset(), journalEntry.getKey());
+      }
     } catch (IOException e) {
       throw new StoreException("IndexSegment : " + indexFile.getAbsolutePath() + " IO error while reading from file ",
           e, StoreErrorCodes.IOError);
@@ -885,6 +957,8 @@ class IndexSegment {
       } else {
         logger.error("IndexSegment : " + indexFile.getAbsolutePath() + " index not found for key " + key);
       }
+    } else if (config.storeIndexOffHeapActiveSegmentEnabled) {
+      getOffHeapIndexEntriesSince(key, findEntriesCondition, entries, currentTotalSizeOfEntriesInBytes);
     } else if (key == null || index.containsKey(key)) {
       ConcurrentNavigableMap<StoreKey, IndexValue> tempMap = index;
       if (key != null) {
@@ -906,6 +980,80 @@ class IndexSegment {
     return entries.size() > entriesSizeAtStart;
   }
 
+  /**
+   * Gets the entries of the in memory segment from {@link #offHeapIndex}. The semantics are those of
+   * {@link #getIndexEntriesSince(StoreKey, FindEntriesCondition, List, AtomicLong)}.
+   * @param key The key from where to start retrieving entries. If the key is null, all entries are retrieved.
+   * @param findEntriesCondition The condition that determines when to stop fetching entries.
+   * @param entries The input entries list that needs to be filled. The entries list can have existing entries
+   * @param currentTotalSizeOfEntriesInBytes The current total size in bytes of the entries
+   * @throws IOException
+   */
+  private void getOffHeapIndexEntriesSince(StoreKey key, FindEntriesCondition findEntriesCondition,
+      List<IndexEntry> entries, AtomicLong currentTotalSizeOfEntriesInBytes) throws IOException {
+    OffHeapIndexEntries offHeapEntries = offHeapIndex;
+    if (offHeapEntries == null || (key != null && !offHeapEntries.containsKey(key))) {
+      if (key != null) {
+        logger.error("IndexSegment : " + indexFile.getAbsolutePath() + " key not found: " + key);
+      }
+      return;
+    }
+    int[] sortedSlotIds = offHeapEntries.getSortedSlotIds();
+    // the entry of the key itself is excluded
+    int position = key == null ? 0 : offHeapEntries.getSortedPosition(sortedSlotIds, key) + 1;
+    for (; position < sortedSlotIds.length; position++) {
+      int slotId = sortedSlotIds[position];
+      IndexValue newValue = new IndexValue(startOffset.getName(), offHeapEntries.getValue(slotId), getVersion());
+      entries.add(new IndexEntry(offHeapEntries.getKey(slotId), newValue));
+      currentTotalSizeOfEntriesInBytes.addAndGet(newValue.getSize());
+      if (!findEntriesCondition.proceed(currentTotalSizeOfEntriesInBytes.get(), getLastModifiedTimeSecs())) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Gets the value of {@code key} from the in memory representation of the segment.
+   * @param key the {@link StoreKey} to look for.
+   * @return the {@link IndexValue} of {@code key} or {@code null} if it is not present.
+   */
+  private IndexValue getFromMemory(StoreKey key) {
+    if (config.storeIndexOffHeapActiveSegmentEnabled) {
+      OffHeapIndexEntries offHeapEntries = offHeapIndex;
+      ByteBuffer value = offHeapEntries == null ? null : offHeapEntries.getValue(key);
+      return value == null ? null : new IndexValue(startOffset.getName(), value, getVersion());
+    }
+    return index.get(key);
+  }
+
+  /**
+   * Puts an entry into the in memory representation of the segment, replacing the existing entry of {@code key}.
+   * @param key the {@link StoreKey} of the entry.
+   * @param value the {@link IndexValue} of the entry.
+   * @return {@code true} if there was no entry for {@code key} before. {@code false} otherwise.
+   */
+  private boolean putInMemory(StoreKey key, IndexValue value) {
+    if (config.storeIndexOffHeapActiveSegmentEnabled) {
+      if (offHeapIndex == null) {
+        offHeapIndex = new OffHeapIndexEntries(factory, persistedEntrySize, valueSize);
+      }
+      return offHeapIndex.put(key, value);
+    }
+    return index.put(key, value) == null;
+  }
+
+  /**
+   * Removes all the entries from the in memory representation of the segment.
+   */
+  private void clearInMemory() {
+    if (config.storeIndexOffHeapActiveSegmentEnabled) {
+      // the entry size might change before the next put and so a new instance is created on the next put.
+      offHeapIndex = null;
+    } else {
+      index.clear();
+    }
+  }
+
   /**
    * @return the prefix for the index segment file name (also used for bloom filter file name).
    */
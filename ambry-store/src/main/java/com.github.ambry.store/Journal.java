@@ -15,11 +15,8 @@ package com.github.ambry.store;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,16 +41,30 @@ class JournalEntry {
 
 /**
  * An in memory journal used to track the most recent blobs for a store.
+ * <p/>
+ * The entries are held in a ring buffer in the order in which they are added, which has to be the order of their
+ * offsets. Entries are identified by a sequence number that increases with every entry added and the entries in the
+ * journal are the ones with sequence numbers in [{@link #startSeq}, {@link #endSeq}). Entries are added by a single
+ * writer at a time and readers do not lock. Before the slot of the oldest entry is reused, {@link #startSeq} is moved
+ * past it, so a reader that finds {@link #startSeq} unchanged after reading a slot knows that the slot was valid.
+ * <p/>
+ * The ring buffer starts small and grows up to the max number of entries to journal. It only grows before any entry
+ * has been removed, so an entry stays in the same slot across growth.
  */
 class Journal {
 
-  private final ConcurrentSkipListMap<Offset, StoreKey> journal;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private volatile Ring ring;
   private final ConcurrentHashMap<StoreKey, Long> recentCrcs;
   private final int maxEntriesToJournal;
   private final int maxEntriesToReturn;
-  private final AtomicInteger currentNumberOfEntries;
   private final String dataDir;
   private final Logger logger = LoggerFactory.getLogger(getClass());
+  // the sequence number of the oldest entry in the journal.
+  private volatile long startSeq = 0;
+  // the sequence number that the next entry added will have.
+  private volatile long endSeq = 0;
 
   /**
    * The journal that holds the most recent entries in a store sorted by offset of the blob on disk
@@ -62,38 +73,47 @@ class Journal {
    * @param maxEntriesToReturn The max number of entries to return from the journal when queried for entries.
    */
   Journal(String dataDir, int maxEntriesToJournal, int maxEntriesToReturn) {
-    journal = new ConcurrentSkipListMap<>();
+    ring = new Ring(Math.min(Math.max(maxEntriesToJournal, 0), INITIAL_CAPACITY));
     recentCrcs = new ConcurrentHashMap<>();
     this.maxEntriesToJournal = maxEntriesToJournal;
     this.maxEntriesToReturn = maxEntriesToReturn;
-    this.currentNumberOfEntries = new AtomicInteger(0);
     this.dataDir = dataDir;
   }
 
   /**
    * Adds an entry into the journal with the given {@link Offset}, {@link StoreKey}, and crc.
-   * @param offset The {@link Offset} that the key pertains to.
+   * @param offset The {@link Offset} that the key pertains to. Has to be greater than the offsets of all the entries
+   *               added before.
    * @param key The key that the entry in the journal refers to.
    * @param crc The crc of the object. This may be null if crc is not available.
    */
-  void addEntry(Offset offset, StoreKey key, Long crc) {
+  synchronized void addEntry(Offset offset, StoreKey key, Long crc) {
     if (key == null || offset == null) {
       throw new IllegalArgumentException("Invalid arguments passed to add to the journal");
     }
     if (maxEntriesToJournal > 0) {
-      if (currentNumberOfEntries.get() == maxEntriesToJournal) {
-        Map.Entry<Offset, StoreKey> earliestEntry = journal.firstEntry();
-        journal.remove(earliestEntry.getKey());
-        recentCrcs.remove(earliestEntry.getValue());
-        currentNumberOfEntries.decrementAndGet();
+      long seq = endSeq;
+      Ring ring = this.ring;
+      if (seq > startSeq && offset.compareTo(ring.getOffset(seq - 1)) <= 0) {
+        throw new IllegalArgumentException(
+            "Offset " + offset + " is not greater than the last offset in the journal " + ring.getOffset(seq - 1));
+      }
+      if (seq - startSeq == maxEntriesToJournal) {
+        recentCrcs.remove(ring.getKey(seq));
+        // readers have to see the oldest entry go out of the journal before its slot is reused
+        startSeq = seq - maxEntriesToJournal + 1;
+      } else if (seq == ring.capacity()) {
+        // nothing has been removed yet, so all the entries are in [0, seq)
+        ring = new Ring(ring, (int) Math.min((long) ring.capacity() * 2, maxEntriesToJournal));
+        this.ring = ring;
       }
-      journal.put(offset, key);
+      ring.set(seq, offset, key);
       if (crc != null) {
         recentCrcs.put(key, crc);
       }
+      endSeq = seq + 1;
       logger.trace("Journal : " + dataDir + " offset " + offset + " key " + key);
-      currentNumberOfEntries.incrementAndGet();
-      logger.trace("Journal : " + dataDir + " number of entries " + currentNumberOfEntries.get());
+      logger.trace("Journal : " + dataDir + " number of entries " + (endSeq - startSeq));
     }
   }
 
@@ -115,58 +135,64 @@ class Journal {
    *         it returns null.
    */
   List<JournalEntry> getEntriesSince(Offset offset, boolean inclusive) {
-    // To prevent synchronizing the addEntry method, we first get all the entries from the journal that are greater
-    // than offset. Once we have all the required entries, we finally check if the offset is actually present
-    // in the journal. If the offset is not present we return null, else we return the entries we got in the first step.
-    // The offset may not be present in the journal as it could be removed.
-
-    Map.Entry<Offset, StoreKey> first = journal.firstEntry();
-    Map.Entry<Offset, StoreKey> last = journal.lastEntry();
-
-    // check if the journal contains the offset.
-    if (first == null || offset.compareTo(first.getKey()) < 0 || last == null || offset.compareTo(last.getKey()) > 0
-        || !journal.containsKey(offset)) {
-      return null;
-    }
-
-    ConcurrentNavigableMap<Offset, StoreKey> subsetMap = journal.tailMap(offset, true);
-    int entriesToReturn = Math.min(subsetMap.size(), maxEntriesToReturn);
-    List<JournalEntry> journalEntries = new ArrayList<JournalEntry>(entriesToReturn);
-    int entriesAdded = 0;
-    for (Map.Entry<Offset, StoreKey> entry : subsetMap.entrySet()) {
-      if (inclusive || !entry.getKey().equals(offset)) {
-        journalEntries.add(new JournalEntry(entry.getKey(), entry.getValue()));
-        entriesAdded++;
-        if (entriesAdded == entriesToReturn) {
-          break;
-        }
+    while (true) {
+      long start = startSeq;
+      long end = endSeq;
+      Ring ring = this.ring;
+      long seq = findSeq(ring, offset, start, end);
+      if (startSeq != start) {
+        // entries were removed during the search and the slots searched may have been reused.
+        continue;
       }
+      if (seq == -1) {
+        return null;
+      }
+      long fromSeq = inclusive ? seq : seq + 1;
+      long toSeq = Math.min(end, fromSeq + maxEntriesToReturn);
+      List<JournalEntry> journalEntries = new ArrayList<>((int) Math.max(toSeq - fromSeq, 0));
+      for (long i = fromSeq; i < toSeq; i++) {
+        journalEntries.add(new JournalEntry(ring.getOffset(i), ring.getKey(i)));
+      }
+      // Ensure that the offset was not pushed out of the journal. If it was not, none of the entries read after it
+      // were overwritten either.
+      if (startSeq > seq) {
+        return null;
+      }
+      logger.trace("Journal : " + dataDir + " entries returned " + journalEntries.size());
+      return journalEntries;
     }
-
-    // Ensure that the offset was not pushed out of the journal.
-    first = journal.firstEntry();
-    if (first == null || offset.compareTo(first.getKey()) < 0) {
-      return null;
-    }
-
-    logger.trace("Journal : " + dataDir + " entries returned " + journalEntries.size());
-    return journalEntries;
   }
 
   /**
    * @return the first/smallest offset in the journal or {@code null} if no such entry exists.
    */
   Offset getFirstOffset() {
-    Map.Entry<Offset, StoreKey> first = journal.firstEntry();
-    return first == null ? null : first.getKey();
+    while (true) {
+      long start = startSeq;
+      if (start == endSeq) {
+        return null;
+      }
+      Offset first = ring.getOffset(start);
+      if (startSeq == start) {
+        return first;
+      }
+    }
   }
 
   /**
    * @return the last/greatest offset in the journal or {@code null} if no such entry exists.
    */
   Offset getLastOffset() {
-    Map.Entry<Offset, StoreKey> last = journal.lastEntry();
-    return last == null ? null : last.getKey();
+    while (true) {
+      long end = endSeq;
+      if (end == startSeq) {
+        return null;
+      }
+      Offset last = ring.getOffset(end - 1);
+      if (startSeq <= end - 1) {
+        return last;
+      }
+    }
   }
 
   /**
@@ -177,4 +203,82 @@ class Journal {
   Long getCrcOfKey(StoreKey key) {
     return recentCrcs.get(key);
   }
+
+  /**
+   * Binary searches the entries with sequence numbers in [{@code start}, {@code end}) for {@code offset}. The result
+   * is valid only if {@link #startSeq} is still {@code start} after the search.
+   * @param ring the {@link Ring} to search. Has to be read after {@code end}.
+   * @param offset the {@link Offset} to find.
+   * @param start the sequence number of the first entry to search.
+   * @param end the sequence number after the last entry to search.
+   * @return the sequence number of the entry with {@code offset} or -1 if there is no such entry.
+   */
+  private long findSeq(Ring ring, Offset offset, long start, long end) {
+    long low = start;
+    long high = end - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      int compare = ring.getOffset(mid).compareTo(offset);
+      if (compare < 0) {
+        low = mid + 1;
+      } else if (compare > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The slots that hold the offsets and keys of the entries. A {@link Ring} replaced by a larger one during growth is
+   * not modified after that, so readers holding it can continue to read the entries that were in it.
+   */
+  private static class Ring {
+    private final AtomicReferenceArray<Offset> offsets;
+    private final AtomicReferenceArray<StoreKey> keys;
+
+    /**
+     * @param capacity the number of slots.
+     */
+    Ring(int capacity) {
+      offsets = new AtomicReferenceArray<>(capacity);
+      keys = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Creates a {@link Ring} that contains all the entries of {@code ring}, which must not have wrapped around.
+     * @param ring the {@link Ring} to copy the entries from.
+     * @param capacity the number of slots. Has to be at least that of {@code ring}.
+     */
+    Ring(Ring ring, int capacity) {
+      this(capacity);
+      for (int i = 0; i < ring.capacity(); i++) {
+        offsets.set(i, ring.offsets.get(i));
+        keys.set(i, ring.keys.get(i));
+      }
+    }
+
+    int capacity() {
+      return offsets.length();
+    }
+
+    Offset getOffset(long seq) {
+      return offsets.get(getSlot(seq));
+    }
+
+    StoreKey getKey(long seq) {
+      return keys.get(getSlot(seq));
+    }
+
+    void set(long seq, Offset offset, StoreKey key) {
+      int slot = getSlot(seq);
+      offsets.set(slot, offset);
+      keys.set(slot, key);
+    }
+
+    private int getSlot(long seq) {
+      return (int) (seq % capacity());
+    }
+  }
 }
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * A compact, store wide summary that maps the hash of a key to the start {@link Offset}s of the {@link IndexSegment}s
+ * that may contain the key.
+ * <p/>
+ * The summary is an open addressing hash table of longs. Each slot packs a {@value #FINGERPRINT_BITS} bit fingerprint
+ * of the key hash with the id of an index segment. A key that has entries in more than one segment occupies one slot
+ * per segment. Since the slot index is derived from the fingerprint, the table can grow without the keys. Lookups can
+ * return segments that do not contain the key (when fingerprints collide) but never miss a segment that does.
+ * <p/>
+ * This class is thread safe.
+ */
+class KeySegmentSummary {
+  static final int FINGERPRINT_BITS = 44;
+  static final int SEGMENT_ID_BITS = Long.SIZE - FINGERPRINT_BITS;
+  // segment ids are stored with an offset of 1 so that an empty slot (0) is distinguishable from a used one.
+  static final int MAX_SEGMENT_COUNT = (1 << SEGMENT_ID_BITS) - 1;
+  private static final int MIN_CAPACITY = 1024;
+  private static final double MAX_LOAD_FACTOR = 0.75;
+  private static final long SEGMENT_ID_MASK = (1L << SEGMENT_ID_BITS) - 1;
+
+  private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+  private final Map<Offset, Integer> segmentIds = new HashMap<>();
+  private final List<Offset> segmentStartOffsets = new ArrayList<>();
+  private final Deque<Integer> freeSegmentIds = new ArrayDeque<>();
+  private long[] slots = new long[MIN_CAPACITY];
+  private int size = 0;
+
+  /**
+   * Records that the key whose hash is {@code keyHash} has an entry in the segment that starts at
+   * {@code segmentStartOffset}. Recording the same key and segment more than once has no effect.
+   * @param keyHash the hash of the key as returned by {@link com.github.ambry.utils.FilterFactory#getKeyHash}.
+   * @param segmentStartOffset the start {@link Offset} of the {@link IndexSegment} that contains an entry for the key.
+   * @throws IllegalStateException if the summary already tracks {@link #MAX_SEGMENT_COUNT} segments.
+   */
+  void add(long[] keyHash, Offset segmentStartOffset) {
+    rwLock.writeLock().lock();
+    try {
+      if (size + 1 > slots.length * MAX_LOAD_FACTOR) {
+        resize(slots.length * 2);
+      }
+      long slotValue = getSlotValue(getFingerprint(keyHash), getOrCreateSegmentId(segmentStartOffset));
+      if (insert(slots, slotValue)) {
+        size++;
+      }
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the start {@link Offset}s of all the segments that may contain the key whose hash is {@code keyHash}.
+   * @param keyHash the hash of the key as returned by {@link com.github.ambry.utils.FilterFactory#getKeyHash}.
+   * @return the start {@link Offset}s of the segments that may contain the key in no particular order.
+   */
+  List<Offset> getSegmentStartOffsets(long[] keyHash) {
+    List<Offset> startOffsets = new ArrayList<>(2);
+    long fingerprint = getFingerprint(keyHash);
+    rwLock.readLock().lock();
+    try {
+      int mask = slots.length - 1;
+      for (int i = getSlotIndex(fingerprint, mask); slots[i] != 0; i = (i + 1) & mask) {
+        if (slots[i] >>> SEGMENT_ID_BITS == fingerprint) {
+          startOffsets.add(segmentStartOffsets.get((int) (slots[i] & SEGMENT_ID_MASK) - 1));
+        }
+      }
+    } finally {
+      rwLock.readLock().unlock();
+    }
+    return startOffsets;
+  }
+
+  /**
+   * Removes all the records of the segments that start at {@code segmentStartOffsetsToRemove}.
+   * @param segmentStartOffsetsToRemove the start {@link Offset}s of the segments to remove.
+   */
+  void removeSegments(Collection<Offset> segmentStartOffsetsToRemove) {
+    rwLock.writeLock().lock();
+    try {
+      boolean[] removedIds = new boolean[segmentStartOffsets.size() + 1];
+      boolean anyRemoved = false;
+      for (Offset startOffset : segmentStartOffsetsToRemove) {
+        Integer segmentId = segmentIds.remove(startOffset);
+        if (segmentId != null) {
+          removedIds[segmentId] = true;
+          segmentStartOffsets.set(segmentId - 1, null);
+          freeSegmentIds.add(segmentId);
+          anyRemoved = true;
+        }
+      }
+      if (anyRemoved) {
+        long[] newSlots = new long[slots.length];
+        int newSize = 0;
+        for (long slotValue : slots) {
+          if (slotValue != 0 && !removedIds[(int) (slotValue & SEGMENT_ID_MASK)]) {
+            insert(newSlots, slotValue);
+            newSize++;
+          }
+        }
+        slots = newSlots;
+        size = newSize;
+      }
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of (key, segment) records in the summary.
+   */
+  int size() {
+    rwLock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of slots in the summary (used and unused).
+   */
+  int capacity() {
+    rwLock.readLock().lock();
+    try {
+      return slots.length;
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the id of the segment that starts at {@code segmentStartOffset}, assigning one if required. Has to be called
+   * with the write lock held.
+   * @param segmentStartOffset the start {@link Offset} of the segment.
+   * @return the id of the segment.
+   */
+  private int getOrCreateSegmentId(Offset segmentStartOffset) {
+    Integer segmentId = segmentIds.get(segmentStartOffset);
+    if (segmentId == null) {
+      if (!freeSegmentIds.isEmpty()) {
+        segmentId = freeSegmentIds.poll();
+        segmentStartOffsets.set(segmentId - 1, segmentStartOffset);
+      } else if (segmentStartOffsets.size() < MAX_SEGMENT_COUNT) {
+        segmentStartOffsets.add(segmentStartOffset);
+        segmentId = segmentStartOffsets.size();
+      } else {
+        throw new IllegalStateException("Summary cannot track more than " + MAX_SEGMENT_COUNT + " segments");
+      }
+      segmentIds.put(segmentStartOffset, segmentId);
+    }
+    return segmentId;
+  }
+
+  /**
+   * Resizes the table to {@code newCapacity} slots. Has to be called with the write lock held.
+   * @param newCapacity the new number of slots. Has to be a power of 2.
+   */
+  private void resize(int newCapacity) {
+    long[] newSlots = new long[newCapacity];
+    for (long slotValue : slots) {
+      if (slotValue != 0) {
+        insert(newSlots, slotValue);
+      }
+    }
+    slots = newSlots;
+  }
+
+  /**
+   * Inserts {@code slotValue} into {@code table} if it is not already present. The table must have a free slot.
+   * @param table the table to insert into.
+   * @param slotValue the value to insert.
+   * @return {@code true} if the value was inserted, {@code false} if it was already present.
+   */
+  private static boolean insert(long[] table, long slotValue) {
+    int mask = table.length - 1;
+    int i = getSlotIndex(slotValue >>> SEGMENT_ID_BITS, mask);
+    while (table[i] != 0) {
+      if (table[i] == slotValue) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    table[i] = slotValue;
+    return true;
+  }
+
+  private static long getFingerprint(long[] keyHash) {
+    return keyHash[0] >>> SEGMENT_ID_BITS;
+  }
+
+  private static long getSlotValue(long fingerprint, int segmentId) {
+    return (fingerprint << SEGMENT_ID_BITS) | segmentId;
+  }
+
+  private static int getSlotIndex(long fingerprint, int mask) {
+    // the low bits of the fingerprint are as well distributed as the high ones.
+    return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+  }
+}
@@ -231,11 +231,11 @@ class Log implements Write {
   }
 
   /**
-   * Flushes the Log and all its segments.
+   * Flushes the Log and all its segments. Segments that have not been written to since they were last flushed are
+   * skipped.
    * @throws IOException if the flush encountered an I/O error.
    */
   void flush() throws IOException {
-    // TODO: try to flush only segments that require flushing.
     logger.trace("Flushing log");
     for (LogSegment segment : segmentsByName.values()) {
       segment.flush();
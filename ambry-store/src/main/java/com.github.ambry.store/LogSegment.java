@@ -53,6 +53,12 @@ class LogSegment implements Read, Write {
   private final AtomicLong endOffset;
   private final AtomicLong refCount = new AtomicLong(0);
   private final AtomicBoolean open = new AtomicBoolean(true);
+  // incremented every time data is written to the segment.
+  private final AtomicLong writeSequence = new AtomicLong(0);
+  // serializes flushes so that a flush returns only once a force that covers the writes before it has completed.
+  private final Object flushLock = new Object();
+  // the write sequence number up to which the segment is known to have been forced to disk. Guarded by flushLock.
+  private long flushedSequence = 0;
 
   /**
    * Creates a LogSegment abstraction with the given capacity.
@@ -147,6 +153,7 @@ class LogSegment implements Read, Write {
       while (buffer.hasRemaining()) {
         bytesWritten += fileChannel.write(buffer, endOffset.get());
       }
+      writeSequence.incrementAndGet();
       endOffset.addAndGet(bytesWritten);
     }
     return bytesWritten;
@@ -176,6 +183,7 @@ class LogSegment implements Read, Write {
       while (bytesWritten < size) {
         bytesWritten += fileChannel.transferFrom(channel, endOffset.get() + bytesWritten, size - bytesWritten);
       }
+      writeSequence.incrementAndGet();
       endOffset.addAndGet(bytesWritten);
     }
   }
@@ -239,6 +247,7 @@ class LogSegment implements Read, Write {
     while (bytesWritten < size) {
       bytesWritten += fileChannel.transferFrom(channel, offset + bytesWritten, size - bytesWritten);
     }
+    writeSequence.incrementAndGet();
     if (offset + size > endOffset.get()) {
       endOffset.set(offset + size);
     }
@@ -324,10 +333,28 @@ class LogSegment implements Read, Write {
   }
 
   /**
-   * Flushes the backing file to disk.
+   * Flushes the backing file to disk if anything has been written to it since it was last flushed. Concurrent callers
+   * are serialized, so a call returns only once all the writes that completed before it are on disk, even if another
+   * caller was already flushing them.
    * @throws IOException if there is an I/O error while flushing.
    */
   void flush() throws IOException {
+    long sequence = writeSequence.get();
+    synchronized (flushLock) {
+      if (sequence > flushedSequence) {
+        // writes that complete while forcing may or may not be covered, so only the ones seen before are marked.
+        sequence = writeSequence.get();
+        forceToDisk();
+        flushedSequence = sequence;
+      }
+    }
+  }
+
+  /**
+   * Forces the backing file to disk.
+   * @throws IOException if there is an I/O error while forcing.
+   */
+  void forceToDisk() throws IOException {
     fileChannel.force(true);
   }
 
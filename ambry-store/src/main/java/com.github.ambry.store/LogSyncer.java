@@ -0,0 +1,169 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.codahale.metrics.Timer;
+import com.github.ambry.utils.Time;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+
+/**
+ * Makes writes to a {@link Log} durable according to a {@link DurabilityMode}.
+ * <p/>
+ * In {@link DurabilityMode#GROUP_FSYNC}, callers that need their writes to be durable at about the same time share a
+ * single flush of the log. The first caller that finds no flush in progress becomes the leader. It optionally waits up
+ * to a bounded delay for more callers to join, flushes the log and then releases all the callers whose writes were
+ * complete before the flush started. Callers that arrive while a flush is in progress wait for the next one.
+ */
+class LogSyncer {
+
+  /**
+   * The guarantees that a write to the log has when {@link #sync()} returns.
+   */
+  enum DurabilityMode {
+    /**
+     * The write is not necessarily on disk. The log is flushed periodically by the index persistor.
+     */
+    ASYNC,
+
+    /**
+     * The write is on disk. A single flush of the log is shared by concurrent writes.
+     */
+    GROUP_FSYNC,
+
+    /**
+     * The write is on disk. Every write flushes the log.
+     */
+    SYNC_PER_WRITE;
+
+    /**
+     * @param name the name of the mode as specified in the config (for e.g. "group-fsync").
+     * @return the {@link DurabilityMode} with the given name.
+     * @throws IllegalArgumentException if there is no mode with the given name.
+     */
+    static DurabilityMode fromConfigName(String name) {
+      return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+  }
+
+  private final Log log;
+  private final DurabilityMode mode;
+  private final long maxDelayMs;
+  private final StoreMetrics metrics;
+  private final Time time;
+  private final Object lock = new Object();
+  // the number of sync requests received so far.
+  private long requestCount = 0;
+  // all the sync requests up to this number are complete.
+  private long syncedCount = 0;
+  private boolean flushInProgress = false;
+
+  /**
+   * @param log the {@link Log} to flush.
+   * @param mode the {@link DurabilityMode} to provide.
+   * @param maxDelayMs the time a flush is delayed by in {@link DurabilityMode#GROUP_FSYNC} in order to include more
+   *                   callers.
+   * @param metrics the {@link StoreMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   */
+  LogSyncer(Log log, DurabilityMode mode, long maxDelayMs, StoreMetrics metrics, Time time) {
+    this.log = log;
+    this.mode = mode;
+    this.maxDelayMs = maxDelayMs;
+    this.metrics = metrics;
+    this.time = time;
+  }
+
+  /**
+   * Returns once all the writes to the log that were complete before this call have the guarantees of the
+   * {@link DurabilityMode}. Has to be called without holding locks that writers need.
+   * @throws IOException if the log could not be flushed or if the thread was interrupted while waiting for a flush.
+   */
+  void sync() throws IOException {
+    switch (mode) {
+      case ASYNC:
+        break;
+      case SYNC_PER_WRITE:
+        flush(1);
+        break;
+      case GROUP_FSYNC:
+        groupSync();
+        break;
+      default:
+        throw new IllegalStateException("Unknown durability mode " + mode);
+    }
+  }
+
+  /**
+   * Waits for a shared flush that includes this request, becoming the leader that flushes if there is no flush in
+   * progress.
+   * @throws IOException if the log could not be flushed or if the thread was interrupted while waiting for a flush.
+   */
+  private void groupSync() throws IOException {
+    long requestNumber;
+    long flushedUpTo;
+    synchronized (lock) {
+      requestNumber = ++requestCount;
+      while (syncedCount < requestNumber && flushInProgress) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for the log to be flushed");
+        }
+      }
+      if (syncedCount >= requestNumber) {
+        return;
+      }
+      flushInProgress = true;
+      flushedUpTo = syncedCount;
+    }
+    try {
+      if (maxDelayMs > 0) {
+        time.sleep(maxDelayMs);
+      }
+      long batchEnd;
+      synchronized (lock) {
+        batchEnd = requestCount;
+      }
+      flush(batchEnd - flushedUpTo);
+      flushedUpTo = batchEnd;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to flush the log");
+    } finally {
+      synchronized (lock) {
+        syncedCount = flushedUpTo;
+        flushInProgress = false;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Flushes the log and records metrics.
+   * @param batchSize the number of sync requests served by this flush.
+   * @throws IOException if the log could not be flushed.
+   */
+  private void flush(long batchSize) throws IOException {
+    Timer.Context context = metrics.logFlushTime.time();
+    try {
+      log.flush();
+    } finally {
+      context.stop();
+    }
+    metrics.logFlushBatchSize.update(batchSize);
+  }
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.ByteBufferInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * The entries of an in memory {@link IndexSegment} packed into fixed width slots of direct memory.
+ * <p/>
+ * Each slot has the same layout as an entry in a persisted index segment: the serialized key, the serialized value and
+ * zero padding up to the entry size. Slots are appended in insertion order and a primitive open addressing hash table
+ * maps keys to slots. Re-inserting a key overwrites its value in place. The sorted order of the entries that is
+ * required for persisting and for iteration is computed on demand and cached. Keys inserted after it was computed are
+ * merged into it the next time it is needed, so every key is deserialized about once rather than on every sort.
+ * <p/>
+ * Compared to a {@link java.util.concurrent.ConcurrentSkipListMap} of {@link StoreKey} to {@link IndexValue}, no
+ * objects are retained per entry.
+ * <p/>
+ * This class is thread safe.
+ */
+class OffHeapIndexEntries {
+  private static final int MIN_CAPACITY = 64;
+
+  private final StoreKeyFactory factory;
+  private final int entrySize;
+  private final int valueSize;
+  private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+  private ByteBuffer slots;
+  // the hash code and the size of the key in each slot
+  private int[] slotHashes;
+  private short[] slotKeySizes;
+  // maps a hash bucket to (slot id + 1). 0 denotes an empty bucket.
+  private int[] buckets;
+  private int size = 0;
+  // the ids of the first sortedSlotIds.length slots, ordered by their keys
+  private volatile int[] sortedSlotIds = new int[0];
+
+  /**
+   * @param factory the {@link StoreKeyFactory} used to deserialize keys.
+   * @param entrySize the size of a slot. The key and value of every entry put has to fit in this size.
+   * @param valueSize the size of every value put.
+   */
+  OffHeapIndexEntries(StoreKeyFactory factory, int entrySize, int valueSize) {
+    this.factory = factory;
+    this.entrySize = entrySize;
+    this.valueSize = valueSize;
+    slots = ByteBuffer.allocateDirect(MIN_CAPACITY * entrySize);
+    slotHashes = new int[MIN_CAPACITY];
+    slotKeySizes = new short[MIN_CAPACITY];
+    buckets = new int[MIN_CAPACITY * 2];
+  }
+
+  /**
+   * Puts an entry. If there is already an entry for {@code key}, its value is replaced.
+   * @param key the {@link StoreKey} of the entry.
+   * @param value the {@link IndexValue} of the entry.
+   * @return {@code true} if there was no entry for {@code key} before this call. {@code false} otherwise.
+   * @throws IllegalArgumentException if the entry does not fit in a slot.
+   */
+  boolean put(StoreKey key, IndexValue value) {
+    ByteBuffer valueBytes = value.getBytes();
+    if (valueBytes.capacity() != valueSize || key.sizeInBytes() + valueSize > entrySize) {
+      throw new IllegalArgumentException(
+          "Entry of key size " + key.sizeInBytes() + " and value size " + valueBytes.capacity()
+              + " does not fit in slot of size " + entrySize + " with value size " + valueSize);
+    }
+    rwLock.writeLock().lock();
+    try {
+      int hash = key.hashCode();
+      int slotId = findSlotId(key, hash);
+      boolean added = slotId == -1;
+      if (added) {
+        if (size == slotHashes.length) {
+          grow();
+        }
+        slotId = size++;
+        slotHashes[slotId] = hash;
+        slotKeySizes[slotId] = key.sizeInBytes();
+        insertIntoBuckets(buckets, hash, slotId);
+        ByteBuffer slot = getSlot(slots, slotId);
+        slot.put(key.toBytes());
+      }
+      ByteBuffer slot = getSlot(slots, slotId);
+      slot.position(key.sizeInBytes());
+      ByteBuffer valueToPut = valueBytes.duplicate();
+      valueToPut.clear();
+      slot.put(valueToPut);
+      return added;
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param key the {@link StoreKey} to look for.
+   * @return a copy of the serialized value of {@code key} if present. {@code null} otherwise.
+   */
+  ByteBuffer getValue(StoreKey key) {
+    rwLock.readLock().lock();
+    try {
+      int slotId = findSlotId(key, key.hashCode());
+      return slotId == -1 ? null : getValueAt(slotId);
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param key the {@link StoreKey} to look for.
+   * @return {@code true} if there is an entry for {@code key}. {@code false} otherwise.
+   */
+  boolean containsKey(StoreKey key) {
+    rwLock.readLock().lock();
+    try {
+      return findSlotId(key, key.hashCode()) != -1;
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of entries.
+   */
+  int size() {
+    rwLock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Removes all the entries.
+   */
+  void clear() {
+    rwLock.writeLock().lock();
+    try {
+      slots = ByteBuffer.allocateDirect(MIN_CAPACITY * entrySize);
+      slotHashes = new int[MIN_CAPACITY];
+      slotKeySizes = new short[MIN_CAPACITY];
+      buckets = new int[MIN_CAPACITY * 2];
+      size = 0;
+      sortedSlotIds = new int[0];
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the ids of all the slots, ordered by the keys in them. Entries put after this call are not included.
+   * @throws IOException if a key could not be deserialized.
+   */
+  int[] getSortedSlotIds() throws IOException {
+    rwLock.readLock().lock();
+    try {
+      int[] sorted = sortedSlotIds;
+      if (sorted.length < size) {
+        // only the keys put since the last sort are deserialized. The sorted slots are compared in place.
+        StoreKey[] newKeys = new StoreKey[size - sorted.length];
+        for (int i = 0; i < newKeys.length; i++) {
+          newKeys[i] = getKeyAt(sorted.length + i);
+        }
+        Arrays.sort(newKeys);
+        int[] merged = new int[size];
+        int oldPosition = 0;
+        int newPosition = 0;
+        for (int i = 0; i < merged.length; i++) {
+          if (newPosition == newKeys.length || (oldPosition < sorted.length
+              && compareKeyAt(sorted[oldPosition], newKeys[newPosition]) < 0)) {
+            merged[i] = sorted[oldPosition++];
+          } else {
+            StoreKey key = newKeys[newPosition++];
+            merged[i] = findSlotId(key, key.hashCode());
+          }
+        }
+        sorted = merged;
+        synchronized (this) {
+          // another reader may have merged more keys in the meantime
+          if (sortedSlotIds.length < sorted.length) {
+            sortedSlotIds = sorted;
+          }
+        }
+      }
+      return sorted;
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param sorted the slot ids as returned by {@link #getSortedSlotIds()}.
+   * @param key the {@link StoreKey} to look for.
+   * @return the position of {@code key} in {@code sorted} if present. -1 otherwise.
+   */
+  int getSortedPosition(int[] sorted, StoreKey key) {
+    rwLock.readLock().lock();
+    try {
+      int low = 0;
+      int high = sorted.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int result = compareKeyAt(sorted[mid], key);
+        if (result == 0) {
+          return mid;
+        } else if (result < 0) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return -1;
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param slotId the id of the slot.
+   * @return the {@link StoreKey} in the slot.
+   * @throws IOException if the key could not be deserialized.
+   */
+  StoreKey getKey(int slotId) throws IOException {
+    rwLock.readLock().lock();
+    try {
+      return getKeyAt(slotId);
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param slotId the id of the slot.
+   * @return a copy of the serialized value in the slot.
+   */
+  ByteBuffer getValue(int slotId) {
+    rwLock.readLock().lock();
+    try {
+      return getValueAt(slotId);
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param slotId the id of the slot.
+   * @return the offset in the log segment at which the entry in the slot ends, which is its offset plus its size.
+   */
+  long getEndOffset(int slotId) {
+    rwLock.readLock().lock();
+    try {
+      // every version of the serialized IndexValue starts with the size followed by the offset
+      int valuePosition = slotId * entrySize + slotKeySizes[slotId];
+      return slots.getLong(valuePosition + Long.BYTES) + slots.getLong(valuePosition);
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Writes the key and value in the slot to {@code output}, optionally followed by the padding in the slot.
+   * @param slotId the id of the slot.
+   * @param output the {@link DataOutput} to write to.
+   * @param buffer the buffer to copy the slot through. It has to be at least as long as the key and value and, if the
+   *               padding is included, the slot is written up to the length of this buffer.
+   * @param includePadding {@code true} if the padding in the slot has to be written.
+   * @throws IOException if the slot could not be written.
+   */
+  void writeEntry(int slotId, DataOutput output, byte[] buffer, boolean includePadding) throws IOException {
+    int length;
+    rwLock.readLock().lock();
+    try {
+      length = includePadding ? buffer.length : slotKeySizes[slotId] + valueSize;
+      getSlot(slots, slotId).get(buffer, 0, length);
+    } finally {
+      rwLock.readLock().unlock();
+    }
+    output.write(buffer, 0, length);
+  }
+
+  /**
+   * Finds the slot that holds {@code key}. Has to be called with the lock held.
+   * @param key the {@link StoreKey} to look for.
+   * @param hash the hash code of {@code key}.
+   * @return the id of the slot that holds {@code key} or -1 if there is none.
+   */
+  private int findSlotId(StoreKey key, int hash) {
+    int mask = buckets.length - 1;
+    for (int i = getBucket(hash, mask); buckets[i] != 0; i = (i + 1) & mask) {
+      int slotId = buckets[i] - 1;
+      if (slotHashes[slotId] == hash && compareKeyAt(slotId, key) == 0) {
+        return slotId;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compares the key in the slot with {@code key}. Has to be called with the lock held.
+   * @param slotId the id of the slot.
+   * @param key the {@link StoreKey} to compare against.
+   * @return a negative integer, zero, or a positive integer as the key in the slot is less than, equal to, or greater
+   *         than {@code key}.
+   */
+  private int compareKeyAt(int slotId, StoreKey key) {
+    if (key.isSerializedComparisonSupported()) {
+      return -Integer.signum(key.compareToSerialized(slots, slotId * entrySize));
+    }
+    try {
+      return getKeyAt(slotId).compareTo(key);
+    } catch (IOException e) {
+      // keys in the slots were serialized by this class and are always readable
+      throw new IllegalStateException("Key in slot " + slotId + " could not be deserialized", e);
+    }
+  }
+
+  private StoreKey getKeyAt(int slotId) throws IOException {
+    return factory.getStoreKey(new DataInputStream(new ByteBufferInputStream(getSlot(slots, slotId))));
+  }
+
+  private ByteBuffer getValueAt(int slotId) {
+    ByteBuffer slot = getSlot(slots, slotId);
+    slot.position(slotKeySizes[slotId]);
+    byte[] value = new byte[valueSize];
+    slot.get(value);
+    return ByteBuffer.wrap(value);
+  }
+
+  /**
+   * Doubles the number of slots. Has to be called with the write lock held.
+   */
+  private void grow() {
+    int newCapacity = slotHashes.length * 2;
+    ByteBuffer newSlots = ByteBuffer.allocateDirect(newCapacity * entrySize);
+    ByteBuffer oldSlots = slots.duplicate();
+    oldSlots.clear();
+    newSlots.put(oldSlots);
+    newSlots.clear();
+    int[] newBuckets = new int[newCapacity * 2];
+    for (int slotId = 0; slotId < size; slotId++) {
+      insertIntoBuckets(newBuckets, slotHashes[slotId], slotId);
+    }
+    slots = newSlots;
+    slotHashes = Arrays.copyOf(slotHashes, newCapacity);
+    slotKeySizes = Arrays.copyOf(slotKeySizes, newCapacity);
+    buckets = newBuckets;
+  }
+
+  private static void insertIntoBuckets(int[] table, int hash, int slotId) {
+    int mask = table.length - 1;
+    int i = getBucket(hash, mask);
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i] = slotId + 1;
+  }
+
+  private static int getBucket(int hash, int mask) {
+    // spread the high bits since hash codes of keys are not guaranteed to be well distributed
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private ByteBuffer getSlot(ByteBuffer buffer, int slotId) {
+    ByteBuffer slot = buffer.duplicate();
+    slot.position(slotId * entrySize).limit((slotId + 1) * entrySize);
+    return slot.slice();
+  }
+}
@@ -15,13 +15,16 @@ package com.github.ambry.store;
 
 import com.codahale.metrics.Timer;
 import com.github.ambry.config.StoreConfig;
+import com.github.ambry.utils.FilterFactory;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
@@ -33,8 +36,12 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -104,12 +111,19 @@ class PersistentIndex {
   private final UUID incarnationId;
   private final Time time;
   private final File cleanShutdownFile;
+  // the pool that candidate segments are searched in parallel on. null if parallel searches are disabled.
+  private final ForkJoinPool lookupPool;
 
   // switching the ref to this is thread safe as long as there are no modifications to IndexSegment instances whose
   // offsets are still present in the journal.
   private volatile ConcurrentSkipListMap<Offset, IndexSegment> validIndexSegments = new ConcurrentSkipListMap<>();
   // this is used by addToIndex() and changeIndexSegments() to resolve concurrency b/w them and is not for general use.
   private volatile ConcurrentSkipListMap<Offset, IndexSegment> inFluxIndexSegments = validIndexSegments;
+  // maps keys to the segments that they have entries in. null if disabled.
+  private final KeySegmentSummary keySegmentSummary;
+  // segments removed by the last call to changeIndexSegments(). They are removed from the keySegmentSummary on the next
+  // call so that lookups that started before a change do not miss keys.
+  private Collection<Offset> segmentsToRemoveFromSummary = Collections.emptySet();
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final IndexPersistor persistor = new IndexPersistor();
 
@@ -181,6 +195,9 @@ class PersistentIndex {
     this.incarnationId = incarnationId;
     this.maxInMemoryIndexSizeInBytes = config.storeIndexMaxMemorySizeBytes;
     this.maxInMemoryNumElements = config.storeIndexMaxNumberOfInmemElements;
+    keySegmentSummary = config.storeIndexKeySegmentSummaryEnabled ? new KeySegmentSummary() : null;
+    lookupPool = config.storeIndexParallelLookupMinCandidates > 0 ? new ForkJoinPool(
+        config.storeIndexParallelLookupThreadCount) : null;
 
     List<File> indexFiles = getAllIndexSegmentFiles();
     try {
@@ -193,6 +210,7 @@ class PersistentIndex {
         logger.info("Index : {} loaded index segment {} with start offset {} and end offset {} ", datadir,
             indexFiles.get(i), info.getStartOffset(), info.getEndOffset());
         validIndexSegments.put(info.getStartOffset(), info);
+        addToKeySegmentSummary(info);
       }
       // delete the shutdown file
       cleanShutdownFile = new File(datadir, cleanShutdownFileName);
@@ -387,6 +405,22 @@ class PersistentIndex {
       }
     }
 
+    if (keySegmentSummary != null) {
+      // new segments are added before the change and removed ones are left in until the next change so that the
+      // summary covers every segment a concurrent lookup may be searching.
+      keySegmentSummary.removeSegments(segmentsToRemoveFromSummary);
+      for (IndexSegment indexSegment : segmentsToAdd.values()) {
+        try {
+          addToKeySegmentSummary(indexSegment);
+        } catch (IOException e) {
+          throw new StoreException("Index : " + dataDir + " IO error while reading " + indexSegment.getFile(), e,
+              StoreErrorCodes.IOError);
+        }
+      }
+      segmentsToRemoveFromSummary = new HashSet<>(segmentsToRemove);
+      segmentsToRemoveFromSummary.removeAll(segmentsToAdd.keySet());
+    }
+
     // first update the influx index segments reference
     inFluxIndexSegments = new ConcurrentSkipListMap<>();
     // now copy over all valid segments to the influx reference, remove ones that need removing and add the new ones.
@@ -410,13 +444,17 @@ class PersistentIndex {
       int entrySize = entry.getKey().sizeInBytes() + valueSize;
       IndexSegment info =
           new IndexSegment(dataDir, entry.getValue().getOffset(), factory, entrySize, valueSize, config, metrics, time);
+      // the summary is updated before the segment so that lookups never miss the entry
+      addToKeySegmentSummary(entry.getKey(), info.getStartOffset());
       info.addEntry(entry, fileSpan.getEndOffset());
       // always add to both valid and in-flux index segment map to account for the fact that changeIndexSegments()
       // might be in the process of updating the reference to validIndexSegments
       validIndexSegments.put(info.getStartOffset(), info);
       inFluxIndexSegments.put(info.getStartOffset(), info);
     } else {
-      validIndexSegments.lastEntry().getValue().addEntry(entry, fileSpan.getEndOffset());
+      IndexSegment lastSegment = validIndexSegments.lastEntry().getValue();
+      addToKeySegmentSummary(entry.getKey(), lastSegment.getStartOffset());
+      lastSegment.addEntry(entry, fileSpan.getEndOffset());
     }
     journal.addEntry(entry.getValue().getOffset(), entry.getKey(), entry.getCrc());
   }
@@ -436,6 +474,33 @@ class PersistentIndex {
     }
   }
 
+  /**
+   * Records all the keys in {@code indexSegment} in the {@link #keySegmentSummary} if it is enabled.
+   * @param indexSegment the {@link IndexSegment} whose keys need to be recorded.
+   * @throws IOException if the entries of the segment could not be read.
+   */
+  private void addToKeySegmentSummary(IndexSegment indexSegment) throws IOException {
+    if (keySegmentSummary != null) {
+      List<IndexEntry> entries = new ArrayList<>();
+      indexSegment.getIndexEntriesSince(null, new FindEntriesCondition(Long.MAX_VALUE), entries, new AtomicLong(0));
+      for (IndexEntry entry : entries) {
+        addToKeySegmentSummary(entry.getKey(), indexSegment.getStartOffset());
+      }
+    }
+  }
+
+  /**
+   * Records that {@code key} has an entry in the segment that starts at {@code segmentStartOffset} in the
+   * {@link #keySegmentSummary} if it is enabled.
+   * @param key the {@link StoreKey} to record.
+   * @param segmentStartOffset the start {@link Offset} of the {@link IndexSegment} that has an entry for the key.
+   */
+  private void addToKeySegmentSummary(StoreKey key, Offset segmentStartOffset) {
+    if (keySegmentSummary != null) {
+      keySegmentSummary.add(FilterFactory.getKeyHash(ByteBuffer.wrap(key.toBytes())), segmentStartOffset);
+    }
+  }
+
   /**
    * Checks if the index segment needs to roll over to a new segment
    * @param entry The new entry that needs to be added to the existing active segment
@@ -537,27 +602,21 @@ class PersistentIndex {
             indexSegments.floorKey(fileSpan.getEndOffset()), true).descendingMap();
         metrics.segmentSizeForExists.update(segmentsMapToSearch.size());
       }
-      int segmentsSearched = 0;
-      for (Map.Entry<Offset, IndexSegment> entry : segmentsMapToSearch.entrySet()) {
-        segmentsSearched++;
-        logger.trace("Index : {} searching index with start offset {}", dataDir, entry.getKey());
-        IndexValue value = entry.getValue().find(key);
-        if (value != null) {
-          logger.trace("Index : {} found value offset {} size {} ttl {}", dataDir, value.getOffset(), value.getSize(),
-              value.getExpiresAtMs());
-          if (type.equals(IndexEntryType.ANY)) {
-            retValue = value;
-            break;
-          } else if (type.equals(IndexEntryType.DELETE) && value.isFlagSet(IndexValue.Flags.Delete_Index)) {
-            retValue = value;
-            break;
-          } else if (type.equals(IndexEntryType.PUT) && !value.isFlagSet(IndexValue.Flags.Delete_Index)) {
+      if (keySegmentSummary != null || config.storeIndexBloomFirstLookupEnabled) {
+        retValue = findKeyInCandidateSegments(key, type, segmentsMapToSearch);
+      } else {
+        int segmentsSearched = 0;
+        for (Map.Entry<Offset, IndexSegment> entry : segmentsMapToSearch.entrySet()) {
+          segmentsSearched++;
+          logger.trace("Index : {} searching index with start offset {}", dataDir, entry.getKey());
+          IndexValue value = entry.getValue().find(key);
+          if (isOfType(value, type)) {
             retValue = value;
             break;
           }
         }
+        metrics.segmentsAccessedPerBlobCount.update(segmentsSearched);
       }
-      metrics.segmentsAccessedPerBlobCount.update(segmentsSearched);
     } finally {
       context.stop();
     }
@@ -568,6 +627,119 @@ class PersistentIndex {
     return retValue;
   }
 
+  /**
+   * Finds the {@link IndexValue} of type {@code type} associated with the {@code key} by first determining the segments
+   * that may contain the key and then searching only those. The candidates are obtained from the
+   * {@link #keySegmentSummary} if it is enabled or else by checking the bloom filters of all the given segments (the key
+   * is hashed only once for all the bloom filters). If there are at least
+   * {@link StoreConfig#storeIndexParallelLookupMinCandidates} candidates, they are searched in parallel on the
+   * {@link #lookupPool}.
+   * @param key the {@link StoreKey} whose {@link IndexValue} is required.
+   * @param type the {@link IndexEntryType} desired.
+   * @param segmentsMapToSearch the segments to search, ordered from the most recent to the oldest.
+   * @return the associated {@link IndexValue} of the type {@code type} from the most recent segment that has one,
+   * {@code null} if there is none.
+   * @throws StoreException if any of the segments could not be searched.
+   */
+  private IndexValue findKeyInCandidateSegments(StoreKey key, IndexEntryType type,
+      ConcurrentNavigableMap<Offset, IndexSegment> segmentsMapToSearch) throws StoreException {
+    long[] keyHash = FilterFactory.getKeyHash(ByteBuffer.wrap(key.toBytes()));
+    List<IndexSegment> candidates = new ArrayList<>();
+    if (keySegmentSummary != null) {
+      List<Offset> segmentStartOffsets = keySegmentSummary.getSegmentStartOffsets(keyHash);
+      Collections.sort(segmentStartOffsets, Collections.reverseOrder());
+      for (Offset segmentStartOffset : segmentStartOffsets) {
+        // the summary can have segments that are not in the range searched or that have been removed
+        IndexSegment indexSegment = segmentsMapToSearch.get(segmentStartOffset);
+        if (indexSegment != null) {
+          candidates.add(indexSegment);
+        }
+      }
+    } else {
+      for (IndexSegment indexSegment : segmentsMapToSearch.values()) {
+        if (indexSegment.mayContain(keyHash)) {
+          candidates.add(indexSegment);
+        }
+      }
+    }
+    logger.trace("Index : {} found {} candidate segments for {}", dataDir, candidates.size(), key);
+    metrics.candidateSegmentsPerBlobCount.update(candidates.size());
+    IndexValue retValue = null;
+    int falsePositives = 0;
+    if (lookupPool != null && candidates.size() >= config.storeIndexParallelLookupMinCandidates) {
+      metrics.parallelLookupCount.inc();
+      List<Callable<IndexValue>> searches = new ArrayList<>(candidates.size());
+      for (IndexSegment indexSegment : candidates) {
+        searches.add(() -> indexSegment.find(key, false));
+      }
+      List<Future<IndexValue>> results = lookupPool.invokeAll(searches);
+      for (Future<IndexValue> result : results) {
+        IndexValue value = getSearchResult(result);
+        if (value == null) {
+          falsePositives++;
+        } else if (retValue == null && isOfType(value, type)) {
+          retValue = value;
+        }
+      }
+    } else {
+      for (IndexSegment indexSegment : candidates) {
+        logger.trace("Index : {} searching index with start offset {}", dataDir, indexSegment.getStartOffset());
+        IndexValue value = indexSegment.find(key, false);
+        if (value == null) {
+          falsePositives++;
+        } else if (isOfType(value, type)) {
+          retValue = value;
+          break;
+        }
+      }
+    }
+    metrics.falsePositiveSegmentsPerBlobCount.update(falsePositives);
+    return retValue;
+  }
+
+  /**
+   * Gets the result of a search on an {@link IndexSegment} that was submitted to a pool.
+   * @param result the {@link Future} of the search.
+   * @return the {@link IndexValue} found by the search. Can be {@code null}.
+   * @throws StoreException if the search failed or was interrupted.
+   */
+  private IndexValue getSearchResult(Future<IndexValue> result) throws StoreException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StoreException("Index : " + dataDir + " interrupted while searching index segments", e,
+          StoreErrorCodes.Unknown_Error);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof StoreException) {
+        throw (StoreException) e.getCause();
+      }
+      throw new StoreException("Index : " + dataDir + " error while searching index segments", e.getCause(),
+          StoreErrorCodes.Unknown_Error);
+    }
+  }
+
+  /**
+   * @param value the {@link IndexValue} to check. Can be {@code null}.
+   * @param type the {@link IndexEntryType} desired.
+   * @return {@code true} if {@code value} is not {@code null} and is of type {@code type}.
+   */
+  private boolean isOfType(IndexValue value, IndexEntryType type) {
+    if (value == null) {
+      return false;
+    }
+    logger.trace("Index : {} found value offset {} size {} ttl {}", dataDir, value.getOffset(), value.getSize(),
+        value.getExpiresAtMs());
+    switch (type) {
+      case PUT:
+        return !value.isFlagSet(IndexValue.Flags.Delete_Index);
+      case DELETE:
+        return value.isFlagSet(IndexValue.Flags.Delete_Index);
+      default:
+        return true;
+    }
+  }
+
   /**
    * Returns true if the given message was recently seen by this Index.
    * @param info the {@link MessageInfo} to check.
@@ -1234,6 +1406,9 @@ class PersistentIndex {
         logger.error("Index : " + dataDir + " error while creating clean shutdown file ", e);
       }
     } finally {
+      if (lookupPool != null) {
+        lookupPool.shutdown();
+      }
       metrics.indexShutdownTimeInMs.update(time.milliseconds() - startTimeInMs);
     }
   }
@@ -58,7 +58,13 @@ public class StoreMetrics {
   public final Counter hardDeleteExceptionsCount;
   public final Histogram segmentSizeForExists;
   public final Histogram segmentsAccessedPerBlobCount;
+  public final Histogram candidateSegmentsPerBlobCount;
+  public final Histogram falsePositiveSegmentsPerBlobCount;
+  public final Counter parallelLookupCount;
   public final Counter identicalPutAttemptCount;
+  public final Histogram putIndexPublishBatchSize;
+  public final Timer logFlushTime;
+  public final Histogram logFlushBatchSize;
 
   // Compaction related metrics
   public final Counter compactionFixStateCount;
@@ -124,8 +130,17 @@ public class StoreMetrics {
     segmentSizeForExists = registry.histogram(MetricRegistry.name(IndexSegment.class, name + "SegmentSizeForExists"));
     segmentsAccessedPerBlobCount =
         registry.histogram(MetricRegistry.name(IndexSegment.class, name + "SegmentsAccessedPerBlobCount"));
+    candidateSegmentsPerBlobCount =
+        registry.histogram(MetricRegistry.name(PersistentIndex.class, name + "CandidateSegmentsPerBlobCount"));
+    falsePositiveSegmentsPerBlobCount =
+        registry.histogram(MetricRegistry.name(PersistentIndex.class, name + "FalsePositiveSegmentsPerBlobCount"));
+    parallelLookupCount = registry.counter(MetricRegistry.name(PersistentIndex.class, name + "ParallelLookupCount"));
     identicalPutAttemptCount =
         registry.counter(MetricRegistry.name(PersistentIndex.class, name + "IdenticalPutAttemptCount"));
+    putIndexPublishBatchSize =
+        registry.histogram(MetricRegistry.name(BlobStore.class, name + "PutIndexPublishBatchSize"));
+    logFlushTime = registry.timer(MetricRegistry.name(Log.class, name + "LogFlushTime"));
+    logFlushBatchSize = registry.histogram(MetricRegistry.name(Log.class, name + "LogFlushBatchSize"));
     compactionFixStateCount = registry.counter(MetricRegistry.name(BlobStoreCompactor.class, name + "FixStateCount"));
     compactionCopyRateInBytes = registry.meter(MetricRegistry.name(BlobStoreCompactor.class, "CopyRateInBytes"));
     blobStoreStatsIndexScannerErrorCount =
@@ -0,0 +1,610 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.CrcInputStream;
+import com.github.ambry.utils.CrcOutputStream;
+import com.github.ambry.utils.Pair;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/**
+ * Valid data sizes of a store per container and per log segment that are updated as entries are added to the index
+ * instead of being computed by scanning the whole index.
+ * <p/>
+ * The valid data sizes can be obtained for any reference time that is not earlier than the history start time. The
+ * tracker keeps
+ * <ul>
+ *   <li>the sizes of all the puts that have not been deleted (including those that have expired after the history
+ *   start time) and, for log segments, of all the delete records.</li>
+ *   <li>the sizes of the puts that have not been deleted, keyed by the bucket of the time at which they expire. A put
+ *   is valid at a reference time if it does not expire before the bucket of the reference time.</li>
+ *   <li>the sizes of the puts that have been deleted, keyed by the bucket of the earlier of the time of deletion and
+ *   the time of expiry. A deleted put is valid at a reference time if this bucket is not earlier than the bucket of the
+ *   reference time.</li>
+ * </ul>
+ * Times are kept at the granularity of buckets that start at multiples of the bucket span, so the history has at most
+ * one entry per bucket no matter how many puts expire or are deleted in it, and the valid data sizes at a reference
+ * time are those at the start of its bucket. Moving the history start time forward folds the expirations before it
+ * into the sizes and drops the deletions before it, so that the history does not grow without bound.
+ * <p/>
+ * The sizes are kept in arrays of primitives that are indexed by the position of the container or the log segment in
+ * the lists of all the containers and log segments that the tracker has seen.
+ * <p/>
+ * The tracker can be saved to and loaded from a file. It is not aware of compaction, which moves records between log
+ * segments, so it has to be rebuilt after compaction. This class is thread safe.
+ */
+class ValidDataSizeTracker {
+  private static final short VERSION_0 = 0;
+
+  private final long bucketSpanMs;
+  // containers (accountId in the high and containerId in the low 16 bits) and log segment names in the order in which
+  // they were seen. Their positions are the indexes of their sizes in every Sizes.
+  private final List<Integer> containers = new ArrayList<>();
+  private final Map<Integer, Integer> containerIndexes = new HashMap<>();
+  private final List<String> logSegmentNames = new ArrayList<>();
+  private final Map<String, Integer> logSegmentIndexes = new HashMap<>();
+  private final Sizes sizes = new Sizes();
+  private final TreeMap<Long, Sizes> expirations = new TreeMap<>();
+  private final TreeMap<Long, Sizes> deletions = new TreeMap<>();
+  private long historyStartTimeMs;
+
+  /**
+   * @param historyStartTimeMs the earliest reference time for which valid data sizes can be obtained. Rounded down to
+   *                           the start of its bucket.
+   * @param bucketSpanMs the span in ms of the buckets that times are kept at the granularity of.
+   */
+  ValidDataSizeTracker(long historyStartTimeMs, long bucketSpanMs) {
+    if (bucketSpanMs <= 0) {
+      throw new IllegalArgumentException("Bucket span has to be positive: " + bucketSpanMs);
+    }
+    this.bucketSpanMs = bucketSpanMs;
+    this.historyStartTimeMs = getBucketStartTimeMs(historyStartTimeMs);
+  }
+
+  /**
+   * Accounts for a new put.
+   * @param putValue the {@link IndexValue} of the put.
+   */
+  synchronized void addPut(IndexValue putValue) {
+    long expiresAtMs = putValue.getExpiresAtMs();
+    if (expiresAtMs != Utils.Infinite_Time && getBucketStartTimeMs(expiresAtMs) < historyStartTimeMs) {
+      // not valid at any reference time that can be requested.
+      return;
+    }
+    addPut(sizes, putValue, 1);
+    if (expiresAtMs != Utils.Infinite_Time) {
+      addTo(expirations, expiresAtMs, putValue, 1);
+    }
+  }
+
+  /**
+   * Accounts for a delete record. Delete records are always valid.
+   * @param deleteValue the {@link IndexValue} of the delete.
+   */
+  synchronized void addDeleteRecord(IndexValue deleteValue) {
+    sizes.addToLogSegment(getLogSegmentIndex(deleteValue.getOffset().getName()), deleteValue.getSize());
+  }
+
+  /**
+   * Accounts for the deletion of a put that has been added with {@link #addPut(IndexValue)}. The order of the two calls
+   * does not matter.
+   * @param putValue the {@link IndexValue} of the put that is deleted.
+   * @param deleteTimeMs the time at which the blob was deleted.
+   */
+  synchronized void markDeleted(IndexValue putValue, long deleteTimeMs) {
+    long expiresAtMs = putValue.getExpiresAtMs();
+    if (expiresAtMs != Utils.Infinite_Time && getBucketStartTimeMs(expiresAtMs) < historyStartTimeMs) {
+      // the put is not accounted for.
+      return;
+    }
+    addPut(sizes, putValue, -1);
+    long validUntilMs = deleteTimeMs;
+    if (expiresAtMs != Utils.Infinite_Time) {
+      addTo(expirations, expiresAtMs, putValue, -1);
+      validUntilMs = Math.min(deleteTimeMs, expiresAtMs);
+    }
+    if (getBucketStartTimeMs(validUntilMs) >= historyStartTimeMs) {
+      addTo(deletions, validUntilMs, putValue, 1);
+    }
+  }
+
+  /**
+   * @param referenceTimeInMs the reference time in ms until which deletes and expiration are relevant. Rounded down to
+   *                          the start of its bucket.
+   * @return the valid data size for each container in the form of a nested {@link Map} of serviceIds to another map of
+   * containerIds to valid data size, or {@code null} if the reference time is earlier than the history start time.
+   */
+  synchronized Map<String, Map<String, Long>> getValidDataSizeByContainer(long referenceTimeInMs) {
+    Sizes validSizes = getValidSizes(referenceTimeInMs);
+    if (validSizes == null) {
+      return null;
+    }
+    Map<String, Map<String, Long>> containerSizes = new HashMap<>();
+    for (int i = 0; i < validSizes.containerSizes.length; i++) {
+      if (validSizes.containerSizes[i] != 0) {
+        int container = containers.get(i);
+        String serviceId = String.valueOf((short) (container >> 16));
+        Map<String, Long> serviceSizes = containerSizes.get(serviceId);
+        if (serviceSizes == null) {
+          serviceSizes = new HashMap<>();
+          containerSizes.put(serviceId, serviceSizes);
+        }
+        serviceSizes.put(String.valueOf((short) container), validSizes.containerSizes[i]);
+      }
+    }
+    return containerSizes;
+  }
+
+  /**
+   * @param referenceTimeInMs the reference time in ms until which deletes and expiration are relevant. Rounded down to
+   *                          the start of its bucket.
+   * @return the valid data size for each log segment (including delete records) in the form of a {@link NavigableMap}
+   * of log segment names to valid data sizes, or {@code null} if the reference time is earlier than the history start
+   * time.
+   */
+  synchronized NavigableMap<String, Long> getValidDataSizeByLogSegment(long referenceTimeInMs) {
+    Sizes validSizes = getValidSizes(referenceTimeInMs);
+    if (validSizes == null) {
+      return null;
+    }
+    NavigableMap<String, Long> logSegmentSizes = new TreeMap<>(LogSegmentNameHelper.COMPARATOR);
+    for (int i = 0; i < validSizes.logSegmentSizes.length; i++) {
+      if (validSizes.logSegmentSizes[i] != 0) {
+        logSegmentSizes.put(logSegmentNames.get(i), validSizes.logSegmentSizes[i]);
+      }
+    }
+    return logSegmentSizes;
+  }
+
+  /**
+   * @return the names of all the log segments that the tracker has sizes for.
+   */
+  synchronized Set<String> getLogSegmentNames() {
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < logSegmentNames.size(); i++) {
+      boolean hasSize = sizes.getLogSegmentSize(i) != 0;
+      for (Sizes delta : expirations.values()) {
+        hasSize = hasSize || delta.getLogSegmentSize(i) != 0;
+      }
+      for (Sizes delta : deletions.values()) {
+        hasSize = hasSize || delta.getLogSegmentSize(i) != 0;
+      }
+      if (hasSize) {
+        names.add(logSegmentNames.get(i));
+      }
+    }
+    return names;
+  }
+
+  /**
+   * @return the earliest reference time for which valid data sizes can be obtained.
+   */
+  synchronized long getHistoryStartTimeMs() {
+    return historyStartTimeMs;
+  }
+
+  /**
+   * @return the span in ms of the buckets that times are kept at the granularity of.
+   */
+  long getBucketSpanMs() {
+    return bucketSpanMs;
+  }
+
+  /**
+   * Moves the history start time forward. Valid data sizes cannot be obtained for reference times before it anymore.
+   * @param newHistoryStartTimeMs the new history start time. Rounded down to the start of its bucket and ignored if it
+   *                              is not after the current one.
+   */
+  synchronized void pruneHistory(long newHistoryStartTimeMs) {
+    newHistoryStartTimeMs = getBucketStartTimeMs(newHistoryStartTimeMs);
+    if (newHistoryStartTimeMs <= historyStartTimeMs) {
+      return;
+    }
+    NavigableMap<Long, Sizes> expired = expirations.headMap(newHistoryStartTimeMs, false);
+    for (Sizes delta : expired.values()) {
+      sizes.apply(delta, -1);
+    }
+    expired.clear();
+    deletions.headMap(newHistoryStartTimeMs, false).clear();
+    historyStartTimeMs = newHistoryStartTimeMs;
+  }
+
+  /**
+   * Saves the tracker to {@code file}, replacing it atomically.
+   * @param file the {@link File} to save the tracker to.
+   * @param indexEndOffset the end {@link Offset} of the index whose entries have all been accounted for.
+   * @throws IOException if the tracker could not be saved.
+   */
+  synchronized void save(File file, Offset indexEndOffset) throws IOException {
+    /*
+      Description of serialization format
+        version
+        history start time
+        bucket span
+        index end offset
+        number of containers
+        accountId 1
+        containerId 1
+        ...
+        number of log segments
+        log segment name 1
+        ...
+        valid sizes (see Sizes#writeTo())
+        number of expiration buckets
+        expiration bucket start time 1
+        expiring sizes 1
+        ...
+        number of deletion buckets
+        deletion bucket start time 1
+        deleted sizes 1
+        ...
+        crc
+     */
+    File tempFile = new File(file.getAbsolutePath() + ".tmp");
+    try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+      CrcOutputStream crcOutputStream = new CrcOutputStream(fileOutputStream);
+      DataOutputStream stream = new DataOutputStream(crcOutputStream);
+      stream.writeShort(VERSION_0);
+      stream.writeLong(historyStartTimeMs);
+      stream.writeLong(bucketSpanMs);
+      stream.write(indexEndOffset.toBytes());
+      stream.writeInt(containers.size());
+      for (int container : containers) {
+        stream.writeShort(container >> 16);
+        stream.writeShort(container);
+      }
+      stream.writeInt(logSegmentNames.size());
+      for (String logSegmentName : logSegmentNames) {
+        byte[] bytes = logSegmentName.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+      }
+      sizes.writeTo(stream);
+      writeHistory(stream, expirations);
+      writeHistory(stream, deletions);
+      stream.writeLong(crcOutputStream.getValue());
+      fileOutputStream.getChannel().force(true);
+    }
+    if (!tempFile.renameTo(file)) {
+      throw new IOException("Could not rename " + tempFile + " to " + file);
+    }
+  }
+
+  /**
+   * Loads a tracker that was saved with {@link #save(File, Offset)}.
+   * @param file the {@link File} to load the tracker from.
+   * @return a {@link Pair} of the end {@link Offset} of the index when the tracker was saved and the tracker.
+   * @throws IOException if the file could not be read or is corrupt.
+   */
+  static Pair<Offset, ValidDataSizeTracker> load(File file) throws IOException {
+    try (FileInputStream fileInputStream = new FileInputStream(file)) {
+      CrcInputStream crcInputStream = new CrcInputStream(fileInputStream);
+      DataInputStream stream = new DataInputStream(crcInputStream);
+      short version = stream.readShort();
+      switch (version) {
+        case VERSION_0:
+          long historyStartTimeMs = stream.readLong();
+          long bucketSpanMs = stream.readLong();
+          if (bucketSpanMs <= 0) {
+            throw new IOException("Invalid bucket span " + bucketSpanMs + " in file " + file);
+          }
+          ValidDataSizeTracker tracker = new ValidDataSizeTracker(historyStartTimeMs, bucketSpanMs);
+          Offset indexEndOffset = Offset.fromBytes(stream);
+          int containerCount = stream.readInt();
+          for (int i = 0; i < containerCount; i++) {
+            tracker.getContainerIndex(stream.readShort(), stream.readShort());
+          }
+          int logSegmentCount = stream.readInt();
+          for (int i = 0; i < logSegmentCount; i++) {
+            tracker.getLogSegmentIndex(Utils.readIntString(stream));
+          }
+          tracker.sizes.readFrom(stream, containerCount, logSegmentCount);
+          readHistory(stream, tracker.expirations, containerCount, logSegmentCount);
+          readHistory(stream, tracker.deletions, containerCount, logSegmentCount);
+          long crc = crcInputStream.getValue();
+          if (crc != stream.readLong()) {
+            throw new IOException("CRC of data read does not match CRC in file " + file);
+          }
+          return new Pair<>(indexEndOffset, tracker);
+        default:
+          throw new IOException("Unrecognized version " + version + " of file " + file);
+      }
+    }
+  }
+
+  /**
+   * @param timeMs a time in ms.
+   * @return the start time of the bucket that {@code timeMs} is in.
+   */
+  private long getBucketStartTimeMs(long timeMs) {
+    return Math.floorDiv(timeMs, bucketSpanMs) * bucketSpanMs;
+  }
+
+  /**
+   * @param referenceTimeInMs the reference time in ms until which deletes and expiration are relevant.
+   * @return the valid {@link Sizes} at the start of the bucket of {@code referenceTimeInMs}, or {@code null} if it is
+   * earlier than the history start time.
+   */
+  private Sizes getValidSizes(long referenceTimeInMs) {
+    if (referenceTimeInMs < historyStartTimeMs) {
+      return null;
+    }
+    long bucketStartTimeMs = getBucketStartTimeMs(referenceTimeInMs);
+    Sizes validSizes = new Sizes();
+    validSizes.apply(sizes, 1);
+    for (Sizes expired : expirations.headMap(bucketStartTimeMs, false).values()) {
+      validSizes.apply(expired, -1);
+    }
+    for (Sizes notYetDeleted : deletions.tailMap(bucketStartTimeMs, true).values()) {
+      validSizes.apply(notYetDeleted, 1);
+    }
+    return validSizes;
+  }
+
+  /**
+   * Adds the size of a put to its container and log segment in {@code target}.
+   * @param target the {@link Sizes} to update.
+   * @param putValue the {@link IndexValue} of the put.
+   * @param sign 1 to add the size and -1 to subtract it.
+   */
+  private void addPut(Sizes target, IndexValue putValue, int sign) {
+    long size = sign * putValue.getSize();
+    target.addToContainer(getContainerIndex(putValue.getAccountId(), putValue.getContainerId()), size);
+    target.addToLogSegment(getLogSegmentIndex(putValue.getOffset().getName()), size);
+  }
+
+  /**
+   * Adds the size of {@code value} to the sizes of the bucket of {@code timeMs} in {@code history}.
+   * @param history the map of bucket start times to sizes.
+   * @param timeMs the time whose bucket needs to be updated.
+   * @param value the {@link IndexValue} whose size has to be added.
+   * @param sign 1 to add the size and -1 to subtract it.
+   */
+  private void addTo(TreeMap<Long, Sizes> history, long timeMs, IndexValue value, int sign) {
+    long bucketStartTimeMs = getBucketStartTimeMs(timeMs);
+    Sizes delta = history.get(bucketStartTimeMs);
+    if (delta == null) {
+      delta = new Sizes();
+      history.put(bucketStartTimeMs, delta);
+    }
+    addPut(delta, value, sign);
+    if (delta.isEmpty()) {
+      history.remove(bucketStartTimeMs);
+    }
+  }
+
+  /**
+   * @param accountId the accountId of the container.
+   * @param containerId the containerId of the container.
+   * @return the index of the sizes of the container, which is assigned if the container has not been seen before.
+   */
+  private int getContainerIndex(short accountId, short containerId) {
+    int container = (accountId << 16) | (containerId & 0xFFFF);
+    Integer index = containerIndexes.get(container);
+    if (index == null) {
+      index = containers.size();
+      containers.add(container);
+      containerIndexes.put(container, index);
+    }
+    return index;
+  }
+
+  /**
+   * @param logSegmentName the name of the log segment.
+   * @return the index of the sizes of the log segment, which is assigned if the log segment has not been seen before.
+   */
+  private int getLogSegmentIndex(String logSegmentName) {
+    Integer index = logSegmentIndexes.get(logSegmentName);
+    if (index == null) {
+      index = logSegmentNames.size();
+      logSegmentNames.add(logSegmentName);
+      logSegmentIndexes.put(logSegmentName, index);
+    }
+    return index;
+  }
+
+  /**
+   * Writes a map of bucket start times to sizes to {@code stream}.
+   * @param stream the {@link DataOutputStream} to write to.
+   * @param history the map of bucket start times to sizes.
+   * @throws IOException
+   */
+  private static void writeHistory(DataOutputStream stream, TreeMap<Long, Sizes> history) throws IOException {
+    stream.writeInt(history.size());
+    for (Map.Entry<Long, Sizes> entry : history.entrySet()) {
+      stream.writeLong(entry.getKey());
+      entry.getValue().writeTo(stream);
+    }
+  }
+
+  /**
+   * Reads a map of bucket start times to sizes that was written by {@link #writeHistory(DataOutputStream, TreeMap)}.
+   * @param stream the {@link DataInputStream} to read from.
+   * @param history the map to read into.
+   * @param containerCount the number of containers that the tracker has seen.
+   * @param logSegmentCount the number of log segments that the tracker has seen.
+   * @throws IOException
+   */
+  private static void readHistory(DataInputStream stream, TreeMap<Long, Sizes> history, int containerCount,
+      int logSegmentCount) throws IOException {
+    int count = stream.readInt();
+    for (int i = 0; i < count; i++) {
+      long bucketStartTimeMs = stream.readLong();
+      Sizes delta = new Sizes();
+      delta.readFrom(stream, containerCount, logSegmentCount);
+      history.put(bucketStartTimeMs, delta);
+    }
+  }
+
+  /**
+   * Sizes per container and per log segment, indexed by the positions of the containers and log segments in the
+   * tracker. The arrays grow as containers and log segments are seen.
+   */
+  private static class Sizes {
+    long[] containerSizes = new long[0];
+    long[] logSegmentSizes = new long[0];
+    // the number of sizes that are not zero.
+    private int nonZeroCount = 0;
+
+    /**
+     * @param index the index of the container.
+     * @param size the size to add to the container.
+     */
+    void addToContainer(int index, long size) {
+      if (index >= containerSizes.length) {
+        containerSizes = Arrays.copyOf(containerSizes, index + 1);
+      }
+      containerSizes[index] = add(containerSizes[index], size);
+    }
+
+    /**
+     * @param index the index of the log segment.
+     * @param size the size to add to the log segment.
+     */
+    void addToLogSegment(int index, long size) {
+      if (index >= logSegmentSizes.length) {
+        logSegmentSizes = Arrays.copyOf(logSegmentSizes, index + 1);
+      }
+      logSegmentSizes[index] = add(logSegmentSizes[index], size);
+    }
+
+    /**
+     * @param index the index of the log segment.
+     * @return the size of the log segment.
+     */
+    long getLogSegmentSize(int index) {
+      return index < logSegmentSizes.length ? logSegmentSizes[index] : 0;
+    }
+
+    /**
+     * Adds all the sizes in {@code other} to these sizes.
+     * @param other the {@link Sizes} to add.
+     * @param sign 1 to add the sizes and -1 to subtract them.
+     */
+    void apply(Sizes other, int sign) {
+      for (int i = 0; i < other.containerSizes.length; i++) {
+        if (other.containerSizes[i] != 0) {
+          addToContainer(i, sign * other.containerSizes[i]);
+        }
+      }
+      for (int i = 0; i < other.logSegmentSizes.length; i++) {
+        if (other.logSegmentSizes[i] != 0) {
+          addToLogSegment(i, sign * other.logSegmentSizes[i]);
+        }
+      }
+    }
+
+    /**
+     * @return {@code true} if all the sizes are zero.
+     */
+    boolean isEmpty() {
+      return nonZeroCount == 0;
+    }
+
+    /**
+     * Writes the sizes that are not zero to {@code stream}.
+     * @param stream the {@link DataOutputStream} to write to.
+     * @throws IOException
+     */
+    void writeTo(DataOutputStream stream) throws IOException {
+      writeSizes(stream, containerSizes);
+      writeSizes(stream, logSegmentSizes);
+    }
+
+    /**
+     * Reads sizes that were written with {@link #writeTo(DataOutputStream)} and adds them to these sizes.
+     * @param stream the {@link DataInputStream} to read from.
+     * @param containerCount the number of containers that the tracker has seen.
+     * @param logSegmentCount the number of log segments that the tracker has seen.
+     * @throws IOException if the sizes refer to a container or a log segment that the tracker has not seen.
+     */
+    void readFrom(DataInputStream stream, int containerCount, int logSegmentCount) throws IOException {
+      int count = stream.readInt();
+      for (int i = 0; i < count; i++) {
+        addToContainer(readIndex(stream, containerCount), stream.readLong());
+      }
+      count = stream.readInt();
+      for (int i = 0; i < count; i++) {
+        addToLogSegment(readIndex(stream, logSegmentCount), stream.readLong());
+      }
+    }
+
+    /**
+     * @param current the current size.
+     * @param size the size to add.
+     * @return the new size, after updating the number of sizes that are not zero.
+     */
+    private long add(long current, long size) {
+      long newSize = current + size;
+      if (current == 0 && newSize != 0) {
+        nonZeroCount++;
+      } else if (current != 0 && newSize == 0) {
+        nonZeroCount--;
+      }
+      return newSize;
+    }
+
+    /**
+     * @param stream the {@link DataOutputStream} to write to.
+     * @param sizes the sizes to write the indexes and values of if they are not zero.
+     * @throws IOException
+     */
+    private static void writeSizes(DataOutputStream stream, long[] sizes) throws IOException {
+      int count = 0;
+      for (long size : sizes) {
+        if (size != 0) {
+          count++;
+        }
+      }
+      stream.writeInt(count);
+      for (int i = 0; i < sizes.length; i++) {
+        if (sizes[i] != 0) {
+          stream.writeInt(i);
+          stream.writeLong(sizes[i]);
+        }
+      }
+    }
+
+    /**
+     * @param stream the {@link DataInputStream} to read from.
+     * @param count the number of indexes that are valid.
+     * @return the index read.
+     * @throws IOException if the index is not valid.
+     */
+    private static int readIndex(DataInputStream stream, int count) throws IOException {
+      int index = stream.readInt();
+      if (index < 0 || index >= count) {
+        throw new IOException("Invalid index " + index + " of sizes. Expected less than " + count);
+      }
+      return index;
+    }
+  }
+}
@@ -82,7 +82,20 @@ public class BlobStoreStatsTest {
   private BlobStoreStats setupBlobStoreStats(int bucketCount, long logSegmentForecastOffsetMs) {
     return new BlobStoreStats("", state.index, bucketCount, BUCKET_SPAN_IN_MS, logSegmentForecastOffsetMs,
         QUEUE_PROCESSOR_PERIOD_IN_Ms, DEFAULT_WAIT_TIMEOUT_SECS, state.time, indexScannerScheduler,
-        queueProcessorScheduler, diskIOScheduler, METRICS);
+        queueProcessorScheduler, diskIOScheduler, METRICS, null);
+  }
+
+  private BlobStoreStats setupBlobStoreStatsWithTracker() throws InterruptedException {
+    BlobStoreStats blobStoreStats =
+        new BlobStoreStats("", state.index, 0, BUCKET_SPAN_IN_MS, 0, QUEUE_PROCESSOR_PERIOD_IN_Ms,
+            DEFAULT_WAIT_TIMEOUT_SECS, state.time, indexScannerScheduler, queueProcessorScheduler, diskIOScheduler,
+            METRICS, new File(tempDir, BlobStoreStats.VALID_DATA_SIZE_CHECKPOINT_FILE_NAME));
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (!blobStoreStats.isValidDataSizeTrackerReady() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue("Valid data size tracker took too long to build", blobStoreStats.isValidDataSizeTrackerReady());
+    return blobStoreStats;
   }
 
   /**
@@ -594,6 +607,96 @@ public class BlobStoreStatsTest {
     blobStoreStats.close();
   }
 
+  /**
+   * Tests that the valid data size tracker reports correct stats when it is built from the index, when it is kept up to
+   * date with new puts, expiring puts and deletes and when it is loaded from the checkpoint saved on close.
+   * @throws InterruptedException
+   * @throws StoreException
+   * @throws IOException
+   */
+  @Test
+  public void testValidDataSizeTracker() throws InterruptedException, StoreException, IOException {
+    assumeTrue(!bucketingEnabled);
+    File checkpointFile = new File(tempDir, BlobStoreStats.VALID_DATA_SIZE_CHECKPOINT_FILE_NAME);
+    BlobStoreStats blobStoreStats = setupBlobStoreStatsWithTracker();
+    verifyTrackerStats(blobStoreStats);
+
+    // new puts, some of which expire, and new deletes
+    long expiresAtInMs = state.time.milliseconds() + 10 * CuratedLogIndexState.DELAY_BETWEEN_LAST_MODIFIED_TIMES_MS;
+    List<IndexEntry> newPutEntries = state.addPutEntries(3, CuratedLogIndexState.PUT_RECORD_SIZE, expiresAtInMs);
+    newPutEntries.addAll(state.addPutEntries(3, CuratedLogIndexState.PUT_RECORD_SIZE, Utils.Infinite_Time));
+    for (IndexEntry entry : newPutEntries) {
+      blobStoreStats.handleNewPutEntry(entry.getValue());
+    }
+    newDelete(blobStoreStats, getIdToDelete(newPutEntries.get(0).getKey()));
+    newDelete(blobStoreStats, getIdToDelete(newPutEntries.get(4).getKey()));
+    verifyTrackerStats(blobStoreStats);
+    state.advanceTime(expiresAtInMs + 1 - state.time.milliseconds());
+    verifyTrackerStats(blobStoreStats);
+
+    // the tracker is saved on close and loaded on start
+    blobStoreStats.close();
+    assertTrue("Checkpoint should have been saved", checkpointFile.exists());
+    blobStoreStats = setupBlobStoreStatsWithTracker();
+    assertFalse("Checkpoint should have been deleted after load", checkpointFile.exists());
+    verifyTrackerStats(blobStoreStats);
+    blobStoreStats.close();
+
+    // a checkpoint that does not match the end of the index is ignored and the tracker is rebuilt. The new put moves
+    // the last modified time of its index segment, which the expected stats use as the time of the deletes in it, so
+    // the stats are only compared at the current time. The tracker reports the stats at the start of the bucket of the
+    // reference time, so the current time is moved into a bucket that no expiry or delete falls in.
+    state.advanceTime(BUCKET_SPAN_IN_MS - state.time.milliseconds() % BUCKET_SPAN_IN_MS + 1);
+    state.addPutEntries(1, CuratedLogIndexState.PUT_RECORD_SIZE, Utils.Infinite_Time);
+    blobStoreStats = setupBlobStoreStatsWithTracker();
+    assertFalse("Checkpoint should have been deleted", checkpointFile.exists());
+    verifyAndGetLogSegmentValidSize(blobStoreStats, new TimeRange(state.time.milliseconds(), 0L));
+    verifyAndGetContainerValidSize(blobStoreStats, state.time.milliseconds());
+    blobStoreStats.close();
+  }
+
+  /**
+   * Tests that the entries retained for a build of the valid data size tracker are dropped if the build fails and that
+   * the tracker can be rebuilt afterwards.
+   * @throws InterruptedException
+   * @throws StoreException
+   * @throws IOException
+   */
+  @Test
+  public void testValidDataSizeTrackerBuildFailure() throws InterruptedException, StoreException, IOException {
+    assumeTrue(!bucketingEnabled);
+    throttlers.put(BlobStoreStats.IO_SCHEDULER_JOB_TYPE, new Throttler(0, 0, true, new MockTime()) {
+      @Override
+      public void maybeThrottle(double observed) {
+        throw new IllegalStateException("Injected index read failure");
+      }
+    });
+    BlobStoreStats blobStoreStats =
+        new BlobStoreStats("", state.index, 0, BUCKET_SPAN_IN_MS, 0, QUEUE_PROCESSOR_PERIOD_IN_Ms,
+            DEFAULT_WAIT_TIMEOUT_SECS, state.time, indexScannerScheduler, queueProcessorScheduler, diskIOScheduler,
+            METRICS, new File(tempDir, BlobStoreStats.VALID_DATA_SIZE_CHECKPOINT_FILE_NAME));
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (blobStoreStats.isValidDataSizeTrackerBuilding() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse("Entries should not be retained after the build failed",
+        blobStoreStats.isValidDataSizeTrackerBuilding());
+    assertFalse("Tracker should not be serving requests", blobStoreStats.isValidDataSizeTrackerReady());
+    for (IndexEntry entry : state.addPutEntries(3, CuratedLogIndexState.PUT_RECORD_SIZE, Utils.Infinite_Time)) {
+      blobStoreStats.handleNewPutEntry(entry.getValue());
+    }
+    assertFalse("New entries should not be retained after the build failed",
+        blobStoreStats.isValidDataSizeTrackerBuilding());
+
+    throttlers.clear();
+    blobStoreStats.rebuildValidDataSizeTracker(indexScannerScheduler);
+    while (!blobStoreStats.isValidDataSizeTrackerReady() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    verifyTrackerStats(blobStoreStats);
+    blobStoreStats.close();
+  }
+
   @Test
   public void testWithLowIndexEntries() throws InterruptedException, StoreException, IOException {
     state.destroy();
@@ -674,7 +777,7 @@ public class BlobStoreStatsTest {
     int expectedMinimumThrottleCount = 2 * state.referenceIndex.size();
     BlobStoreStats blobStoreStats =
         new BlobStoreStats("", state.index, 10, BUCKET_SPAN_IN_MS, 0, QUEUE_PROCESSOR_PERIOD_IN_Ms, 1, state.time,
-            indexScannerScheduler, queueProcessorScheduler, diskIOScheduler, METRICS);
+            indexScannerScheduler, queueProcessorScheduler, diskIOScheduler, METRICS, null);
     // proceed only when the scan is started
     assertTrue("IndexScanner took too long to start", scanStartedLatch.await(5, TimeUnit.SECONDS));
     advanceTimeToNextSecond();
@@ -814,6 +917,21 @@ public class BlobStoreStatsTest {
     }
   }
 
+  /**
+   * Verifies the stats reported by the valid data size tracker of {@code blobStoreStats} at reference times between
+   * the start of the test and now.
+   * @param blobStoreStats the {@link BlobStoreStats} to be verified
+   * @throws StoreException
+   */
+  private void verifyTrackerStats(BlobStoreStats blobStoreStats) throws StoreException {
+    assertTrue("Tracker should be serving requests", blobStoreStats.isValidDataSizeTrackerReady());
+    long currentTimeInMs = state.time.milliseconds();
+    for (long i = 0; i <= currentTimeInMs + TEST_TIME_INTERVAL_IN_MS; i += TEST_TIME_INTERVAL_IN_MS) {
+      verifyAndGetLogSegmentValidSize(blobStoreStats, new TimeRange(i, 0L));
+      verifyAndGetContainerValidSize(blobStoreStats, i);
+    }
+  }
+
   /**
    * Use the given {@link StoreKey} to get its corresponding {@link MockId} and update various states in
    * {@link CuratedLogIndexState} in preparation for the delete.
@@ -495,6 +495,37 @@ public class BlobStoreTest {
     verifyDeleteFutures(deleters, futures.subList(putters.size() + getters.size(), callables.size()));
   }
 
+  /**
+   * Tests concurrent operations and the duplicate and collision cases of {@link BlobStore#put(MessageWriteSet)} when
+   * the index entries of puts are published in batches.
+   * @throws Exception
+   */
+  @Test
+  public void batchedIndexPublishTest() throws Exception {
+    properties.put("store.put.batched.index.publish.enabled", "true");
+    reloadStore();
+    concurrentAllTest();
+    idCollisionTest();
+    String metricName = MetricRegistry.name(BlobStore.class, storeId + ".PutIndexPublishBatchSize");
+    assertTrue("Index entries of puts should have been published in batches",
+        metricRegistry.getHistograms().get(metricName).getCount() > 0);
+  }
+
+  /**
+   * Tests that puts and deletes work and flush the log when the store is in the "group-fsync" durability mode.
+   * @throws Exception
+   */
+  @Test
+  public void groupFsyncDurabilityModeTest() throws Exception {
+    properties.put("store.data.durability.mode", "group-fsync");
+    reloadStore();
+    concurrentAllTest();
+    deleteErrorCasesTest();
+    String metricName = MetricRegistry.name(Log.class, storeId + ".LogFlushBatchSize");
+    assertTrue("The log should have been flushed by puts and deletes",
+        metricRegistry.getHistograms().get(metricName).getCount() > 0);
+  }
+
   /**
    * Tests error cases for {@link BlobStore#put(MessageWriteSet)}.
    */
@@ -54,7 +54,6 @@ public class IndexSegmentTest {
   private static final int SMALLER_KEY_SIZE = new MockId(UtilsTest.getRandomString(CUSTOM_ID_SIZE / 2)).sizeInBytes();
   private static final int LARGER_KEY_SIZE =
       new MockId(UtilsTest.getRandomString(CUSTOM_ID_SIZE + CUSTOM_ID_SIZE / 2)).sizeInBytes();
-  private static final StoreConfig STORE_CONFIG = new StoreConfig(new VerifiableProperties(new Properties()));
   private static final Time time = new MockTime();
   private static final long DELETE_FILE_SPAN_SIZE = 10;
   private static final StoreKeyFactory STORE_KEY_FACTORY;
@@ -70,25 +69,34 @@ public class IndexSegmentTest {
   private final File tempDir;
   private final StoreMetrics metrics;
   private final short version;
+  private final StoreConfig config;
 
   /**
-   * Running for {@link PersistentIndex#VERSION_0} and {@link PersistentIndex#VERSION_1}
-   * @return an array with both the versions ({@link PersistentIndex#VERSION_0} and {@link PersistentIndex#VERSION_1}).
+   * Running for {@link PersistentIndex#VERSION_0}, {@link PersistentIndex#VERSION_1} and
+   * {@link PersistentIndex#VERSION_2}, with and without off heap in memory segments.
+   * @return an array with all the versions, each with the off heap in memory segments disabled and enabled.
    */
   @Parameterized.Parameters
   public static List<Object[]> data() {
-    return Arrays.asList(
-        new Object[][]{{PersistentIndex.VERSION_0}, {PersistentIndex.VERSION_1}, {PersistentIndex.VERSION_2}});
+    return Arrays.asList(new Object[][]{{PersistentIndex.VERSION_0, false}, {PersistentIndex.VERSION_1, false},
+        {PersistentIndex.VERSION_2, false}, {PersistentIndex.VERSION_0, true}, {PersistentIndex.VERSION_1, true},
+        {PersistentIndex.VERSION_2, true}});
   }
 
   /**
    * Creates a temporary directory and sets up metrics.
+   * @param version the version of the index segments to test.
+   * @param offHeapActiveSegmentEnabled the value of {@link StoreConfig#storeIndexOffHeapActiveSegmentEnabled}.
    * @throws IOException
    */
-  public IndexSegmentTest(short version) throws IOException {
+  public IndexSegmentTest(short version, boolean offHeapActiveSegmentEnabled) throws IOException {
     tempDir = StoreTestUtils.createTempDirectory("indexSegmentDir-" + UtilsTest.getRandomString(10));
     metrics = new StoreMetrics(tempDir.getAbsolutePath(), new MetricRegistry());
     this.version = version;
+    Properties properties = new Properties();
+    properties.setProperty("store.index.off.heap.active.segment.enabled",
+        Boolean.toString(offHeapActiveSegmentEnabled));
+    config = new StoreConfig(new VerifiableProperties(properties));
   }
 
   /**
@@ -162,7 +170,7 @@ public class IndexSegmentTest {
         indexSegment.writeIndexSegmentToFile(new Offset(logSegmentName, safeEndPoint));
         Journal journal = new Journal(tempDir.getAbsolutePath(), 3, 3);
         IndexSegment fromDisk =
-            new IndexSegment(indexSegment.getFile(), false, STORE_KEY_FACTORY, STORE_CONFIG, metrics, journal, time);
+            new IndexSegment(indexSegment.getFile(), false, STORE_KEY_FACTORY, config, metrics, journal, time);
         for (MockId id : shouldBeFound) {
           assertNotNull("Value for key should have been found", fromDisk.find(id));
         }
@@ -270,15 +278,15 @@ public class IndexSegmentTest {
     IndexSegment indexSegment;
     if (version == PersistentIndex.VERSION_0) {
       indexSegment = new MockIndexSegmentV0(tempDir.getAbsolutePath(), startOffset, STORE_KEY_FACTORY,
-          KEY_SIZE + IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V0, IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V0, STORE_CONFIG,
+          KEY_SIZE + IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V0, IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V0, config,
           metrics, time);
     } else if (version == PersistentIndex.VERSION_1) {
       indexSegment = new MockIndexSegmentV1(tempDir.getAbsolutePath(), startOffset, STORE_KEY_FACTORY,
-          KEY_SIZE + IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, STORE_CONFIG,
+          KEY_SIZE + IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, config,
           metrics, time);
     } else {
       indexSegment = new IndexSegment(tempDir.getAbsolutePath(), startOffset, STORE_KEY_FACTORY,
-          KEY_SIZE + IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, STORE_CONFIG,
+          KEY_SIZE + IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, IndexValue.INDEX_VALUE_SIZE_IN_BYTES_V1, config,
           metrics, time);
     }
     return indexSegment;
@@ -293,7 +301,7 @@ public class IndexSegmentTest {
    * @throws StoreException
    */
   private IndexSegment createIndexSegmentFromFile(File file, boolean isMapped, Journal journal) throws StoreException {
-    return new IndexSegment(file, isMapped, STORE_KEY_FACTORY, STORE_CONFIG, metrics, journal, time);
+    return new IndexSegment(file, isMapped, STORE_KEY_FACTORY, config, metrics, journal, time);
   }
 
   /**
@@ -119,6 +119,80 @@ public class IndexTest {
     verifyValue(nonExistentId, state.index.findKey(nonExistentId));
   }
 
+  /**
+   * Tests {@link PersistentIndex#findKey(StoreKey)} and {@link PersistentIndex#findKey(StoreKey, FileSpan)} when bloom
+   * first lookups are enabled, both with sequential and with parallel searches of the candidate segments.
+   * @throws StoreException
+   */
+  @Test
+  public void findKeyWithBloomFirstLookupTest() throws StoreException {
+    state.properties.put("store.index.bloom.first.lookup.enabled", "true");
+    state.properties.put("store.index.parallel.lookup.thread.count", "2");
+    for (String minCandidatesForParallelLookup : new String[]{"0", "1"}) {
+      state.properties.put("store.index.parallel.lookup.min.candidates", minCandidatesForParallelLookup);
+      state.reloadIndex(true, false);
+      findKeyTest();
+      findKeyWithFileSpanTest();
+      String metricPrefix = PersistentIndex.class.getName() + "." + tempDir.getAbsolutePath() + ".";
+      long lookupCount =
+          state.metricRegistry.getHistograms().get(metricPrefix + "CandidateSegmentsPerBlobCount").getCount();
+      long parallelLookupCount =
+          state.metricRegistry.getCounters().get(metricPrefix + "ParallelLookupCount").getCount();
+      assertTrue("Bloom first lookups should have been done", lookupCount > 0);
+      assertEquals("Parallel lookups done only if enabled", !minCandidatesForParallelLookup.equals("0"),
+          parallelLookupCount > 0);
+    }
+  }
+
+  /**
+   * Tests {@link PersistentIndex#findKey(StoreKey)} and {@link PersistentIndex#findKey(StoreKey, FileSpan)} when the
+   * key to segment summary is enabled, including after segments are removed and added back.
+   * @throws IOException
+   * @throws StoreException
+   */
+  @Test
+  public void findKeyWithKeySegmentSummaryTest() throws IOException, StoreException {
+    state.properties.put("store.index.key.segment.summary.enabled", "true");
+    state.reloadIndex(true, false);
+    findKeyTest();
+    findKeyWithFileSpanTest();
+
+    Map<Offset, IndexSegment> toRemove = new HashMap<>();
+    Set<Offset> toRetain = new HashSet<>();
+    partitionIndexSegments(toRemove, toRetain);
+    List<File> filesToAdd = new ArrayList<>();
+    for (IndexSegment indexSegment : toRemove.values()) {
+      filesToAdd.add(indexSegment.getFile());
+    }
+    // remove the segments and add them back twice so that removals deferred from earlier changes are exercised.
+    for (int i = 0; i < 2; i++) {
+      state.index.changeIndexSegments(Collections.EMPTY_LIST, toRemove.keySet());
+      state.index.changeIndexSegments(filesToAdd, Collections.EMPTY_SET);
+      findKeyTest();
+      findKeyWithFileSpanTest();
+    }
+  }
+
+  /**
+   * Tests lookups and {@link PersistentIndex#findEntriesSince(FindToken, long)} when the in memory index segments are
+   * held off heap.
+   * @throws InterruptedException
+   * @throws IOException
+   * @throws StoreException
+   */
+  @Test
+  public void offHeapActiveSegmentTest() throws InterruptedException, IOException, StoreException {
+    state.properties.put("store.index.off.heap.active.segment.enabled", "true");
+    state.reloadIndex(true, false);
+    findKeyTest();
+    findKeyWithFileSpanTest();
+    // segments written to disk by the off heap representation have to load correctly
+    state.reloadIndex(true, false);
+    findKeyTest();
+    findKeyWithFileSpanTest();
+    findEntriesSinceTest();
+  }
+
   /**
    * Tests for {@link PersistentIndex#findKey(StoreKey, FileSpan)}.
    * Cases:
@@ -477,11 +551,12 @@ public class IndexTest {
 
   /**
    * Tests {@link PersistentIndex#changeIndexSegments(List, Set)} for good and bad cases.
+   * @throws InterruptedException
    * @throws IOException
    * @throws StoreException
    */
   @Test
-  public void changeIndexSegmentsTest() throws IOException, StoreException {
+  public void changeIndexSegmentsTest() throws InterruptedException, IOException, StoreException {
     ConcurrentSkipListMap<Offset, IndexSegment> indexes = state.index.getIndexSegments();
     Set<Offset> saved = indexes.clone().keySet();
 
@@ -531,13 +606,18 @@ public class IndexTest {
       // expected. Nothing to do.
     }
 
-    // add an entry into the journal for the very first offset in the index
-    state.index.journal.addEntry(state.logOrder.firstKey(), state.logOrder.firstEntry().getValue().getFirst());
-    // remove the first index segment
-    IndexSegment firstSegment = state.index.getIndexSegments().remove(state.index.getIndexSegments().firstKey());
+    // add entries so that the segment whose entries are in the journal is sealed and persisted
+    state.addPutEntries(CuratedLogIndexState.MAX_IN_MEM_ELEMENTS, CuratedLogIndexState.PUT_RECORD_SIZE,
+        Utils.Infinite_Time);
+    state.index.persistIndex();
+    // remove the sealed index segment that contains the first offset in the journal
+    Offset segmentStartOffset = state.index.getIndexSegments().floorKey(state.index.journal.getFirstOffset());
+    assertFalse("Segment should be sealed",
+        segmentStartOffset.equals(state.index.getIndexSegments().lastKey()));
+    IndexSegment segmentInJournal = state.index.getIndexSegments().remove(segmentStartOffset);
     // try to add it back and it should result in an error
     try {
-      state.index.changeIndexSegments(Collections.singletonList(firstSegment.getFile()), Collections.EMPTY_SET);
+      state.index.changeIndexSegments(Collections.singletonList(segmentInJournal.getFile()), Collections.EMPTY_SET);
       fail("Should have failed to add index segment because its end offset is past the first offset in the journal");
     } catch (IllegalArgumentException e) {
       // expected. Nothing to do.
@@ -16,6 +16,8 @@ package com.github.ambry.store;
 import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Utils;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -84,4 +86,103 @@ public class JournalTest {
     Assert.assertEquals(entries.get(4).getOffset(), new Offset(secondLogSegmentName, 1000));
     Assert.assertEquals(entries.get(4).getKey(), new MockId("id7"));
   }
+
+  /**
+   * Tests that the journal keeps the most recent entries and returns them correctly as it grows and wraps around,
+   * along with the crcs of the keys in it.
+   */
+  @Test
+  public void growAndWrapAroundTest() {
+    String logSegmentName = LogSegmentNameHelper.generateFirstSegmentName(false);
+    int maxEntries = 2500;
+    int maxEntriesToReturn = 100;
+    Journal journal = new Journal("test", maxEntries, maxEntriesToReturn);
+    int totalEntries = 2 * maxEntries + 10;
+    for (int i = 0; i < totalEntries; i++) {
+      journal.addEntry(new Offset(logSegmentName, i * 10), new MockId("id" + i), (long) i);
+      int firstIndex = Math.max(0, i + 1 - maxEntries);
+      Assert.assertEquals("First offset not as expected", new Offset(logSegmentName, firstIndex * 10),
+          journal.getFirstOffset());
+      Assert.assertEquals("Last offset not as expected", new Offset(logSegmentName, i * 10), journal.getLastOffset());
+    }
+    int firstIndex = totalEntries - maxEntries;
+    Assert.assertNull("Entry should have been removed", journal.getEntriesSince(new Offset(logSegmentName, 0), true));
+    Assert.assertNull("Crc should have been removed", journal.getCrcOfKey(new MockId("id0")));
+    Assert.assertNull("Offset is not an entry", journal.getEntriesSince(new Offset(logSegmentName, 15), true));
+    for (int i = firstIndex; i < totalEntries; i += 37) {
+      List<JournalEntry> entries = journal.getEntriesSince(new Offset(logSegmentName, i * 10), false);
+      int expectedCount = Math.min(maxEntriesToReturn, totalEntries - i - 1);
+      Assert.assertEquals("Unexpected number of entries", expectedCount, entries.size());
+      for (int j = 0; j < expectedCount; j++) {
+        Assert.assertEquals(new Offset(logSegmentName, (i + 1 + j) * 10), entries.get(j).getOffset());
+        Assert.assertEquals(new MockId("id" + (i + 1 + j)), entries.get(j).getKey());
+      }
+      Assert.assertEquals("Crc not as expected", Long.valueOf(i), journal.getCrcOfKey(new MockId("id" + i)));
+    }
+  }
+
+  /**
+   * Tests that entries have to be added in the order of their offsets.
+   */
+  @Test
+  public void outOfOrderAddTest() {
+    String logSegmentName = LogSegmentNameHelper.generateFirstSegmentName(false);
+    Journal journal = new Journal("test", 10, 5);
+    journal.addEntry(new Offset(logSegmentName, 1000), new MockId("id1"));
+    for (long offset : new long[]{1000, 999}) {
+      try {
+        journal.addEntry(new Offset(logSegmentName, offset), new MockId("id2"));
+        Assert.fail("Adding an entry with an offset that is not greater than the last one should fail");
+      } catch (IllegalArgumentException e) {
+        // expected. Nothing to do.
+      }
+    }
+    Assert.assertEquals("Last offset not as expected", new Offset(logSegmentName, 1000), journal.getLastOffset());
+  }
+
+  /**
+   * Tests that readers always get consistent entries while a writer is adding entries and wrapping around.
+   * @throws Exception
+   */
+  @Test
+  public void concurrentReadWriteTest() throws Exception {
+    final String logSegmentName = LogSegmentNameHelper.generateFirstSegmentName(false);
+    final int maxEntries = 100;
+    final int totalEntries = 100000;
+    final Journal journal = new Journal("test", maxEntries, 10);
+    final AtomicReference<Throwable> exception = new AtomicReference<>();
+    final AtomicBoolean writerDone = new AtomicBoolean(false);
+    journal.addEntry(new Offset(logSegmentName, 0), new MockId("id0"));
+    Thread writer = new Thread(() -> {
+      for (int i = 1; i < totalEntries; i++) {
+        journal.addEntry(new Offset(logSegmentName, i), new MockId("id" + i));
+      }
+      writerDone.set(true);
+    });
+    Thread reader = new Thread(() -> {
+      try {
+        while (!writerDone.get()) {
+          Offset first = journal.getFirstOffset();
+          Offset last = journal.getLastOffset();
+          Assert.assertTrue("First offset is after last offset", first.compareTo(last) <= 0);
+          List<JournalEntry> entries = journal.getEntriesSince(first, true);
+          if (entries != null) {
+            long expectedOffset = first.getOffset();
+            for (JournalEntry entry : entries) {
+              Assert.assertEquals("Unexpected offset", expectedOffset, entry.getOffset().getOffset());
+              Assert.assertEquals("Key does not match offset", new MockId("id" + expectedOffset), entry.getKey());
+              expectedOffset++;
+            }
+          }
+        }
+      } catch (Throwable e) {
+        exception.set(e);
+      }
+    });
+    reader.start();
+    writer.start();
+    writer.join();
+    reader.join();
+    Assert.assertNull("Reader saw inconsistent entries: " + exception.get(), exception.get());
+  }
 }
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.FilterFactory;
+import com.github.ambry.utils.UtilsTest;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link KeySegmentSummary}.
+ */
+public class KeySegmentSummaryTest {
+  private static final int SEGMENT_COUNT = 10;
+  private static final int KEYS_PER_SEGMENT = 500;
+
+  private final KeySegmentSummary summary = new KeySegmentSummary();
+  private final List<Offset> segmentStartOffsets = new ArrayList<>();
+  private final Map<MockId, Set<Offset>> keyToSegments = new HashMap<>();
+
+  /**
+   * Creates a summary with {@link #SEGMENT_COUNT} segments with {@link #KEYS_PER_SEGMENT} keys each. Some of the keys
+   * in each segment are also present in the previous segment.
+   */
+  public KeySegmentSummaryTest() {
+    List<MockId> keysInPrevSegment = Collections.emptyList();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      Offset startOffset = new Offset(LogSegmentNameHelper.getName(i, 0), 0);
+      segmentStartOffsets.add(startOffset);
+      List<MockId> keysInSegment = new ArrayList<>();
+      for (int j = 0; j < KEYS_PER_SEGMENT; j++) {
+        MockId key = j < keysInPrevSegment.size() / 10 ? keysInPrevSegment.get(j)
+            : new MockId(UtilsTest.getRandomString(10));
+        keysInSegment.add(key);
+        addToSummary(key, startOffset);
+      }
+      keysInPrevSegment = keysInSegment;
+    }
+  }
+
+  /**
+   * Tests that all the segments that a key has been added to are returned by the summary, even after the summary grows.
+   */
+  @Test
+  public void addAndGetTest() {
+    assertTrue("Summary should have grown", summary.capacity() > 1024);
+    verifySummary();
+    // adding the same key and segment again does not change anything
+    int size = summary.size();
+    for (Map.Entry<MockId, Set<Offset>> entry : keyToSegments.entrySet()) {
+      for (Offset segmentStartOffset : entry.getValue()) {
+        summary.add(getKeyHash(entry.getKey()), segmentStartOffset);
+      }
+    }
+    assertEquals("Size should not have changed", size, summary.size());
+    assertTrue("Unknown key should not have any segments",
+        summary.getSegmentStartOffsets(getKeyHash(new MockId(UtilsTest.getRandomString(11)))).isEmpty());
+  }
+
+  /**
+   * Tests that segments can be removed and that their ids are reused.
+   */
+  @Test
+  public void removeSegmentsTest() {
+    Set<Offset> toRemove = new HashSet<>(segmentStartOffsets.subList(0, SEGMENT_COUNT / 2));
+    summary.removeSegments(toRemove);
+    for (Set<Offset> segments : keyToSegments.values()) {
+      segments.removeAll(toRemove);
+    }
+    verifySummary();
+    // removing unknown segments has no effect
+    int size = summary.size();
+    summary.removeSegments(toRemove);
+    assertEquals("Size should not have changed", size, summary.size());
+    // add a new segment that takes the id of a removed one
+    Offset newStartOffset = new Offset(LogSegmentNameHelper.getName(0, 1), 0);
+    for (int i = 0; i < KEYS_PER_SEGMENT; i++) {
+      addToSummary(new MockId(UtilsTest.getRandomString(10)), newStartOffset);
+    }
+    verifySummary();
+  }
+
+  /**
+   * Adds {@code key} in the segment starting at {@code segmentStartOffset} to the summary and the expected state.
+   * @param key the {@link MockId} to add.
+   * @param segmentStartOffset the start {@link Offset} of the segment.
+   */
+  private void addToSummary(MockId key, Offset segmentStartOffset) {
+    summary.add(getKeyHash(key), segmentStartOffset);
+    Set<Offset> segments = keyToSegments.get(key);
+    if (segments == null) {
+      segments = new HashSet<>();
+      keyToSegments.put(key, segments);
+    }
+    segments.add(segmentStartOffset);
+  }
+
+  /**
+   * Verifies that the summary returns at least all the expected segments of every key.
+   */
+  private void verifySummary() {
+    int expectedSize = 0;
+    for (Map.Entry<MockId, Set<Offset>> entry : keyToSegments.entrySet()) {
+      Set<Offset> segmentsFound = new HashSet<>(summary.getSegmentStartOffsets(getKeyHash(entry.getKey())));
+      assertTrue("Segments of " + entry.getKey() + " are missing", segmentsFound.containsAll(entry.getValue()));
+      expectedSize += entry.getValue().size();
+    }
+    assertEquals("Unexpected size", expectedSize, summary.size());
+  }
+
+  private static long[] getKeyHash(MockId key) {
+    return FilterFactory.getKeyHash(ByteBuffer.wrap(key.toBytes()));
+  }
+}
@@ -30,6 +30,15 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Test;
 
@@ -123,6 +132,79 @@ public class LogSegmentTest {
     }
   }
 
+  /**
+   * Tests that a flush that runs concurrently with another does not return before the force that covers its writes has
+   * completed, that nothing is forced if nothing was written and that writes are forced again if a force fails.
+   * @throws Exception
+   */
+  @Test
+  public void concurrentFlushTest() throws Exception {
+    String segmentName = "log_current";
+    getSegment(segmentName, STANDARD_SEGMENT_SIZE, true).close();
+    final CountDownLatch forceStarted = new CountDownLatch(1);
+    final CountDownLatch forceRelease = new CountDownLatch(1);
+    final AtomicInteger forceCount = new AtomicInteger(0);
+    final AtomicBoolean failForce = new AtomicBoolean(false);
+    final LogSegment segment = new LogSegment(segmentName, new File(tempDir, segmentName), metrics) {
+      @Override
+      void forceToDisk() throws IOException {
+        forceCount.incrementAndGet();
+        forceStarted.countDown();
+        try {
+          forceRelease.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        if (failForce.get()) {
+          throw new IOException("Injected force failure");
+        }
+        super.forceToDisk();
+      }
+    };
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      Callable<Void> flush = new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          segment.flush();
+          return null;
+        }
+      };
+      appendRandomData(segment, STANDARD_SEGMENT_SIZE / 4);
+      Future<Void> firstFlush = executorService.submit(flush);
+      assertTrue("Force did not start", forceStarted.await(1, TimeUnit.SECONDS));
+      Future<Void> secondFlush = executorService.submit(flush);
+      try {
+        secondFlush.get(100, TimeUnit.MILLISECONDS);
+        fail("Flush should not have returned before the force in progress completed");
+      } catch (TimeoutException e) {
+        // expected. Nothing to do.
+      }
+      assertFalse("Flush should not have returned before the force completed", firstFlush.isDone());
+      forceRelease.countDown();
+      firstFlush.get(1, TimeUnit.SECONDS);
+      secondFlush.get(1, TimeUnit.SECONDS);
+      assertEquals("The writes should have been forced once", 1, forceCount.get());
+      segment.flush();
+      assertEquals("Nothing should have been forced because nothing was written", 1, forceCount.get());
+
+      appendRandomData(segment, STANDARD_SEGMENT_SIZE / 4);
+      failForce.set(true);
+      try {
+        segment.flush();
+        fail("Flush should have failed");
+      } catch (IOException e) {
+        // expected. Nothing to do.
+      }
+      failForce.set(false);
+      segment.flush();
+      assertEquals("The writes should have been forced again after the failure", 3, forceCount.get());
+    } finally {
+      executorService.shutdownNow();
+      closeSegmentAndDeleteFile(segment);
+    }
+  }
+
   /**
    * Verifies getting and closing views and makes sure that data and ref counts are consistent.
    * @throws IOException
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.config.StoreConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.utils.MockTime;
+import com.github.ambry.utils.UtilsTest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link LogSyncer}.
+ */
+public class LogSyncerTest {
+  private static final long LOG_CAPACITY = 1024;
+
+  private final File tempDir;
+  private final StoreMetrics metrics;
+  private final Log log;
+
+  /**
+   * Creates a temporary directory and a {@link Log} in it.
+   * @throws IOException
+   */
+  public LogSyncerTest() throws IOException {
+    tempDir = Files.createTempDirectory("logDir-" + UtilsTest.getRandomString(10)).toFile();
+    tempDir.deleteOnExit();
+    metrics = new StoreMetrics(tempDir.getName(), new MetricRegistry());
+    log = new Log(tempDir.getAbsolutePath(), LOG_CAPACITY, LOG_CAPACITY, metrics);
+  }
+
+  /**
+   * Closes the log and deletes the temporary directory.
+   * @throws IOException
+   */
+  @After
+  public void cleanup() throws IOException {
+    log.close();
+    File[] files = tempDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        assertTrue("The file [" + file.getAbsolutePath() + "] could not be deleted", file.delete());
+      }
+    }
+    assertTrue("The directory [" + tempDir.getAbsolutePath() + "] could not be deleted", tempDir.delete());
+  }
+
+  /**
+   * Tests that the names of the modes in the config are understood and that unknown names are rejected, both by the
+   * config and when they are parsed.
+   */
+  @Test
+  public void fromConfigNameTest() {
+    assertEquals(LogSyncer.DurabilityMode.ASYNC, LogSyncer.DurabilityMode.fromConfigName("async"));
+    assertEquals(LogSyncer.DurabilityMode.GROUP_FSYNC, LogSyncer.DurabilityMode.fromConfigName("group-fsync"));
+    assertEquals(LogSyncer.DurabilityMode.SYNC_PER_WRITE, LogSyncer.DurabilityMode.fromConfigName("sync-per-write"));
+    try {
+      LogSyncer.DurabilityMode.fromConfigName("never");
+      fail("Unknown mode should have been rejected");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+
+    for (String mode : StoreConfig.STORE_DATA_DURABILITY_MODES) {
+      Properties properties = new Properties();
+      properties.setProperty("store.data.durability.mode", mode);
+      StoreConfig config = new StoreConfig(new VerifiableProperties(properties));
+      assertNotNull("Mode in the config should be understood",
+          LogSyncer.DurabilityMode.fromConfigName(config.storeDataDurabilityMode));
+    }
+    Properties properties = new Properties();
+    properties.setProperty("store.data.durability.mode", "group-fsnyc");
+    try {
+      new StoreConfig(new VerifiableProperties(properties));
+      fail("Config with an unknown mode should have been rejected");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Tests that {@link LogSyncer.DurabilityMode#ASYNC} never flushes and that
+   * {@link LogSyncer.DurabilityMode#SYNC_PER_WRITE} flushes on every call.
+   * @throws IOException
+   */
+  @Test
+  public void asyncAndSyncPerWriteTest() throws IOException {
+    LogSyncer syncer = new LogSyncer(log, LogSyncer.DurabilityMode.ASYNC, 0, metrics, new MockTime());
+    for (int i = 0; i < 3; i++) {
+      write();
+      syncer.sync();
+    }
+    assertEquals("There should have been no flushes", 0, metrics.logFlushTime.getCount());
+
+    syncer = new LogSyncer(log, LogSyncer.DurabilityMode.SYNC_PER_WRITE, 0, metrics, new MockTime());
+    for (int i = 0; i < 3; i++) {
+      write();
+      syncer.sync();
+    }
+    assertEquals("Every sync should have flushed", 3, metrics.logFlushTime.getCount());
+    assertEquals("Every flush should have been for one request", 1, metrics.logFlushBatchSize.getSnapshot().getMax());
+  }
+
+  /**
+   * Tests that concurrent calls in {@link LogSyncer.DurabilityMode#GROUP_FSYNC} share a single flush. The leader is held
+   * in its delay until all the other callers are waiting.
+   * @throws Exception
+   */
+  @Test
+  public void groupFsyncTest() throws Exception {
+    int callerCount = 5;
+    final CountDownLatch leaderDelayed = new CountDownLatch(1);
+    final CountDownLatch releaseLeader = new CountDownLatch(1);
+    MockTime time = new MockTime() {
+      @Override
+      public void sleep(long ms) {
+        leaderDelayed.countDown();
+        try {
+          releaseLeader.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    final LogSyncer syncer = new LogSyncer(log, LogSyncer.DurabilityMode.GROUP_FSYNC, 1, metrics, time);
+    final AtomicReference<Exception> exception = new AtomicReference<>();
+    Runnable caller = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          syncer.sync();
+        } catch (Exception e) {
+          exception.set(e);
+        }
+      }
+    };
+    write();
+    List<Thread> threads = new ArrayList<>();
+    Thread leader = new Thread(caller);
+    threads.add(leader);
+    leader.start();
+    assertTrue("Leader did not start its delay", leaderDelayed.await(10, TimeUnit.SECONDS));
+    for (int i = 1; i < callerCount; i++) {
+      Thread follower = new Thread(caller);
+      threads.add(follower);
+      follower.start();
+    }
+    for (Thread follower : threads.subList(1, threads.size())) {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (follower.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+        Thread.sleep(1);
+      }
+      assertEquals("Follower is not waiting for the flush", Thread.State.WAITING, follower.getState());
+    }
+    releaseLeader.countDown();
+    for (Thread thread : threads) {
+      thread.join(10000);
+      assertFalse("Caller did not finish", thread.isAlive());
+    }
+    assertNull("There should have been no exceptions", exception.get());
+    assertEquals("All callers should have shared one flush", 1, metrics.logFlushTime.getCount());
+    assertEquals("Flush should have served all callers", callerCount,
+        metrics.logFlushBatchSize.getSnapshot().getMax());
+
+    // a call after the group starts a new flush
+    syncer.sync();
+    assertEquals("A new flush should have been done", 2, metrics.logFlushTime.getCount());
+  }
+
+  /**
+   * Writes a byte to the log.
+   * @throws IOException
+   */
+  private void write() throws IOException {
+    log.appendFrom(ByteBuffer.wrap(new byte[1]));
+  }
+}
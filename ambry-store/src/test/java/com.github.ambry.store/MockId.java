@@ -64,6 +64,24 @@ public class MockId extends StoreKey {
     return id.compareTo(otherId.id);
   }
 
+  @Override
+  public int compareToSerialized(ByteBuffer buffer, int position) {
+    int otherIdSize = buffer.getShort(position);
+    int otherIdStart = position + Id_Size_In_Bytes;
+    for (int i = 0; i < Math.min(id.length(), otherIdSize); i++) {
+      int result = id.charAt(i) - (char) (buffer.get(otherIdStart + i) & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return id.length() - otherIdSize;
+  }
+
+  @Override
+  public boolean isSerializedComparisonSupported() {
+    return true;
+  }
+
   @Override
   public int hashCode() {
     return Utils.hashcode(new Object[]{id});
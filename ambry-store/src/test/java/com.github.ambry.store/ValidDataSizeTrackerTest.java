@@ -0,0 +1,226 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.Pair;
+import com.github.ambry.utils.Time;
+import com.github.ambry.utils.Utils;
+import com.github.ambry.utils.UtilsTest;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link ValidDataSizeTracker}.
+ */
+public class ValidDataSizeTrackerTest {
+  private static final String FIRST_SEGMENT = "1_0";
+  private static final String SECOND_SEGMENT = "2_0";
+  private static final short ACCOUNT_ID = 1;
+  private static final short CONTAINER_ID = 2;
+  // index values keep expiry times at the granularity of seconds
+  private static final long SEC = Time.MsPerSec;
+
+  private final File tempDir;
+  private final ValidDataSizeTracker tracker = new ValidDataSizeTracker(0, SEC);
+
+  /**
+   * Creates a temporary directory and adds the following to the tracker
+   * 1. A put of size 100 in the first segment with no expiry.
+   * 2. A put of size 200 in the first segment that expires at 100s.
+   * 3. A put of size 400 in the second segment that is deleted at 50s with a delete record of size 10.
+   * 4. A put of size 800 in the second segment that expires at 100s and is deleted at 150s with a delete record of size
+   * 20.
+   * @throws IOException
+   */
+  public ValidDataSizeTrackerTest() throws IOException {
+    tempDir = StoreTestUtils.createTempDirectory("trackerDir-" + UtilsTest.getRandomString(10));
+    tracker.addPut(newPut(100, FIRST_SEGMENT, Utils.Infinite_Time));
+    tracker.addPut(newPut(200, FIRST_SEGMENT, 100 * SEC));
+    IndexValue deletedPut = newPut(400, SECOND_SEGMENT, Utils.Infinite_Time);
+    // the order of the put and its deletion does not matter
+    tracker.markDeleted(deletedPut, 50 * SEC);
+    tracker.addPut(deletedPut);
+    tracker.addDeleteRecord(newPut(10, SECOND_SEGMENT, Utils.Infinite_Time));
+    IndexValue expiredAndDeletedPut = newPut(800, SECOND_SEGMENT, 100 * SEC);
+    tracker.addPut(expiredAndDeletedPut);
+    tracker.markDeleted(expiredAndDeletedPut, 150 * SEC);
+    tracker.addDeleteRecord(newPut(20, SECOND_SEGMENT, Utils.Infinite_Time));
+  }
+
+  /**
+   * Deletes the temporary directory.
+   * @throws InterruptedException
+   * @throws IOException
+   */
+  @After
+  public void cleanup() throws InterruptedException, IOException, StoreException {
+    assertTrue(tempDir.getAbsolutePath() + " could not be deleted", StoreTestUtils.cleanDirectory(tempDir, true));
+  }
+
+  /**
+   * Tests the valid data sizes at different reference times and that they cannot be obtained before the history start
+   * time once the history has been pruned.
+   */
+  @Test
+  public void validDataSizeAndPruneTest() {
+    verifyValidDataSize(tracker, 0, 1500, 100 + 200, 400 + 800 + 10 + 20);
+    verifyValidDataSize(tracker, 50 * SEC, 1500, 100 + 200, 400 + 800 + 10 + 20);
+    verifyValidDataSize(tracker, 51 * SEC, 1100, 100 + 200, 800 + 10 + 20);
+    verifyValidDataSize(tracker, 100 * SEC, 1100, 100 + 200, 800 + 10 + 20);
+    verifyValidDataSize(tracker, 101 * SEC, 100, 100, 10 + 20);
+
+    tracker.pruneHistory(60 * SEC);
+    assertEquals("Unexpected history start time", 60 * SEC, tracker.getHistoryStartTimeMs());
+    assertNull("Sizes before the history start time should not be available",
+        tracker.getValidDataSizeByContainer(59 * SEC));
+    assertNull("Sizes before the history start time should not be available",
+        tracker.getValidDataSizeByLogSegment(59 * SEC));
+    verifyValidDataSize(tracker, 60 * SEC, 1100, 100 + 200, 800 + 10 + 20);
+    verifyValidDataSize(tracker, 101 * SEC, 100, 100, 10 + 20);
+    // moving the history start time back has no effect
+    tracker.pruneHistory(0);
+    assertEquals("Unexpected history start time", 60 * SEC, tracker.getHistoryStartTimeMs());
+
+    tracker.pruneHistory(200 * SEC);
+    verifyValidDataSize(tracker, 200 * SEC, 100, 100, 10 + 20);
+    // puts that have expired before the history start time are ignored
+    IndexValue expiredPut = newPut(1000, FIRST_SEGMENT, 150 * SEC);
+    tracker.addPut(expiredPut);
+    tracker.markDeleted(expiredPut, 300 * SEC);
+    verifyValidDataSize(tracker, 200 * SEC, 100, 100, 10 + 20);
+    assertEquals("Unexpected log segment names", new HashSet<>(Arrays.asList(FIRST_SEGMENT, SECOND_SEGMENT)),
+        tracker.getLogSegmentNames());
+  }
+
+  /**
+   * Tests that times are kept at the granularity of buckets, that the sizes at a reference time are those at the start
+   * of its bucket and that the history does not grow with the number of puts that expire or are deleted in a bucket.
+   * @throws IOException
+   */
+  @Test
+  public void bucketingTest() throws IOException {
+    long bucketSpanMs = 10 * SEC;
+    ValidDataSizeTracker bucketedTracker = new ValidDataSizeTracker(5 * SEC, bucketSpanMs);
+    assertEquals("History start time should be at the start of its bucket", 0, bucketedTracker.getHistoryStartTimeMs());
+    bucketedTracker.addPut(newPut(100, FIRST_SEGMENT, Utils.Infinite_Time));
+    bucketedTracker.addPut(newPut(200, FIRST_SEGMENT, 101 * SEC));
+    IndexValue deletedPut = newPut(400, SECOND_SEGMENT, Utils.Infinite_Time);
+    bucketedTracker.addPut(deletedPut);
+    bucketedTracker.markDeleted(deletedPut, 103 * SEC);
+    verifyValidDataSize(bucketedTracker, 99 * SEC, 700, 100 + 200, 400);
+    // the put that expires at 101s and the put that is deleted at 103s are valid anywhere in the bucket at 100s
+    verifyValidDataSize(bucketedTracker, 100 * SEC, 700, 100 + 200, 400);
+    verifyValidDataSize(bucketedTracker, 109 * SEC, 700, 100 + 200, 400);
+    verifyValidDataSize(bucketedTracker, 110 * SEC, 100, 100, 0);
+
+    File file = new File(tempDir, BlobStoreStats.VALID_DATA_SIZE_CHECKPOINT_FILE_NAME);
+    bucketedTracker.save(file, new Offset(SECOND_SEGMENT, 0));
+    long fileSize = file.length();
+    for (int i = 0; i < 100; i++) {
+      bucketedTracker.addPut(newPut(1, FIRST_SEGMENT, 100 * SEC + i * 10));
+      IndexValue anotherDeletedPut = newPut(1, SECOND_SEGMENT, Utils.Infinite_Time);
+      bucketedTracker.addPut(anotherDeletedPut);
+      bucketedTracker.markDeleted(anotherDeletedPut, 100 * SEC + i * 10);
+    }
+    bucketedTracker.save(file, new Offset(SECOND_SEGMENT, 0));
+    assertEquals("Puts that expire or are deleted in existing buckets should not grow the checkpoint", fileSize,
+        file.length());
+    verifyValidDataSize(bucketedTracker, 99 * SEC, 900, 100 + 200 + 100, 400 + 100);
+    assertEquals("Loaded tracker should have the same bucket span", bucketSpanMs,
+        ValidDataSizeTracker.load(file).getSecond().getBucketSpanMs());
+
+    // pruning moves the history start time to the start of its bucket
+    bucketedTracker.pruneHistory(115 * SEC);
+    assertEquals("Unexpected history start time", 110 * SEC, bucketedTracker.getHistoryStartTimeMs());
+    verifyValidDataSize(bucketedTracker, 110 * SEC, 100, 100, 0);
+  }
+
+  /**
+   * Tests that the tracker can be saved and loaded and that corrupt files are detected.
+   * @throws IOException
+   */
+  @Test
+  public void saveAndLoadTest() throws IOException {
+    File file = new File(tempDir, BlobStoreStats.VALID_DATA_SIZE_CHECKPOINT_FILE_NAME);
+    Offset indexEndOffset = new Offset(SECOND_SEGMENT, 1234);
+    tracker.save(file, indexEndOffset);
+    assertFalse("Temporary file should have been renamed", new File(file.getAbsolutePath() + ".tmp").exists());
+    Pair<Offset, ValidDataSizeTracker> loaded = ValidDataSizeTracker.load(file);
+    assertEquals("Index end offset mismatch", indexEndOffset, loaded.getFirst());
+    ValidDataSizeTracker loadedTracker = loaded.getSecond();
+    assertEquals("History start time mismatch", tracker.getHistoryStartTimeMs(), loadedTracker.getHistoryStartTimeMs());
+    for (long referenceTimeMs : new long[]{0, 50 * SEC, 51 * SEC, 100 * SEC, 101 * SEC}) {
+      assertEquals("Container sizes mismatch", tracker.getValidDataSizeByContainer(referenceTimeMs),
+          loadedTracker.getValidDataSizeByContainer(referenceTimeMs));
+      assertEquals("Log segment sizes mismatch", tracker.getValidDataSizeByLogSegment(referenceTimeMs),
+          loadedTracker.getValidDataSizeByLogSegment(referenceTimeMs));
+    }
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      // corrupt the last byte of the crc
+      randomAccessFile.seek(randomAccessFile.length() - 1);
+      byte value = randomAccessFile.readByte();
+      randomAccessFile.seek(randomAccessFile.length() - 1);
+      randomAccessFile.writeByte(~value);
+    }
+    try {
+      ValidDataSizeTracker.load(file);
+      fail("Loading a corrupt file should have failed");
+    } catch (IOException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * @param size the size of the put.
+   * @param logSegmentName the name of the log segment that the put is in.
+   * @param expiresAtMs the time at which the put expires.
+   * @return an {@link IndexValue} for a put.
+   */
+  private static IndexValue newPut(long size, String logSegmentName, long expiresAtMs) {
+    return new IndexValue(size, new Offset(logSegmentName, 0), expiresAtMs, Utils.Infinite_Time, ACCOUNT_ID,
+        CONTAINER_ID);
+  }
+
+  /**
+   * Verifies the valid data sizes reported by {@code tracker}.
+   * @param tracker the {@link ValidDataSizeTracker} to verify.
+   * @param referenceTimeMs the reference time to verify at.
+   * @param containerSize the expected valid data size of the container.
+   * @param firstSegmentSize the expected valid data size of the first log segment.
+   * @param secondSegmentSize the expected valid data size of the second log segment.
+   */
+  private static void verifyValidDataSize(ValidDataSizeTracker tracker, long referenceTimeMs, long containerSize,
+      long firstSegmentSize, long secondSegmentSize) {
+    Map<String, Map<String, Long>> containerSizes = tracker.getValidDataSizeByContainer(referenceTimeMs);
+    assertEquals("Container size mismatch at " + referenceTimeMs, containerSize,
+        containerSizes.get(String.valueOf(ACCOUNT_ID)).get(String.valueOf(CONTAINER_ID)).longValue());
+    NavigableMap<String, Long> logSegmentSizes = tracker.getValidDataSizeByLogSegment(referenceTimeMs);
+    // log segments without valid data are not reported
+    assertEquals("First log segment size mismatch at " + referenceTimeMs, firstSegmentSize,
+        logSegmentSizes.containsKey(FIRST_SEGMENT) ? logSegmentSizes.get(FIRST_SEGMENT).longValue() : 0);
+    assertEquals("Second log segment size mismatch at " + referenceTimeMs, secondSegmentSize,
+        logSegmentSizes.containsKey(SECOND_SEGMENT) ? logSegmentSizes.get(SECOND_SEGMENT).longValue() : 0);
+  }
+}
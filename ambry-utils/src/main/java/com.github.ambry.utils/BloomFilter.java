@@ -41,11 +41,15 @@ public abstract class BloomFilter implements IFilter {
     long[] result = new long[hashCount];
     long[] hash = this.hash(b, b.position(), b.remaining(), 0L);
     for (int i = 0; i < hashCount; ++i) {
-      result[i] = Math.abs((hash[0] + (long) i * hash[1]) % max);
+      result[i] = getHashBucket(hash, i, max);
     }
     return result;
   }
 
+  private static long getHashBucket(long[] hash, int i, long max) {
+    return Math.abs((hash[0] + (long) i * hash[1]) % max);
+  }
+
   public void add(ByteBuffer key) {
     for (long bucketIndex : getHashBuckets(key)) {
       bitset.set(bucketIndex);
@@ -61,6 +65,16 @@ public abstract class BloomFilter implements IFilter {
     return true;
   }
 
+  public boolean isPresent(long[] keyHash) {
+    long max = bitset.capacity();
+    for (int i = 0; i < hashCount; ++i) {
+      if (!bitset.get(getHashBucket(keyHash, i, max))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public void clear() {
     bitset.clear();
   }
@@ -75,6 +75,13 @@ public class ByteBufferInputStream extends InputStream {
     return count;
   }
 
+  @Override
+  public long skip(long n) throws IOException {
+    int count = (int) Math.max(0, Math.min(byteBuffer.remaining(), n));
+    byteBuffer.position(byteBuffer.position() + count);
+    return count;
+  }
+
   @Override
   public int available() throws IOException {
     return byteBuffer.remaining();
@@ -107,6 +114,32 @@ public class ByteBufferInputStream extends InputStream {
     return new ByteBufferInputStream(byteBuffer.duplicate());
   }
 
+  /**
+   * Returns a stream over the next {@code size} bytes of this stream and moves this stream past them. The returned
+   * stream shares its content with this stream, so the bytes are not copied.
+   * @param size the number of bytes that the returned stream should contain.
+   * @return a {@link ByteBufferInputStream} over the next {@code size} bytes of this stream.
+   * @throws IOException if there are fewer than {@code size} bytes remaining in this stream.
+   */
+  public ByteBufferInputStream readSlice(int size) throws IOException {
+    if (size < 0 || size > byteBuffer.remaining()) {
+      throw new IOException("Size to be read " + size + " is not within the remaining size " + byteBuffer.remaining());
+    }
+    ByteBuffer slice = byteBuffer.duplicate();
+    slice.limit(slice.position() + size);
+    byteBuffer.position(byteBuffer.position() + size);
+    return new ByteBufferInputStream(slice.slice());
+  }
+
+  /**
+   * Adds the remaining bytes of this stream to {@code crc} without consuming them. Unlike going through
+   * {@link #getByteBuffer()}, the checksum is computed straight from the backing array if the buffer is on the heap.
+   * @param crc the {@link Crc32} to update.
+   */
+  public void updateCrc(Crc32 crc) {
+    crc.update(byteBuffer);
+  }
+
   /**
    * Return the underlying read-only {@link ByteBuffer} associated with this ByteBufferInputStream.
    * <br>
@@ -13,6 +13,7 @@
  */
 package com.github.ambry.utils;
 
+import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
 
@@ -96,6 +97,25 @@ public class Crc32 implements Checksum {
     crc = localCrc;
   }
 
+  /**
+   * Updates the checksum with the bytes of {@code buffer} from its position to its limit. The position of
+   * {@code buffer} is not changed.
+   * @param buffer the {@link ByteBuffer} whose remaining bytes need to be added to the checksum.
+   */
+  public void update(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    } else {
+      ByteBuffer duplicate = buffer.duplicate();
+      byte[] chunk = new byte[Math.min(duplicate.remaining(), 4096)];
+      while (duplicate.hasRemaining()) {
+        int length = Math.min(duplicate.remaining(), chunk.length);
+        duplicate.get(chunk, 0, length);
+        update(chunk, 0, length);
+      }
+    }
+  }
+
   @Override
   final public void update(int b) {
     crc = (crc >>> 8) ^ T[T8_0_start + ((crc ^ b) & 0xff)];
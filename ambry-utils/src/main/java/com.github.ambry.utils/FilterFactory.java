@@ -16,6 +16,7 @@ package com.github.ambry.utils;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +34,16 @@ public class FilterFactory {
     return Murmur3BloomFilter.serializer.deserialize(input);
   }
 
+  /**
+   * Hashes a key for {@link IFilter#isPresent(long[])}. The hash can be used with any filter created by this factory,
+   * which allows a key to be checked against many filters while being hashed only once.
+   * @param key the key to hash.
+   * @return the hash of the key.
+   */
+  public static long[] getKeyHash(ByteBuffer key) {
+    return MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0L);
+  }
+
   /**
    * @return A BloomFilter with the lowest practical false positive
    *         probability for the given number of elements.
@@ -32,6 +32,14 @@ public interface IFilter extends Closeable {
    */
   public abstract boolean isPresent(ByteBuffer key);
 
+  /**
+   * Determines if the key whose hash is {@code keyHash} was previously added to this filter with a possibility of false
+   * positives (but not false negatives).
+   * @param keyHash the hash of the key as returned by {@link FilterFactory#getKeyHash(ByteBuffer)}.
+   * @return true means "possibly present"; false means "definitely not present".
+   */
+  public abstract boolean isPresent(long[] keyHash);
+
   /**
    * Clears the filter
    */
@@ -0,0 +1,503 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A bounded {@link ByteBufferPool} that recycles the buffers returned to it.
+ * <p/>
+ * Buffers are allocated in size classes. Every power of two from {@link #MIN_BUFFER_SIZE} up is split into four
+ * classes, so a buffer is at most 25% larger than the size requested (a 4 MB chunk with a small header fits a 5 MB
+ * buffer rather than an 8 MB one). The buffers returned by {@link #allocate(int, long)} have their limit set to the
+ * size requested. Sizes larger than the largest class are allocated exactly and are not recycled.
+ * <p/>
+ * Returned buffers are kept in a lock-free free list per size class that is shared by all threads. Threads that
+ * allocate from the pool also keep a small cache of the buffers they return, which is checked before the shared free
+ * lists. Thread caches are only worth having on long lived threads that both allocate and release buffers, since the
+ * buffers in the cache of a thread are only reused by that thread. Other threads can still drop them, even after the
+ * owning thread has exited, when they need the memory for a new buffer.
+ * <p/>
+ * The capacity bounds the memory held by the pool, both in buffers that are in use and in buffers that are free. When
+ * a new buffer would exceed the capacity, free buffers of other size classes are dropped to make room. If that is not
+ * enough, the allocation waits for buffers to be returned.
+ * <p/>
+ * If leak detection is enabled, the pool detects buffers that are garbage collected without being returned to it. They
+ * are logged and counted, and their memory is made available for allocation again.
+ */
+public class SizeClassedByteBufferPool implements ByteBufferPool {
+  /**
+   * The size of the smallest size class.
+   */
+  public static final int MIN_BUFFER_SIZE = 1024;
+  private static final int SIZE_CLASSES_PER_POWER_OF_TWO = 4;
+  private static final int MAX_BUFFER_SIZE = 1 << 30;
+  private static final Logger logger = LoggerFactory.getLogger(SizeClassedByteBufferPool.class);
+
+  private final long capacity;
+  private final boolean direct;
+  private final long maxThreadCacheBytes;
+  private final boolean leakDetectionEnabled;
+  private final int[] sizeClassSizes;
+  private final List<Queue<ByteBuffer>> freeLists;
+  private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<>();
+  // all the thread caches, so that the buffers cached by a thread can be dropped by the others
+  private final Queue<ThreadCache> allThreadCaches = new ConcurrentLinkedQueue<>();
+  // the memory held by the pool, both in use and free
+  private final AtomicLong pooledBytes = new AtomicLong(0);
+  private final AtomicLong outstandingBytes = new AtomicLong(0);
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+  private final AtomicLong leakCount = new AtomicLong(0);
+  // allocations that are waiting block on the lock. They are woken up by deallocations, which are counted so that a
+  // deallocation that happens between a failed attempt and the wait is not missed.
+  private final Object lock = new Object();
+  private final AtomicInteger waiterCount = new AtomicInteger(0);
+  private final AtomicLong deallocationCount = new AtomicLong(0);
+  private final ReferenceQueue<ByteBuffer> leakedBuffers = new ReferenceQueue<>();
+  // the trackers of the buffers in use by the identity hash code of the buffer
+  private final ConcurrentHashMap<Integer, LeakTracker> leakTrackers = new ConcurrentHashMap<>();
+
+  /**
+   * Create a new buffer pool.
+   * @param capacity the maximum amount of memory that the pool can hold, both in buffers that are in use and in buffers
+   *                 that are free.
+   * @param maxPooledBufferSize the size of the largest buffers that are recycled, rounded up to the next size class.
+   * @param direct {@code true} to allocate direct buffers, {@code false} to allocate heap buffers.
+   * @param maxThreadCacheBytes the maximum total size of the buffers cached by each thread that allocates from the
+   *                            pool. 0 disables the thread caches.
+   * @param leakDetectionEnabled {@code true} to detect buffers that are garbage collected without being returned.
+   */
+  public SizeClassedByteBufferPool(long capacity, int maxPooledBufferSize, boolean direct, long maxThreadCacheBytes,
+      boolean leakDetectionEnabled) {
+    if (capacity <= 0 || maxPooledBufferSize <= 0 || maxPooledBufferSize > MAX_BUFFER_SIZE || maxThreadCacheBytes < 0) {
+      throw new IllegalArgumentException(
+          "Invalid pool parameters: capacity " + capacity + ", max pooled buffer size " + maxPooledBufferSize
+              + ", max thread cache bytes " + maxThreadCacheBytes);
+    }
+    this.capacity = capacity;
+    this.direct = direct;
+    this.maxThreadCacheBytes = maxThreadCacheBytes;
+    this.leakDetectionEnabled = leakDetectionEnabled;
+    List<Integer> sizes = new ArrayList<>();
+    sizes.add(MIN_BUFFER_SIZE);
+    for (int powerOfTwo = MIN_BUFFER_SIZE; sizes.get(sizes.size() - 1) < maxPooledBufferSize; powerOfTwo <<= 1) {
+      int step = powerOfTwo / SIZE_CLASSES_PER_POWER_OF_TWO;
+      for (int i = 1; i <= SIZE_CLASSES_PER_POWER_OF_TWO; i++) {
+        sizes.add(powerOfTwo + i * step);
+      }
+    }
+    sizeClassSizes = new int[sizes.size()];
+    freeLists = new ArrayList<>(sizes.size());
+    for (int i = 0; i < sizes.size(); i++) {
+      sizeClassSizes[i] = sizes.get(i);
+      freeLists.add(new ConcurrentLinkedQueue<ByteBuffer>());
+    }
+  }
+
+  /**
+   * Allocate a byte buffer at the requested size. The buffer may be larger than requested, but its position is 0 and
+   * its limit is {@code size}.
+   * @param size the buffer size to allocate in bytes
+   * @param timeToBlockInMs a non-negative maximum time in milliseconds to block a request until the requested size of
+   *                        memory becomes available. Zero value will make the pool try a single time.
+   * @return A {@link ByteBuffer} at the requested size
+   * @throws TimeoutException if request cannot be served within {@code timeToBlockInMs}
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   * @throws IllegalArgumentException if {@code size} is larger than the pool capacity, or if {@code timeToBlockInMs} is
+   *                                  negative.
+   */
+  @Override
+  public ByteBuffer allocate(int size, long timeToBlockInMs) throws TimeoutException, InterruptedException {
+    if (size > capacity) {
+      throw new IllegalArgumentException("Requested size cannot exceed pool capacity.");
+    } else if (timeToBlockInMs < 0) {
+      throw new IllegalArgumentException("timeToBlockInMs cannot be negative.");
+    }
+    int sizeClass = getSizeClass(size);
+    int bufferSize = sizeClass == -1 ? size : sizeClassSizes[sizeClass];
+    long deadlineInMs = System.currentTimeMillis() + timeToBlockInMs;
+    boolean waiting = false;
+    ByteBuffer buffer;
+    try {
+      while (true) {
+        long deallocationsSeen = deallocationCount.get();
+        buffer = tryAllocate(sizeClass, bufferSize);
+        if (buffer != null) {
+          break;
+        }
+        long remainingInMs = deadlineInMs - System.currentTimeMillis();
+        if (remainingInMs <= 0) {
+          throw new TimeoutException("Timed out waiting for allocation.");
+        }
+        if (!waiting) {
+          // try once more after registering so that deallocations from now on wake this thread up.
+          waiting = true;
+          waiterCount.incrementAndGet();
+          continue;
+        }
+        synchronized (lock) {
+          if (deallocationCount.get() == deallocationsSeen) {
+            lock.wait(remainingInMs);
+          }
+        }
+      }
+    } finally {
+      if (waiting) {
+        waiterCount.decrementAndGet();
+      }
+    }
+    buffer.clear();
+    buffer.limit(size);
+    outstandingBytes.addAndGet(buffer.capacity());
+    if (leakDetectionEnabled) {
+      track(buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns {@code buffer} to the pool. It must have been allocated from this pool and must not be used after this
+   * call. If leak detection is enabled, buffers that were not allocated from this pool or that have already been
+   * returned are logged and ignored.
+   * @param buffer the {@link ByteBuffer} to be deallocated back to the pool
+   */
+  @Override
+  public void deallocate(ByteBuffer buffer) {
+    if (leakDetectionEnabled && !untrack(buffer)) {
+      logger.warn("Ignoring a buffer of {} bytes that is not in use from this pool", buffer.capacity());
+      return;
+    }
+    outstandingBytes.addAndGet(-buffer.capacity());
+    int sizeClass = Arrays.binarySearch(sizeClassSizes, buffer.capacity());
+    if (sizeClass >= 0 && buffer.capacity() <= capacity && buffer.isDirect() == direct) {
+      ThreadCache threadCache = threadCaches.get();
+      if (threadCache == null || !threadCache.offer(sizeClass, buffer)) {
+        freeLists.get(sizeClass).offer(buffer);
+      }
+    } else {
+      pooledBytes.addAndGet(-buffer.capacity());
+    }
+    deallocationCount.incrementAndGet();
+    if (waiterCount.get() > 0) {
+      synchronized (lock) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * @return the maximum amount of memory that the pool can hold.
+   */
+  public long capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the amount of memory held by the pool, in buffers that are in use and in buffers that are free.
+   */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  /**
+   * @return the amount of memory in buffers that are in use.
+   */
+  public long getOutstandingBytes() {
+    return outstandingBytes.get();
+  }
+
+  /**
+   * @return the number of allocations served by a recycled buffer.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return the number of allocations that required a new buffer.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return the number of buffers that were garbage collected without being returned to the pool.
+   */
+  public long getLeakCount() {
+    return leakCount.get();
+  }
+
+  /**
+   * @param size the size requested.
+   * @return the index of the smallest size class that fits {@code size}, or -1 if {@code size} should not be pooled.
+   */
+  private int getSizeClass(int size) {
+    int sizeClass = Arrays.binarySearch(sizeClassSizes, size);
+    if (sizeClass < 0) {
+      sizeClass = -sizeClass - 1;
+    }
+    return sizeClass < sizeClassSizes.length && sizeClassSizes[sizeClass] <= capacity ? sizeClass : -1;
+  }
+
+  /**
+   * Makes a single attempt at getting a buffer, first from the free buffers of the size class and then by allocating
+   * a new one if the capacity allows.
+   * @param sizeClass the size class of the buffer, or -1 if the buffer is not pooled.
+   * @param bufferSize the size of the buffer.
+   * @return the buffer, or {@code null} if there is no memory available.
+   */
+  private ByteBuffer tryAllocate(int sizeClass, int bufferSize) {
+    reclaimLeakedBuffers();
+    if (sizeClass != -1) {
+      ByteBuffer buffer = takeFreeBuffer(sizeClass);
+      if (buffer != null) {
+        hitCount.incrementAndGet();
+        return buffer;
+      }
+    }
+    while (!tryReserve(bufferSize)) {
+      if (!dropFreeBuffer()) {
+        return null;
+      }
+    }
+    missCount.incrementAndGet();
+    return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+  }
+
+  /**
+   * @param sizeClass the size class of the buffer.
+   * @return a free buffer of {@code sizeClass} from the cache of this thread or the shared free list, or {@code null}
+   * if there is none.
+   */
+  private ByteBuffer takeFreeBuffer(int sizeClass) {
+    ThreadCache threadCache = threadCaches.get();
+    if (threadCache == null && maxThreadCacheBytes > 0) {
+      threadCache = new ThreadCache();
+      threadCaches.set(threadCache);
+      allThreadCaches.add(threadCache);
+    }
+    ByteBuffer buffer = threadCache == null ? null : threadCache.poll(sizeClass);
+    return buffer == null ? freeLists.get(sizeClass).poll() : buffer;
+  }
+
+  /**
+   * @param bytes the amount of memory to reserve for a new buffer.
+   * @return {@code true} if the memory was reserved, {@code false} if it would exceed the capacity.
+   */
+  private boolean tryReserve(long bytes) {
+    while (true) {
+      long current = pooledBytes.get();
+      if (current + bytes > capacity) {
+        return false;
+      }
+      if (pooledBytes.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Drops a free buffer, largest first, so that its memory can be used for a buffer of another size. The shared free
+   * lists are tried before the thread caches, which are tried whichever thread they belong to.
+   * @return {@code true} if a buffer was dropped, {@code false} if there are no free buffers that can be dropped.
+   */
+  private boolean dropFreeBuffer() {
+    for (int sizeClass = sizeClassSizes.length - 1; sizeClass >= 0; sizeClass--) {
+      ByteBuffer buffer = freeLists.get(sizeClass).poll();
+      if (buffer != null) {
+        pooledBytes.addAndGet(-buffer.capacity());
+        return true;
+      }
+    }
+    Iterator<ThreadCache> iterator = allThreadCaches.iterator();
+    while (iterator.hasNext()) {
+      ThreadCache threadCache = iterator.next();
+      ByteBuffer buffer = threadCache.pollLargest();
+      if (buffer != null) {
+        pooledBytes.addAndGet(-buffer.capacity());
+        return true;
+      } else if (!threadCache.isOwnerAlive()) {
+        // nothing can be added to the cache of a thread that has exited once it is empty.
+        iterator.remove();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Starts tracking a buffer that is handed out.
+   * @param buffer the buffer that is handed out.
+   */
+  private void track(ByteBuffer buffer) {
+    final LeakTracker tracker = new LeakTracker(buffer, leakedBuffers);
+    leakTrackers.compute(tracker.identity, (identity, head) -> {
+      tracker.next = head;
+      return tracker;
+    });
+  }
+
+  /**
+   * Stops tracking a buffer that is returned.
+   * @param buffer the buffer that is returned.
+   * @return {@code true} if the buffer was being tracked, {@code false} otherwise.
+   */
+  private boolean untrack(final ByteBuffer buffer) {
+    final LeakTracker[] untracked = new LeakTracker[1];
+    leakTrackers.computeIfPresent(System.identityHashCode(buffer), (identity, head) -> {
+      for (LeakTracker tracker = head; tracker != null; tracker = tracker.next) {
+        if (tracker.get() == buffer) {
+          untracked[0] = tracker;
+          return unlink(head, tracker);
+        }
+      }
+      return head;
+    });
+    if (untracked[0] == null) {
+      return false;
+    }
+    // a cleared reference is never enqueued, so the buffer is not reported as leaked once it is garbage collected.
+    untracked[0].clear();
+    return true;
+  }
+
+  /**
+   * Releases the memory of the buffers that were garbage collected without being returned to the pool.
+   */
+  private void reclaimLeakedBuffers() {
+    Reference<? extends ByteBuffer> reference;
+    while ((reference = leakedBuffers.poll()) != null) {
+      final LeakTracker tracker = (LeakTracker) reference;
+      leakTrackers.computeIfPresent(tracker.identity, (identity, head) -> unlink(head, tracker));
+      leakCount.incrementAndGet();
+      outstandingBytes.addAndGet(-tracker.capacity);
+      pooledBytes.addAndGet(-tracker.capacity);
+      logger.error("A buffer of {} bytes was garbage collected without being returned to the pool", tracker.capacity);
+    }
+  }
+
+  /**
+   * @param head the first tracker of a chain of trackers with the same identity hash code.
+   * @param tracker the tracker to remove from the chain.
+   * @return the first tracker of the chain after removing {@code tracker}, {@code null} if the chain is empty.
+   */
+  private static LeakTracker unlink(LeakTracker head, LeakTracker tracker) {
+    if (head == tracker) {
+      return head.next;
+    }
+    for (LeakTracker previous = head; previous.next != null; previous = previous.next) {
+      if (previous.next == tracker) {
+        previous.next = tracker.next;
+        break;
+      }
+    }
+    return head;
+  }
+
+  /**
+   * Tracks a buffer in use. The tracker is enqueued if the buffer is garbage collected before it is returned.
+   */
+  private static class LeakTracker extends WeakReference<ByteBuffer> {
+    final int identity;
+    final int capacity;
+    // the next tracker of a buffer with the same identity hash code
+    LeakTracker next = null;
+
+    LeakTracker(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+      super(buffer, queue);
+      identity = System.identityHashCode(buffer);
+      capacity = buffer.capacity();
+    }
+  }
+
+  /**
+   * The free buffers cached by a thread. Buffers are only cached and reused by the thread that owns the cache, but they
+   * can be dropped by any thread.
+   */
+  private class ThreadCache {
+    private final List<ArrayDeque<ByteBuffer>> buffers = new ArrayList<>(sizeClassSizes.length);
+    private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+    private long sizeInBytes = 0;
+
+    ThreadCache() {
+      for (int i = 0; i < sizeClassSizes.length; i++) {
+        buffers.add(new ArrayDeque<ByteBuffer>());
+      }
+    }
+
+    /**
+     * @param sizeClass the size class of the buffer.
+     * @param buffer the free buffer to cache.
+     * @return {@code true} if the buffer was cached, {@code false} if the cache is full.
+     */
+    synchronized boolean offer(int sizeClass, ByteBuffer buffer) {
+      if (sizeInBytes + buffer.capacity() > maxThreadCacheBytes) {
+        return false;
+      }
+      buffers.get(sizeClass).push(buffer);
+      sizeInBytes += buffer.capacity();
+      return true;
+    }
+
+    /**
+     * @param sizeClass the size class of the buffer.
+     * @return a cached buffer of {@code sizeClass}, or {@code null} if there is none.
+     */
+    synchronized ByteBuffer poll(int sizeClass) {
+      ByteBuffer buffer = buffers.get(sizeClass).poll();
+      if (buffer != null) {
+        sizeInBytes -= buffer.capacity();
+      }
+      return buffer;
+    }
+
+    /**
+     * @return a cached buffer of the largest size class that has one, or {@code null} if the cache is empty.
+     */
+    synchronized ByteBuffer pollLargest() {
+      for (int sizeClass = buffers.size() - 1; sizeClass >= 0 && sizeInBytes > 0; sizeClass--) {
+        ByteBuffer buffer = poll(sizeClass);
+        if (buffer != null) {
+          return buffer;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return {@code true} if the thread that owns the cache is still alive.
+     */
+    boolean isOwnerAlive() {
+      Thread thread = owner.get();
+      return thread != null && thread.isAlive();
+    }
+  }
+}
@@ -74,6 +74,20 @@ public class BloomFilterTest {
     assert !bf.isPresent(ByteBuffer.wrap("b".getBytes()));
   }
 
+  @Test
+  public void testIsPresentWithKeyHash() {
+    IFilter other = FilterFactory.getFilter(100L, FilterTestHelper.MAX_FAILURE_RATE);
+    Iterator<ByteBuffer> keys = FilterTestHelper.randomKeys();
+    while (keys.hasNext()) {
+      ByteBuffer key = keys.next();
+      bf.add(key);
+      long[] keyHash = FilterFactory.getKeyHash(key);
+      Assert.assertTrue("Key should be present", bf.isPresent(keyHash));
+      Assert.assertEquals("Presence should not depend on how the key is passed", other.isPresent(key),
+          other.isPresent(keyHash));
+    }
+  }
+
   @Test
   public void testFalsePositivesInt() {
     FilterTestHelper.testFalsePositives(bf, FilterTestHelper.intKeys(), FilterTestHelper.randomKeys2());
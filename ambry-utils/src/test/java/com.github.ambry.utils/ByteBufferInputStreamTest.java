@@ -78,6 +78,58 @@ public class ByteBufferInputStreamTest {
     }
   }
 
+  /**
+   * Tests {@link ByteBufferInputStream#readSlice(int)} and {@link ByteBufferInputStream#skip(long)}.
+   * @throws IOException
+   */
+  @Test
+  public void readSliceAndSkipTest() throws IOException {
+    byte[] buf = new byte[1024];
+    new Random().nextBytes(buf);
+    ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(buf));
+    assertEquals("Unexpected bytes skipped", 10, stream.skip(10));
+    ByteBufferInputStream slice = stream.readSlice(100);
+    assertEquals("Slice should contain only the requested bytes", 100, slice.available());
+    assertEquals("Stream should have moved past the slice", 1024 - 110, stream.available());
+    assertEquals("Slice mismatch", ByteBuffer.wrap(buf, 10, 100), slice.getByteBuffer());
+    assertEquals("Stream mismatch", buf[110] & 0xFF, stream.read());
+    try {
+      stream.readSlice(stream.available() + 1);
+      fail("Slice larger than the remaining bytes should have failed");
+    } catch (IOException e) {
+      // expected. Nothing to do.
+    }
+    assertEquals("Unexpected bytes skipped", 1024 - 111, stream.skip(2048));
+    assertEquals("Stream should be at the end", -1, stream.read());
+    assertEquals("Unexpected bytes skipped", 0, stream.skip(1));
+  }
+
+  /**
+   * Tests {@link ByteBufferInputStream#updateCrc(Crc32)} for heap and direct buffers.
+   * @throws IOException
+   */
+  @Test
+  public void updateCrcTest() throws IOException {
+    byte[] buf = new byte[10000];
+    new Random().nextBytes(buf);
+    Crc32 expectedCrc = new Crc32();
+    expectedCrc.update(buf, 10, 9000);
+    ByteBuffer direct = ByteBuffer.allocateDirect(buf.length);
+    direct.put(buf);
+    direct.flip();
+    for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(buf), direct}) {
+      ByteBufferInputStream stream = new ByteBufferInputStream(buffer);
+      stream.skip(10);
+      // a slice of a heap buffer has a non zero array offset
+      ByteBufferInputStream slice = stream.readSlice(9000);
+      Crc32 crc = new Crc32();
+      slice.updateCrc(crc);
+      assertEquals("CRC mismatch for direct buffer: " + buffer.isDirect(), expectedCrc.getValue(), crc.getValue());
+      assertEquals("Stream should not have been consumed", 9000, slice.available());
+      assertEquals("Stream mismatch", buf[10] & 0xFF, slice.read());
+    }
+  }
+
   @Test
   public void markResetTest() throws IOException {
     byte[] buf = new byte[1024];
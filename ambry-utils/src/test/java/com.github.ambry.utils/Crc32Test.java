@@ -13,6 +13,7 @@
  */
 package com.github.ambry.utils;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
@@ -39,4 +40,28 @@ public class Crc32Test {
     long value3 = crc.getValue();
     Assert.assertFalse(value1 == value3);
   }
+
+  /**
+   * Tests that the checksum of the remaining bytes of a {@link ByteBuffer} is the same as that of the equivalent array
+   * range, whether or not the buffer is backed by an accessible array.
+   */
+  @Test
+  public void byteBufferCrcTest() {
+    byte[] buf = new byte[10000];
+    new Random().nextBytes(buf);
+    Crc32 crc = new Crc32();
+    crc.update(buf, 100, 9000);
+    long expected = crc.getValue();
+    ByteBuffer heapBuffer = ByteBuffer.wrap(buf, 100, 9000);
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(9000);
+    directBuffer.put(buf, 100, 9000);
+    directBuffer.flip();
+    for (ByteBuffer buffer : new ByteBuffer[]{heapBuffer, heapBuffer.asReadOnlyBuffer(), directBuffer}) {
+      int position = buffer.position();
+      crc = new Crc32();
+      crc.update(buffer);
+      Assert.assertEquals("Checksum mismatch", expected, crc.getValue());
+      Assert.assertEquals("Position of the buffer should not have changed", position, buffer.position());
+    }
+  }
 }
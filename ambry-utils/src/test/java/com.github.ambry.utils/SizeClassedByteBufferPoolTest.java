@@ -0,0 +1,235 @@
+/**
+ * Copyright 2017 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link SizeClassedByteBufferPool}.
+ */
+public class SizeClassedByteBufferPoolTest {
+  private static final int MB = 1024 * 1024;
+
+  /**
+   * Tests that buffers are allocated in the expected size classes, with their limit at the size requested, and that
+   * sizes larger than the largest size class are allocated exactly.
+   * @throws Exception
+   */
+  @Test
+  public void sizeClassTest() throws Exception {
+    SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(64 * MB, 8 * MB, false, 0, true);
+    int[][] sizes = {{0, 1024}, {1000, 1024}, {1024, 1024}, {1025, 1280}, {1537, 1792}, {4 * MB, 4 * MB},
+        {4 * MB + 1, 5 * MB}, {8 * MB, 8 * MB}, {8 * MB + 1, 8 * MB + 1}};
+    for (int[] size : sizes) {
+      ByteBuffer buffer = pool.allocate(size[0], 0);
+      assertEquals("Unexpected buffer size for " + size[0], size[1], buffer.capacity());
+      assertEquals("Unexpected position", 0, buffer.position());
+      assertEquals("Unexpected limit", size[0], buffer.limit());
+      assertFalse("Buffer should be on the heap", buffer.isDirect());
+      assertEquals("Unexpected outstanding bytes", size[1], pool.getOutstandingBytes());
+      pool.deallocate(buffer);
+      assertEquals("Unexpected outstanding bytes", 0, pool.getOutstandingBytes());
+    }
+    // only the buffer larger than the largest size class is not kept
+    assertEquals("Unexpected pooled bytes", 1024 + 1280 + 1792 + 4 * MB + 5 * MB + 8 * MB, pool.getPooledBytes());
+
+    pool = new SizeClassedByteBufferPool(2 * MB, MB, true, 0, true);
+    assertTrue("Buffer should be direct", pool.allocate(1024, 0).isDirect());
+    try {
+      pool.allocate(2 * MB + 1, 0);
+      fail("Allocating more than the capacity should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Tests that returned buffers are reused for allocations of the same size class and that the hit and miss counts
+   * are updated.
+   * @throws Exception
+   */
+  @Test
+  public void recycleTest() throws Exception {
+    SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(MB, MB, false, 0, true);
+    ByteBuffer buffer = pool.allocate(1100, 0);
+    buffer.putInt(1);
+    pool.deallocate(buffer);
+    ByteBuffer recycled = pool.allocate(1200, 0);
+    assertSame("Buffer should have been recycled", buffer, recycled);
+    assertEquals("Unexpected position", 0, recycled.position());
+    assertEquals("Unexpected limit", 1200, recycled.limit());
+    ByteBuffer other = pool.allocate(1000, 0);
+    assertNotSame("Buffer of another size class should not have been recycled", buffer, other);
+    assertEquals("Unexpected hit count", 1, pool.getHitCount());
+    assertEquals("Unexpected miss count", 2, pool.getMissCount());
+    assertEquals("Unexpected pooled bytes", 1280 + 1024, pool.getPooledBytes());
+  }
+
+  /**
+   * Tests that the capacity bounds the memory held by the pool, that free buffers are dropped to make room for other
+   * size classes and that allocations wait for buffers to be returned.
+   * @throws Exception
+   */
+  @Test
+  public void capacityTest() throws Exception {
+    final SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(2048, 2048, false, 0, true);
+    ByteBuffer large = pool.allocate(2048, 0);
+    pool.deallocate(large);
+    final ByteBuffer first = pool.allocate(1024, 0);
+    assertEquals("The free buffer should have been dropped", 1024, pool.getPooledBytes());
+    ByteBuffer second = pool.allocate(1024, 0);
+    try {
+      pool.allocate(1024, 0);
+      fail("Allocation should have timed out");
+    } catch (TimeoutException e) {
+      // expected. Nothing to do.
+    }
+    try {
+      pool.allocate(2048, 10);
+      fail("Allocation should have timed out");
+    } catch (TimeoutException e) {
+      // expected. Nothing to do.
+    }
+
+    final CountDownLatch waiting = new CountDownLatch(1);
+    final AtomicReference<ByteBuffer> allocated = new AtomicReference<>();
+    final AtomicReference<Exception> exception = new AtomicReference<>();
+    Thread allocator = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          waiting.countDown();
+          allocated.set(pool.allocate(1000, 10000));
+        } catch (Exception e) {
+          exception.set(e);
+        }
+      }
+    });
+    allocator.start();
+    assertTrue("Allocator did not start", waiting.await(1, TimeUnit.SECONDS));
+    pool.deallocate(first);
+    allocator.join(10000);
+    assertNull("Allocation should have succeeded", exception.get());
+    assertSame("Returned buffer should have been allocated", first, allocated.get());
+    pool.deallocate(second);
+    pool.deallocate(allocated.get());
+    assertEquals("Unexpected outstanding bytes", 0, pool.getOutstandingBytes());
+  }
+
+  /**
+   * Tests that buffers returned by a thread that allocates from the pool are cached for that thread and that other
+   * threads use the shared free lists.
+   * @throws Exception
+   */
+  @Test
+  public void threadCacheTest() throws Exception {
+    final SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(MB, MB, false, 2048, true);
+    ByteBuffer cached = pool.allocate(1024, 0);
+    ByteBuffer shared = pool.allocate(2048, 0);
+    pool.deallocate(cached);
+    // does not fit in the cache of this thread anymore
+    pool.deallocate(shared);
+    final AtomicReference<ByteBuffer> otherCached = new AtomicReference<>();
+    final AtomicReference<ByteBuffer> otherShared = new AtomicReference<>();
+    Thread other = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          otherCached.set(pool.allocate(1024, 0));
+          otherShared.set(pool.allocate(2048, 0));
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+    other.start();
+    other.join(10000);
+    assertNotSame("Buffer in the cache of another thread should not have been used", cached, otherCached.get());
+    assertSame("Buffer in the shared free list should have been used", shared, otherShared.get());
+    assertSame("Buffer in the cache of this thread should have been used", cached, pool.allocate(1024, 0));
+  }
+
+  /**
+   * Tests that the buffers cached by a thread, including a thread that has exited, are dropped when another thread
+   * needs their memory.
+   * @throws Exception
+   */
+  @Test
+  public void threadCacheDropTest() throws Exception {
+    final SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(4096, 4096, false, 4096, true);
+    Thread other = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ByteBuffer first = pool.allocate(2048, 0);
+          ByteBuffer second = pool.allocate(2048, 0);
+          pool.deallocate(first);
+          pool.deallocate(second);
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+    other.start();
+    other.join(10000);
+    assertFalse("Thread should have exited", other.isAlive());
+    assertEquals("Unexpected outstanding bytes", 0, pool.getOutstandingBytes());
+    assertEquals("Buffers should be cached by the exited thread", 4096, pool.getPooledBytes());
+    ByteBuffer buffer = pool.allocate(4096, 0);
+    assertEquals("Unexpected buffer capacity", 4096, buffer.capacity());
+    assertEquals("Cached buffers should have been dropped", 4096, pool.getPooledBytes());
+    assertEquals("Unexpected outstanding bytes", 4096, pool.getOutstandingBytes());
+    pool.deallocate(buffer);
+  }
+
+  /**
+   * Tests that buffers that are returned twice or were not allocated from the pool are ignored and that buffers that
+   * are garbage collected without being returned are detected and their memory reclaimed.
+   * @throws Exception
+   */
+  @Test
+  public void leakDetectionTest() throws Exception {
+    SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(4096, 4096, false, 0, true);
+    ByteBuffer buffer = pool.allocate(1024, 0);
+    pool.deallocate(buffer);
+    pool.deallocate(buffer);
+    pool.deallocate(ByteBuffer.allocate(1024));
+    assertEquals("Unexpected outstanding bytes", 0, pool.getOutstandingBytes());
+    assertEquals("Unexpected pooled bytes", 1024, pool.getPooledBytes());
+
+    pool.allocate(4096, 0);
+    assertEquals("Unexpected outstanding bytes", 4096, pool.getOutstandingBytes());
+    for (int i = 0; i < 100 && pool.getLeakCount() == 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      // leaked buffers are reclaimed on allocation
+      try {
+        pool.deallocate(pool.allocate(1024, 0));
+      } catch (TimeoutException e) {
+        // the leaked buffer has not been garbage collected yet.
+      }
+    }
+    assertEquals("Leak should have been detected", 1, pool.getLeakCount());
+    assertEquals("Unexpected outstanding bytes", 0, pool.getOutstandingBytes());
+    assertEquals("Leaked memory should have been reclaimed", 1024, pool.getPooledBytes());
+  }
+}